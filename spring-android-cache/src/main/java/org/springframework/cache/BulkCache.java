@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Extension of {@link Cache} operating on many keys at once. Batches
+ * let implementations acquire their locks once and group their I/O,
+ * for example disk caches read files in name order instead of paying
+ * a full lookup per key.
+ * <p>
+ * Callers which don't know whether a cache supports bulk operations
+ * should use {@link org.springframework.cache.support.BulkCacheUtils}
+ * which falls back to single key operations.
+ *
+ * @author Janne Valkealahti
+ */
+public interface BulkCache extends Cache {
+
+	/**
+	 * Return the values to which this cache maps the specified keys.
+	 * Keys which are not found are absent from a returned map, a key
+	 * mapping to <code>null</code> has a cached <code>null</code> value.
+	 * @param keys the keys whose associated values are to be returned
+	 * @return the found values by key, never <code>null</code>
+	 */
+	Map<Object, Object> getAll(Collection<?> keys);
+
+	/**
+	 * Associate the specified values with their keys in this cache.
+	 * @param entries the values by key
+	 */
+	void putAll(Map<?, ?> entries);
+
+	/**
+	 * Evict the mappings for the specified keys from this cache.
+	 * @param keys the keys whose mappings are to be removed
+	 */
+	void evictAll(Collection<?> keys);
+
+}
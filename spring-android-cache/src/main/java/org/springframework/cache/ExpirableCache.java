@@ -0,0 +1,49 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache;
+
+/**
+ * Extension of {@link Cache} whose entries may expire. An entry expires
+ * when its time-to-live has passed since it was written or, if a cache
+ * has an idle timeout, when it hasn't been read within that timeout.
+ * Expired entries are never returned from {@link #get(Object)} and are
+ * removed lazily on lookup or by {@link #purgeExpired(int)}.
+ *
+ * @author Janne Valkealahti
+ * @see org.springframework.cache.support.ExpirySweeper
+ */
+public interface ExpirableCache extends Cache {
+
+	/**
+	 * Associate the specified value with the specified key in this cache
+	 * for a given time. Time-to-live given here overrides the default
+	 * time-to-live of a cache.
+	 * @param key the key with which the specified value is to be associated
+	 * @param value the value to be associated with the specified key
+	 * @param timeToLive the time in milliseconds after which entry expires
+	 */
+	void put(Object key, Object value, long timeToLive);
+
+	/**
+	 * Remove expired entries from this cache. At most given number of
+	 * entries are removed to keep a single call short.
+	 * @param maxEntries the max number of entries to remove
+	 * @return the number of removed entries
+	 */
+	int purgeExpired(int maxEntries);
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache;
+
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.StatsCounter;
+
+/**
+ * Extension of {@link Cache} which records statistics of its
+ * operations. Events are passed to a {@link StatsCounter} which
+ * by default accumulates them to be read with {@link #getStats()}.
+ * A custom counter can be set to forward events elsewhere.
+ *
+ * @author Janne Valkealahti
+ * @see org.springframework.cache.support.ConcurrentStatsCounter
+ */
+public interface InstrumentedCache extends Cache {
+
+	/**
+	 * Return a snapshot of statistics recorded by this cache.
+	 * @return the cache statistics
+	 */
+	CacheStats getStats();
+
+	/**
+	 * Set the counter recording statistics of this cache. Events
+	 * recorded by a previous counter are not carried over.
+	 * @param statsCounter the stats counter
+	 */
+	void setStatsCounter(StatsCounter statsCounter);
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Extension of {@link Cache} which is able to load missing values.
+ * Loading is single-flight, concurrent misses on a same key share
+ * one loader invocation and its result instead of each computing
+ * a value on their own.
+ *
+ * @author Janne Valkealahti
+ */
+public interface LoadingCache extends Cache {
+
+	/**
+	 * Return the value to which this cache maps the specified key, obtaining
+	 * that value from the loader if necessary. Loaded value is put into
+	 * this cache and returned to every caller waiting for the same key.
+	 * @param key the key whose associated value is to be returned
+	 * @param loader the loader computing a value on a cache miss
+	 * @return the value to which this cache maps the specified key
+	 * @throws ValueRetrievalException if the loader throws an exception
+	 */
+	<T> T get(Object key, Callable<T> loader);
+
+	/**
+	 * Asynchronous variant of {@link #get(Object, Callable)}. On a cache
+	 * hit returned future is already done, otherwise the loader is run
+	 * with the given executor unless a load for the same key is already
+	 * in flight. Cancelling the returned future cancels the shared load.
+	 * @param key the key whose associated value is to be returned
+	 * @param loader the loader computing a value on a cache miss
+	 * @param executor the executor running the loader
+	 * @return the future of the value
+	 */
+	<T> Future<T> getAsync(Object key, Callable<T> loader, Executor executor);
+
+
+	/**
+	 * Wrapper exception to be thrown from {@link #get(Object, Callable)}
+	 * in case of the value loader callback failing with an exception.
+	 */
+	@SuppressWarnings("serial")
+	class ValueRetrievalException extends RuntimeException {
+
+		private final Object key;
+
+		public ValueRetrievalException(Object key, Callable<?> loader, Throwable ex) {
+			super(String.format("Value for key '%s' could not be loaded using '%s'", key, loader), ex);
+			this.key = key;
+		}
+
+		public Object getKey() {
+			return this.key;
+		}
+	}
+
+}
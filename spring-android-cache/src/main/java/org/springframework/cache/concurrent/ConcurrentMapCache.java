@@ -16,12 +16,29 @@
 
 package org.springframework.cache.concurrent;
 
+import org.springframework.cache.BulkCache;
 import org.springframework.cache.Cache;
+import org.springframework.cache.ExpirableCache;
+import org.springframework.cache.InstrumentedCache;
+import org.springframework.cache.LoadingCache;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.ConcurrentStatsCounter;
+import org.springframework.cache.support.ExpiringValue;
+import org.springframework.cache.support.RemovalCause;
 import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.cache.support.SingleFlight;
+import org.springframework.cache.support.StatsCounter;
+import org.springframework.util.Assert;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 /**
  * Simple {@link Cache} implementation based on the core JDK
@@ -36,10 +53,13 @@ import java.util.concurrent.ConcurrentMap;
  * them with a predefined internal object. This behavior can be changed through the
  * {@link #ConcurrentMapCache(String, ConcurrentMap, boolean)} constructor.
  *
+ * <p>Entries may expire after a time-to-live or an idle timeout, in which case
+ * they are stored wrapped in an {@link ExpiringValue} in the internal store.
+ *
  * @author Costin Leau
  * @author Juergen Hoeller
  */
-public class ConcurrentMapCache implements Cache {
+public class ConcurrentMapCache implements LoadingCache, ExpirableCache, InstrumentedCache, BulkCache {
 
 	private static final Object NULL_HOLDER = new NullHolder();
 
@@ -49,6 +69,18 @@ public class ConcurrentMapCache implements Cache {
 
 	private final boolean allowNullValues;
 
+	private final SingleFlight loads = new SingleFlight(new SingleFlight.Lookup() {
+		public ValueWrapper lookup(Object key) {
+			return peek(key);
+		}
+	});
+
+	private volatile long timeToLive;
+
+	private volatile long timeToIdle;
+
+	private volatile StatsCounter statsCounter;
+
 
 	/**
 	 * Create a new ConcurrentMapCache with the specified name.
@@ -79,6 +111,7 @@ public class ConcurrentMapCache implements Cache {
 		this.name = name;
 		this.store = store;
 		this.allowNullValues = allowNullValues;
+		setStatsCounter(new ConcurrentStatsCounter());
 	}
 
 
@@ -94,23 +127,157 @@ public class ConcurrentMapCache implements Cache {
 		return this.allowNullValues;
 	}
 
+	/**
+	 * Set the default time-to-live of entries in milliseconds.
+	 * A zero or negative value means that entries never expire.
+	 */
+	public void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	public long getTimeToLive() {
+		return this.timeToLive;
+	}
+
+	/**
+	 * Set the time in milliseconds after which an entry which hasn't
+	 * been read expires. A zero or negative value disables idle timeout.
+	 */
+	public void setTimeToIdle(long timeToIdle) {
+		this.timeToIdle = timeToIdle;
+	}
+
+	public long getTimeToIdle() {
+		return this.timeToIdle;
+	}
+
+	public void setStatsCounter(StatsCounter statsCounter) {
+		Assert.notNull(statsCounter, "StatsCounter must not be null");
+		this.statsCounter = statsCounter;
+		this.loads.setStatsCounter(statsCounter);
+	}
+
+	public CacheStats getStats() {
+		return this.statsCounter.snapshot();
+	}
+
 	public ValueWrapper get(Object key) {
-		Object value = this.store.get(key);
-		return (value != null ? new SimpleValueWrapper(fromStoreValue(value)) : null);
+		Object value = lookup(key, System.currentTimeMillis());
+		if (value == null) {
+			this.statsCounter.recordMisses(1);
+			return null;
+		}
+		this.statsCounter.recordHits(1);
+		return new SimpleValueWrapper(fromStoreValue(value));
+	}
+
+	public Map<Object, Object> getAll(Collection<?> keys) {
+		Map<Object, Object> values = new HashMap<Object, Object>();
+		long now = System.currentTimeMillis();
+		for (Object key : keys) {
+			Object value = lookup(key, now);
+			if (value != null) {
+				values.put(key, fromStoreValue(value));
+			}
+		}
+		this.statsCounter.recordHits(values.size());
+		this.statsCounter.recordMisses(keys.size() - values.size());
+		return values;
+	}
+
+	public <T> T get(Object key, Callable<T> loader) {
+		return this.loads.get(this, key, loader);
+	}
+
+	public <T> Future<T> getAsync(Object key, Callable<T> loader, Executor executor) {
+		return this.loads.getAsync(this, key, loader, executor);
 	}
 
 	public void put(Object key, Object value) {
-		this.store.put(key, toStoreValue(value));
+		this.store.put(key, ExpiringValue.wrap(toStoreValue(value), this.timeToLive, this.timeToIdle,
+				System.currentTimeMillis()));
+		this.statsCounter.recordPuts(1);
+	}
+
+	public void put(Object key, Object value, long timeToLive) {
+		Assert.isTrue(timeToLive > 0, "Time-to-live must be positive");
+		this.store.put(key, ExpiringValue.wrap(toStoreValue(value), timeToLive, this.timeToIdle,
+				System.currentTimeMillis()));
+		this.statsCounter.recordPuts(1);
+	}
+
+	public void putAll(Map<?, ?> entries) {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<?, ?> entry : entries.entrySet()) {
+			this.store.put(entry.getKey(), ExpiringValue.wrap(toStoreValue(entry.getValue()), this.timeToLive,
+					this.timeToIdle, now));
+		}
+		this.statsCounter.recordPuts(entries.size());
+	}
+
+	public int purgeExpired(int maxEntries) {
+		int removed = 0;
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Object, Object> entry : this.store.entrySet()) {
+			if (removed >= maxEntries) {
+				break;
+			}
+			Object value = entry.getValue();
+			if (value instanceof ExpiringValue && ((ExpiringValue) value).isExpired(now)
+					&& this.store.remove(entry.getKey(), value)) {
+				this.statsCounter.recordRemoval(RemovalCause.EXPIRED, 1);
+				removed++;
+			}
+		}
+		return removed;
 	}
 
 	public void evict(Object key) {
-		this.store.remove(key);
+		if (this.store.remove(key) != null) {
+			this.statsCounter.recordRemoval(RemovalCause.EXPLICIT, 1);
+		}
+	}
+
+	public void evictAll(Collection<?> keys) {
+		for (Object key : keys) {
+			evict(key);
+		}
 	}
 
 	public void clear() {
 		this.store.clear();
 	}
 
+	/**
+	 * Look up a store value, removing it if it has expired.
+	 * @param key the key
+	 * @param now the current time in milliseconds
+	 * @return the store value, or <code>null</code> if not found
+	 */
+	/**
+	 * Look up the given key without recording a hit or a miss.
+	 */
+	private ValueWrapper peek(Object key) {
+		Object value = lookup(key, System.currentTimeMillis());
+		return (value != null ? new SimpleValueWrapper(fromStoreValue(value)) : null);
+	}
+
+	private Object lookup(Object key, long now) {
+		Object value = this.store.get(key);
+		if (value instanceof ExpiringValue) {
+			ExpiringValue expiring = (ExpiringValue) value;
+			if (expiring.isExpired(now)) {
+				if (this.store.remove(key, value)) {
+					this.statsCounter.recordRemoval(RemovalCause.EXPIRED, 1);
+				}
+				return null;
+			}
+			expiring.touch(now);
+			value = expiring.getValue();
+		}
+		return value;
+	}
+
 
 	/**
 	 * Convert the given value from the internal store to a user value
@@ -16,24 +16,182 @@
 
 package org.springframework.cache.disk;
 
+import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.disk.support.StorageUtils;
+import org.springframework.util.Assert;
 
+/**
+ * {@link CacheManager} implementation that lazily builds {@link SizeLimitDiskCache}
+ * instances for each {@link #getCache} request. Every cache is stored in its own
+ * sub directory of a root directory and all caches share one {@link DiskQuota},
+ * meaning that an entry may be evicted from the largest cache to make room for
+ * an entry in another cache.
+ * <p>
+ * Also supports a 'static' mode where the set of cache names is pre-defined
+ * through {@link #setCacheNames}, with no dynamic creation of further caches
+ * at runtime.
+ *
+ * @author Janne Valkealahti
+ */
 public class DiskCacheManager implements CacheManager {
 
+    /** Default quota used until quota is set */
+    public static final long DEFAULT_QUOTA = 10 * 1024 * 1024;
+
+    private final ConcurrentMap<String, Cache> mCacheMap = new ConcurrentHashMap<String, Cache>();
+    private final DiskQuota mQuota = new DiskQuota(DEFAULT_QUOTA);
+    private File mRootDir;
+    private FileTemplate<?, ?> mTemplate;
+    private boolean mDynamic = true;
+
+    /**
+     * Construct a dynamic DiskCacheManager. Root directory and
+     * template needs to be set before caches are requested.
+     */
     public DiskCacheManager() {
     }
 
+    /**
+     * Construct a dynamic DiskCacheManager, lazily creating
+     * cache instances as they are being requested.
+     *
+     * @param rootDir the directory where caches are stored
+     * @param template the file template used by caches
+     * @param quota the max combined size of caches in bytes
+     */
+    public DiskCacheManager(File rootDir, FileTemplate<?, ?> template, long quota) {
+        setRootDirectory(rootDir);
+        setTemplate(template);
+        setQuota(quota);
+    }
+
+    /**
+     * Sets the directory where caches are stored.
+     *
+     * @param rootDir the root directory
+     */
+    public void setRootDirectory(File rootDir) {
+        mRootDir = rootDir;
+    }
+
+    /**
+     * Sets the file template used by caches.
+     *
+     * @param template the file template
+     */
+    public void setTemplate(FileTemplate<?, ?> template) {
+        mTemplate = template;
+    }
+
+    /**
+     * Sets the max combined size of caches in bytes.
+     *
+     * @param quota the quota in bytes
+     */
+    public void setQuota(long quota) {
+        mQuota.setLimit(quota);
+    }
+
+    /**
+     * Sets the quota as a ratio of currently available space
+     * in a data partition, bounded by a given max size.
+     *
+     * @param ratio the ratio of available space
+     * @param maxQuota the max quota in bytes
+     * @see StorageUtils#dataPartitionAvailableSpace()
+     */
+    public void setQuotaFromAvailableSpace(float ratio, long maxQuota) {
+        Assert.isTrue(ratio > 0 && ratio <= 1, "Ratio must be within (0, 1]");
+        long available = (long) (StorageUtils.dataPartitionAvailableSpace() * ratio);
+        setQuota(Math.min(available, maxQuota));
+    }
+
+    /**
+     * Gets the quota shared by caches of this manager.
+     *
+     * @return the disk quota
+     */
+    public DiskQuota getQuota() {
+        return mQuota;
+    }
+
+    /**
+     * Specify the set of cache names for this CacheManager's 'static' mode.
+     * <p>The number of caches and their names will be fixed after a call to this method,
+     * with no creation of further caches at runtime.
+     *
+     * @param cacheNames the cache names
+     */
+    public void setCacheNames(Collection<String> cacheNames) {
+        if (cacheNames != null) {
+            for (String name : cacheNames) {
+                mCacheMap.put(name, createCache(name));
+            }
+            mDynamic = false;
+        }
+    }
+
+    /**
+     * Specify the set of cache names for this CacheManager's 'static' mode.
+     *
+     * @param cacheNames the cache names
+     * @see #setCacheNames(Collection)
+     */
+    public void setCacheNames(String... cacheNames) {
+        setCacheNames(Arrays.asList(cacheNames));
+    }
+
     @Override
     public Cache getCache(String name) {
-        return null;
+        Cache cache = mCacheMap.get(name);
+        if (cache == null && mDynamic) {
+            synchronized (mCacheMap) {
+                cache = mCacheMap.get(name);
+                if (cache == null) {
+                    cache = createCache(name);
+                    mCacheMap.put(name, cache);
+                }
+            }
+        }
+        return cache;
     }
 
     @Override
     public Collection<String> getCacheNames() {
-        return null;
+        return Collections.unmodifiableSet(mCacheMap.keySet());
+    }
+
+    /**
+     * Create a new disk cache instance for the specified cache name. Default
+     * implementation creates a {@link SizeLimitDiskCache} bound only by the
+     * shared quota.
+     *
+     * @param name the name of the cache
+     * @param dir the directory of the cache
+     * @return the disk cache
+     */
+    protected JournaledDiskCache<?, ?> createDiskCache(String name, File dir) {
+        return new SizeLimitDiskCache<Object, Object>(name, dir, mTemplate, Long.MAX_VALUE);
+    }
+
+    private Cache createCache(String name) {
+        Assert.notNull(mRootDir, "Root directory must be set");
+        Assert.notNull(mTemplate, "Template must be set");
+        Assert.hasText(name, "Cache name must not be empty");
+        Assert.isTrue(name.indexOf(File.separatorChar) < 0 && !name.startsWith("."),
+                "Cache name must be a valid directory name");
+        JournaledDiskCache<?, ?> cache = createDiskCache(name, new File(mRootDir, name));
+        cache.setQuota(mQuota);
+        return cache;
     }
 
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.util.Assert;
+
+/**
+ * Byte budget shared by a set of {@link JournaledDiskCache}s. Once
+ * the combined size of files in registered caches goes over the quota,
+ * entries are evicted from the largest cache using its own eviction
+ * policy until caches fit again. This keeps the total footprint bound
+ * without tuning a limit of every cache separately.
+ *
+ * @author Janne Valkealahti
+ */
+public class DiskQuota {
+
+    private final List<JournaledDiskCache<?, ?>> mCaches = new CopyOnWriteArrayList<JournaledDiskCache<?, ?>>();
+    private volatile long mLimit;
+
+    /**
+     * Instantiates a new disk quota.
+     *
+     * @param limit the max combined size of caches in bytes
+     */
+    public DiskQuota(long limit) {
+        setLimit(limit);
+    }
+
+    /**
+     * Gets the max combined size of caches.
+     *
+     * @return the limit in bytes
+     */
+    public long getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * Sets the max combined size of caches. Lowering the
+     * limit evicts entries immediately.
+     *
+     * @param limit the limit in bytes
+     */
+    public void setLimit(long limit) {
+        Assert.isTrue(limit >= 0, "Quota limit must not be negative");
+        mLimit = limit;
+        enforce();
+    }
+
+    /**
+     * Gets the combined size of registered caches.
+     *
+     * @return the used bytes
+     */
+    public long getUsedBytes() {
+        long used = 0;
+        for (JournaledDiskCache<?, ?> cache : mCaches) {
+            used += cache.getBytes();
+        }
+        return used;
+    }
+
+    /**
+     * Registers a cache to this quota.
+     *
+     * @param cache the cache to register
+     */
+    void register(JournaledDiskCache<?, ?> cache) {
+        if (!mCaches.contains(cache)) {
+            mCaches.add(cache);
+        }
+    }
+
+    /**
+     * Evicts entries from the largest caches until combined
+     * size of caches is within the limit. Victims are chosen
+     * under the quota lock while their files are deleted after
+     * it's released, so concurrent writers don't queue behind
+     * disk I/O of another cache.
+     */
+    void enforce() {
+        for (JournaledDiskCache<?, ?> cache : mCaches) {
+            cache.awaitQuotaReady();
+        }
+        Map<JournaledDiskCache<?, ?>, List<String>> victims;
+        synchronized (this) {
+            victims = selectVictims();
+        }
+        for (Map.Entry<JournaledDiskCache<?, ?>, List<String>> entry : victims.entrySet()) {
+            entry.getKey().removeQuotaFiles(entry.getValue());
+        }
+    }
+
+    /**
+     * Removes entries from the indexes of the largest caches
+     * until combined size of caches is within the limit.
+     *
+     * @return the names of removed entries by cache
+     */
+    private Map<JournaledDiskCache<?, ?>, List<String>> selectVictims() {
+        Map<JournaledDiskCache<?, ?>, List<String>> victims = new LinkedHashMap<JournaledDiskCache<?, ?>, List<String>>();
+        while (true) {
+            long used = 0;
+            JournaledDiskCache<?, ?> largest = null;
+            long largestBytes = 0;
+            for (JournaledDiskCache<?, ?> cache : mCaches) {
+                long bytes = cache.getBytes();
+                used += bytes;
+                if (bytes > largestBytes) {
+                    largest = cache;
+                    largestBytes = bytes;
+                }
+            }
+            if (used <= mLimit || largest == null) {
+                return victims;
+            }
+            String name = largest.selectQuotaVictim();
+            if (name == null) {
+                return victims;
+            }
+            List<String> names = victims.get(largest);
+            if (names == null) {
+                names = new ArrayList<String>();
+                victims.put(largest, names);
+            }
+            names.add(name);
+        }
+    }
+
+}
@@ -17,11 +17,15 @@
 package org.springframework.cache.disk;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
 
 import org.springframework.cache.disk.core.BaseDiskCache;
-import org.springframework.cache.disk.core.FileCallback;
 import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.support.RemovalCause;
 
 import android.annotation.TargetApi;
 import android.util.LruCache;
@@ -32,6 +36,15 @@ import android.util.LruCache;
  * of files which exist in a cache directory. Eviction of files is based
  * on least recently used access of cached files.
  * <p>
+ * Files evicted by the lru map are deleted after the lock of a key
+ * being written is released, and only if the file hasn't been put
+ * back to a cache meanwhile.
+ * <p>
+ * Listing a directory to build the lru map may take a while on a cold
+ * start, so cache can be opened with an executor. Reads are then served
+ * directly from files without updating an access order until cache is
+ * ready, other operations wait for it.
+ * <p>
  * This class has dependency to api level 12. If you need to target
  * application for lower api levels, use similar implementation 
  * {@link org.springframework.android.support.v4.cache.disk.FileCountLimitDiskCache}
@@ -48,30 +61,95 @@ public class FileCountLimitDiskCache<K, V> extends BaseDiskCache<K, V> {
     private EvictionLruCache mDiskElements;
     /** Simple object because we don't need values in lru map*/
     private static final Object NULL_HOLDER = new Object();
+    /** Files evicted from lru map waiting to be deleted */
+    private final ConcurrentLinkedQueue<String> mPendingRemovals = new ConcurrentLinkedQueue<String>();
     
     @TargetApi(12)
     public FileCountLimitDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, int limit) {
         super(name, dir, template);
         mDiskElements = new EvictionLruCache(limit);
-        initStats();
+        open();
+    }
+
+    /**
+     * Instantiates a new cache which builds its lru map using an executor.
+     * 
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param limit the max number of files in a cache
+     * @param openExecutor the executor opening a cache
+     * @see #getReadyFuture()
+     */
+    @TargetApi(12)
+    public FileCountLimitDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, int limit,
+            Executor openExecutor) {
+        super(name, dir, template);
+        mDiskElements = new EvictionLruCache(limit);
+        open(openExecutor);
     }
 
     @Override
     public ValueWrapper get(Object key) {
-        String cacheKey = getTemplate().getKeySerializer().serialize(key);
-        mDiskElements.get(cacheKey);
-        return super.get(key);
+        String name = getTemplate().getKeySerializer().serialize(key);
+        if (isReady()) {
+            mDiskElements.get(name);
+        }
+        Object object = getTemplate().readFile(name, getDirectory(), getStatsCounter());
+        return recordGet(object);
     }
     
     @SuppressWarnings("unchecked")
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<String, Object> names = serializeKeys(keys);
+        if (isReady()) {
+            for (String name : names.keySet()) {
+                mDiskElements.get(name);
+            }
+        }
+        return recordGetAll(names, getTemplate().readFiles(names.keySet(), getDirectory(), getStatsCounter()));
+    }
+
     @Override
     public void put(Object key, Object value) {
-        String newFileName = getTemplate().writeCheckNew(key, value, getDirectory());
-        if(newFileName != null) {
-            mDiskElements.put(newFileName, System.currentTimeMillis());
+        awaitReady();
+        writeFile(getTemplate().getKeySerializer().serialize(key), value);
+        getStatsCounter().recordPuts(1);
+        removePendingFiles();
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        awaitReady();
+        Map<String, Object> names = serializeKeys(entries.keySet());
+        for (Map.Entry<String, Object> entry : names.entrySet()) {
+            writeFile(entry.getKey(), entries.get(entry.getValue()));
+        }
+        getStatsCounter().recordPuts(names.size());
+        removePendingFiles();
+    }
+
+    @Override
+    public void evict(Object key) {
+        awaitReady();
+        removeEntry(getTemplate().getKeySerializer().serialize(key));
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        awaitReady();
+        for (String name : serializeKeys(keys).keySet()) {
+            removeEntry(name);
         }
     }
     
+    @Override
+    protected void doOpen() {
+        initStats();
+        removePendingFiles();
+    }
+
     protected void initStats() {
         String[] files = getTemplate().filesWithModifyOrder(getDirectory());
         for(String file : files) {
@@ -79,16 +157,54 @@ public class FileCountLimitDiskCache<K, V> extends BaseDiskCache<K, V> {
         }
     }
     
-    @SuppressWarnings("unchecked")
     protected void removeFile(String name) {
-        File file = new File(getDirectory(), name);
-        getTemplate().execute(new FileCallback<Object>() {
-            @Override
-            public Object doWithFile(File file) throws IOException {
-                file.delete();
-                return null;
+        getTemplate().deleteFile(name, getDirectory());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeFile(String name, Object value) {
+        Lock lock = getTemplate().getStripedLock().writeLock(name);
+        lock.lock();
+        try {
+            getTemplate().writeFile(name, value, getDirectory(), getStatsCounter());
+            mDiskElements.put(name, NULL_HOLDER);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeEntry(String name) {
+        Lock lock = getTemplate().getStripedLock().writeLock(name);
+        lock.lock();
+        try {
+            if (mDiskElements.remove(name) != null) {
+                getStatsCounter().recordRemoval(RemovalCause.EXPLICIT, 1);
+            }
+            removeFile(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes files evicted from the lru map unless
+     * a concurrent put has already added them back.
+     */
+    private void removePendingFiles() {
+        String name;
+        while ((name = mPendingRemovals.poll()) != null) {
+            Lock lock = getTemplate().getStripedLock().writeLock(name);
+            lock.lock();
+            try {
+                // lru map has no peek, get would promote
+                // an entry which was put back meanwhile
+                if (!mDiskElements.snapshot().containsKey(name)) {
+                    removeFile(name);
+                }
+            } finally {
+                lock.unlock();
             }
-        }, file);
+        }
     }
     
     @TargetApi(12)
@@ -100,9 +216,13 @@ public class FileCountLimitDiskCache<K, V> extends BaseDiskCache<K, V> {
 
         @Override
         protected void entryRemoved(boolean evicted, String key, Object oldValue, Object newValue) {
-            // lru cache notifies us that entry needs to be removed
-            // so fire operation to remove file 
-            removeFile(key);
+            // lru cache notifies us that entry needs to be removed,
+            // file is deleted later to not acquire a lock for
+            // this key while caller holds a lock for other key
+            if (evicted) {
+                getStatsCounter().recordRemoval(RemovalCause.SIZE, 1);
+                mPendingRemovals.add(key);
+            }
         }
         
     }
@@ -0,0 +1,960 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Lock;
+
+import org.springframework.cache.ExpirableCache;
+import org.springframework.cache.disk.core.BaseDiskCache;
+import org.springframework.cache.disk.core.DiskJournal;
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.eviction.EvictionPolicy;
+import org.springframework.cache.eviction.LruEvictionPolicy;
+import org.springframework.cache.support.RemovalCause;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.util.Assert;
+
+/**
+ * Cache implementation which limits a number of files in a cache
+ * directory and evicts least recently used files. Unlike
+ * {@link FileCountLimitDiskCache} this implementation keeps its state
+ * in an append-only {@link DiskJournal} which is replayed when cache
+ * is opened. This avoids listing and sorting the whole cache directory
+ * on a cold start. Journal is compacted in a background once it contains
+ * enough redundant records.
+ * <p>
+ * If journal doesn't exist, for example when a directory previously
+ * used by {@link FileCountLimitDiskCache} is opened, index is built
+ * once from a directory listing and a new journal is written.
+ * <p>
+ * Entry to evict is chosen by an {@link EvictionPolicy} which defaults
+ * to {@link LruEvictionPolicy}. Subclasses may change how entries are
+ * weighed against the limit by overriding {@link #weigh(String, long)}.
+ * <p>
+ * Index is guarded by a monitor of this cache which is held during
+ * file I/O only when {@link #clear()} re-creates the journal. Journal
+ * records are queued under the monitor and written to the journal file
+ * after it's released. Files are written,
+ * read and deleted under a per-name lock of the template, so operations
+ * on different keys run in parallel.
+ * <p>
+ * Caches may share a byte budget through a {@link DiskQuota} in which
+ * case an entry may be evicted to make room for entries of other caches.
+ * <p>
+ * Entries may expire after a time-to-live, which is stored in a journal
+ * and survives a restart, or after an idle timeout, which is tracked in
+ * memory only and restarts when cache is opened. Expired entries are
+ * removed when they are looked up or by {@link #purgeExpired(int)}.
+ * <p>
+ * Cache opened with an executor replays its journal in a background.
+ * Until then reads go directly to files, so a miss costs a file lookup
+ * and access order isn't tracked, while writes, evictions and size
+ * queries wait for the index. Expiry times are only known from a journal
+ * so once an entry has been written with a time-to-live, reads wait for
+ * the index too rather than serve an expired entry.
+ * <p>
+ * Bulk operations check and update the index under a single acquisition
+ * of the monitor, misses of a batch never touch a disk and files are
+ * read and written in name order.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys used in this cache
+ * @param <V> the type of values used in this cache
+ */
+public class JournaledDiskCache<K, V> extends BaseDiskCache<K, V> implements ExpirableCache {
+
+    /** Index of files and their sizes ordered from least recently used */
+    private LinkedHashMap<String, Long> mIndex;
+    /** Expiry times of entries which have a time-to-live */
+    private final HashMap<String, Long> mExpiries = new HashMap<String, Long>();
+    /** Last access times of entries */
+    private final HashMap<String, Long> mAccessTimes = new HashMap<String, Long>();
+    /** Journal backing the index */
+    private final DiskJournal mJournal;
+    /** Policy choosing files to evict */
+    private final EvictionPolicy<String> mPolicy;
+    /** Executor used for journal compaction */
+    private final Executor mCompactionExecutor;
+    /** Max weight of a cache */
+    private final long mLimit;
+    /** Current weight of a cache */
+    private long mWeight;
+    /** Current size of files in bytes */
+    private long mBytes;
+    /** Quota shared with other caches, null if not used */
+    private volatile DiskQuota mQuota;
+    /** Flag telling if compaction is running */
+    private boolean mCompacting;
+    private volatile long mTimeToLive;
+    private volatile long mTimeToIdle;
+    /** Flag telling if any entry may have an expiry time */
+    private volatile boolean mMayExpire;
+
+    /**
+     * Instantiates a new journaled disk cache. Journal compaction is
+     * done using a {@link SimpleAsyncTaskExecutor}.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param limit the max number of files in a cache
+     */
+    public JournaledDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, int limit) {
+        this(name, dir, template, limit, createDefaultExecutor(name));
+    }
+
+    /**
+     * Instantiates a new journaled disk cache.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param limit the max number of files in a cache
+     * @param compactionExecutor the executor used for journal compaction
+     */
+    public JournaledDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, int limit,
+            Executor compactionExecutor) {
+        this(name, dir, template, limit, new LruEvictionPolicy<String>(), compactionExecutor);
+    }
+
+    /**
+     * Instantiates a new journaled disk cache.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param limit the max weight of a cache
+     * @param policy the eviction policy
+     * @param compactionExecutor the executor used for journal compaction
+     */
+    protected JournaledDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template,
+            long limit, EvictionPolicy<String> policy, Executor compactionExecutor) {
+        this(name, dir, template, limit, policy, compactionExecutor, null);
+    }
+
+    /**
+     * Instantiates a new journaled disk cache which is opened
+     * using an executor.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param limit the max number of files in a cache
+     * @param compactionExecutor the executor used for journal compaction
+     * @param openExecutor the executor opening a cache
+     * @see #getReadyFuture()
+     */
+    public JournaledDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, int limit,
+            Executor compactionExecutor, Executor openExecutor) {
+        this(name, dir, template, limit, new LruEvictionPolicy<String>(), compactionExecutor, openExecutor);
+    }
+
+    /**
+     * Instantiates a new journaled disk cache.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param limit the max weight of a cache
+     * @param policy the eviction policy
+     * @param compactionExecutor the executor used for journal compaction
+     * @param openExecutor the executor opening a cache, null to open synchronously
+     */
+    protected JournaledDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template,
+            long limit, EvictionPolicy<String> policy, Executor compactionExecutor, Executor openExecutor) {
+        super(name, dir, template);
+        Assert.notNull(policy, "Eviction policy must not be null");
+        Assert.notNull(compactionExecutor, "Compaction executor must not be null");
+        mLimit = limit;
+        mPolicy = policy;
+        mCompactionExecutor = compactionExecutor;
+        mJournal = new DiskJournal(dir);
+        mMayExpire = mJournal.hasExpiries();
+        if (openExecutor != null) {
+            open(openExecutor);
+        } else {
+            open();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public ValueWrapper get(Object key) {
+        if (!isReady()) {
+            if (!mMayExpire) {
+                return super.get(key);
+            }
+            awaitReady();
+        }
+        String name = getTemplate().getKeySerializer().serialize(key);
+        long now = System.currentTimeMillis();
+        boolean expired;
+        synchronized (this) {
+            // index knows all files, no need to go to disk
+            // for a cache miss
+            if (mIndex.get(name) == null) {
+                getStatsCounter().recordMisses(1);
+                mPolicy.recordMiss(name);
+                return null;
+            }
+            expired = isExpired(name, now);
+            if (expired) {
+                getStatsCounter().recordMisses(1);
+                expire(name);
+            } else {
+                mPolicy.recordAccess(name);
+                mAccessTimes.put(name, now);
+                mJournal.appendGet(name);
+            }
+        }
+        writeJournal();
+        if (expired) {
+            removeFiles(Collections.singletonList(name));
+            return null;
+        }
+        Object object = getTemplate().readFile(name, getDirectory(), getStatsCounter());
+        if (object == null) {
+            // file disappeared behind our back, either evicted
+            // concurrently or removed from outside of this cache
+            getStatsCounter().recordMisses(1);
+            synchronized (this) {
+                if (!new File(getDirectory(), name).exists() && removeEntry(name) != null) {
+                    mPolicy.recordRemoval(name);
+                    mJournal.appendEvict(name);
+                }
+            }
+            writeJournal();
+            return null;
+        }
+        getStatsCounter().recordHits(1);
+        return new SimpleValueWrapper(object);
+    }
+
+    @Override
+    protected ValueWrapper peek(Object key) {
+        if (!isReady()) {
+            if (!mMayExpire) {
+                return super.peek(key);
+            }
+            awaitReady();
+        }
+        String name = getTemplate().getKeySerializer().serialize(key);
+        synchronized (this) {
+            // expired entries are left for get to remove
+            if (!mIndex.containsKey(name) || isExpired(name, System.currentTimeMillis())) {
+                return null;
+            }
+        }
+        return super.peek(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        if (!isReady()) {
+            if (!mMayExpire) {
+                return super.getAll(keys);
+            }
+            awaitReady();
+        }
+        Map<String, Object> names = serializeKeys(keys);
+        List<String> present = new ArrayList<String>();
+        List<String> expired = new ArrayList<String>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (String name : names.keySet()) {
+                if (mIndex.get(name) == null) {
+                    mPolicy.recordMiss(name);
+                } else if (isExpired(name, now)) {
+                    expire(name);
+                    expired.add(name);
+                } else {
+                    mPolicy.recordAccess(name);
+                    mAccessTimes.put(name, now);
+                    mJournal.appendGet(name);
+                    present.add(name);
+                }
+            }
+        }
+        writeJournal();
+        removeFiles(expired);
+        Map<String, Object> found = getTemplate().readFiles(present, getDirectory(), getStatsCounter());
+        if (found.size() < present.size()) {
+            synchronized (this) {
+                for (String name : present) {
+                    if (!found.containsKey(name) && !new File(getDirectory(), name).exists()
+                            && removeEntry(name) != null) {
+                        mPolicy.recordRemoval(name);
+                        mJournal.appendEvict(name);
+                    }
+                }
+            }
+            writeJournal();
+        }
+        return recordGetAll(names, found);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        doPut(key, value, mTimeToLive);
+    }
+
+    @Override
+    public void put(Object key, Object value, long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "Time-to-live must be positive");
+        doPut(key, value, timeToLive);
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        awaitReady();
+        Map<String, Object> names = serializeKeys(entries.keySet());
+        for (Map.Entry<String, Object> entry : names.entrySet()) {
+            writeEntry(entry.getKey(), entries.get(entry.getValue()), mTimeToLive);
+        }
+        getStatsCounter().recordPuts(names.size());
+        afterWrite();
+    }
+
+    private void doPut(Object key, Object value, long timeToLive) {
+        awaitReady();
+        writeEntry(getTemplate().getKeySerializer().serialize(key), value, timeToLive);
+        getStatsCounter().recordPuts(1);
+        afterWrite();
+    }
+
+    /**
+     * Evicts entries over the limit of this cache and of a shared
+     * quota and compacts the journal if needed after a write.
+     */
+    private void afterWrite() {
+        List<String> victims;
+        synchronized (this) {
+            victims = trimToLimit(true);
+        }
+        writeJournal();
+        removeFiles(victims);
+        DiskQuota quota = mQuota;
+        if (quota != null) {
+            quota.enforce();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Writes a file and adds it to the index.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeEntry(String name, Object value, long timeToLive) {
+        if (timeToLive > 0 && !mMayExpire) {
+            markExpiries();
+        }
+        // file and its index entry are updated while holding
+        // the lock for the name so that a concurrent eviction
+        // can't remove a file we just wrote
+        Lock lock = getTemplate().getStripedLock().writeLock(name);
+        lock.lock();
+        try {
+            getTemplate().writeFile(name, value, getDirectory(), getStatsCounter());
+            long size = new File(getDirectory(), name).length();
+            long now = System.currentTimeMillis();
+            long expiresAt = timeToLive > 0 ? now + timeToLive : 0;
+            synchronized (this) {
+                Long previous = mIndex.put(name, size);
+                if (expiresAt > 0) {
+                    mExpiries.put(name, expiresAt);
+                } else {
+                    mExpiries.remove(name);
+                }
+                mAccessTimes.put(name, now);
+                if (previous != null) {
+                    mWeight -= weigh(name, previous);
+                    mBytes -= previous;
+                    mPolicy.recordAccess(name);
+                } else {
+                    mPolicy.recordInsert(name);
+                }
+                mWeight += weigh(name, size);
+                mBytes += size;
+                mJournal.appendPut(name, size, expiresAt, previous != null);
+            }
+        } finally {
+            lock.unlock();
+        }
+        writeJournal();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void evict(Object key) {
+        awaitReady();
+        String name = getTemplate().getKeySerializer().serialize(key);
+        Lock lock = getTemplate().getStripedLock().writeLock(name);
+        lock.lock();
+        try {
+            synchronized (this) {
+                Long size = removeEntry(name);
+                if (size != null) {
+                    mPolicy.recordRemoval(name);
+                    mJournal.appendEvict(name);
+                    getStatsCounter().recordRemoval(RemovalCause.EXPLICIT, 1);
+                }
+            }
+            removeFile(name);
+        } finally {
+            lock.unlock();
+        }
+        writeJournal();
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        awaitReady();
+        List<String> removed = new ArrayList<String>();
+        synchronized (this) {
+            for (String name : serializeKeys(keys).keySet()) {
+                Long size = removeEntry(name);
+                if (size != null) {
+                    mPolicy.recordRemoval(name);
+                    mJournal.appendEvict(name);
+                    getStatsCounter().recordRemoval(RemovalCause.EXPLICIT, 1);
+                    removed.add(name);
+                }
+            }
+        }
+        writeJournal();
+        removeFiles(removed);
+    }
+
+    /**
+     * Clears the cache. Index and journal are reset immediately while
+     * files are deleted in a background using the compaction executor.
+     */
+    @Override
+    public void clear() {
+        awaitReady();
+        final List<String> names;
+        synchronized (this) {
+            names = new ArrayList<String>(mIndex.keySet());
+            mIndex.clear();
+            mExpiries.clear();
+            mAccessTimes.clear();
+            mPolicy.clear();
+            mWeight = 0;
+            mBytes = 0;
+            createJournal();
+        }
+        final long started = System.currentTimeMillis();
+        mCompactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                removeFiles(names);
+                // files which were never in the index
+                removeOrphans(Collections.<String>emptySet(), started);
+            }
+        });
+    }
+
+    @Override
+    public int purgeExpired(int maxEntries) {
+        awaitReady();
+        List<String> expired = new ArrayList<String>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            // without idle timeout only entries having
+            // a time-to-live can expire
+            Set<String> candidates = mTimeToIdle > 0 ? mAccessTimes.keySet() : mExpiries.keySet();
+            for (String name : candidates) {
+                if (expired.size() >= maxEntries) {
+                    break;
+                }
+                if (isExpired(name, now)) {
+                    expired.add(name);
+                }
+            }
+            for (String name : expired) {
+                expire(name);
+            }
+        }
+        writeJournal();
+        removeFiles(expired);
+        compactIfNeeded();
+        return expired.size();
+    }
+
+    /**
+     * Sets the default time-to-live of entries. Zero
+     * or negative value means that entries never expire.
+     *
+     * @param timeToLive the time-to-live in milliseconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        mTimeToLive = timeToLive;
+    }
+
+    /**
+     * Gets the default time-to-live of entries.
+     *
+     * @return the time-to-live in milliseconds
+     */
+    public long getTimeToLive() {
+        return mTimeToLive;
+    }
+
+    /**
+     * Sets the time after which an entry which hasn't been read
+     * expires. Zero or negative value disables idle timeout.
+     *
+     * @param timeToIdle the idle timeout in milliseconds
+     */
+    public void setTimeToIdle(long timeToIdle) {
+        mTimeToIdle = timeToIdle;
+    }
+
+    /**
+     * Gets the idle timeout of entries.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public long getTimeToIdle() {
+        return mTimeToIdle;
+    }
+
+    /**
+     * Gets the number of files tracked by this cache.
+     *
+     * @return the number of files in a cache
+     */
+    public int size() {
+        awaitReady();
+        synchronized (this) {
+            return mIndex.size();
+        }
+    }
+
+    /**
+     * Gets the current weight of this cache.
+     *
+     * @return the current weight
+     * @see #weigh(String, long)
+     */
+    public long getWeight() {
+        awaitReady();
+        synchronized (this) {
+            return mWeight;
+        }
+    }
+
+    /**
+     * Gets the size of files tracked by this cache.
+     *
+     * @return the size in bytes
+     */
+    public long getBytes() {
+        awaitReady();
+        synchronized (this) {
+            return mBytes;
+        }
+    }
+
+    /**
+     * Gets the size of files tracked by this cache
+     * without listing a cache directory.
+     */
+    @Override
+    public long getByteSize() {
+        return getBytes();
+    }
+
+    /**
+     * Sets the quota this cache shares with other caches. Cache
+     * registers itself to the quota and quota is enforced immediately.
+     *
+     * @param quota the disk quota
+     */
+    public void setQuota(DiskQuota quota) {
+        Assert.notNull(quota, "Quota must not be null");
+        mQuota = quota;
+        quota.register(this);
+        quota.enforce();
+    }
+
+    /**
+     * Gets the max weight of this cache.
+     *
+     * @return the max weight
+     * @see #weigh(String, long)
+     */
+    public long getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * Flushes buffered journal records to disk.
+     */
+    public void flush() {
+        awaitReady();
+        try {
+            mJournal.flush();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to flush journal", e);
+        }
+    }
+
+    /**
+     * Sets the count of redundant journal records needed before
+     * journal is compacted.
+     *
+     * @param threshold the compaction threshold
+     */
+    public void setCompactionThreshold(int threshold) {
+        mJournal.setCompactionThreshold(threshold);
+    }
+
+    /**
+     * Gets the {@link DiskJournal} used by this cache.
+     *
+     * @return the disk journal
+     */
+    protected DiskJournal getJournal() {
+        return mJournal;
+    }
+
+    /**
+     * Weighs a file against the limit of this cache. Default
+     * implementation counts every file as one.
+     *
+     * @param name the file name
+     * @param size the file size in bytes
+     * @return the weight of a file
+     */
+    protected long weigh(String name, long size) {
+        return 1;
+    }
+
+    @Override
+    protected void doOpen() {
+        openIndex();
+    }
+
+    /**
+     * Restores the index from a journal or falls back
+     * to a directory listing if journal can't be used.
+     */
+    protected void openIndex() {
+        if (mJournal.exists()) {
+            try {
+                mExpiries.clear();
+                mIndex = mJournal.replay(mExpiries);
+                initPolicy();
+                List<String> victims = trimToLimit(true);
+                writeJournal();
+                for (String name : victims) {
+                    removeFile(name);
+                }
+                return;
+            } catch (IOException e) {
+                // fall through and rebuild from directory
+            }
+        }
+        @SuppressWarnings("unchecked")
+        String[] files = getTemplate().filesWithModifyOrder(getDirectory());
+        mIndex = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        mExpiries.clear();
+        for (String file : files) {
+            if (!DiskJournal.isJournalFile(file) && !FileTemplate.isTempFile(file)) {
+                mIndex.put(file, new File(getDirectory(), file).length());
+            }
+        }
+        initPolicy();
+        for (String name : trimToLimit(false)) {
+            removeFile(name);
+        }
+        createJournal();
+    }
+
+    /**
+     * Removes a file from a cache directory.
+     *
+     * @param name the file name
+     */
+    protected void removeFile(String name) {
+        getTemplate().deleteFile(name, getDirectory());
+    }
+
+    private void initPolicy() {
+        mPolicy.clear();
+        mAccessTimes.clear();
+        mWeight = 0;
+        mBytes = 0;
+        long now = System.currentTimeMillis();
+        for (Entry<String, Long> entry : mIndex.entrySet()) {
+            mPolicy.recordInsert(entry.getKey());
+            mAccessTimes.put(entry.getKey(), now);
+            mWeight += weigh(entry.getKey(), entry.getValue());
+            mBytes += entry.getValue();
+        }
+    }
+
+    private boolean isExpired(String name, long now) {
+        Long expiresAt = mExpiries.get(name);
+        if (expiresAt != null && now >= expiresAt) {
+            return true;
+        }
+        long timeToIdle = mTimeToIdle;
+        if (timeToIdle > 0) {
+            Long accessedAt = mAccessTimes.get(name);
+            return accessedAt != null && now - accessedAt >= timeToIdle;
+        }
+        return false;
+    }
+
+    /**
+     * Removes an expired entry from the index. File is
+     * deleted by a caller after the monitor is released.
+     */
+    private void expire(String name) {
+        Long size = removeEntry(name);
+        if (size != null) {
+            mPolicy.recordRemoval(name);
+            getStatsCounter().recordRemoval(RemovalCause.EXPIRED, weigh(name, size));
+            mJournal.appendEvict(name);
+        }
+    }
+
+    /**
+     * Removes an entry and its expiry information from the index
+     * and updates the weight of this cache.
+     *
+     * @return the size of a removed entry, null if entry didn't exist
+     */
+    private Long removeEntry(String name) {
+        Long size = mIndex.remove(name);
+        mExpiries.remove(name);
+        mAccessTimes.remove(name);
+        if (size != null) {
+            mWeight -= weigh(name, size);
+            mBytes -= size;
+        }
+        return size;
+    }
+
+    /**
+     * Removes entries from the index until cache is within its limit.
+     * Files of removed entries are returned to be deleted by a caller
+     * after the monitor of this cache is released.
+     */
+    private List<String> trimToLimit(boolean journal) {
+        List<String> victims = new ArrayList<String>();
+        while (mWeight > mLimit) {
+            String name = evictVictim(journal);
+            if (name == null) {
+                break;
+            }
+            victims.add(name);
+        }
+        return victims;
+    }
+
+    /**
+     * Removes one entry chosen by the eviction policy from the index
+     * to free space for a shared quota. File of the entry is left to
+     * {@link #removeQuotaFiles(List)}.
+     *
+     * @return the name of a removed entry, null if cache is empty
+     */
+    String selectQuotaVictim() {
+        synchronized (this) {
+            return evictVictim(true);
+        }
+    }
+
+    /**
+     * Deletes files of entries removed by {@link #selectQuotaVictim()}.
+     *
+     * @param names the names of removed entries
+     */
+    void removeQuotaFiles(List<String> names) {
+        writeJournal();
+        removeFiles(names);
+    }
+
+    /**
+     * Waits until this cache is opened before {@link DiskQuota}
+     * takes its lock to choose victims.
+     */
+    void awaitQuotaReady() {
+        awaitReady();
+    }
+
+    /**
+     * Removes an entry chosen by the eviction policy from the index.
+     *
+     * @return the name of a removed entry, null if there's nothing to evict
+     */
+    private String evictVictim(boolean journal) {
+        while (!mIndex.isEmpty()) {
+            String name = mPolicy.selectVictim();
+            if (name == null) {
+                return null;
+            }
+            mPolicy.recordRemoval(name);
+            Long size = removeEntry(name);
+            if (size == null) {
+                continue;
+            }
+            getStatsCounter().recordRemoval(RemovalCause.SIZE, weigh(name, size));
+            if (journal) {
+                mJournal.appendEvict(name);
+            }
+            return name;
+        }
+        return null;
+    }
+
+    /**
+     * Deletes files of evicted entries unless a concurrent
+     * put has already added them back to the index.
+     */
+    private void removeFiles(List<String> names) {
+        for (String name : names) {
+            Lock lock = getTemplate().getStripedLock().writeLock(name);
+            lock.lock();
+            try {
+                synchronized (this) {
+                    if (mIndex.containsKey(name)) {
+                        continue;
+                    }
+                }
+                removeFile(name);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void compactIfNeeded() {
+        final Map<String, Long> snapshot;
+        final Map<String, Long> expiries;
+        synchronized (this) {
+            if (mCompacting || !mJournal.isCompactionNeeded(mIndex.size())) {
+                return;
+            }
+            mCompacting = true;
+            // snapshot needs to be taken atomically with
+            // compaction start to not lose any records
+            snapshot = new LinkedHashMap<String, Long>(mIndex);
+            expiries = new HashMap<String, Long>(mExpiries);
+            mJournal.beginCompaction();
+        }
+        final long started = System.currentTimeMillis();
+        mCompactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mJournal.compact(snapshot, expiries);
+                    removeOrphans(snapshot.keySet(), started);
+                } catch (IOException e) {
+                    // journal stays as is and compaction
+                    // is tried again later
+                } finally {
+                    synchronized (JournaledDiskCache.this) {
+                        mCompacting = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes files which are not known to the index. These may
+     * be left behind if process dies between writing a file and
+     * appending a journal record. Only files older than compaction
+     * start are considered to not race with concurrent writes.
+     */
+    private void removeOrphans(Set<String> known, long olderThan) {
+        File[] files = getDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+        List<String> orphans = new ArrayList<String>();
+        for (File file : files) {
+            String name = file.getName();
+            if (!known.contains(name) && !DiskJournal.isJournalFile(name) && !FileTemplate.isTempFile(name)
+                    && file.lastModified() < olderThan) {
+                orphans.add(name);
+            }
+        }
+        removeFiles(orphans);
+    }
+
+    private void markExpiries() {
+        try {
+            mJournal.markExpiries();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to mark journal expiries", e);
+        }
+        mMayExpire = true;
+    }
+
+    /**
+     * Writes journal records queued under the monitor of this cache.
+     */
+    private void writeJournal() {
+        try {
+            mJournal.write();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to append journal", e);
+        }
+    }
+
+    private void createJournal() {
+        try {
+            mJournal.create(mIndex, mExpiries);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to create journal", e);
+        }
+    }
+
+    /**
+     * Creates a default executor used for journal compaction.
+     *
+     * @param name the cache name
+     * @return the executor
+     */
+    protected static Executor createDefaultExecutor(String name) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(name + "-compaction-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+}
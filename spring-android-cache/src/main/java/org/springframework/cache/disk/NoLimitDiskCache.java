@@ -36,6 +36,7 @@ public class NoLimitDiskCache<K, V> extends BaseDiskCache<K, V> {
 
     public NoLimitDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template) {
         super(name, dir, template);
+        open();
     }
 
 }
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.cache.disk.core.BaseDiskCache;
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.disk.core.SegmentStore;
+import org.springframework.cache.support.RemovalCause;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.util.Assert;
+
+/**
+ * Cache implementation which packs entries into a few rolling segment
+ * files using a {@link SegmentStore} instead of writing one file per
+ * key. This is better suited for a large number of small entries, like
+ * JSON responses, where file per entry puts pressure on a file system
+ * and makes directory listings slow.
+ * <p>
+ * Keys and values are serialized using serializers of a given
+ * {@link FileTemplate}. Dead space left by replaced and evicted entries
+ * is reclaimed by a background compaction. If a size limit is given,
+ * oldest segments are dropped once it is exceeded. Entries read since
+ * they were written are carried forward to an active segment, others
+ * are dropped with a segment and counted as size evictions in stats.
+ * <p>
+ * Bulk reads go through the store in the order records are laid out
+ * in segments, bulk writes and evictions append a whole batch under
+ * a single acquisition of the store lock.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys used in this cache
+ * @param <V> the type of values used in this cache
+ */
+public class SegmentDiskCache<K, V> extends BaseDiskCache<K, V> {
+
+    private final SegmentStore mStore;
+    private final Executor mCompactionExecutor;
+    private final AtomicBoolean mCompacting = new AtomicBoolean();
+
+    /**
+     * Instantiates a new segment disk cache without a size limit.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     */
+    public SegmentDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template) {
+        this(name, dir, template, SegmentStore.DEFAULT_SEGMENT_SIZE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Instantiates a new segment disk cache.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param segmentSize the max size of a segment file
+     * @param maxBytes the max total size of segment files
+     */
+    public SegmentDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template,
+            long segmentSize, long maxBytes) {
+        this(name, dir, template, segmentSize, maxBytes, createDefaultExecutor(name));
+    }
+
+    /**
+     * Instantiates a new segment disk cache.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param segmentSize the max size of a segment file
+     * @param maxBytes the max total size of segment files
+     * @param compactionExecutor the executor used for compaction
+     */
+    public SegmentDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template,
+            long segmentSize, long maxBytes, Executor compactionExecutor) {
+        super(name, dir, template);
+        Assert.notNull(compactionExecutor, "Compaction executor must not be null");
+        mCompactionExecutor = compactionExecutor;
+        mStore = new SegmentStore(dir, segmentSize, maxBytes);
+        mStore.setDropListener(new SegmentStore.DropListener() {
+            @Override
+            public void onDrop(String name, int recordLength) {
+                getStatsCounter().recordRemoval(RemovalCause.SIZE, recordLength);
+            }
+        });
+        try {
+            mStore.open();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to open segment store", e);
+        }
+        open();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return mStore;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public ValueWrapper get(Object key) {
+        String name = getTemplate().getKeySerializer().serialize(key);
+        byte[] bytes;
+        try {
+            bytes = mStore.get(name);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to read segment", e);
+        }
+        return recordGet(bytes == null ? null : deserialize(bytes));
+    }
+
+    @Override
+    protected ValueWrapper peek(Object key) {
+        String name = getTemplate().getKeySerializer().serialize(key);
+        byte[] bytes;
+        try {
+            bytes = mStore.get(name);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to read segment", e);
+        }
+        return bytes == null ? null : new SimpleValueWrapper(deserialize(bytes));
+    }
+
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<String, Object> names = serializeKeys(keys);
+        Map<String, byte[]> bytes;
+        try {
+            bytes = mStore.getAll(names.keySet());
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to read segment", e);
+        }
+        Map<String, Object> found = new HashMap<String, Object>();
+        for (Map.Entry<String, byte[]> entry : bytes.entrySet()) {
+            found.put(entry.getKey(), deserialize(entry.getValue()));
+        }
+        return recordGetAll(names, found);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void put(Object key, Object value) {
+        String name = getTemplate().getKeySerializer().serialize(key);
+        byte[] bytes = serialize(value);
+        try {
+            mStore.put(name, bytes);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to write segment", e);
+        }
+        getStatsCounter().recordPuts(1);
+        compactIfNeeded();
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        Map<String, byte[]> values = new HashMap<String, byte[]>();
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            values.put(getTemplate().getKeySerializer().serialize(entry.getKey()), serialize(entry.getValue()));
+        }
+        try {
+            mStore.putAll(values);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to write segment", e);
+        }
+        getStatsCounter().recordPuts(values.size());
+        compactIfNeeded();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void evict(Object key) {
+        String name = getTemplate().getKeySerializer().serialize(key);
+        try {
+            if (mStore.remove(name)) {
+                getStatsCounter().recordRemoval(RemovalCause.EXPLICIT, 1);
+            }
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to write segment", e);
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        int removed;
+        try {
+            removed = mStore.removeAll(serializeKeys(keys).keySet());
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to write segment", e);
+        }
+        for (int i = 0; i < removed; i++) {
+            getStatsCounter().recordRemoval(RemovalCause.EXPLICIT, 1);
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void clear() {
+        try {
+            mStore.clear();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to clear segments", e);
+        }
+    }
+
+    /**
+     * Gets the total size of segment files including dead space.
+     */
+    @Override
+    public long getByteSize() {
+        return mStore.getTotalBytes();
+    }
+
+    /**
+     * Gets the number of entries in this cache.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return mStore.size();
+    }
+
+    /**
+     * Forces written entries to disk.
+     */
+    public void flush() {
+        try {
+            mStore.sync();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to sync segment", e);
+        }
+    }
+
+    /**
+     * Closes segment files of this cache.
+     */
+    public void close() {
+        try {
+            mStore.close();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Unable to close segment store", e);
+        }
+    }
+
+    /**
+     * Sets the ratio of dead space in a segment after
+     * which it is compacted. Defaults to 0.5.
+     *
+     * @param ratio the compaction ratio
+     */
+    public void setCompactionRatio(float ratio) {
+        mStore.setCompactionRatio(ratio);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(Object value) {
+        long start = System.nanoTime();
+        byte[] bytes = getTemplate().getValueSerializer().serialize(value);
+        getStatsCounter().recordSerialize(System.nanoTime() - start);
+        return bytes;
+    }
+
+    private Object deserialize(byte[] bytes) {
+        long start = System.nanoTime();
+        Object value = getTemplate().getValueSerializer().deserialize(bytes);
+        getStatsCounter().recordDeserialize(System.nanoTime() - start);
+        return value;
+    }
+
+    private void compactIfNeeded() {
+        if (!mStore.isCompactionNeeded() || !mCompacting.compareAndSet(false, true)) {
+            return;
+        }
+        mCompactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mStore.compact();
+                } catch (IOException e) {
+                    // segments stay as is and compaction
+                    // is tried again later
+                } finally {
+                    mCompacting.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a default executor used for compaction.
+     *
+     * @param name the cache name
+     * @return the executor
+     */
+    protected static Executor createDefaultExecutor(String name) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(name + "-compaction-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+}
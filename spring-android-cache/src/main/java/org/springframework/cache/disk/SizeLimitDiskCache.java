@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+import java.util.concurrent.Executor;
+
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.eviction.EvictionPolicy;
+import org.springframework.cache.eviction.LfuEvictionPolicy;
+import org.springframework.cache.eviction.LruEvictionPolicy;
+import org.springframework.cache.eviction.TinyLfuEvictionPolicy;
+
+/**
+ * Cache implementation which limits a total size in bytes of files
+ * in a cache directory. Every file is weighed by its size, so a small
+ * thumbnail and a full resolution image are not counted the same
+ * like in {@link FileCountLimitDiskCache}.
+ * <p>
+ * Files are evicted using a pluggable {@link EvictionPolicy}, like
+ * {@link LruEvictionPolicy}, {@link LfuEvictionPolicy} or
+ * {@link TinyLfuEvictionPolicy} which protects frequently used entries
+ * from being flushed by entries accessed only once. Hit ratio and
+ * evicted bytes are available from {@link #getStats()}.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys used in this cache
+ * @param <V> the type of values used in this cache
+ */
+public class SizeLimitDiskCache<K, V> extends JournaledDiskCache<K, V> {
+
+    /**
+     * Instantiates a new size limit disk cache using
+     * a {@link LruEvictionPolicy}.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param maxBytes the max size of a cache in bytes
+     */
+    public SizeLimitDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, long maxBytes) {
+        this(name, dir, template, maxBytes, new LruEvictionPolicy<String>());
+    }
+
+    /**
+     * Instantiates a new size limit disk cache.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param maxBytes the max size of a cache in bytes
+     * @param policy the eviction policy
+     */
+    public SizeLimitDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, long maxBytes,
+            EvictionPolicy<String> policy) {
+        this(name, dir, template, maxBytes, policy, createDefaultExecutor(name));
+    }
+
+    /**
+     * Instantiates a new size limit disk cache.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param maxBytes the max size of a cache in bytes
+     * @param policy the eviction policy
+     * @param compactionExecutor the executor used for journal compaction
+     */
+    public SizeLimitDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, long maxBytes,
+            EvictionPolicy<String> policy, Executor compactionExecutor) {
+        super(name, dir, template, maxBytes, policy, compactionExecutor);
+    }
+
+    /**
+     * Instantiates a new size limit disk cache which is opened
+     * using an executor.
+     *
+     * @param name the cache name
+     * @param dir the cache directory
+     * @param template the file template
+     * @param maxBytes the max size of a cache in bytes
+     * @param policy the eviction policy
+     * @param compactionExecutor the executor used for journal compaction
+     * @param openExecutor the executor opening a cache
+     * @see #getReadyFuture()
+     */
+    public SizeLimitDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template, long maxBytes,
+            EvictionPolicy<String> policy, Executor compactionExecutor, Executor openExecutor) {
+        super(name, dir, template, maxBytes, policy, compactionExecutor, openExecutor);
+    }
+
+    /**
+     * Weighs a file by its size in bytes.
+     */
+    @Override
+    protected long weigh(String name, long size) {
+        return size;
+    }
+
+}
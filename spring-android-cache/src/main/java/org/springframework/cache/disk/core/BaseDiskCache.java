@@ -17,13 +17,51 @@
 package org.springframework.cache.disk.core;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
-import org.springframework.cache.Cache;
+import org.springframework.cache.BulkCache;
+import org.springframework.cache.InstrumentedCache;
+import org.springframework.cache.LoadingCache;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.ConcurrentStatsCounter;
+import org.springframework.cache.support.RemovalCause;
 import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.cache.support.SingleFlight;
+import org.springframework.cache.support.StatsCounter;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.util.Assert;
 
 /**
  * Base cache implementation which knows the directory it works
  * against and {@link FileTemplate} used for file operations.
+ * Temporary files left behind by interrupted atomic writes are
+ * removed when cache is opened if they are older than
+ * {@link FileTemplate#STALE_TEMP_FILE_AGE}, so a cache opened with an
+ * executor doesn't list its directory on a calling thread. File operations on different keys
+ * can run in parallel, operations on a same key are serialized by
+ * the {@link StripedLock} of the template.
+ * <p>
+ * Operations are recorded to a {@link StatsCounter} together with
+ * time spent serializing values. Byte size of a cache is computed
+ * from files in a directory when stats are requested, subclasses
+ * tracking it on the fly override {@link #getByteSize()}.
+ * <p>
+ * Bulk operations handle a batch in file name order so that
+ * directory lookups of neighbouring files are grouped together.
+ * <p>
+ * Subclasses building an index of a directory do it in
+ * {@link #doOpen()} which {@link #open()} runs inline and
+ * {@link #open(Executor)} in a background. Until {@link #getReadyFuture()} completes
+ * subclasses serve reads directly from files and block other
+ * operations in {@link #awaitReady()}.
  * 
  * @author Janne Valkealahti
  *
@@ -31,7 +69,7 @@ import org.springframework.cache.support.SimpleValueWrapper;
  * @param <V> the type of values used in this cache
  */
 @SuppressWarnings("unchecked")
-public abstract class BaseDiskCache<K, V> implements Cache {
+public abstract class BaseDiskCache<K, V> implements LoadingCache, InstrumentedCache, BulkCache {
     
     /** Name of this cache */
     private String mName;
@@ -40,11 +78,23 @@ public abstract class BaseDiskCache<K, V> implements Cache {
     /** Template used by this cache */
     @SuppressWarnings("rawtypes")
     private final FileTemplate mTemplate;
+    /** Loads in flight */
+    private final SingleFlight mLoads = new SingleFlight(new SingleFlight.Lookup() {
+        @Override
+        public ValueWrapper lookup(Object key) {
+            return peek(key);
+        }
+    });
+    /** Recorder of cache operations */
+    private volatile StatsCounter mStatsCounter;
+    /** Opening of a cache, null if there's nothing to open */
+    private volatile FutureTask<Void> mOpening;
 
     public BaseDiskCache(String name, File dir, FileTemplate<? extends Object, ? extends Object> template) {
         mName = name;
         mDir = dir;
         mTemplate = template;
+        setStatsCounter(new ConcurrentStatsCounter());
         dir.mkdirs();
     }
     
@@ -60,30 +110,264 @@ public abstract class BaseDiskCache<K, V> implements Cache {
 
     @Override
     public ValueWrapper get(Object key) {        
-        Object object = mTemplate.read(key, mDir);
-        return object == null ? null : new SimpleValueWrapper(object);
+        Object object = mTemplate.readFile(mTemplate.getKeySerializer().serialize(key), mDir, mStatsCounter);
+        return recordGet(object);
     }
     
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<String, Object> names = serializeKeys(keys);
+        Map<String, Object> found = mTemplate.readFiles(names.keySet(), mDir, mStatsCounter);
+        return recordGetAll(names, found);
+    }
+
+    /**
+     * Reads an {@link EntryHeader} of a cached entry without loading its
+     * value, which allows expiry and revalidation decisions based on a
+     * creation time and metadata. Requires a template using entry headers.
+     * 
+     * @param key the cache key
+     * @return the header, null if entry doesn't exist or has no header
+     * @see FileTemplate#setEntryHeaders(boolean)
+     */
+    public EntryHeader getEntryHeader(Object key) {
+        return mTemplate.readHeader(mTemplate.getKeySerializer().serialize(key), mDir);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> loader) {
+        return mLoads.get(this, key, loader);
+    }
+
+    @Override
+    public <T> Future<T> getAsync(Object key, Callable<T> loader, Executor executor) {
+        return mLoads.getAsync(this, key, loader, executor);
+    }
+
     @Override
     public void put(Object key, Object value) {        
-        mTemplate.write(key, value, mDir);
+        mTemplate.writeFile(mTemplate.getKeySerializer().serialize(key), value, mDir, mStatsCounter);
+        mStatsCounter.recordPuts(1);
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            values.put(mTemplate.getKeySerializer().serialize(entry.getKey()), entry.getValue());
+        }
+        mTemplate.writeFiles(values, mDir, mStatsCounter);
+        mStatsCounter.recordPuts(values.size());
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        for (String name : serializeKeys(keys).keySet()) {
+            if (mTemplate.deleteFile(name, mDir)) {
+                mStatsCounter.recordRemoval(RemovalCause.EXPLICIT, 1);
+            }
+        }
     }
 
     @Override
     public void evict(Object key) {
-        File f = new File(mDir, key.toString());
-        if(f.exists()) {
-            f.delete();
-        }        
+        if (mTemplate.deleteFile(mTemplate.getKeySerializer().serialize(key), mDir)) {
+            mStatsCounter.recordRemoval(RemovalCause.EXPLICIT, 1);
+        }
     }
 
     @Override
     public void clear() {
+        awaitReady();
         for(File f : mDir.listFiles()) {
             f.delete();            
         }
     }
     
+    @Override
+    public void setStatsCounter(StatsCounter statsCounter) {
+        Assert.notNull(statsCounter, "StatsCounter must not be null");
+        mStatsCounter = statsCounter;
+        mLoads.setStatsCounter(statsCounter);
+    }
+
+    /**
+     * Gets a snapshot of statistics collected by this cache
+     * including its current size in bytes.
+     * 
+     * @return the cache statistics
+     */
+    @Override
+    public CacheStats getStats() {
+        return mStatsCounter.snapshot().withByteSize(getByteSize());
+    }
+
+    /**
+     * Gets the size of cached files in bytes. Default implementation
+     * sums lengths of files in a cache directory.
+     * 
+     * @return the size in bytes
+     */
+    public long getByteSize() {
+        long bytes = 0;
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isFile() && !FileTemplate.isTempFile(f.getName())) {
+                    bytes += f.length();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the counter recording operations of this cache.
+     * @return the stats counter
+     */
+    protected StatsCounter getStatsCounter() {
+        return mStatsCounter;
+    }
+
+    /**
+     * Looks a key up without recording a hit or a miss. Used by loads to
+     * find a value a concurrent load put to this cache after a miss.
+     * @param key the cache key
+     * @return the value wrapper, null if value was not found
+     */
+    protected ValueWrapper peek(Object key) {
+        Object object = mTemplate.readFile(mTemplate.getKeySerializer().serialize(key), mDir, null);
+        return object == null ? null : new SimpleValueWrapper(object);
+    }
+
+    /**
+     * Records a lookup as a hit or a miss and wraps a found value.
+     * @param object the value read from a file, null if not found
+     * @return the value wrapper, null if value was not found
+     */
+    protected ValueWrapper recordGet(Object object) {
+        if (object == null) {
+            mStatsCounter.recordMisses(1);
+            return null;
+        }
+        mStatsCounter.recordHits(1);
+        return new SimpleValueWrapper(object);
+    }
+
+    /**
+     * Records lookups of a batch as hits or misses and maps
+     * found values back to their keys.
+     * @param names the keys by file name
+     * @param found the values read by file name
+     * @return the found values by key
+     */
+    protected Map<Object, Object> recordGetAll(Map<String, Object> names, Map<String, Object> found) {
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        for (Map.Entry<String, Object> entry : found.entrySet()) {
+            values.put(names.get(entry.getKey()), entry.getValue());
+        }
+        mStatsCounter.recordHits(values.size());
+        mStatsCounter.recordMisses(names.size() - values.size());
+        return values;
+    }
+
+    /**
+     * Serializes keys of a batch to file names.
+     * @param keys the keys
+     * @return the keys by file name in name order
+     */
+    protected Map<String, Object> serializeKeys(Collection<?> keys) {
+        Map<String, Object> names = new TreeMap<String, Object>();
+        for (Object key : keys) {
+            names.put(mTemplate.getKeySerializer().serialize(key), key);
+        }
+        return names;
+    }
+
+    /**
+     * Returns whether this cache has been opened.
+     * 
+     * @return true if cache is ready
+     */
+    public boolean isReady() {
+        FutureTask<Void> opening = mOpening;
+        return opening == null || opening.isDone();
+    }
+
+    /**
+     * Gets a future which completes once this cache has been opened. Future
+     * fails if opening failed in which case cache can't be used.
+     * 
+     * @return the future signalling readiness
+     */
+    public Future<Void> getReadyFuture() {
+        FutureTask<Void> opening = mOpening;
+        if (opening == null) {
+            opening = new FutureTask<Void>(new Runnable() {
+                public void run() {
+                }
+            }, null);
+            opening.run();
+        }
+        return opening;
+    }
+
+    /**
+     * Opens this cache on a calling thread by sweeping stale temporary
+     * files and running {@link #doOpen()}. Subclasses call this or
+     * {@link #open(Executor)} once at the end of their constructor.
+     */
+    protected void open() {
+        mTemplate.sweepTempFiles(mDir, FileTemplate.STALE_TEMP_FILE_AGE);
+        doOpen();
+    }
+
+    /**
+     * Opens this cache like {@link #open()} but with an executor.
+     * Subclasses call this once at the end of their constructor.
+     * 
+     * @param executor the executor opening a cache
+     */
+    protected void open(Executor executor) {
+        Assert.notNull(executor, "Open executor must not be null");
+        FutureTask<Void> opening = new FutureTask<Void>(new Callable<Void>() {
+            public Void call() {
+                open();
+                return null;
+            }
+        });
+        mOpening = opening;
+        executor.execute(opening);
+    }
+
+    /**
+     * Builds state of a cache from its directory. Default
+     * implementation does nothing.
+     */
+    protected void doOpen() {
+    }
+
+    /**
+     * Blocks until this cache has been opened.
+     * 
+     * @throws DataAccessResourceFailureException if opening failed or
+     *         thread was interrupted while waiting
+     */
+    protected void awaitReady() {
+        FutureTask<Void> opening = mOpening;
+        if (opening == null) {
+            return;
+        }
+        try {
+            opening.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessResourceFailureException("Interrupted while opening cache " + mName, e);
+        } catch (ExecutionException e) {
+            throw new DataAccessResourceFailureException("Unable to open cache " + mName, e.getCause());
+        }
+    }
+
     /**
      * Gets a directory used by this cache.
      * @return directory for this cache
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.core;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum. Platform doesn't provide one so this is
+ * a table driven implementation processing eight bytes per step. CRC-32C
+ * has better error detection than {@link java.util.zip.CRC32} for the
+ * short bursts typical to torn or partially flushed writes.
+ *
+ * @author Janne Valkealahti
+ */
+public class Crc32c implements Checksum {
+
+    /** Reversed Castagnoli polynomial */
+    private static final int POLY = 0x82F63B78;
+
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLES[0][i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            int crc = TABLES[0][i];
+            for (int t = 1; t < 8; t++) {
+                crc = TABLES[0][crc & 0xff] ^ (crc >>> 8);
+                TABLES[t][i] = crc;
+            }
+        }
+    }
+
+    private int mCrc = 0xffffffff;
+
+    @Override
+    public void update(int b) {
+        mCrc = TABLES[0][(mCrc ^ b) & 0xff] ^ (mCrc >>> 8);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int crc = mCrc;
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+        int end = off + len;
+        while (end - off >= 8) {
+            crc ^= (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+            crc = t7[crc & 0xff] ^ t6[(crc >>> 8) & 0xff] ^ t5[(crc >>> 16) & 0xff] ^ t4[crc >>> 24]
+                    ^ t3[b[off + 4] & 0xff] ^ t2[b[off + 5] & 0xff] ^ t1[b[off + 6] & 0xff] ^ t0[b[off + 7] & 0xff];
+            off += 8;
+        }
+        while (off < end) {
+            crc = t0[(crc ^ b[off++]) & 0xff] ^ (crc >>> 8);
+        }
+        mCrc = crc;
+    }
+
+    /**
+     * Updates the checksum with bytes of a whole array.
+     *
+     * @param b the bytes
+     */
+    public void update(byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    /**
+     * Updates the checksum with remaining bytes of a buffer. Heap buffers
+     * are read through their backing array, direct and mapped buffers
+     * in chunks. Position of the buffer is not changed.
+     *
+     * @param buffer the buffer
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        byte[] chunk = new byte[Math.min(8192, source.remaining())];
+        while (source.hasRemaining()) {
+            int n = Math.min(chunk.length, source.remaining());
+            source.get(chunk, 0, n);
+            update(chunk, 0, n);
+        }
+    }
+
+    @Override
+    public long getValue() {
+        return ~mCrc & 0xffffffffL;
+    }
+
+    @Override
+    public void reset() {
+        mCrc = 0xffffffff;
+    }
+
+    /**
+     * Computes a checksum of a byte array.
+     *
+     * @param b the bytes
+     * @return the checksum as an unsigned 32-bit value
+     */
+    public static long compute(byte[] b) {
+        Crc32c crc = new Crc32c();
+        crc.update(b, 0, b.length);
+        return crc.getValue();
+    }
+
+}
@@ -0,0 +1,630 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Append-only journal of cache operations stored in a cache directory.
+ * Journal keeps records of writes, reads and evictions of cache files
+ * which allows to restore cache index without listing and sorting
+ * all files in a cache directory.
+ * <p>
+ * Journal is a simple line based text file with records like:
+ * <pre>
+ * spring-android-journal 1
+ * PUT 0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33 1024
+ * PUT 62cdb7020ff920e5aa642c3d4066950dd1f01f4d 2048 1356998400000
+ * GET 0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33
+ * EVICT 0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33
+ * </pre>
+ * Replaying records in order gives file names, their sizes and access
+ * order. Optional last field of a put record is a time in milliseconds
+ * when an entry expires. Records which doesn't change the result of a replay are counted
+ * as redundant and are dropped when journal is compacted.
+ * <p>
+ * File names are percent-encoded in records if they contain a space,
+ * a line break or a percent sign, so any name a key serializer produces
+ * survives a replay.
+ * <p>
+ * Appending a record only queues it in memory, so a caller can append
+ * while holding a lock of its own index and {@link #write()} queued
+ * records once that lock is released. Records are written in the order
+ * they were queued.
+ *
+ * @author Janne Valkealahti
+ */
+public class DiskJournal {
+
+    /** Name of the journal file in cache directory */
+    public static final String JOURNAL_FILE = ".journal";
+
+    /** Name of the temporary file used when journal is created */
+    public static final String JOURNAL_FILE_TMP = ".journal.tmp";
+
+    /** Name of the temporary file used during compaction */
+    public static final String JOURNAL_FILE_COMPACT = ".journal.compact";
+
+    /** Name of the file marking that journal may contain expiry times */
+    public static final String JOURNAL_FILE_EXPIRY = ".journal.expiry";
+
+    private static final String MAGIC = "spring-android-journal";
+    private static final String VERSION = "1";
+    private static final String PUT = "PUT";
+    private static final String GET = "GET";
+    private static final String EVICT = "EVICT";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /** Default count of redundant records before compaction is needed */
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 2000;
+
+    private final File mDir;
+    private final File mJournalFile;
+    private final File mJournalFileTmp;
+    private final File mJournalFileCompact;
+    private final File mJournalFileExpiry;
+    /** Lock guarding the writer and journal files */
+    private final Object mWriteLock = new Object();
+    private Writer mWriter;
+    /** Records appended but not yet written */
+    private List<String> mQueue = new ArrayList<String>();
+    /** Flag telling if queued records need to be flushed when written */
+    private boolean mQueueFlush;
+    private int mRedundantCount;
+    private int mCompactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    /** Records appended while compaction is in progress */
+    private List<String> mPending;
+
+    /**
+     * Instantiates a new disk journal.
+     *
+     * @param dir the cache directory where journal is stored
+     */
+    public DiskJournal(File dir) {
+        mDir = dir;
+        mJournalFile = new File(dir, JOURNAL_FILE);
+        mJournalFileTmp = new File(dir, JOURNAL_FILE_TMP);
+        mJournalFileCompact = new File(dir, JOURNAL_FILE_COMPACT);
+        mJournalFileExpiry = new File(dir, JOURNAL_FILE_EXPIRY);
+    }
+
+    /**
+     * Checks if journal file exists.
+     *
+     * @return True if journal file exists, false otherwise
+     */
+    public boolean exists() {
+        return mJournalFile.isFile();
+    }
+
+    /**
+     * Checks if journal may contain expiry times. Unlike a replay
+     * this doesn't read a journal so it can be checked before a
+     * journal is opened.
+     *
+     * @return True if expiry times may have been written, false otherwise
+     * @see #markExpiries()
+     */
+    public boolean hasExpiries() {
+        return mJournalFileExpiry.isFile();
+    }
+
+    /**
+     * Marks that expiry times are written to a journal. Must be
+     * called before a first record with an expiry time is appended.
+     *
+     * @throws IOException in case of I/O errors
+     */
+    public void markExpiries() throws IOException {
+        if (!mJournalFileExpiry.isFile() && !mJournalFileExpiry.createNewFile() && !mJournalFileExpiry.isFile()) {
+            throw new IOException("Unable to create " + mJournalFileExpiry);
+        }
+    }
+
+    /**
+     * Replays the journal and returns the restored index. Returned map
+     * is ordered from least recently used to most recently used entry
+     * and maps file names to file sizes. Journal is opened for appending
+     * after replay.
+     *
+     * @return the restored index
+     * @throws IOException if journal can't be read
+     */
+    public LinkedHashMap<String, Long> replay() throws IOException {
+        return replay(null);
+    }
+
+    /**
+     * Replays the journal and returns the restored index. Expiry times
+     * of restored entries are added to a given map.
+     *
+     * @param expiries the map where expiry times are added, may be null
+     * @return the restored index
+     * @throws IOException if journal can't be read
+     * @see #replay()
+     */
+    public LinkedHashMap<String, Long> replay(Map<String, Long> expiries) throws IOException {
+        synchronized (mWriteLock) {
+            LinkedHashMap<String, Long> index = doReplay(expiries);
+            mWriter = newWriter(mJournalFile, true);
+            return index;
+        }
+    }
+
+    private LinkedHashMap<String, Long> doReplay(Map<String, Long> expiries) throws IOException {
+        LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        int records = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mJournalFile), "UTF-8"));
+        try {
+            String header = reader.readLine();
+            if (header == null || !header.equals(MAGIC + " " + VERSION)) {
+                throw new IOException("Unexpected journal header [" + header + "]");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // truncated or otherwise corrupted records
+                // are simply ignored
+                String[] parts = line.split(" ");
+                String name = parts.length > 1 ? decode(parts[1]) : null;
+                if (name == null) {
+                    continue;
+                }
+                if ((parts.length == 3 || parts.length == 4) && PUT.equals(parts[0])) {
+                    try {
+                        long size = Long.parseLong(parts[2]);
+                        long expiresAt = parts.length == 4 ? Long.parseLong(parts[3]) : 0;
+                        index.put(name, size);
+                        if (expiries != null) {
+                            if (expiresAt > 0) {
+                                expiries.put(name, expiresAt);
+                            } else {
+                                expiries.remove(name);
+                            }
+                        }
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                } else if (parts.length == 2 && GET.equals(parts[0])) {
+                    index.get(name);
+                } else if (parts.length == 2 && EVICT.equals(parts[0])) {
+                    index.remove(name);
+                    if (expiries != null) {
+                        expiries.remove(name);
+                    }
+                } else {
+                    continue;
+                }
+                records++;
+            }
+        } finally {
+            reader.close();
+        }
+        synchronized (this) {
+            mRedundantCount = records - index.size();
+        }
+        return index;
+    }
+
+    /**
+     * Creates a new journal from a given index replacing existing
+     * journal if it exists. Journal is opened for appending and
+     * possible compaction in progress is abandoned.
+     *
+     * @param index the index ordered from least recently used entry
+     * @throws IOException if journal can't be written
+     */
+    public void create(Map<String, Long> index) throws IOException {
+        create(index, null);
+    }
+
+    /**
+     * Creates a new journal from a given index and expiry times of
+     * its entries replacing existing journal if it exists. Records
+     * queued but not yet written are dropped as index already
+     * contains their changes.
+     *
+     * @param index the index ordered from least recently used entry
+     * @param expiries the expiry times of entries, may be null
+     * @throws IOException if journal can't be written
+     * @see #create(Map)
+     */
+    public void create(Map<String, Long> index, Map<String, Long> expiries) throws IOException {
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                mPending = null;
+                mQueue = new ArrayList<String>();
+                mQueueFlush = false;
+                mRedundantCount = 0;
+            }
+            closeWriter();
+            writeSnapshot(mJournalFileTmp, index, expiries);
+            rename(mJournalFileTmp, mJournalFile);
+            mWriter = newWriter(mJournalFile, true);
+        }
+    }
+
+    /**
+     * Appends a record of a written file.
+     *
+     * @param name the file name
+     * @param size the file size
+     * @param replaced whether record replaced an existing entry
+     */
+    public void appendPut(String name, long size, boolean replaced) {
+        appendPut(name, size, 0, replaced);
+    }
+
+    /**
+     * Appends a record of a written file which expires at a given time.
+     *
+     * @param name the file name
+     * @param size the file size
+     * @param expiresAt the expiry time in milliseconds, zero if entry never expires
+     * @param replaced whether record replaced an existing entry
+     */
+    public synchronized void appendPut(String name, long size, long expiresAt, boolean replaced) {
+        append(putRecord(name, size, expiresAt), true);
+        if (replaced) {
+            mRedundantCount++;
+        }
+    }
+
+    /**
+     * Appends a record of a read file. These records are not flushed
+     * when written because losing them only affects access order.
+     *
+     * @param name the file name
+     */
+    public synchronized void appendGet(String name) {
+        append(GET + " " + encode(name), false);
+        mRedundantCount++;
+    }
+
+    /**
+     * Appends a record of an evicted file.
+     *
+     * @param name the file name
+     */
+    public synchronized void appendEvict(String name) {
+        append(EVICT + " " + encode(name), true);
+        // both put and evict records are redundant now
+        mRedundantCount += 2;
+    }
+
+    /**
+     * Writes queued records to the journal file. Records of writes and
+     * evictions are flushed before this method returns, also when they
+     * were queued by another thread, so a caller may rely on records it
+     * appended being written once this method returns.
+     *
+     * @throws IOException if journal can't be written
+     */
+    public void write() throws IOException {
+        synchronized (mWriteLock) {
+            writeQueue();
+        }
+    }
+
+    /**
+     * Checks if journal contains enough redundant records
+     * to make it worth to compact it.
+     *
+     * @param liveEntries the count of live entries in index
+     * @return True if compaction is needed, false otherwise
+     */
+    public synchronized boolean isCompactionNeeded(int liveEntries) {
+        return mPending == null && mRedundantCount >= mCompactionThreshold && mRedundantCount >= liveEntries;
+    }
+
+    /**
+     * Sets the count of redundant records needed before
+     * journal is considered for compaction.
+     *
+     * @param threshold the compaction threshold
+     */
+    public synchronized void setCompactionThreshold(int threshold) {
+        mCompactionThreshold = threshold;
+    }
+
+    /**
+     * Marks the start of a compaction. Records appended after this
+     * call are kept in memory and are added to compacted journal.
+     * Index snapshot passed to {@link #compact(Map, Map)} needs to be
+     * taken atomically with this call.
+     */
+    public synchronized void beginCompaction() {
+        mPending = new ArrayList<String>();
+    }
+
+    /**
+     * Compacts the journal by writing a new journal from a given
+     * index snapshot. Snapshot is written without holding a lock
+     * so appends can happen concurrently.
+     *
+     * @param snapshot the index snapshot ordered from least recently used entry
+     * @throws IOException if journal can't be written
+     * @see #beginCompaction()
+     */
+    public void compact(Map<String, Long> snapshot) throws IOException {
+        compact(snapshot, null);
+    }
+
+    /**
+     * Compacts the journal by writing a new journal from a given
+     * index snapshot and expiry times of its entries.
+     *
+     * @param snapshot the index snapshot ordered from least recently used entry
+     * @param expiries the expiry times of entries, may be null
+     * @throws IOException if journal can't be written
+     * @see #compact(Map)
+     */
+    public void compact(Map<String, Long> snapshot, Map<String, Long> expiries) throws IOException {
+        try {
+            writeSnapshot(mJournalFileCompact, snapshot, expiries);
+            synchronized (mWriteLock) {
+                // records queued before compaction started still
+                // go to the old journal in case compaction fails
+                writeQueue();
+                List<String> tail = appendPending(mJournalFileCompact);
+                if (tail == null) {
+                    // journal was re-created during compaction
+                    mJournalFileCompact.delete();
+                    return;
+                }
+                closeWriter();
+                try {
+                    rename(mJournalFileCompact, mJournalFile);
+                } catch (IOException e) {
+                    // old journal stays in use and gets the records
+                    // which were already taken from the queue
+                    mWriter = newWriter(mJournalFile, true);
+                    writeRecords(tail, true);
+                    throw e;
+                }
+                mWriter = newWriter(mJournalFile, true);
+            }
+        } finally {
+            synchronized (this) {
+                mPending = null;
+            }
+        }
+    }
+
+    /**
+     * Writes queued records and flushes buffered
+     * records to the journal file.
+     *
+     * @throws IOException if journal can't be written
+     */
+    public void flush() throws IOException {
+        synchronized (mWriteLock) {
+            writeQueue();
+            if (mWriter != null) {
+                mWriter.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes queued records and closes the journal.
+     *
+     * @throws IOException if journal can't be closed
+     */
+    public void close() throws IOException {
+        synchronized (mWriteLock) {
+            try {
+                writeQueue();
+            } finally {
+                closeWriter();
+            }
+        }
+    }
+
+    /**
+     * Checks if a given file is a journal file.
+     *
+     * @param name the file name
+     * @return True if file is used by journal, false otherwise
+     */
+    public static boolean isJournalFile(String name) {
+        return JOURNAL_FILE.equals(name) || JOURNAL_FILE_TMP.equals(name) || JOURNAL_FILE_COMPACT.equals(name)
+                || JOURNAL_FILE_EXPIRY.equals(name);
+    }
+
+    private void append(String record, boolean flush) {
+        mQueue.add(record);
+        mQueueFlush |= flush;
+        if (mPending != null) {
+            mPending.add(record);
+        }
+    }
+
+    /**
+     * Writes queued records to the journal. Must be
+     * called while holding the write lock.
+     */
+    private void writeQueue() throws IOException {
+        List<String> records;
+        boolean flush;
+        synchronized (this) {
+            if (mQueue.isEmpty()) {
+                return;
+            }
+            records = mQueue;
+            flush = mQueueFlush;
+            mQueue = new ArrayList<String>();
+            mQueueFlush = false;
+        }
+        writeRecords(records, flush);
+    }
+
+    private void writeRecords(List<String> records, boolean flush) throws IOException {
+        if (mWriter == null) {
+            throw new IOException("Journal is not open in " + mDir);
+        }
+        for (String record : records) {
+            mWriter.write(record);
+            mWriter.write('\n');
+        }
+        if (flush) {
+            mWriter.flush();
+        }
+    }
+
+    /**
+     * Appends records kept during compaction to a compacted journal until
+     * it has caught up with the queue. Queue is then emptied as all its
+     * records are in the compacted journal, and compaction ends.
+     *
+     * @return the records taken from the queue, null if compaction was abandoned
+     */
+    private List<String> appendPending(File file) throws IOException {
+        Writer writer = newWriter(file, true);
+        try {
+            int written = 0;
+            while (true) {
+                List<String> records;
+                synchronized (this) {
+                    if (mPending == null) {
+                        return null;
+                    }
+                    if (written == mPending.size()) {
+                        List<String> tail = mQueue;
+                        mQueue = new ArrayList<String>();
+                        mQueueFlush = false;
+                        mPending = null;
+                        mRedundantCount = 0;
+                        return tail;
+                    }
+                    records = new ArrayList<String>(mPending.subList(written, mPending.size()));
+                }
+                for (String record : records) {
+                    writer.write(record);
+                    writer.write('\n');
+                }
+                written += records.size();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (mWriter != null) {
+            try {
+                mWriter.close();
+            } finally {
+                mWriter = null;
+            }
+        }
+    }
+
+    private static void writeSnapshot(File file, Map<String, Long> index, Map<String, Long> expiries)
+            throws IOException {
+        Writer writer = newWriter(file, false);
+        try {
+            writer.write(MAGIC + " " + VERSION + "\n");
+            for (Entry<String, Long> entry : index.entrySet()) {
+                Long expiresAt = expiries != null ? expiries.get(entry.getKey()) : null;
+                writer.write(putRecord(entry.getKey(), entry.getValue(), expiresAt != null ? expiresAt : 0));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String putRecord(String name, long size, long expiresAt) {
+        String record = PUT + " " + encode(name) + " " + size;
+        return expiresAt > 0 ? record + " " + expiresAt : record;
+    }
+
+    /**
+     * Percent-encodes characters of a file name which
+     * would break a line based record.
+     */
+    private static String encode(String name) {
+        StringBuilder buf = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ' ' || c == '\n' || c == '\r' || c == '%') {
+                if (buf == null) {
+                    buf = new StringBuilder(name.length() + 8);
+                    buf.append(name, 0, i);
+                }
+                buf.append('%').append(HEX[c >> 4]).append(HEX[c & 0xf]);
+            } else if (buf != null) {
+                buf.append(c);
+            }
+        }
+        return buf != null ? buf.toString() : name;
+    }
+
+    /**
+     * Decodes a file name written by {@link #encode(String)}.
+     *
+     * @return the decoded name, null if name is malformed
+     */
+    private static String decode(String name) {
+        if (name.indexOf('%') < 0) {
+            return name;
+        }
+        StringBuilder buf = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= name.length()) {
+                    return null;
+                }
+                int hi = Character.digit(name.charAt(i + 1), 16);
+                int lo = Character.digit(name.charAt(i + 2), 16);
+                if (hi < 0 || lo < 0) {
+                    return null;
+                }
+                buf.append((char) ((hi << 4) | lo));
+                i += 2;
+            } else {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static Writer newWriter(File file, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8"));
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            throw new IOException("Unable to rename " + from + " to " + to);
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+/**
+ * Binary header written in front of a cache entry value when a
+ * {@link FileTemplate} is set to use entry headers. Header is laid out
+ * as follows, numbers in big-endian:
+ * <pre>
+ * magic          4 bytes
+ * format version 1 byte
+ * flags          1 byte, reserved
+ * header length  4 bytes, including metadata
+ * value length   8 bytes
+ * value CRC-32C  4 bytes
+ * creation time  8 bytes, milliseconds since epoch
+ * metadata count 2 bytes
+ * metadata       modified UTF-8 name and value pairs
+ * </pre>
+ * Value length together with a header length gives the expected file
+ * size so that truncated files are detected without reading a value,
+ * and the {@link Crc32c} checksum catches corrupted bytes before value
+ * is passed to a serializer. Metadata such as {@link #ETAG} or
+ * {@link #CONTENT_TYPE} can be read without touching value bytes.
+ *
+ * @author Janne Valkealahti
+ */
+public class EntryHeader {
+
+    /** Magic number starting every entry file */
+    public static final int MAGIC = 0x53414345;
+
+    /** Current format version */
+    public static final int VERSION = 1;
+
+    /** Size of a header without metadata */
+    public static final int FIXED_LENGTH = 32;
+
+    /** Metadata name for an entity tag of a cached response */
+    public static final String ETAG = "ETag";
+
+    /** Metadata name for a content type of a cached value */
+    public static final String CONTENT_TYPE = "Content-Type";
+
+    private final int mVersion;
+    private final int mHeaderLength;
+    private final long mValueLength;
+    private final int mChecksum;
+    private final long mCreated;
+    private final Map<String, String> mMetadata;
+
+    /**
+     * Instantiates a new entry header of the current version.
+     *
+     * @param valueLength the length of a value in bytes
+     * @param checksum the CRC-32C checksum of a value
+     * @param created the creation time in milliseconds
+     * @param metadata the metadata, may be null
+     */
+    public EntryHeader(long valueLength, long checksum, long created, Map<String, String> metadata) {
+        this(VERSION, -1, valueLength, (int) checksum, created, metadata);
+    }
+
+    private EntryHeader(int version, int headerLength, long valueLength, int checksum, long created,
+            Map<String, String> metadata) {
+        Assert.isTrue(valueLength >= 0, "Value length must not be negative");
+        mVersion = version;
+        mValueLength = valueLength;
+        mChecksum = checksum;
+        mCreated = created;
+        mMetadata = metadata == null || metadata.isEmpty() ? Collections.<String, String>emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<String, String>(metadata));
+        mHeaderLength = headerLength >= 0 ? headerLength : computeLength(mMetadata);
+    }
+
+    /**
+     * Creates a header for a value.
+     *
+     * @param value the value bytes
+     * @param metadata the metadata, may be null
+     * @return the header
+     */
+    public static EntryHeader create(byte[] value, Map<String, String> metadata) {
+        return new EntryHeader(value.length, Crc32c.compute(value), System.currentTimeMillis(), metadata);
+    }
+
+    /**
+     * Reads a header from a stream. Stream is left positioned at the
+     * first value byte.
+     *
+     * @param in the input stream
+     * @return the header, null if stream doesn't start with a header
+     *         of a supported version or header is truncated
+     * @throws IOException in case of I/O errors
+     */
+    public static EntryHeader read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (data.readInt() != MAGIC) {
+                return null;
+            }
+            int version = data.readUnsignedByte();
+            data.readUnsignedByte();
+            int headerLength = data.readInt();
+            long valueLength = data.readLong();
+            int checksum = data.readInt();
+            long created = data.readLong();
+            int count = data.readUnsignedShort();
+            if (version < 1 || version > VERSION || headerLength < FIXED_LENGTH || valueLength < 0) {
+                return null;
+            }
+            Map<String, String> metadata = new LinkedHashMap<String, String>();
+            for (int i = 0; i < count; i++) {
+                metadata.put(data.readUTF(), data.readUTF());
+            }
+            return new EntryHeader(version, headerLength, valueLength, checksum, created, metadata);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Serializes this header.
+     *
+     * @return the header bytes
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(mHeaderLength);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(mVersion);
+            out.writeByte(0);
+            out.writeInt(mHeaderLength);
+            out.writeLong(mValueLength);
+            out.writeInt(mChecksum);
+            out.writeLong(mCreated);
+            out.writeShort(mMetadata.size());
+            for (Map.Entry<String, String> entry : mMetadata.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+        } catch (IOException e) {
+            // not thrown by a byte array stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Checks if bytes match a value length and checksum of this header.
+     *
+     * @param value the value bytes
+     * @return true if value is intact
+     */
+    public boolean matches(byte[] value) {
+        return value.length == mValueLength && (int) Crc32c.compute(value) == mChecksum;
+    }
+
+    /**
+     * Checks if remaining bytes of a buffer match a value length and
+     * checksum of this header. Position of the buffer is not changed.
+     *
+     * @param value the value buffer
+     * @return true if value is intact
+     */
+    public boolean matches(ByteBuffer value) {
+        if (value.remaining() != mValueLength) {
+            return false;
+        }
+        Crc32c crc = new Crc32c();
+        crc.update(value);
+        return (int) crc.getValue() == mChecksum;
+    }
+
+    /**
+     * Gets the expected size of an entry file.
+     *
+     * @return the header length plus value length
+     */
+    public long getEntryLength() {
+        return mHeaderLength + mValueLength;
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+
+    public int getHeaderLength() {
+        return mHeaderLength;
+    }
+
+    public long getValueLength() {
+        return mValueLength;
+    }
+
+    public long getChecksum() {
+        return mChecksum & 0xffffffffL;
+    }
+
+    public long getCreated() {
+        return mCreated;
+    }
+
+    /**
+     * Gets the metadata of an entry.
+     *
+     * @return the unmodifiable metadata, empty if none
+     */
+    public Map<String, String> getMetadata() {
+        return mMetadata;
+    }
+
+    /**
+     * Gets a metadata value by its name.
+     *
+     * @param name the metadata name
+     * @return the value, null if not present
+     */
+    public String getMetadata(String name) {
+        return mMetadata.get(name);
+    }
+
+    private static int computeLength(Map<String, String> metadata) {
+        Assert.isTrue(metadata.size() <= 0xffff, "Too many metadata entries");
+        int length = FIXED_LENGTH;
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            Assert.notNull(entry.getKey(), "Metadata name must not be null");
+            Assert.notNull(entry.getValue(), "Metadata value must not be null");
+            length += utfLength(entry.getKey()) + utfLength(entry.getValue());
+        }
+        return length;
+    }
+
+    /**
+     * Length of a string written with {@link DataOutputStream#writeUTF(String)}.
+     */
+    private static int utfLength(String s) {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f) {
+                length++;
+            } else if (c > 0x07ff) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+}
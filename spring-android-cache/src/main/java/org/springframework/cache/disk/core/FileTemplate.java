@@ -16,15 +16,37 @@
 
 package org.springframework.cache.disk.core;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
+import org.springframework.cache.disk.serializer.ByteBufferCacheValueSerializer;
 import org.springframework.cache.disk.serializer.CacheKeySerializer;
 import org.springframework.cache.disk.serializer.CacheValueSerializer;
+import org.springframework.cache.disk.serializer.StreamingCacheValueSerializer;
+import org.springframework.cache.support.StatsCounter;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.util.Assert;
@@ -32,6 +54,37 @@ import org.springframework.util.FileCopyUtils;
 
 /**
  * Helper class that simplifies file access operations.
+ * <p>
+ * By default files are written atomically. Content is first written
+ * to a temporary file in the same directory which is then renamed
+ * over the target file. Concurrent readers will either see the old or
+ * the new content but never a partially written file. Temporary files
+ * left behind by a crash can be removed with {@link #sweepTempFiles(File, long)}.
+ * Names of temporary files are reserved and writing a file with such
+ * a name fails, see {@link #isTempFile(String)}.
+ * Content is not forced to a storage device before a rename unless
+ * enabled with {@link #setSyncWrite(boolean)}, so after a power loss a file
+ * may be empty but a cache never reads a half written one.
+ * <p>
+ * Reads, writes and deletes are guarded by a {@link StripedLock} keyed
+ * by a file name. Operations on a same file are serialized while
+ * operations on different files can run in parallel.
+ * <p>
+ * If value serializer is a {@link StreamingCacheValueSerializer} values
+ * are streamed to and from files through a fixed size buffer instead of
+ * copying a whole file content to a byte array.
+ * <p>
+ * Optionally files larger than {@link #setMappedReadThreshold(long)}
+ * are memory mapped and passed to a {@link ByteBufferCacheValueSerializer}
+ * as a read-only buffer. Smaller files keep using the stream path where
+ * cost of setting up a mapping outweighs the saved copy.
+ * <p>
+ * With {@link #setEntryHeaders(boolean)} every file starts with an
+ * {@link EntryHeader} carrying value length, checksum, creation time
+ * and optional metadata. Truncated and corrupted files are then
+ * detected before a value reaches a serializer, they are deleted and
+ * read as missing. Values are checksummed as a whole, so streaming
+ * serializers go through a byte array when headers are enabled.
  * 
  * @author Janne Valkealahti
  *
@@ -40,6 +93,18 @@ import org.springframework.util.FileCopyUtils;
  */
 public class FileTemplate<K, V> {
 
+    /** Prefix of temporary files used with atomic writes */
+    public static final String TEMP_FILE_PREFIX = ".";
+
+    /** Suffix of temporary files used with atomic writes */
+    public static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /** Age in milliseconds after which a temporary file is assumed to be abandoned */
+    public static final long STALE_TEMP_FILE_AGE = 60 * 60 * 1000;
+
+    /** Size of a buffer used with streaming serializers */
+    private static final int BUFFER_SIZE = 8192;
+
     /** Serializer for values to be stored in files */
     @SuppressWarnings("rawtypes")
     private CacheValueSerializer mValueSerializer = null;
@@ -48,6 +113,27 @@ public class FileTemplate<K, V> {
     @SuppressWarnings("rawtypes")
     private CacheKeySerializer mKeySerializer = null;
 
+    /** Flag telling if files are written atomically */
+    private boolean mAtomicWrite = true;
+
+    /** Flag telling if written files are synced to a storage device */
+    private boolean mSyncWrite = false;
+
+    /** Minimum file size to use mapped reads, negative if disabled */
+    private long mMappedReadThreshold = -1;
+
+    /** Locks guarding file operations */
+    private StripedLock mLocks = new StripedLock();
+
+    /** Flag telling if files start with an entry header */
+    private boolean mEntryHeaders = false;
+
+    /** Number of corrupted files found while reading */
+    private final AtomicLong mCorruptCount = new AtomicLong();
+
+    /** Marker returned from a read which found a corrupted file */
+    private static final Object CORRUPT = new Object();
+
     public FileTemplate() {
     }
 
@@ -87,48 +173,335 @@ public class FileTemplate<K, V> {
         mKeySerializer = serializer;
     }
 
+    /**
+     * Returns whether files are written atomically.
+     * 
+     * @return True if atomic writes are used, false otherwise
+     */
+    public boolean isAtomicWrite() {
+        return mAtomicWrite;
+    }
+
+    /**
+     * Sets whether files are written atomically through a temporary
+     * file. Defaults to true. Disabling atomic writes saves a rename
+     * per write but readers may then see partially written files.
+     * 
+     * @param atomicWrite the flag to set
+     */
+    public void setAtomicWrite(boolean atomicWrite) {
+        mAtomicWrite = atomicWrite;
+    }
+
+    /**
+     * Returns whether written files are synced to a storage device.
+     * 
+     * @return True if writes are synced, false otherwise
+     */
+    public boolean isSyncWrite() {
+        return mSyncWrite;
+    }
+
+    /**
+     * Sets whether written files are synced to a storage device before
+     * they are made visible. Defaults to false. Syncing makes a written
+     * file survive a power loss but blocks every write until flash storage
+     * has flushed it which is rarely worth it for cached content.
+     * 
+     * @param syncWrite the flag to set
+     */
+    public void setSyncWrite(boolean syncWrite) {
+        mSyncWrite = syncWrite;
+    }
+
+    /**
+     * Returns the minimum file size for mapped reads.
+     * 
+     * @return the mapped read threshold, negative if disabled
+     */
+    public long getMappedReadThreshold() {
+        return mMappedReadThreshold;
+    }
+
+    /**
+     * Sets the minimum file size for which files are read through a
+     * read-only memory mapping. Mapped reads are only used with a
+     * {@link ByteBufferCacheValueSerializer} and atomic writes, because
+     * truncating a mapped file in place would invalidate the mapping.
+     * Defaults to -1 which disables mapped reads.
+     * 
+     * @param threshold the size in bytes, negative to disable
+     */
+    public void setMappedReadThreshold(long threshold) {
+        mMappedReadThreshold = threshold;
+    }
+
+    /**
+     * Returns whether files start with an entry header.
+     * 
+     * @return True if entry headers are used, false otherwise
+     */
+    public boolean isEntryHeaders() {
+        return mEntryHeaders;
+    }
+
+    /**
+     * Sets whether files start with an {@link EntryHeader}. Defaults to
+     * false. Files written without headers are read as corrupted once
+     * headers are enabled, so switching a format effectively clears
+     * existing entries.
+     * 
+     * @param entryHeaders the flag to set
+     */
+    public void setEntryHeaders(boolean entryHeaders) {
+        mEntryHeaders = entryHeaders;
+    }
+
+    /**
+     * Returns the number of corrupted or truncated files found
+     * and deleted while reading.
+     * 
+     * @return the number of corrupted files
+     */
+    public long getCorruptCount() {
+        return mCorruptCount.get();
+    }
+
+    /**
+     * Returns the striped lock guarding file operations.
+     * 
+     * @return the striped lock
+     */
+    public StripedLock getStripedLock() {
+        return mLocks;
+    }
+
+    /**
+     * Sets the striped lock guarding file operations. Templates
+     * working against a same directory need to share a lock.
+     * 
+     * @param locks the striped lock
+     */
+    public void setStripedLock(StripedLock locks) {
+        Assert.notNull(locks, "Striped lock must not be null");
+        mLocks = locks;
+    }
+
     @SuppressWarnings("unchecked")
-    public void write(K key, V value, File directory) {
-        final File file = new File(directory, mKeySerializer.serialize(key));
-        final byte[] bytes = mValueSerializer.serialize(value);
+    public void write(K key, final V value, File directory) {
+        writeFile(mKeySerializer.serialize(key), value, directory);
+    }
+
+    /**
+     * Writes a value to a file whose name is an already serialized
+     * key. Allows caches which need the name anyway to serialize
+     * a key only once.
+     * 
+     * @param name the file name
+     * @param value the value to write
+     * @param directory the cache directory
+     */
+    public void writeFile(String name, V value, File directory) {
+        writeFile(name, value, directory, null);
+    }
+
+    /**
+     * Writes a value to a file whose name is an already serialized key
+     * and records the time spent serializing it. Streaming serializers
+     * write directly to a file so their time includes the I/O.
+     * 
+     * @param name the file name
+     * @param value the value to write
+     * @param directory the cache directory
+     * @param statsCounter the stats counter, null to not record
+     */
+    public void writeFile(String name, V value, File directory, StatsCounter statsCounter) {
+        writeFile(name, value, null, directory, statsCounter);
+    }
+
+    /**
+     * Writes a value together with metadata stored in its
+     * {@link EntryHeader}. Metadata can only be written when
+     * entry headers are enabled.
+     * 
+     * @param name the file name
+     * @param value the value to write
+     * @param metadata the metadata, may be null
+     * @param directory the cache directory
+     * @param statsCounter the stats counter, null to not record
+     * @see #readHeader(String, File)
+     */
+    @SuppressWarnings("unchecked")
+    public void writeFile(String name, final V value, Map<String, String> metadata, File directory,
+            final StatsCounter statsCounter) {
+        Assert.isTrue(metadata == null || mEntryHeaders, "Metadata requires entry headers");
+        assertNotTempFile(name);
+        final File file = new File(directory, name);
+        final byte[] bytes;
+        if (isStreaming() && !mEntryHeaders) {
+            bytes = null;
+        } else {
+            long start = System.nanoTime();
+            bytes = mValueSerializer.serialize(value);
+            if (statsCounter != null) {
+                statsCounter.recordSerialize(System.nanoTime() - start);
+            }
+        }
+        final EntryHeader header = mEntryHeaders ? EntryHeader.create(bytes, metadata) : null;
         execute(new FileCallback<Object>() {
             @Override
             public Object doWithFile(File file) throws IOException {
-                FileCopyUtils.copy(bytes, file);
+                if (bytes == null && statsCounter != null) {
+                    long start = System.nanoTime();
+                    writeValue(value, bytes, header, file);
+                    statsCounter.recordSerialize(System.nanoTime() - start);
+                } else {
+                    writeValue(value, bytes, header, file);
+                }
                 return null;
             }
-        }, file);        
+        }, file, true);
+    }
+
+    /**
+     * Writes values to files whose names are already serialized keys.
+     * Files are written in name order, each under its own lock.
+     * 
+     * @param values the values by file name
+     * @param directory the cache directory
+     * @param statsCounter the stats counter, null to not record
+     */
+    public void writeFiles(Map<String, ? extends V> values, File directory, StatsCounter statsCounter) {
+        for (Map.Entry<String, ? extends V> entry : new TreeMap<String, V>(values).entrySet()) {
+            writeFile(entry.getKey(), entry.getValue(), directory, statsCounter);
+        }
     }
 
     @SuppressWarnings("unchecked")
-    public String writeCheckNew(K key, V value, File directory) {
+    public String writeCheckNew(K key, final V value, File directory) {
         final File file = new File(directory, mKeySerializer.serialize(key));
-        final byte[] bytes = mValueSerializer.serialize(value);
+        assertNotTempFile(file.getName());
+        final byte[] bytes = isStreaming() && !mEntryHeaders ? null : mValueSerializer.serialize(value);
+        final EntryHeader header = mEntryHeaders ? EntryHeader.create(bytes, null) : null;
         return execute(new FileCallback<String>() {
             @Override
             public String doWithFile(File file) throws IOException {
                 boolean exists = file.exists();
-                FileCopyUtils.copy(bytes, file);
+                writeValue(value, bytes, header, file);
                 return exists ? null : file.getName();
             }
-        }, file);        
+        }, file, true);
     }
     
     @SuppressWarnings("unchecked")
     public V read(K key, File directory) {
-        final File file = new File(directory, mKeySerializer.serialize(key));
-        return (V) execute(new FileCallback<Object>() {
+        return readFile(mKeySerializer.serialize(key), directory);
+    }
+
+    /**
+     * Reads a value from a file whose name is an already serialized key.
+     * 
+     * @param name the file name
+     * @param directory the cache directory
+     * @return the value, null if file doesn't exist
+     * @see #writeFile(String, Object, File)
+     */
+    public V readFile(String name, File directory) {
+        return readFile(name, directory, null);
+    }
+
+    /**
+     * Reads a value from a file whose name is an already serialized key
+     * and records the time spent deserializing it. Streaming and mapped
+     * reads are measured with their I/O.
+     * 
+     * @param name the file name
+     * @param directory the cache directory
+     * @param statsCounter the stats counter, null to not record
+     * @return the value, null if file doesn't exist
+     */
+    @SuppressWarnings("unchecked")
+    public V readFile(String name, File directory, final StatsCounter statsCounter) {
+        final File file = new File(directory, name);
+        Object value = execute(new FileCallback<Object>() {
             @Override
             public Object doWithFile(File file) throws IOException {
                 if(file.exists()) {
-                    return mValueSerializer.deserialize(FileCopyUtils.copyToByteArray(file));                    
+                    return readValue(file, statsCounter);
                 } else {
                     return null;
                 }
             }
-        }, file);
+        }, file, false);
+        if (value == CORRUPT) {
+            deleteCorrupt(name, directory);
+            return null;
+        }
+        return (V) value;
+    }
+
+    /**
+     * Reads an {@link EntryHeader} of a file without reading its value.
+     * 
+     * @param name the file name
+     * @param directory the cache directory
+     * @return the header, null if file doesn't exist or has no valid header
+     */
+    public EntryHeader readHeader(String name, File directory) {
+        return execute(new FileCallback<EntryHeader>() {
+            @Override
+            public EntryHeader doWithFile(File file) throws IOException {
+                InputStream in;
+                try {
+                    in = new BufferedInputStream(new FileInputStream(file), 512);
+                } catch (FileNotFoundException e) {
+                    return null;
+                }
+                try {
+                    return EntryHeader.read(in);
+                } finally {
+                    in.close();
+                }
+            }
+        }, new File(directory, name), false);
     }
     
+    /**
+     * Reads values from files whose names are already serialized keys.
+     * Files are read in name order, each under its own lock, and a
+     * missing file is detected by failing to open it instead of
+     * checking its existence first.
+     * 
+     * @param names the file names
+     * @param directory the cache directory
+     * @param statsCounter the stats counter, null to not record
+     * @return the values by file name, names without a file are absent
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, V> readFiles(Collection<String> names, File directory, final StatsCounter statsCounter) {
+        List<String> sorted = new ArrayList<String>(names);
+        Collections.sort(sorted);
+        Map<String, V> values = new HashMap<String, V>();
+        for (String name : sorted) {
+            Object value = execute(new FileCallback<Object>() {
+                @Override
+                public Object doWithFile(File file) throws IOException {
+                    try {
+                        return readValue(file, statsCounter);
+                    } catch (FileNotFoundException e) {
+                        return null;
+                    }
+                }
+            }, new File(directory, name), false);
+            if (value == CORRUPT) {
+                deleteCorrupt(name, directory);
+            } else if (value != null) {
+                values.put(name, (V) value);
+            }
+        }
+        return values;
+    }
+
     @SuppressWarnings("unchecked")
     public void delete(K key, File directory) {
         final File file = new File(directory, mKeySerializer.serialize(key));
@@ -140,7 +513,24 @@ public class FileTemplate<K, V> {
                 }
                 return null;
             }
-        }, file);        
+        }, file, true);
+    }
+
+    /**
+     * Deletes a file by its name while holding an exclusive
+     * lock for the name.
+     * 
+     * @param name the file name
+     * @param directory the cache directory
+     * @return true if a file was deleted
+     */
+    public boolean deleteFile(String name, File directory) {
+        return execute(new FileCallback<Boolean>() {
+            @Override
+            public Boolean doWithFile(File file) {
+                return file.isFile() && file.delete();
+            }
+        }, new File(directory, name), true);
     }
     
     public int countFilesInDirectory(File directory) {
@@ -184,6 +574,60 @@ public class FileTemplate<K, V> {
         }, directory);
     }
     
+    /**
+     * Deletes temporary files left behind by interrupted atomic writes.
+     * Only files not modified for a given time are deleted so that
+     * temporary files of writes still in progress, possibly by another
+     * cache instance using a same directory, are left alone.
+     * 
+     * @param directory the cache directory
+     * @param minAge the minimum age in milliseconds of deleted files
+     * @return the number of deleted files
+     */
+    public int sweepTempFiles(File directory, long minAge) {
+        final long modifiedBefore = System.currentTimeMillis() - minAge;
+        return execute(new FileCallback<Integer>() {
+            @Override
+            public Integer doWithFile(File file) {
+                int count = 0;
+                File[] files = file.listFiles();
+                if (files != null) {
+                    for (File f : files) {
+                        if (isTempFile(f.getName()) && f.lastModified() < modifiedBefore && f.delete()) {
+                            count++;
+                        }
+                    }
+                }
+                return count;
+            }
+        }, directory);
+    }
+
+    /**
+     * Checks if a file name matches temporary files used with atomic writes.
+     * These are named by {@link File#createTempFile(String, String, File)}
+     * with a number between {@link #TEMP_FILE_PREFIX} and the target
+     * file name on one side and {@link #TEMP_FILE_SUFFIX} on the other.
+     * 
+     * @param name the file name
+     * @return True if name is a temporary file name, false otherwise
+     */
+    public static boolean isTempFile(String name) {
+        if (!name.startsWith(TEMP_FILE_PREFIX) || !name.endsWith(TEMP_FILE_SUFFIX)) {
+            return false;
+        }
+        int end = name.length() - TEMP_FILE_SUFFIX.length();
+        int start = end;
+        while (start > TEMP_FILE_PREFIX.length() && Character.isDigit(name.charAt(start - 1))) {
+            start--;
+        }
+        return start < end;
+    }
+
+    private static void assertNotTempFile(String name) {
+        Assert.isTrue(!isTempFile(name), "File name [" + name + "] is reserved for temporary files");
+    }
+
     /**
      * Simple pass-through to {@link File#isFile()} method.
      * 
@@ -220,5 +664,220 @@ public class FileTemplate<K, V> {
             throw new DataAccessResourceFailureException(e.getMessage(), e);
         }   
     }
+
+    /**
+     * Execute the action specified by the given callback object within
+     * a {@link File} while holding a lock for the file name.
+     * 
+     * @param callback callback object that specifies the File action
+     * @param file file handle to work with
+     * @param exclusive true to hold an exclusive lock, false for a shared lock
+     * @return a result object returned by the callback, or null
+     * @throws DataAccessException in case of file errors
+     */
+    public <T> T execute(FileCallback<T> callback, File file, boolean exclusive) throws DataAccessException {
+        ReadWriteLock lock = mLocks.getLock(file.getName());
+        Lock l = exclusive ? lock.writeLock() : lock.readLock();
+        l.lock();
+        try {
+            return execute(callback, file);
+        } finally {
+            l.unlock();
+        }
+    }
+
+    /**
+     * Writes bytes to a file either directly or atomically
+     * through a temporary file.
+     * 
+     * @param bytes the bytes to write
+     * @param file the target file
+     * @throws IOException in case of I/O errors
+     */
+    protected void writeFile(final byte[] bytes, File file) throws IOException {
+        writeFile(new ContentWriter() {
+            public void write(OutputStream out) throws IOException {
+                out.write(bytes);
+            }
+        }, file);
+    }
+
+    /**
+     * Checks if value serializer is able to stream values.
+     */
+    private boolean isStreaming() {
+        return mValueSerializer instanceof StreamingCacheValueSerializer;
+    }
+
+    /**
+     * Writes a value using either pre-serialized bytes or
+     * streaming it directly to a file.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeValue(final V value, final byte[] bytes, final EntryHeader header, File file) throws IOException {
+        if (header != null) {
+            writeFile(new ContentWriter() {
+                public void write(OutputStream out) throws IOException {
+                    out.write(header.toBytes());
+                    out.write(bytes);
+                }
+            }, file);
+        } else if (!isStreaming()) {
+            writeFile(bytes, file);
+        } else {
+            writeFile(new ContentWriter() {
+                public void write(OutputStream out) throws IOException {
+                    ((StreamingCacheValueSerializer<V>) mValueSerializer).serialize(value, out);
+                }
+            }, file);
+        }
+    }
+
+    /**
+     * Reads a value from a file either streaming it or
+     * through a byte array holding whole file content.
+     */
+    @SuppressWarnings("unchecked")
+    private Object readValue(File file, StatsCounter statsCounter) throws IOException {
+        if (mEntryHeaders) {
+            return readEntry(file, statsCounter);
+        }
+        if (isMapped(file)) {
+            long start = System.nanoTime();
+            V value = ((ByteBufferCacheValueSerializer<V>) mValueSerializer).deserialize(mapFile(file));
+            recordDeserialize(statsCounter, start);
+            return value;
+        }
+        if (!isStreaming()) {
+            byte[] bytes = FileCopyUtils.copyToByteArray(file);
+            long start = System.nanoTime();
+            V value = (V) mValueSerializer.deserialize(bytes);
+            recordDeserialize(statsCounter, start);
+            return value;
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            long start = System.nanoTime();
+            V value = ((StreamingCacheValueSerializer<V>) mValueSerializer).deserialize(in);
+            recordDeserialize(statsCounter, start);
+            return value;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a value of a file starting with an entry header. Size of a
+     * file is checked against a header before value bytes are read and
+     * checksum before they are deserialized.
+     */
+    @SuppressWarnings("unchecked")
+    private Object readEntry(File file, StatsCounter statsCounter) throws IOException {
+        long length = file.length();
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            EntryHeader header = EntryHeader.read(in);
+            if (header == null || header.getEntryLength() != length) {
+                return CORRUPT;
+            }
+            if (isMapped(file)) {
+                MappedByteBuffer buffer = mapFile(file);
+                buffer.position(header.getHeaderLength());
+                if (!header.matches(buffer)) {
+                    return CORRUPT;
+                }
+                long start = System.nanoTime();
+                V value = ((ByteBufferCacheValueSerializer<V>) mValueSerializer).deserialize(buffer.slice());
+                recordDeserialize(statsCounter, start);
+                return value;
+            }
+            byte[] bytes = new byte[(int) header.getValueLength()];
+            new DataInputStream(in).readFully(bytes);
+            if (!header.matches(bytes)) {
+                return CORRUPT;
+            }
+            long start = System.nanoTime();
+            V value = (V) mValueSerializer.deserialize(bytes);
+            recordDeserialize(statsCounter, start);
+            return value;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Deletes a corrupted file. A value written between a read and a
+     * delete may get deleted as well which is only a cache miss.
+     */
+    private void deleteCorrupt(String name, File directory) {
+        mCorruptCount.incrementAndGet();
+        deleteFile(name, directory);
+    }
+
+    private static void recordDeserialize(StatsCounter statsCounter, long start) {
+        if (statsCounter != null) {
+            statsCounter.recordDeserialize(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Checks if a file should be read through a mapping.
+     */
+    private boolean isMapped(File file) {
+        return mMappedReadThreshold >= 0 && mAtomicWrite
+                && mValueSerializer instanceof ByteBufferCacheValueSerializer
+                && file.length() >= mMappedReadThreshold;
+    }
+
+    /**
+     * Maps a whole file read-only. Mapping stays valid
+     * after the channel is closed.
+     */
+    private MappedByteBuffer mapFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void writeFile(ContentWriter writer, File file) throws IOException {
+        File target = mAtomicWrite ? File.createTempFile(TEMP_FILE_PREFIX + file.getName(), TEMP_FILE_SUFFIX,
+                file.getParentFile()) : file;
+        boolean written = false;
+        try {
+            FileOutputStream fos = new FileOutputStream(target);
+            try {
+                OutputStream out = new BufferedOutputStream(fos, BUFFER_SIZE);
+                writer.write(out);
+                out.flush();
+                if (mSyncWrite) {
+                    // make sure content is on disk before
+                    // rename makes it visible
+                    fos.getFD().sync();
+                }
+            } finally {
+                fos.close();
+            }
+            if (mAtomicWrite && !target.renameTo(file)) {
+                throw new IOException("Unable to rename " + target + " to " + file);
+            }
+            written = true;
+        } finally {
+            // never leave temporary or partially written files behind
+            if ((mAtomicWrite || !written) && target.exists()) {
+                target.delete();
+            }
+        }
+    }
+
+    /**
+     * Callback writing a content to a file stream.
+     */
+    private interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
     
 }
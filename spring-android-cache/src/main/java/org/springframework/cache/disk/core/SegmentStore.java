@@ -0,0 +1,787 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.springframework.util.Assert;
+
+/**
+ * Log-structured store packing entries into rolling segment files.
+ * Every put and remove is appended to an active segment and an in-memory
+ * index points to the latest record of a name. Once active segment grows
+ * over its max size a new segment is started.
+ * <p>
+ * Replaced and removed entries leave dead space into older segments
+ * which is reclaimed by {@link #compact()}, copying live records of
+ * mostly dead segments to an active segment and deleting old ones.
+ * If a size limit is exceeded, oldest segment is dropped. Its live
+ * records read since they were written get a second chance and are
+ * copied to an active segment, others are dropped and passed to
+ * a {@link DropListener}. Index is rebuilt when store is opened by scanning segments in order.
+ * Records are checksummed and a torn record at the end of a segment,
+ * left behind by a crash, is truncated away.
+ * <p>
+ * Record format is a header of key length, value length (-1 for a
+ * removal) and CRC32 of key and value followed by key and value bytes.
+ * <p>
+ * Reads run concurrently with each other, writes and compaction are
+ * serialized.
+ *
+ * @author Janne Valkealahti
+ */
+public class SegmentStore {
+
+    /** Prefix of segment file names */
+    public static final String SEGMENT_PREFIX = "segment-";
+
+    /** Suffix of segment file names */
+    public static final String SEGMENT_SUFFIX = ".seg";
+
+    /** Default max size of a segment */
+    public static final long DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+
+    /** Orders records by their position in segments */
+    private static final Comparator<Entry<String, Location>> LOCATION_ORDER = new Comparator<Entry<String, Location>>() {
+        @Override
+        public int compare(Entry<String, Location> lhs, Entry<String, Location> rhs) {
+            Location l = lhs.getValue();
+            Location r = rhs.getValue();
+            if (l.mSegment != r.mSegment) {
+                return l.mSegment < r.mSegment ? -1 : 1;
+            }
+            return l.mOffset < r.mOffset ? -1 : (l.mOffset == r.mOffset ? 0 : 1);
+        }
+    };
+
+    private final File mDir;
+    private final long mSegmentSize;
+    private final long mMaxBytes;
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+    /** Index of names to their latest records */
+    private final Map<String, Location> mIndex = new HashMap<String, Location>();
+    /** Segments ordered by id */
+    private final TreeMap<Integer, Segment> mSegments = new TreeMap<Integer, Segment>();
+    private Segment mActive;
+    private RandomAccessFile mActiveFile;
+    private long mLiveBytes;
+    private float mCompactionRatio = 0.5f;
+    private volatile DropListener mDropListener;
+
+    /**
+     * Instantiates a new segment store without a size limit.
+     *
+     * @param dir the store directory
+     */
+    public SegmentStore(File dir) {
+        this(dir, DEFAULT_SEGMENT_SIZE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Instantiates a new segment store. If total size of segments
+     * goes over max bytes, oldest segments are dropped.
+     *
+     * @param dir the store directory
+     * @param segmentSize the max size of a segment
+     * @param maxBytes the max total size of segments
+     */
+    public SegmentStore(File dir, long segmentSize, long maxBytes) {
+        Assert.notNull(dir, "Directory must not be null");
+        Assert.isTrue(segmentSize > 0, "Segment size must be positive");
+        Assert.isTrue(maxBytes >= segmentSize, "Max bytes must not be less than segment size");
+        mDir = dir;
+        mSegmentSize = segmentSize;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Opens this store by scanning existing segments.
+     *
+     * @throws IOException in case of I/O errors
+     */
+    public void open() throws IOException {
+        mLock.writeLock().lock();
+        try {
+            mDir.mkdirs();
+            File[] files = mDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (isSegmentFile(file.getName())) {
+                        int id = Integer.parseInt(file.getName().substring(SEGMENT_PREFIX.length(),
+                                file.getName().length() - SEGMENT_SUFFIX.length()));
+                        mSegments.put(id, new Segment(id, file));
+                    }
+                }
+            }
+            for (Segment segment : mSegments.values()) {
+                scan(segment);
+            }
+            if (mSegments.isEmpty()) {
+                roll();
+            } else {
+                mActive = mSegments.lastEntry().getValue();
+                mActiveFile = new RandomAccessFile(mActive.mFile, "rw");
+                mActiveFile.seek(mActive.mSize);
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets a value stored with a name.
+     *
+     * @param name the name
+     * @return the value or null if not found
+     * @throws IOException in case of I/O errors
+     */
+    public byte[] get(String name) throws IOException {
+        mLock.readLock().lock();
+        try {
+            Location location = mIndex.get(name);
+            if (location == null) {
+                return null;
+            }
+            location.mReferenced = true;
+            Segment segment = mSegments.get(location.mSegment);
+            byte[] bytes = new byte[location.mValueLength];
+            segment.read(ByteBuffer.wrap(bytes), location.mOffset + location.mRecordLength - bytes.length);
+            return bytes;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets values stored with given names. Records are read in
+     * the order they are laid out in segments under a single
+     * acquisition of the read lock.
+     *
+     * @param names the names
+     * @return the values by name, names not found are absent
+     * @throws IOException in case of I/O errors
+     */
+    public Map<String, byte[]> getAll(Collection<String> names) throws IOException {
+        Map<String, byte[]> values = new HashMap<String, byte[]>();
+        mLock.readLock().lock();
+        try {
+            List<Entry<String, Location>> locations = new ArrayList<Entry<String, Location>>();
+            for (String name : names) {
+                Location location = mIndex.get(name);
+                if (location != null) {
+                    locations.add(new SimpleEntry<String, Location>(name, location));
+                }
+            }
+            Collections.sort(locations, LOCATION_ORDER);
+            for (Entry<String, Location> entry : locations) {
+                Location location = entry.getValue();
+                location.mReferenced = true;
+                Segment segment = mSegments.get(location.mSegment);
+                byte[] bytes = new byte[location.mValueLength];
+                segment.read(ByteBuffer.wrap(bytes), location.mOffset + location.mRecordLength - bytes.length);
+                values.put(entry.getKey(), bytes);
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+        return values;
+    }
+
+    /**
+     * Stores a value with a name.
+     *
+     * @param name the name
+     * @param value the value
+     * @throws IOException in case of I/O errors
+     */
+    public void put(String name, byte[] value) throws IOException {
+        Assert.notNull(value, "Value must not be null");
+        mLock.writeLock().lock();
+        try {
+            Location location = append(name, value);
+            markDead(mIndex.put(name, location));
+            mLiveBytes += location.mRecordLength;
+            trimToSize();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores values with their names under a single
+     * acquisition of the write lock.
+     *
+     * @param values the values by name
+     * @throws IOException in case of I/O errors
+     */
+    public void putAll(Map<String, byte[]> values) throws IOException {
+        mLock.writeLock().lock();
+        try {
+            for (Entry<String, byte[]> entry : values.entrySet()) {
+                Assert.notNull(entry.getValue(), "Value must not be null");
+                Location location = append(entry.getKey(), entry.getValue());
+                markDead(mIndex.put(entry.getKey(), location));
+                mLiveBytes += location.mRecordLength;
+            }
+            trimToSize();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a value stored with a name.
+     *
+     * @param name the name
+     * @return true if a value was removed
+     * @throws IOException in case of I/O errors
+     */
+    public boolean remove(String name) throws IOException {
+        mLock.writeLock().lock();
+        try {
+            Location previous = mIndex.remove(name);
+            if (previous == null) {
+                return false;
+            }
+            markDead(previous);
+            // tombstone is dead from the start, it only exists
+            // to hide older records until they are compacted
+            Location tombstone = append(name, null);
+            mActive.mDead += tombstone.mRecordLength;
+            return true;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes values stored with given names under a single
+     * acquisition of the write lock.
+     *
+     * @param names the names
+     * @return the number of removed values
+     * @throws IOException in case of I/O errors
+     */
+    public int removeAll(Collection<String> names) throws IOException {
+        int removed = 0;
+        mLock.writeLock().lock();
+        try {
+            for (String name : names) {
+                Location previous = mIndex.remove(name);
+                if (previous == null) {
+                    continue;
+                }
+                markDead(previous);
+                Location tombstone = append(name, null);
+                mActive.mDead += tombstone.mRecordLength;
+                removed++;
+            }
+        } finally {
+            mLock.writeLock().unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all segments and starts from an empty store.
+     *
+     * @throws IOException in case of I/O errors
+     */
+    public void clear() throws IOException {
+        mLock.writeLock().lock();
+        try {
+            closeFiles();
+            for (Segment segment : mSegments.values()) {
+                segment.mFile.delete();
+            }
+            mSegments.clear();
+            mIndex.clear();
+            mLiveBytes = 0;
+            roll();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes this store.
+     *
+     * @throws IOException in case of I/O errors
+     */
+    public void close() throws IOException {
+        mLock.writeLock().lock();
+        try {
+            closeFiles();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forces appended records to disk.
+     *
+     * @throws IOException in case of I/O errors
+     */
+    public void sync() throws IOException {
+        mLock.writeLock().lock();
+        try {
+            mActiveFile.getFD().sync();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if there are segments whose dead space
+     * is over the compaction ratio.
+     *
+     * @return True if compaction would reclaim space
+     */
+    public boolean isCompactionNeeded() {
+        mLock.readLock().lock();
+        try {
+            for (Segment segment : mSegments.values()) {
+                if (isCompactable(segment)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies live records of mostly dead segments to the
+     * active segment and deletes the old segments.
+     *
+     * @return the number of compacted segments
+     * @throws IOException in case of I/O errors
+     */
+    public int compact() throws IOException {
+        List<Integer> ids = new ArrayList<Integer>();
+        mLock.readLock().lock();
+        try {
+            for (Segment segment : mSegments.values()) {
+                if (isCompactable(segment)) {
+                    ids.add(segment.mId);
+                }
+            }
+        } finally {
+            mLock.readLock().unlock();
+        }
+        int count = 0;
+        for (Integer id : ids) {
+            // one segment at a time to not block
+            // writers for too long
+            mLock.writeLock().lock();
+            try {
+                Segment segment = mSegments.get(id);
+                if (segment != null && isCompactable(segment)) {
+                    compact(segment);
+                    count++;
+                }
+            } finally {
+                mLock.writeLock().unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sets the ratio of dead space in a segment
+     * after which segment is compacted. Defaults to 0.5.
+     *
+     * @param ratio the compaction ratio
+     */
+    public void setCompactionRatio(float ratio) {
+        Assert.isTrue(ratio > 0 && ratio <= 1, "Compaction ratio must be within (0, 1]");
+        mCompactionRatio = ratio;
+    }
+
+    /**
+     * Sets the listener notified of live entries dropped with oldest
+     * segments. Listener is called while holding the store lock.
+     *
+     * @param dropListener the drop listener, null to not notify
+     */
+    public void setDropListener(DropListener dropListener) {
+        mDropListener = dropListener;
+    }
+
+    /**
+     * Gets the number of live entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        mLock.readLock().lock();
+        try {
+            return mIndex.size();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the size of live records.
+     *
+     * @return the live bytes
+     */
+    public long getLiveBytes() {
+        mLock.readLock().lock();
+        try {
+            return mLiveBytes;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the total size of segments including dead space.
+     *
+     * @return the total bytes
+     */
+    public long getTotalBytes() {
+        mLock.readLock().lock();
+        try {
+            long total = 0;
+            for (Segment segment : mSegments.values()) {
+                total += segment.mSize;
+            }
+            return total;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return the segment count
+     */
+    public int getSegmentCount() {
+        mLock.readLock().lock();
+        try {
+            return mSegments.size();
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a file name matches segment files.
+     *
+     * @param name the file name
+     * @return True if name is a segment file name, false otherwise
+     */
+    public static boolean isSegmentFile(String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                && name.length() > SEGMENT_PREFIX.length() + SEGMENT_SUFFIX.length();
+    }
+
+    private boolean isCompactable(Segment segment) {
+        return segment != mActive && segment.mSize > 0 && segment.mDead >= segment.mSize * mCompactionRatio;
+    }
+
+    private void compact(Segment segment) throws IOException {
+        boolean oldest = segment.mId == mSegments.firstKey();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (offset < segment.mSize) {
+            header.clear();
+            segment.read(header, offset);
+            header.flip();
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            byte[] key = new byte[keyLength];
+            segment.read(ByteBuffer.wrap(key), offset + HEADER_SIZE);
+            String name = new String(key, "UTF-8");
+            int recordLength = HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            Location location = mIndex.get(name);
+            if (valueLength == TOMBSTONE) {
+                // tombstone still hides a record in an older segment
+                if (location == null && !oldest) {
+                    Location tombstone = append(name, null);
+                    mActive.mDead += tombstone.mRecordLength;
+                }
+            } else if (location != null && location.mSegment == segment.mId && location.mOffset == offset) {
+                byte[] value = new byte[valueLength];
+                segment.read(ByteBuffer.wrap(value), offset + HEADER_SIZE + keyLength);
+                Location moved = append(name, value);
+                moved.mReferenced = location.mReferenced;
+                mIndex.put(name, moved);
+            }
+            offset += recordLength;
+        }
+        deleteSegment(segment);
+    }
+
+    private void trimToSize() throws IOException {
+        long total = 0;
+        for (Segment segment : mSegments.values()) {
+            total += segment.mSize;
+        }
+        while (total > mMaxBytes && mSegments.size() > 1) {
+            Segment oldest = mSegments.firstEntry().getValue();
+            List<Entry<String, Location>> live = new ArrayList<Entry<String, Location>>();
+            for (Entry<String, Location> entry : mIndex.entrySet()) {
+                if (entry.getValue().mSegment == oldest.mId) {
+                    live.add(new SimpleEntry<String, Location>(entry.getKey(), entry.getValue()));
+                }
+            }
+            Collections.sort(live, LOCATION_ORDER);
+            DropListener listener = mDropListener;
+            for (Entry<String, Location> entry : live) {
+                String name = entry.getKey();
+                Location location = entry.getValue();
+                mLiveBytes -= location.mRecordLength;
+                if (location.mReferenced) {
+                    // copy clears the read mark so a record is
+                    // dropped if it isn't read again
+                    byte[] value = new byte[location.mValueLength];
+                    oldest.read(ByteBuffer.wrap(value), location.mOffset + location.mRecordLength - value.length);
+                    Location carried = append(name, value);
+                    mIndex.put(name, carried);
+                    mLiveBytes += carried.mRecordLength;
+                    total += carried.mRecordLength;
+                } else {
+                    mIndex.remove(name);
+                    if (listener != null) {
+                        listener.onDrop(name, location.mRecordLength);
+                    }
+                }
+            }
+            total -= oldest.mSize;
+            deleteSegment(oldest);
+        }
+    }
+
+    private void scan(Segment segment) throws IOException {
+        long size = segment.mFile.length();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        while (offset + HEADER_SIZE <= size) {
+            header.clear();
+            segment.read(header, offset);
+            header.flip();
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            int checksum = header.getInt();
+            if (keyLength <= 0 || valueLength < TOMBSTONE
+                    || offset + HEADER_SIZE + keyLength + Math.max(valueLength, 0) > size) {
+                break;
+            }
+            byte[] data = new byte[keyLength + Math.max(valueLength, 0)];
+            segment.read(ByteBuffer.wrap(data), offset + HEADER_SIZE);
+            crc.reset();
+            crc.update(data);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            String name = new String(data, 0, keyLength, "UTF-8");
+            int recordLength = HEADER_SIZE + data.length;
+            segment.mSize = offset + recordLength;
+            if (valueLength == TOMBSTONE) {
+                segment.mDead += recordLength;
+                Location previous = mIndex.remove(name);
+                if (previous != null) {
+                    markDead(previous);
+                }
+            } else {
+                Location location = new Location(segment.mId, offset, recordLength, valueLength);
+                markDead(mIndex.put(name, location));
+                mLiveBytes += recordLength;
+            }
+            offset += recordLength;
+        }
+        if (segment.mSize < size) {
+            // torn or corrupted tail
+            RandomAccessFile file = new RandomAccessFile(segment.mFile, "rw");
+            try {
+                file.setLength(segment.mSize);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    private Location append(String name, byte[] value) throws IOException {
+        byte[] key = name.getBytes("UTF-8");
+        int valueLength = value == null ? TOMBSTONE : value.length;
+        int recordLength = HEADER_SIZE + key.length + (value == null ? 0 : value.length);
+        if (mActive.mSize > 0 && mActive.mSize + recordLength > mSegmentSize) {
+            roll();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        if (value != null) {
+            crc.update(value);
+        }
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(key.length).putInt(valueLength).putInt((int) crc.getValue());
+        record.put(key);
+        if (value != null) {
+            record.put(value);
+        }
+        long offset = mActive.mSize;
+        mActiveFile.write(record.array());
+        mActive.mSize += recordLength;
+        return new Location(mActive.mId, offset, recordLength, valueLength);
+    }
+
+    private void markDead(Location location) {
+        if (location != null) {
+            Segment segment = mSegments.get(location.mSegment);
+            if (segment != null) {
+                segment.mDead += location.mRecordLength;
+            }
+            mLiveBytes -= location.mRecordLength;
+        }
+    }
+
+    private void roll() throws IOException {
+        if (mActiveFile != null) {
+            mActiveFile.close();
+        }
+        int id = mSegments.isEmpty() ? 1 : mSegments.lastKey() + 1;
+        mActive = new Segment(id, new File(mDir, segmentName(id)));
+        mSegments.put(id, mActive);
+        mActiveFile = new RandomAccessFile(mActive.mFile, "rw");
+        mActiveFile.setLength(0);
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+        mSegments.remove(segment.mId);
+        segment.close();
+        segment.mFile.delete();
+    }
+
+    private void closeFiles() throws IOException {
+        for (Segment segment : mSegments.values()) {
+            segment.close();
+        }
+        if (mActiveFile != null) {
+            mActiveFile.close();
+            mActiveFile = null;
+        }
+    }
+
+    private static String segmentName(int id) {
+        String number = Integer.toString(id);
+        StringBuilder buf = new StringBuilder(SEGMENT_PREFIX);
+        for (int i = number.length(); i < 8; i++) {
+            buf.append('0');
+        }
+        return buf.append(number).append(SEGMENT_SUFFIX).toString();
+    }
+
+    /**
+     * Listener of live entries dropped with oldest segments.
+     */
+    public interface DropListener {
+
+        /**
+         * Called when a live entry is dropped.
+         *
+         * @param name the name of a dropped entry
+         * @param recordLength the size of a dropped record
+         */
+        void onDrop(String name, int recordLength);
+
+    }
+
+    /**
+     * Segment file and its bookkeeping.
+     */
+    private static class Segment {
+        final int mId;
+        final File mFile;
+        long mSize;
+        long mDead;
+        private RandomAccessFile mReader;
+
+        Segment(int id, File file) {
+            mId = id;
+            mFile = file;
+        }
+
+        void read(ByteBuffer buffer, long position) throws IOException {
+            FileChannel channel;
+            synchronized (this) {
+                if (mReader == null) {
+                    mReader = new RandomAccessFile(mFile, "r");
+                }
+                channel = mReader.getChannel();
+            }
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of segment " + mFile);
+                }
+                position += read;
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (mReader != null) {
+                mReader.close();
+                mReader = null;
+            }
+        }
+    }
+
+    /**
+     * Location of a record in a segment.
+     */
+    private static class Location {
+        final int mSegment;
+        final long mOffset;
+        final int mRecordLength;
+        final int mValueLength;
+        /** Set by readers which hold only the read lock */
+        volatile boolean mReferenced;
+
+        Location(int segment, long offset, int recordLength, int valueLength) {
+            mSegment = segment;
+            mOffset = offset;
+            mRecordLength = recordLength;
+            mValueLength = valueLength;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.core;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.util.Assert;
+
+/**
+ * Fixed set of read/write locks where a lock is chosen by a cache
+ * file name. Operations on different files proceed in parallel as long
+ * as names map to different stripes while operations on a same file
+ * are always serialized.
+ * <p>
+ * Caller must not hold a lock for one name while acquiring a lock for
+ * another name because names may share a stripe and lock ordering
+ * between stripes is not defined.
+ *
+ * @author Janne Valkealahti
+ */
+public class StripedLock {
+
+    /** Default number of stripes */
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantReadWriteLock[] mLocks;
+    private final int mMask;
+
+    /**
+     * Instantiates a new striped lock with {@link #DEFAULT_STRIPES} stripes.
+     */
+    public StripedLock() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Instantiates a new striped lock. Number of stripes
+     * is rounded up to a power of two.
+     *
+     * @param stripes the number of stripes
+     */
+    public StripedLock(int stripes) {
+        Assert.isTrue(stripes > 0, "Number of stripes must be positive");
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        mLocks = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            mLocks[i] = new ReentrantReadWriteLock();
+        }
+        mMask = size - 1;
+    }
+
+    /**
+     * Gets the read/write lock guarding a given file name.
+     *
+     * @param name the file name
+     * @return the lock for a name
+     */
+    public ReadWriteLock getLock(String name) {
+        return mLocks[indexOf(name)];
+    }
+
+    /**
+     * Gets the shared lock guarding reads of a given file name.
+     *
+     * @param name the file name
+     * @return the read lock for a name
+     */
+    public Lock readLock(String name) {
+        return mLocks[indexOf(name)].readLock();
+    }
+
+    /**
+     * Gets the exclusive lock guarding writes of a given file name.
+     *
+     * @param name the file name
+     * @return the write lock for a name
+     */
+    public Lock writeLock(String name) {
+        return mLocks[indexOf(name)].writeLock();
+    }
+
+    /**
+     * Gets the number of stripes.
+     *
+     * @return the number of stripes
+     */
+    public int getStripes() {
+        return mLocks.length;
+    }
+
+    private int indexOf(String name) {
+        // spread bits so that similar names end up to different stripes
+        int h = name.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return h & mMask;
+    }
+
+}
@@ -17,11 +17,29 @@
 package org.springframework.cache.disk.serializer;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
-public class BitmapCacheValueSerializer implements CacheValueSerializer<Bitmap> {
+/**
+ * Serializer storing bitmaps as PNG. When used as a streaming serializer
+ * bitmaps are compressed directly into a file and decoded from it without
+ * copying the encoded image to a byte array.
+ * <p>
+ * Encoding a decoded bitmap as PNG is expensive and usually produces a
+ * larger file than the original JPEG. When original encoded bytes are
+ * available, cache them with a {@link ByteArrayCacheValueSerializer}
+ * instead and decode on read.
+ * <p>
+ * Decoding goes through {@link #decode(byte[])} and {@link #decode(InputStream)}
+ * which sub classes may override to control how bitmaps are allocated.
+ * 
+ * @author Janne Valkealahti
+ */
+public class BitmapCacheValueSerializer implements StreamingCacheValueSerializer<Bitmap> {
 
     public BitmapCacheValueSerializer() {
     }
@@ -35,7 +53,40 @@ public class BitmapCacheValueSerializer implements CacheValueSerializer<Bitmap>
 
     @Override
     public Bitmap deserialize(byte[] bytes) throws SerializationException {
-        return (bytes == null ? null : BitmapFactory.decodeByteArray(bytes, 0, bytes.length));
+        return (bytes == null ? null : decode(bytes));
+    }
+
+    @Override
+    public void serialize(Bitmap object, OutputStream out) throws IOException, SerializationException {
+        if (!object.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+            throw new SerializationException("Unable to compress bitmap");
+        }
+    }
+
+    @Override
+    public Bitmap deserialize(InputStream in) throws IOException, SerializationException {
+        return decode(in);
+    }
+
+    /**
+     * Decodes a bitmap from encoded bytes.
+     * 
+     * @param bytes the encoded bitmap
+     * @return the bitmap, null if bytes can't be decoded
+     */
+    protected Bitmap decode(byte[] bytes) {
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes a bitmap from a stream.
+     * 
+     * @param in the stream of an encoded bitmap
+     * @return the bitmap, null if stream can't be decoded
+     * @throws IOException in case of I/O errors
+     */
+    protected Bitmap decode(InputStream in) throws IOException {
+        return BitmapFactory.decodeStream(in);
     }
 
 }
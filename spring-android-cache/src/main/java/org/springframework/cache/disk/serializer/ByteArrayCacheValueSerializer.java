@@ -0,0 +1,40 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+/**
+ * Pass-through serializer for values which already are encoded bytes,
+ * like images or documents as they were received from a network. Bytes
+ * are stored as is without copying them, so caller must not modify an
+ * array after it has been put to a cache.
+ * 
+ * @author Janne Valkealahti
+ */
+public class ByteArrayCacheValueSerializer implements CacheValueSerializer<byte[]> {
+
+    public ByteArrayCacheValueSerializer() {
+    }
+
+    public byte[] serialize(byte[] bytes) throws SerializationException {
+        return bytes;
+    }
+
+    public byte[] deserialize(byte[] bytes) throws SerializationException {
+        return bytes;
+    }
+
+}
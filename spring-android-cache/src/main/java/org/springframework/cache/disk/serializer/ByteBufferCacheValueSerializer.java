@@ -0,0 +1,44 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Extension of {@link CacheValueSerializer} which is able to read objects
+ * directly from a {@link ByteBuffer}. Templates using mapped reads pass
+ * a read-only memory mapped buffer of a whole file, letting a decoder
+ * read straight from the page cache without copying file content to
+ * the heap.
+ * <p>
+ * A returned object may keep a reference to the buffer which stays
+ * valid even if the file is replaced or deleted afterwards.
+ * 
+ * @author Janne Valkealahti
+ */
+public interface ByteBufferCacheValueSerializer<T> extends CacheValueSerializer<T> {
+
+    /**
+     * Deserialize an object from a buffer. Buffer position is at the
+     * beginning of serialized data and limit at the end of it.
+     * 
+     * @param buffer the buffer to read from
+     * @return the equivalent object instance
+     */
+    T deserialize(ByteBuffer buffer) throws SerializationException;
+
+}
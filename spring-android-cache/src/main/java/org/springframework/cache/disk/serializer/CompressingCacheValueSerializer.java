@@ -0,0 +1,233 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link CacheValueSerializer} decorator compressing bytes produced by
+ * another serializer. Every entry starts with an id of a codec which
+ * wrote it followed by an original length and compressed bytes, or with
+ * zero followed by bytes which were stored as is. Decoding is a single
+ * lookup by the id, so entries written with different codecs or stored
+ * uncompressed can live in a same cache.
+ * <p>
+ * Values shorter than a minimum size are stored as is. For larger values
+ * a first block is compressed as a sample and if it doesn't shrink enough
+ * the value is considered incompressible, like already compressed images,
+ * and stored without spending time compressing all of it. Value is also
+ * stored as is if compressed result wouldn't be smaller.
+ * <p>
+ * Values are written with {@link DeflateCompressionCodec} unless other
+ * codec is given. Deflate is always available for reading so a faster
+ * codec can be taken into use without losing existing entries. Other
+ * codecs needed for reading old entries are added with
+ * {@link #addCodec(CompressionCodec)}.
+ * <p>
+ * An original length read from an entry is checked against a maximum
+ * length before a buffer is allocated for it, so a corrupted entry fails
+ * with a {@link SerializationException} instead of exhausting a heap.
+ * 
+ * @author Janne Valkealahti
+ *
+ * @param <T> the type of values
+ */
+public class CompressingCacheValueSerializer<T> implements CacheValueSerializer<T> {
+
+    /** Id of entries stored without compression */
+    public static final int STORED = 0;
+
+    /** Default size under which values are not compressed */
+    public static final int DEFAULT_MIN_SIZE = 256;
+
+    /** Default size of a block compressed as a sample */
+    public static final int DEFAULT_SAMPLE_SIZE = 4096;
+
+    /** Default ratio a sample has to be compressed to */
+    public static final float DEFAULT_MAX_SAMPLE_RATIO = 0.9f;
+
+    /** Default max original length of a compressed value */
+    public static final int DEFAULT_MAX_LENGTH = 64 * 1024 * 1024;
+
+    /** Length of a codec id and an original length */
+    private static final int HEADER_LENGTH = 5;
+
+    private final CacheValueSerializer<T> mDelegate;
+    private final CompressionCodec mCodec;
+    private final CompressionCodec[] mCodecs = new CompressionCodec[256];
+    private int mMinSize = DEFAULT_MIN_SIZE;
+    private int mSampleSize = DEFAULT_SAMPLE_SIZE;
+    private float mMaxSampleRatio = DEFAULT_MAX_SAMPLE_RATIO;
+    private int mMaxLength = DEFAULT_MAX_LENGTH;
+
+    /**
+     * Instantiates a new serializer compressing with a {@link DeflateCompressionCodec}.
+     * 
+     * @param delegate the serializer producing bytes to compress
+     */
+    public CompressingCacheValueSerializer(CacheValueSerializer<T> delegate) {
+        this(delegate, new DeflateCompressionCodec());
+    }
+
+    /**
+     * Instantiates a new serializer.
+     * 
+     * @param delegate the serializer producing bytes to compress
+     * @param codec the codec used to compress values
+     */
+    public CompressingCacheValueSerializer(CacheValueSerializer<T> delegate, CompressionCodec codec) {
+        Assert.notNull(delegate, "Delegate serializer must not be null");
+        Assert.notNull(codec, "Compression codec must not be null");
+        mDelegate = delegate;
+        mCodec = codec;
+        if (codec.getId() != DeflateCompressionCodec.ID) {
+            addCodec(new DeflateCompressionCodec());
+        }
+        addCodec(codec);
+    }
+
+    /**
+     * Adds a codec used to read entries having its id.
+     * 
+     * @param codec the codec
+     */
+    public void addCodec(CompressionCodec codec) {
+        Assert.notNull(codec, "Compression codec must not be null");
+        Assert.isTrue(codec.getId() > STORED && codec.getId() < mCodecs.length, "Invalid codec id " + codec.getId());
+        mCodecs[codec.getId()] = codec;
+    }
+
+    /**
+     * Sets the size under which values are stored without compression.
+     * Defaults to {@link #DEFAULT_MIN_SIZE}. Values shorter than a header
+     * of a compressed entry, five bytes, can't shrink and are always stored.
+     * 
+     * @param minSize the minimum size in bytes
+     */
+    public void setMinSize(int minSize) {
+        Assert.isTrue(minSize >= HEADER_LENGTH, "Minimum size must be at least " + HEADER_LENGTH);
+        mMinSize = minSize;
+    }
+
+    /**
+     * Sets the max original length of a compressed value accepted when
+     * reading. Entries claiming a larger length are rejected as corrupted.
+     * Defaults to {@link #DEFAULT_MAX_LENGTH}.
+     * 
+     * @param maxLength the max length in bytes
+     */
+    public void setMaxLength(int maxLength) {
+        Assert.isTrue(maxLength > 0, "Max length must be positive");
+        mMaxLength = maxLength;
+    }
+
+    /**
+     * Sets the size of a first block compressed to check if a value
+     * is compressible. Defaults to {@link #DEFAULT_SAMPLE_SIZE}.
+     * 
+     * @param sampleSize the sample size in bytes, zero to disable sampling
+     */
+    public void setSampleSize(int sampleSize) {
+        Assert.isTrue(sampleSize >= 0, "Sample size must not be negative");
+        mSampleSize = sampleSize;
+    }
+
+    /**
+     * Sets the ratio of compressed and original size a sample has to reach
+     * for a value to be compressed. Defaults to {@link #DEFAULT_MAX_SAMPLE_RATIO}.
+     * 
+     * @param maxSampleRatio the ratio
+     */
+    public void setMaxSampleRatio(float maxSampleRatio) {
+        Assert.isTrue(maxSampleRatio > 0, "Sample ratio must be positive");
+        mMaxSampleRatio = maxSampleRatio;
+    }
+
+    public byte[] serialize(T object) throws SerializationException {
+        byte[] bytes = mDelegate.serialize(object);
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length >= mMinSize && isCompressible(bytes)) {
+            // output is sized so that a result which fits
+            // is always smaller than storing bytes as is
+            byte[] out = new byte[bytes.length];
+            int length = mCodec.compress(bytes, 0, bytes.length, out, HEADER_LENGTH);
+            if (length >= 0) {
+                out[0] = (byte) mCodec.getId();
+                out[1] = (byte) (bytes.length >>> 24);
+                out[2] = (byte) (bytes.length >>> 16);
+                out[3] = (byte) (bytes.length >>> 8);
+                out[4] = (byte) bytes.length;
+                return Arrays.copyOf(out, HEADER_LENGTH + length);
+            }
+        }
+        byte[] out = new byte[bytes.length + 1];
+        out[0] = STORED;
+        System.arraycopy(bytes, 0, out, 1, bytes.length);
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0) {
+            throw new SerializationException("Missing compression codec id");
+        }
+        int id = bytes[0] & 0xff;
+        if (id == STORED) {
+            if (mDelegate instanceof ByteBufferCacheValueSerializer) {
+                return ((ByteBufferCacheValueSerializer<T>) mDelegate).deserialize(
+                        ByteBuffer.wrap(bytes, 1, bytes.length - 1).slice());
+            }
+            return mDelegate.deserialize(Arrays.copyOfRange(bytes, 1, bytes.length));
+        }
+        CompressionCodec codec = mCodecs[id];
+        if (codec == null) {
+            throw new SerializationException("Unknown compression codec " + id);
+        }
+        if (bytes.length < HEADER_LENGTH) {
+            throw new SerializationException("Truncated compressed value");
+        }
+        int length = (bytes[1] & 0xff) << 24 | (bytes[2] & 0xff) << 16 | (bytes[3] & 0xff) << 8 | (bytes[4] & 0xff);
+        if (length <= 0 || length > mMaxLength) {
+            throw new SerializationException("Invalid original length " + length);
+        }
+        byte[] out = new byte[length];
+        codec.decompress(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, out);
+        return mDelegate.deserialize(out);
+    }
+
+    /**
+     * Compresses a first block of a value to see if it shrinks enough.
+     */
+    private boolean isCompressible(byte[] bytes) {
+        if (mSampleSize == 0 || bytes.length <= mSampleSize) {
+            // whole value would be compressed anyway
+            return true;
+        }
+        int limit = (int) (mSampleSize * mMaxSampleRatio);
+        byte[] out = new byte[limit];
+        return mCodec.compress(bytes, 0, mSampleSize, out, 0) >= 0;
+    }
+
+}
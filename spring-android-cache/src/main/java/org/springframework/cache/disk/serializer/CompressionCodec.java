@@ -0,0 +1,63 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+/**
+ * Strategy interface for block compression used by a
+ * {@link CompressingCacheValueSerializer}. Id of a codec is stored in
+ * every compressed entry, so it must never change once entries have
+ * been written.
+ * 
+ * @author Janne Valkealahti
+ */
+public interface CompressionCodec {
+
+    /**
+     * Gets the id of this codec stored in compressed entries. Value must be
+     * between 1 and 255, zero is reserved for uncompressed entries.
+     * 
+     * @return the codec id
+     */
+    int getId();
+
+    /**
+     * Compresses bytes into a destination array. Compression gives up if
+     * result doesn't fit into space left in the destination.
+     * 
+     * @param src the source bytes
+     * @param srcOffset the offset of the first source byte
+     * @param srcLength the number of source bytes
+     * @param dest the destination array
+     * @param destOffset the offset of the first destination byte
+     * @return the compressed length, negative if result didn't fit
+     */
+    int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) throws SerializationException;
+
+    /**
+     * Decompresses bytes into a destination array which is
+     * exactly the size of the original data.
+     * 
+     * @param src the compressed bytes
+     * @param srcOffset the offset of the first compressed byte
+     * @param srcLength the number of compressed bytes
+     * @param dest the destination array
+     * @throws SerializationException if data is corrupted or doesn't
+     *         decompress to the destination size
+     */
+    void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest) throws SerializationException;
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.util.Assert;
+
+/**
+ * {@link CompressionCodec} using a raw deflate stream of the platform
+ * {@link Deflater}. Use {@link Deflater#BEST_SPEED} as a level when
+ * compression speed matters more than a ratio. Deflaters and inflaters
+ * hold native memory and are expensive to create, so they are reused
+ * per thread.
+ * 
+ * @author Janne Valkealahti
+ */
+public class DeflateCompressionCodec implements CompressionCodec {
+
+    /** Id of a deflate codec */
+    public static final int ID = 1;
+
+    private final ThreadLocal<Deflater> mDeflaters;
+
+    private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    /**
+     * Instantiates a new codec with a default compression level.
+     */
+    public DeflateCompressionCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Instantiates a new codec.
+     * 
+     * @param level the compression level from 0 to 9,
+     *        or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public DeflateCompressionCodec(final int level) {
+        Assert.isTrue(level == Deflater.DEFAULT_COMPRESSION || (level >= 0 && level <= 9),
+                "Invalid compression level " + level);
+        mDeflaters = new ThreadLocal<Deflater>() {
+            @Override
+            protected Deflater initialValue() {
+                return new Deflater(level, true);
+            }
+        };
+    }
+
+    public int getId() {
+        return ID;
+    }
+
+    public int compress(byte[] src, int srcOffset, int srcLength, byte[] dest, int destOffset) {
+        Deflater deflater = mDeflaters.get();
+        try {
+            deflater.setInput(src, srcOffset, srcLength);
+            deflater.finish();
+            int length = deflater.deflate(dest, destOffset, dest.length - destOffset);
+            return deflater.finished() ? length : -1;
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    public void decompress(byte[] src, int srcOffset, int srcLength, byte[] dest) {
+        Inflater inflater = INFLATERS.get();
+        try {
+            inflater.setInput(src, srcOffset, srcLength);
+            int length = inflater.inflate(dest);
+            if (length != dest.length) {
+                throw new SerializationException("Compressed data doesn't match its length " + dest.length);
+            }
+        } catch (DataFormatException e) {
+            throw new SerializationException("Corrupted compressed data", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+}
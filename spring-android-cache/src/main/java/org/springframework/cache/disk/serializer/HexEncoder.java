@@ -0,0 +1,76 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+/**
+ * Lowercase hex encoding using a lookup table, used by key
+ * serializers to turn hashes into file names.
+ * 
+ * @author Janne Valkealahti
+ */
+final class HexEncoder {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private HexEncoder() {
+    }
+
+    /**
+     * Encodes bytes to a hex string.
+     * 
+     * @param bytes the bytes to encode
+     * @return the hex string
+     */
+    static String encode(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            chars[j++] = DIGITS[b >>> 4];
+            chars[j++] = DIGITS[b & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes a character to 4 hex characters, most significant first.
+     * 
+     * @param value the character to encode
+     * @param chars the target array
+     * @param offset the offset in a target array
+     */
+    static void encode(char value, char[] chars, int offset) {
+        chars[offset] = DIGITS[(value >>> 12) & 0x0f];
+        chars[offset + 1] = DIGITS[(value >>> 8) & 0x0f];
+        chars[offset + 2] = DIGITS[(value >>> 4) & 0x0f];
+        chars[offset + 3] = DIGITS[value & 0x0f];
+    }
+
+    /**
+     * Encodes a value to 16 hex characters, most significant first.
+     * 
+     * @param value the value to encode
+     * @param chars the target array
+     * @param offset the offset in a target array
+     */
+    static void encode(long value, char[] chars, int offset) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = DIGITS[(int) (value & 0x0f)];
+            value >>>= 4;
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+/**
+ * Fast key serializer using the 128-bit x64 variant of MurmurHash3.
+ * Hash is computed directly from characters of a key without encoding
+ * it to bytes first and is encoded to a 32 character hex string, for
+ * example '9fb8aa583a6a8526e48ff83bce430a66'.
+ * <p>
+ * Keys up to {@link #MAX_DIRECT_LENGTH} characters are not hashed but
+ * encoded as hex of their characters. These names are always shorter
+ * than hashes, so short keys never collide with anything. Collisions
+ * of longer keys are improbable for ordinary keys like urls, but unlike
+ * with {@link SimpleHashCacheKeySerializer} they can be crafted on
+ * purpose, so keys coming from untrusted input should use that instead.
+ * 
+ * @author Janne Valkealahti
+ */
+public class Murmur3CacheKeySerializer implements CacheKeySerializer<String> {
+
+    /** Max length of a key encoded without hashing */
+    public static final int MAX_DIRECT_LENGTH = 7;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final int mSeed;
+
+    /**
+     * Instantiates a new murmur3 cache key serializer with seed 0.
+     */
+    public Murmur3CacheKeySerializer() {
+        this(0);
+    }
+
+    /**
+     * Instantiates a new murmur3 cache key serializer.
+     * 
+     * @param seed the hash seed
+     */
+    public Murmur3CacheKeySerializer(int seed) {
+        mSeed = seed;
+    }
+
+    @Override
+    public String serialize(String object) throws SerializationException {
+        int length = object.length();
+        if (length <= MAX_DIRECT_LENGTH) {
+            char[] chars = new char[length * 4];
+            for (int i = 0; i < length; i++) {
+                HexEncoder.encode(object.charAt(i), chars, i * 4);
+            }
+            return new String(chars);
+        }
+        char[] chars = new char[32];
+        hash(object, mSeed, chars);
+        return new String(chars);
+    }
+
+    /**
+     * Computes MurmurHash3 x64 128 of characters of a string as
+     * if they were encoded in UTF-16LE and writes it as hex.
+     */
+    static void hash(String s, int seed, char[] out) {
+        long h1 = seed & 0xffffffffL;
+        long h2 = seed & 0xffffffffL;
+        int length = s.length();
+        int blocks = length / 8;
+        for (int i = 0; i < blocks; i++) {
+            int p = i * 8;
+            long k1 = chars(s, p, 4);
+            long k2 = chars(s, p + 4, 4);
+
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        int tail = blocks * 8;
+        int remaining = length - tail;
+        if (remaining > 4) {
+            long k2 = chars(s, tail + 4, remaining - 4);
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            h2 ^= k2;
+        }
+        if (remaining > 0) {
+            long k1 = chars(s, tail, Math.min(remaining, 4));
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            h1 ^= k1;
+        }
+        // length in bytes
+        h1 ^= length * 2L;
+        h2 ^= length * 2L;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        HexEncoder.encode(h1, out, 0);
+        HexEncoder.encode(h2, out, 16);
+    }
+
+    /**
+     * Reads up to four characters as a little endian long.
+     */
+    private static long chars(String s, int offset, int count) {
+        long k = 0;
+        for (int i = 0; i < count; i++) {
+            k |= (long) s.charAt(offset + i) << (16 * i);
+        }
+        return k;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+}
@@ -16,7 +16,7 @@
 
 package org.springframework.cache.disk.serializer;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -25,30 +25,36 @@ import java.security.NoSuchAlgorithmException;
  * encoded string out from 'SHA-1' algorithm. Ascii encoding will use
  * characters from a set '0123456789abcdef'. Example of a final String
  * is something like '0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33'.
+ * <p>
+ * Digest instances are not thread safe, so one is kept per thread
+ * instead of looking up a new one for every key. For a faster non
+ * cryptographic alternative see {@link Murmur3CacheKeySerializer}.
  * 
  * @author Janne Valkealahti
  */
 public class SimpleHashCacheKeySerializer implements CacheKeySerializer<String> {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new SerializationException("Could not find digest instance", e);
+            }
+        }
+    };
+
     public SimpleHashCacheKeySerializer() {
     }
     
     @Override
     public String serialize(String object) throws SerializationException {
-        try {
-            // MessageDigest is not thread safe
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            byte[] digestBytes = digest.digest(object.getBytes("UTF-8"));
-            StringBuilder buf = new StringBuilder();
-            for (int i = 0; i < digestBytes.length; i++) {
-                buf.append(Integer.toString((digestBytes[i] & 0xff) + 0x100, 16).substring(1));
-            }
-            return buf.toString();
-        } catch (UnsupportedEncodingException e) {
-            throw new SerializationException("Unable to serialize key", e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new SerializationException("Could not find digest instance", e);
-        }
+        MessageDigest digest = DIGEST.get();
+        // digest() also resets the instance for the next key
+        return HexEncoder.encode(digest.digest(object.getBytes(UTF_8)));
     }
     
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Extension of {@link CacheValueSerializer} which is able to write and
+ * read objects directly from streams. Templates prefer streaming methods
+ * over byte arrays to avoid copying a whole cache entry to memory before
+ * it is decoded.
+ * <p>
+ * Implementations must not close given streams.
+ * 
+ * @author Janne Valkealahti
+ */
+public interface StreamingCacheValueSerializer<T> extends CacheValueSerializer<T> {
+
+    /**
+     * Serialize the given object to a stream.
+     * 
+     * @param object object to serialize
+     * @param out the stream to write to
+     * @throws IOException in case of I/O errors
+     */
+    void serialize(T object, OutputStream out) throws IOException, SerializationException;
+
+    /**
+     * Deserialize an object from a stream.
+     * 
+     * @param in the stream to read from
+     * @return the equivalent object instance
+     * @throws IOException in case of I/O errors
+     */
+    T deserialize(InputStream in) throws IOException, SerializationException;
+
+}
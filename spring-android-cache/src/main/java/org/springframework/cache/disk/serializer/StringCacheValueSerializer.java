@@ -16,6 +16,14 @@
 
 package org.springframework.cache.disk.serializer;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import org.springframework.util.Assert;
@@ -23,10 +31,16 @@ import org.springframework.util.Assert;
 /**
  * Simple String to byte[] (and back) serializer. Converts Strings into bytes
  * and vice-versa using the specified charset (by default UTF-8).
+ * Strings can also be streamed, in which case only a fixed size char
+ * buffer is used on top of the string itself. Mapped buffers are
+ * decoded directly without copying them to a byte array first.
  * 
  * @author Janne Valkealahti
  */
-public class StringCacheValueSerializer implements CacheValueSerializer<String> {
+public class StringCacheValueSerializer implements StreamingCacheValueSerializer<String>,
+        ByteBufferCacheValueSerializer<String> {
+
+    private static final int BUFFER_SIZE = 4096;
 
     private final Charset charset;
 
@@ -47,4 +61,31 @@ public class StringCacheValueSerializer implements CacheValueSerializer<String>
         return (bytes == null ? null : new String(bytes, charset));
     }
 
+    public void serialize(String string, OutputStream out) throws IOException {
+        if (string == null) {
+            return;
+        }
+        Writer writer = new OutputStreamWriter(out, charset);
+        writer.write(string);
+        // flush encoder without closing the stream
+        writer.flush();
+    }
+
+    public String deserialize(InputStream in) throws IOException {
+        // available bytes is a good estimate for a file
+        // and avoids growing the builder
+        StringBuilder buf = new StringBuilder(Math.max(16, in.available()));
+        Reader reader = new InputStreamReader(in, charset);
+        char[] chars = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(chars)) != -1) {
+            buf.append(chars, 0, read);
+        }
+        return buf.toString();
+    }
+
+    public String deserialize(ByteBuffer buffer) {
+        return (buffer == null ? null : charset.decode(buffer).toString());
+    }
+
 }
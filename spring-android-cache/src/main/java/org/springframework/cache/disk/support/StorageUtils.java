@@ -28,12 +28,12 @@ public class StorageUtils {
 
     public static long cachePartitionAvailableSpace() {
         StatFs statFs = new StatFs(Environment.getDownloadCacheDirectory().getPath());
-        return statFs.getAvailableBlocks() * statFs.getBlockSize();
+        return (long) statFs.getAvailableBlocks() * statFs.getBlockSize();
     }
 
     public static long dataPartitionAvailableSpace() {
         StatFs statFs = new StatFs(Environment.getDataDirectory().getPath());
-        return statFs.getAvailableBlocks() * statFs.getBlockSize();
+        return (long) statFs.getAvailableBlocks() * statFs.getBlockSize();
     }
 
     public static boolean externalStorageAvailable() {
@@ -46,7 +46,7 @@ public class StorageUtils {
             return l;
         }
         StatFs statFs = new StatFs(Environment.getExternalStorageDirectory().getPath());
-        return statFs.getAvailableBlocks() * statFs.getBlockSize();
+        return (long) statFs.getAvailableBlocks() * statFs.getBlockSize();
     }
 
     public static String getFilenameHashForKey(String key) {
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.eviction;
+
+/**
+ * Strategy interface deciding which entry should be evicted from a
+ * bounded cache. Cache notifies the policy about inserts, accesses and
+ * removals of its entries and asks for a victim when it needs to make
+ * room. Policy only tracks keys, weighing of entries is left to a cache.
+ * <p>
+ * Implementations are not required to be thread safe, caches are
+ * expected to guard calls to a policy with their own lock.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys tracked by this policy
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * Records that a new entry was added to a cache.
+     *
+     * @param key the key of added entry
+     */
+    void recordInsert(K key);
+
+    /**
+     * Records that an existing entry was read or updated.
+     *
+     * @param key the key of accessed entry
+     */
+    void recordAccess(K key);
+
+    /**
+     * Records that a key was requested but it didn't exist in a cache.
+     *
+     * @param key the requested key
+     */
+    void recordMiss(K key);
+
+    /**
+     * Records that an entry was removed from a cache either
+     * explicitly or as a result of an eviction.
+     *
+     * @param key the key of removed entry
+     */
+    void recordRemoval(K key);
+
+    /**
+     * Selects an entry to be evicted. Selected entry is not removed
+     * from the policy until {@link #recordRemoval(Object)} is called.
+     *
+     * @return the key to evict, or null if policy doesn't track any keys
+     */
+    K selectVictim();
+
+    /**
+     * Forgets all tracked keys.
+     */
+    void clear();
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.eviction;
+
+/**
+ * Probabilistic estimate of how often keys are accessed. Implemented as
+ * a count-min sketch with four rows of 4-bit counters packed into longs.
+ * Counters are halved once the number of recorded accesses reaches a
+ * sample size, which lets the sketch forget entries that used to be
+ * popular.
+ * <p>
+ * Derived from the frequency sketch in Caffeine
+ * (Ben Manes, Apache License 2.0).
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys counted by this sketch
+ */
+public class FrequencySketch<K> {
+
+    private static final long[] SEEDS = new long[] {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private long[] mTable;
+    private int mTableMask;
+    private int mSampleSize;
+    private int mSize;
+
+    /**
+     * Instantiates a new frequency sketch.
+     *
+     * @param expectedEntries the expected number of entries in a cache
+     */
+    public FrequencySketch(int expectedEntries) {
+        ensureCapacity(expectedEntries);
+    }
+
+    /**
+     * Grows the sketch if it is too small for a given number of entries.
+     * Growing the sketch forgets all recorded frequencies.
+     *
+     * @param expectedEntries the expected number of entries in a cache
+     */
+    public void ensureCapacity(int expectedEntries) {
+        int maximum = Math.max(16, Math.min(expectedEntries, 1 << 30));
+        if (mTable != null && mTable.length >= maximum) {
+            return;
+        }
+        mTable = new long[ceilingPowerOfTwo(maximum)];
+        mTableMask = mTable.length - 1;
+        mSampleSize = 10 * maximum;
+        mSize = 0;
+    }
+
+    /**
+     * Returns the estimated number of occurrences of a key,
+     * up to the maximum value of 15.
+     *
+     * @param key the key
+     * @return the estimated frequency of a key
+     */
+    public int frequency(K key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((mTable[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the estimated frequency of a key.
+     *
+     * @param key the key
+     */
+    public void increment(K key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++mSize == mSampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Forgets all recorded frequencies.
+     */
+    public void clear() {
+        for (int i = 0; i < mTable.length; i++) {
+            mTable[i] = 0L;
+        }
+        mSize = 0;
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((mTable[i] & mask) != mask) {
+            mTable[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < mTable.length; i++) {
+            odd += Long.bitCount(mTable[i] & ONE_MASK);
+            mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+        }
+        mSize = (mSize >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return ((int) hash) & mTableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+    }
+
+}
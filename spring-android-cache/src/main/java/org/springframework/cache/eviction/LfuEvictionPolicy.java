@@ -0,0 +1,106 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.eviction;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * {@link EvictionPolicy} evicting the least frequently used entry.
+ * Ties between entries having a same access count are resolved by
+ * evicting the least recently used one.
+ * <p>
+ * Frequencies are only kept for entries which exist in a cache, so
+ * an entry starts from a scratch every time it is added.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys tracked by this policy
+ */
+public class LfuEvictionPolicy<K> implements EvictionPolicy<K> {
+
+    /** Access counts of tracked keys */
+    private final Map<K, Integer> mCounts = new HashMap<K, Integer>();
+    /** Keys bucketed by access count, buckets in insertion order */
+    private final TreeMap<Integer, LinkedHashSet<K>> mBuckets = new TreeMap<Integer, LinkedHashSet<K>>();
+
+    @Override
+    public void recordInsert(K key) {
+        recordRemoval(key);
+        mCounts.put(key, 1);
+        bucket(1).add(key);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        Integer count = mCounts.get(key);
+        if (count == null) {
+            return;
+        }
+        unbucket(count, key);
+        int next = count == Integer.MAX_VALUE ? count : count + 1;
+        mCounts.put(key, next);
+        bucket(next).add(key);
+    }
+
+    @Override
+    public void recordMiss(K key) {
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        Integer count = mCounts.remove(key);
+        if (count != null) {
+            unbucket(count, key);
+        }
+    }
+
+    @Override
+    public K selectVictim() {
+        Entry<Integer, LinkedHashSet<K>> lowest = mBuckets.firstEntry();
+        return lowest != null ? lowest.getValue().iterator().next() : null;
+    }
+
+    @Override
+    public void clear() {
+        mCounts.clear();
+        mBuckets.clear();
+    }
+
+    private LinkedHashSet<K> bucket(int count) {
+        LinkedHashSet<K> bucket = mBuckets.get(count);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<K>();
+            mBuckets.put(count, bucket);
+        }
+        return bucket;
+    }
+
+    private void unbucket(int count, K key) {
+        LinkedHashSet<K> bucket = mBuckets.get(count);
+        if (bucket != null) {
+            bucket.remove(key);
+            if (bucket.isEmpty()) {
+                mBuckets.remove(count);
+            }
+        }
+    }
+
+}
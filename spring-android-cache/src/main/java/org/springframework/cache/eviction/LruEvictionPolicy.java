@@ -0,0 +1,66 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * {@link EvictionPolicy} evicting the least recently used entry.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys tracked by this policy
+ */
+public class LruEvictionPolicy<K> implements EvictionPolicy<K> {
+
+    /** Simple object because we don't need values in lru map */
+    private static final Object NULL_HOLDER = new Object();
+
+    private final LinkedHashMap<K, Object> mOrder = new LinkedHashMap<K, Object>(16, 0.75f, true);
+
+    @Override
+    public void recordInsert(K key) {
+        mOrder.put(key, NULL_HOLDER);
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        mOrder.get(key);
+    }
+
+    @Override
+    public void recordMiss(K key) {
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        mOrder.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        Iterator<K> iterator = mOrder.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    public void clear() {
+        mOrder.clear();
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * {@link EvictionPolicy} based on W-TinyLFU. New entries are first
+ * kept in a small lru window. Entries overflowing from a window move
+ * to a main lru region as candidates and when room is needed a
+ * candidate has to have a higher estimated access frequency than the
+ * least recently used entry of a main region or it is evicted instead.
+ * <p>
+ * Access frequencies are estimated with a {@link FrequencySketch} which
+ * also counts cache misses. This means that entries seen only once,
+ * like during a scan through a large data set, are not able to flush
+ * frequently used entries from a cache.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys tracked by this policy
+ */
+public class TinyLfuEvictionPolicy<K> implements EvictionPolicy<K> {
+
+    /** Simple object because we don't need values in lru maps */
+    private static final Object NULL_HOLDER = new Object();
+
+    /** Default share of entries kept in a window */
+    private static final float DEFAULT_WINDOW_RATIO = 0.01f;
+
+    private final LinkedHashMap<K, Object> mWindow = new LinkedHashMap<K, Object>(16, 0.75f, true);
+    private final LinkedHashMap<K, Object> mMain = new LinkedHashMap<K, Object>(16, 0.75f, true);
+    /** Entries moved from a window to a main region, not yet admitted */
+    private final LinkedHashSet<K> mCandidates = new LinkedHashSet<K>();
+    private final FrequencySketch<K> mSketch;
+    private final float mWindowRatio;
+    private int mCapacity;
+
+    /**
+     * Instantiates a new tiny lfu eviction policy
+     * expecting 1024 entries.
+     */
+    public TinyLfuEvictionPolicy() {
+        this(1024);
+    }
+
+    /**
+     * Instantiates a new tiny lfu eviction policy.
+     *
+     * @param expectedEntries the expected number of entries in a cache
+     */
+    public TinyLfuEvictionPolicy(int expectedEntries) {
+        this(expectedEntries, DEFAULT_WINDOW_RATIO);
+    }
+
+    /**
+     * Instantiates a new tiny lfu eviction policy.
+     *
+     * @param expectedEntries the expected number of entries in a cache
+     * @param windowRatio the share of entries kept in a window
+     */
+    public TinyLfuEvictionPolicy(int expectedEntries, float windowRatio) {
+        mCapacity = Math.max(16, expectedEntries);
+        mSketch = new FrequencySketch<K>(mCapacity);
+        mWindowRatio = windowRatio;
+    }
+
+    @Override
+    public void recordInsert(K key) {
+        mSketch.increment(key);
+        if (mMain.remove(key) != null) {
+            mCandidates.remove(key);
+        }
+        mWindow.put(key, NULL_HOLDER);
+        ensureCapacity();
+        int windowMax = Math.max(1, (int) ((mWindow.size() + mMain.size()) * mWindowRatio));
+        while (mWindow.size() > windowMax) {
+            K eldest = eldest(mWindow);
+            mWindow.remove(eldest);
+            mMain.put(eldest, NULL_HOLDER);
+            mCandidates.add(eldest);
+        }
+    }
+
+    @Override
+    public void recordAccess(K key) {
+        mSketch.increment(key);
+        if (mWindow.get(key) == null && mMain.get(key) != null) {
+            // proved to be useful in a main region
+            mCandidates.remove(key);
+        }
+    }
+
+    @Override
+    public void recordMiss(K key) {
+        mSketch.increment(key);
+    }
+
+    @Override
+    public void recordRemoval(K key) {
+        mWindow.remove(key);
+        mMain.remove(key);
+        mCandidates.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        K victim = eldest(mMain);
+        if (victim == null) {
+            return eldest(mWindow);
+        }
+        K candidate = null;
+        for (K k : mCandidates) {
+            if (!k.equals(victim)) {
+                candidate = k;
+                break;
+            }
+        }
+        if (candidate == null) {
+            return victim;
+        }
+        if (mSketch.frequency(candidate) > mSketch.frequency(victim)) {
+            // candidate is admitted and victim is evicted
+            mCandidates.remove(candidate);
+            return victim;
+        }
+        return candidate;
+    }
+
+    @Override
+    public void clear() {
+        mWindow.clear();
+        mMain.clear();
+        mCandidates.clear();
+        mSketch.clear();
+    }
+
+    private void ensureCapacity() {
+        int size = mWindow.size() + mMain.size();
+        if (size > mCapacity) {
+            mCapacity = size * 2;
+            mSketch.ensureCapacity(mCapacity);
+        }
+    }
+
+    private static <T> T eldest(LinkedHashMap<T, Object> map) {
+        Iterator<T> iterator = map.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+}
@@ -0,0 +1,691 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.lru;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.cache.BulkCache;
+import org.springframework.cache.Cache;
+import org.springframework.cache.ExpirableCache;
+import org.springframework.cache.InstrumentedCache;
+import org.springframework.cache.LoadingCache;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.ConcurrentStatsCounter;
+import org.springframework.cache.support.ExpiringValue;
+import org.springframework.cache.support.RemovalCause;
+import org.springframework.cache.support.RemovalListener;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.cache.support.SingleFlight;
+import org.springframework.cache.support.StatsCounter;
+import org.springframework.util.Assert;
+
+/**
+ * Memory {@link Cache} implementation bounded by a total weight of its
+ * entries and evicting least recently used entries. Unlike {@link LruCache}
+ * this implementation doesn't depend on Android classes and doesn't
+ * serialize lookups with a single lock.
+ * <p>
+ * Entries are kept in a {@link ConcurrentHashMap} so lookups never block.
+ * Instead of reordering the LRU list on every read, accessed entries are
+ * recorded to small per-thread-striped read buffers which are drained
+ * to the LRU list in batches under an eviction lock, either by a writer
+ * or by a reader filling up a buffer. If a buffer is full and the lock
+ * is busy, a read is not recorded which only makes LRU order slightly
+ * less accurate under contention. Writes update the map and the list
+ * under the eviction lock.
+ * <p>
+ * Entries are weighed with a {@link Weigher}, every entry weighs one if
+ * weigher is not given.
+ * <p>
+ * Bulk writes and evictions take the eviction lock once per batch and
+ * evict to the weight limit only after a whole batch is applied.
+ * <p>
+ * A {@link RemovalListener} is notified of removed entries after the
+ * eviction lock is released, which allows resources held by values to
+ * be released or reused. Clearing a whole cache is not notified.
+ *
+ * @author Janne Valkealahti
+ */
+public class ConcurrentLruCache implements LoadingCache, ExpirableCache, InstrumentedCache, BulkCache {
+
+    private static final Object NULL_HOLDER = new NullHolder();
+
+    /** Size of a single read buffer, a power of two */
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    /** Number of buffered reads after which a reader tries to drain */
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private final String mName;
+    private final long mMaxWeight;
+    private final Weigher<Object, Object> mWeigher;
+    private final boolean mAllowNullValues;
+    private final ConcurrentHashMap<Object, Node> mData = new ConcurrentHashMap<Object, Node>();
+    private final ReadBuffer[] mReadBuffers;
+    private final int mReadBufferMask;
+    /** Lock guarding the LRU list and the weight */
+    private final ReentrantLock mEvictionLock = new ReentrantLock();
+    /** Least recently used node, guarded by eviction lock */
+    private Node mHead;
+    /** Most recently used node, guarded by eviction lock */
+    private Node mTail;
+    /** Current weight, guarded by eviction lock */
+    private long mWeight;
+    private final SingleFlight mLoads = new SingleFlight(new SingleFlight.Lookup() {
+        @Override
+        public ValueWrapper lookup(Object key) {
+            return peek(key);
+        }
+    });
+    private volatile StatsCounter mStatsCounter;
+    private volatile long mTimeToLive;
+    private volatile long mTimeToIdle;
+    private volatile RemovalListener<Object, Object> mRemovalListener;
+
+    /**
+     * Instantiates a new concurrent lru cache where
+     * every entry weighs one.
+     *
+     * @param name the cache name
+     * @param maxSize the max number of entries
+     */
+    public ConcurrentLruCache(String name, long maxSize) {
+        this(name, maxSize, null, true);
+    }
+
+    /**
+     * Instantiates a new concurrent lru cache.
+     *
+     * @param name the cache name
+     * @param maxWeight the max total weight of entries
+     * @param weigher the weigher of entries, null if every entry weighs one
+     */
+    public ConcurrentLruCache(String name, long maxWeight, Weigher<?, ?> weigher) {
+        this(name, maxWeight, weigher, true);
+    }
+
+    /**
+     * Instantiates a new concurrent lru cache.
+     *
+     * @param name the cache name
+     * @param maxWeight the max total weight of entries
+     * @param weigher the weigher of entries, null if every entry weighs one
+     * @param allowNullValues whether to accept and convert null values for this cache
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(String name, long maxWeight, Weigher<?, ?> weigher, boolean allowNullValues) {
+        Assert.isTrue(maxWeight >= 0, "Max weight must not be negative");
+        mName = name;
+        mMaxWeight = maxWeight;
+        mWeigher = (Weigher<Object, Object>) weigher;
+        mAllowNullValues = allowNullValues;
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+        mReadBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            mReadBuffers[i] = new ReadBuffer();
+        }
+        mReadBufferMask = stripes - 1;
+        setStatsCounter(new ConcurrentStatsCounter());
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the underlying {@link ConcurrentHashMap} of
+     * internal entry nodes.
+     */
+    @Override
+    public Object getNativeCache() {
+        return mData;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object value = lookup(key, System.currentTimeMillis());
+        if (value == null) {
+            mStatsCounter.recordMisses(1);
+            return null;
+        }
+        mStatsCounter.recordHits(1);
+        return new SimpleValueWrapper(fromStoreValue(value));
+    }
+
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        long now = System.currentTimeMillis();
+        for (Object key : keys) {
+            Object value = lookup(key, now);
+            if (value != null) {
+                values.put(key, fromStoreValue(value));
+            }
+        }
+        mStatsCounter.recordHits(values.size());
+        mStatsCounter.recordMisses(keys.size() - values.size());
+        return values;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> loader) {
+        return mLoads.get(this, key, loader);
+    }
+
+    @Override
+    public <T> Future<T> getAsync(Object key, Callable<T> loader, Executor executor) {
+        return mLoads.getAsync(this, key, loader, executor);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        doPut(key, value, mTimeToLive);
+    }
+
+    @Override
+    public void put(Object key, Object value, long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "Time-to-live must be positive");
+        doPut(key, value, timeToLive);
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        long now = System.currentTimeMillis();
+        List<Node> nodes = new ArrayList<Node>(entries.size());
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            Object storeValue = toStoreValue(entry.getValue());
+            Assert.notNull(storeValue, "Cache '" + mName + "' doesn't allow null values");
+            nodes.add(new Node(entry.getKey(), ExpiringValue.wrap(storeValue, mTimeToLive, mTimeToIdle, now),
+                    weigh(entry.getKey(), storeValue)));
+        }
+        List<Node> victims;
+        mEvictionLock.lock();
+        try {
+            drainReadBuffers();
+            for (Node node : nodes) {
+                Node previous = mData.put(node.mKey, node);
+                if (previous != null) {
+                    unlink(previous);
+                }
+                linkLast(node);
+            }
+            victims = evictToLimit();
+        } finally {
+            mEvictionLock.unlock();
+        }
+        mStatsCounter.recordPuts(nodes.size());
+        notifyRemovals(victims, RemovalCause.SIZE);
+    }
+
+    @Override
+    public void evict(Object key) {
+        Node node = mData.get(key);
+        if (node != null && removeNode(node)) {
+            mStatsCounter.recordRemoval(RemovalCause.EXPLICIT, node.mWeight);
+            notifyRemoval(node, RemovalCause.EXPLICIT);
+        }
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        List<Node> removed = new ArrayList<Node>();
+        mEvictionLock.lock();
+        try {
+            for (Object key : keys) {
+                Node node = mData.get(key);
+                if (node != null && removeNode(node)) {
+                    mStatsCounter.recordRemoval(RemovalCause.EXPLICIT, node.mWeight);
+                    removed.add(node);
+                }
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+        notifyRemovals(removed, RemovalCause.EXPLICIT);
+    }
+
+    @Override
+    public void clear() {
+        mEvictionLock.lock();
+        try {
+            drainReadBuffers();
+            for (Node node = mHead; node != null; node = node.mNext) {
+                node.mLinked = false;
+            }
+            mData.clear();
+            mHead = null;
+            mTail = null;
+            mWeight = 0;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    @Override
+    public int purgeExpired(int maxEntries) {
+        long now = System.currentTimeMillis();
+        List<Node> expired = new ArrayList<Node>();
+        for (Node node : mData.values()) {
+            if (expired.size() >= maxEntries) {
+                break;
+            }
+            Object value = node.mValue;
+            if (value instanceof ExpiringValue && ((ExpiringValue) value).isExpired(now)) {
+                expired.add(node);
+            }
+        }
+        int removed = 0;
+        for (Node node : expired) {
+            if (removeNode(node)) {
+                mStatsCounter.recordRemoval(RemovalCause.EXPIRED, node.mWeight);
+                notifyRemoval(node, RemovalCause.EXPIRED);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Sets the default time-to-live of entries in milliseconds. Zero
+     * or negative value means that entries never expire.
+     *
+     * @param timeToLive the time-to-live
+     */
+    public void setTimeToLive(long timeToLive) {
+        mTimeToLive = timeToLive;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an entry which hasn't
+     * been read expires. Zero or negative value disables idle timeout.
+     *
+     * @param timeToIdle the idle timeout
+     */
+    public void setTimeToIdle(long timeToIdle) {
+        mTimeToIdle = timeToIdle;
+    }
+
+    /**
+     * Gets the number of entries in this cache.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return mData.size();
+    }
+
+    /**
+     * Gets the current total weight of entries.
+     *
+     * @return the current weight
+     */
+    public long getWeight() {
+        mEvictionLock.lock();
+        try {
+            return mWeight;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the max total weight of entries.
+     *
+     * @return the max weight
+     */
+    public long getMaxWeight() {
+        return mMaxWeight;
+    }
+
+    /**
+     * Sets a listener notified when entries are evicted, expire
+     * or are removed explicitly.
+     *
+     * @param removalListener the removal listener, null to remove a listener
+     */
+    @SuppressWarnings("unchecked")
+    public void setRemovalListener(RemovalListener<?, ?> removalListener) {
+        mRemovalListener = (RemovalListener<Object, Object>) removalListener;
+    }
+
+    @Override
+    public void setStatsCounter(StatsCounter statsCounter) {
+        Assert.notNull(statsCounter, "StatsCounter must not be null");
+        mStatsCounter = statsCounter;
+        mLoads.setStatsCounter(statsCounter);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return mStatsCounter.snapshot();
+    }
+
+    /**
+     * Applies buffered reads to the LRU order. This is done
+     * automatically and is only needed when an exact order
+     * is wanted, for example in tests.
+     */
+    public void cleanUp() {
+        mEvictionLock.lock();
+        try {
+            drainReadBuffers();
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * Convert the given value from the internal store to a user value
+     * returned from the get method (adapting <code>null</code>).
+     * @param storeValue the store value
+     * @return the value to return to the user
+     */
+    protected Object fromStoreValue(Object storeValue) {
+        if (mAllowNullValues && storeValue == NULL_HOLDER) {
+            return null;
+        }
+        return storeValue;
+    }
+
+    /**
+     * Convert the given user value, as passed into the put method,
+     * to a value in the internal store (adapting <code>null</code>).
+     * @param userValue the given user value
+     * @return the value to store
+     */
+    protected Object toStoreValue(Object userValue) {
+        if (mAllowNullValues && userValue == null) {
+            return NULL_HOLDER;
+        }
+        return userValue;
+    }
+
+    /**
+     * Looks up a store value and records a read of it, removing
+     * a node if its value has expired.
+     *
+     * @return the store value, null if not found
+     */
+    /**
+     * Looks a key up without recording a hit or a miss.
+     */
+    private ValueWrapper peek(Object key) {
+        Object value = lookup(key, System.currentTimeMillis());
+        return value == null ? null : new SimpleValueWrapper(fromStoreValue(value));
+    }
+
+    private Object lookup(Object key, long now) {
+        Node node = mData.get(key);
+        if (node == null) {
+            return null;
+        }
+        Object value = node.mValue;
+        if (value instanceof ExpiringValue) {
+            ExpiringValue expiring = (ExpiringValue) value;
+            if (expiring.isExpired(now)) {
+                if (removeNode(node)) {
+                    mStatsCounter.recordRemoval(RemovalCause.EXPIRED, node.mWeight);
+                    notifyRemoval(node, RemovalCause.EXPIRED);
+                }
+                return null;
+            }
+            expiring.touch(now);
+            value = expiring.getValue();
+        }
+        recordRead(node);
+        return value;
+    }
+
+    private void doPut(Object key, Object value, long timeToLive) {
+        Object storeValue = toStoreValue(value);
+        Assert.notNull(storeValue, "Cache '" + mName + "' doesn't allow null values");
+        int weight = weigh(key, storeValue);
+        Node node = new Node(key, ExpiringValue.wrap(storeValue, timeToLive, mTimeToIdle, System.currentTimeMillis()),
+                weight);
+        List<Node> victims;
+        mEvictionLock.lock();
+        try {
+            drainReadBuffers();
+            Node previous = mData.put(key, node);
+            if (previous != null) {
+                unlink(previous);
+            }
+            linkLast(node);
+            victims = evictToLimit();
+        } finally {
+            mEvictionLock.unlock();
+        }
+        mStatsCounter.recordPuts(1);
+        notifyRemovals(victims, RemovalCause.SIZE);
+    }
+
+    private int weigh(Object key, Object storeValue) {
+        if (mWeigher == null || storeValue == NULL_HOLDER) {
+            return 1;
+        }
+        int weight = mWeigher.weigh(key, storeValue);
+        Assert.isTrue(weight >= 0, "Weight must not be negative");
+        return weight;
+    }
+
+    /**
+     * Removes a node if it's still mapped to its key.
+     *
+     * @return True if node was removed, false otherwise
+     */
+    private boolean removeNode(Node node) {
+        mEvictionLock.lock();
+        try {
+            if (!mData.remove(node.mKey, node)) {
+                return false;
+            }
+            unlink(node);
+            return true;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    private void recordRead(Node node) {
+        ReadBuffer buffer = mReadBuffers[threadIndex() & mReadBufferMask];
+        long pending = buffer.record(node);
+        if (pending >= READ_BUFFER_DRAIN_THRESHOLD && mEvictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                mEvictionLock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : mReadBuffers) {
+            buffer.drain(this);
+        }
+    }
+
+    /**
+     * Evicts least recently used nodes until weight is within a limit.
+     *
+     * @return the evicted nodes, null if nothing was evicted
+     */
+    private List<Node> evictToLimit() {
+        List<Node> victims = null;
+        while (mWeight > mMaxWeight && mHead != null) {
+            Node victim = mHead;
+            mData.remove(victim.mKey, victim);
+            unlink(victim);
+            mStatsCounter.recordRemoval(RemovalCause.SIZE, victim.mWeight);
+            if (mRemovalListener != null) {
+                if (victims == null) {
+                    victims = new ArrayList<Node>();
+                }
+                victims.add(victim);
+            }
+        }
+        return victims;
+    }
+
+    private void notifyRemovals(List<Node> nodes, RemovalCause cause) {
+        if (nodes != null) {
+            for (Node node : nodes) {
+                notifyRemoval(node, cause);
+            }
+        }
+    }
+
+    private void notifyRemoval(Node node, RemovalCause cause) {
+        RemovalListener<Object, Object> listener = mRemovalListener;
+        if (listener == null) {
+            return;
+        }
+        Object value = node.mValue;
+        if (value instanceof ExpiringValue) {
+            value = ((ExpiringValue) value).getValue();
+        }
+        listener.onRemoval(node.mKey, fromStoreValue(value), cause);
+    }
+
+    private void linkLast(Node node) {
+        node.mPrev = mTail;
+        node.mNext = null;
+        if (mTail == null) {
+            mHead = node;
+        } else {
+            mTail.mNext = node;
+        }
+        mTail = node;
+        node.mLinked = true;
+        mWeight += node.mWeight;
+    }
+
+    private void unlink(Node node) {
+        if (!node.mLinked) {
+            return;
+        }
+        if (node.mPrev == null) {
+            mHead = node.mNext;
+        } else {
+            node.mPrev.mNext = node.mNext;
+        }
+        if (node.mNext == null) {
+            mTail = node.mPrev;
+        } else {
+            node.mNext.mPrev = node.mPrev;
+        }
+        node.mPrev = null;
+        node.mNext = null;
+        node.mLinked = false;
+        mWeight -= node.mWeight;
+    }
+
+    private void moveToTail(Node node) {
+        if (node.mLinked && node != mTail) {
+            unlink(node);
+            linkLast(node);
+        }
+    }
+
+    private static int threadIndex() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32));
+        h ^= (h >>> 16);
+        return h * 0x9E3779B9;
+    }
+
+    /**
+     * Entry of a cache. Links are guarded by the eviction lock.
+     */
+    private static class Node {
+        final Object mKey;
+        final Object mValue;
+        final int mWeight;
+        Node mPrev;
+        Node mNext;
+        boolean mLinked;
+
+        Node(Object key, Object value, int weight) {
+            mKey = key;
+            mValue = value;
+            mWeight = weight;
+        }
+    }
+
+    /**
+     * Bounded buffer of read nodes. Any thread may record a read,
+     * only a thread holding the eviction lock drains the buffer.
+     * Reads are dropped if buffer is full.
+     */
+    private static class ReadBuffer {
+        final AtomicReferenceArray<Node> mSlots = new AtomicReferenceArray<Node>(READ_BUFFER_SIZE);
+        final AtomicLong mWriteCount = new AtomicLong();
+        volatile long mReadCount;
+
+        /**
+         * Records a read.
+         *
+         * @return the number of pending reads in a buffer
+         */
+        long record(Node node) {
+            long writeCount = mWriteCount.get();
+            long pending = writeCount - mReadCount;
+            if (pending < READ_BUFFER_SIZE && mWriteCount.compareAndSet(writeCount, writeCount + 1)) {
+                mSlots.lazySet((int) (writeCount & READ_BUFFER_MASK), node);
+                pending++;
+            }
+            return pending;
+        }
+
+        void drain(ConcurrentLruCache cache) {
+            long readCount = mReadCount;
+            long writeCount = mWriteCount.get();
+            for (; readCount < writeCount; readCount++) {
+                int index = (int) (readCount & READ_BUFFER_MASK);
+                Node node = mSlots.get(index);
+                if (node == null) {
+                    // slot is claimed but not yet
+                    // published, continue on next drain
+                    break;
+                }
+                mSlots.lazySet(index, null);
+                cache.moveToTail(node);
+            }
+            mReadCount = readCount;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class NullHolder implements Serializable {
+    }
+
+}
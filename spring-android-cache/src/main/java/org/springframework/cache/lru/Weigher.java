@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.lru;
+
+/**
+ * Computes a weight of a cache entry which is counted against a max
+ * weight of a cache, for example a byte count of a bitmap or a length
+ * of a string. Weight of an entry is computed once when it's put into
+ * a cache and must not change while entry is cached.
+ *
+ * @author Janne Valkealahti
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ * @see ConcurrentLruCache
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * Weighs an entry.
+     *
+     * @param key the key of an entry
+     * @param value the value of an entry, never null
+     * @return the weight of an entry, must not be negative
+     */
+    int weigh(K key, V value);
+
+}
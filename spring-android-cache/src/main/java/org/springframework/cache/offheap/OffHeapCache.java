@@ -0,0 +1,467 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.offheap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.springframework.cache.BulkCache;
+import org.springframework.cache.Cache;
+import org.springframework.cache.ExpirableCache;
+import org.springframework.cache.InstrumentedCache;
+import org.springframework.cache.LoadingCache;
+import org.springframework.cache.disk.serializer.CacheValueSerializer;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.ConcurrentStatsCounter;
+import org.springframework.cache.support.RemovalCause;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.cache.support.SingleFlight;
+import org.springframework.cache.support.StatsCounter;
+import org.springframework.util.Assert;
+
+/**
+ * Memory {@link Cache} implementation which keeps values serialized
+ * outside of the Java heap. Values are encoded with a
+ * {@link CacheValueSerializer} and stored in direct buffer slabs handed
+ * out by a {@link SlabAllocator}, so cached content doesn't add to the
+ * work of a garbage collector. Only keys and small entry records stay
+ * on the heap.
+ * <p>
+ * Cache is bounded by a byte budget of its slabs. Entries are kept in
+ * least recently used order per size class of the allocator. When a
+ * value doesn't fit, least recently used entries of its own size class
+ * are evicted first and if the size class has no entries, entries of
+ * the size class owning most slabs are evicted until one of its slabs
+ * can be given to another size class. Values larger than a slab are
+ * not cached.
+ * <p>
+ * Every lookup deserializes a value, so this cache suits values which
+ * are large compared to the cost of decoding them and works well as
+ * a first level of a {@link org.springframework.cache.tiered.TieredCache}.
+ * Bulk operations take the monitor of a cache once per batch and
+ * serialize and deserialize values outside of it.
+ *
+ * @author Janne Valkealahti
+ */
+public class OffHeapCache implements LoadingCache, ExpirableCache, InstrumentedCache, BulkCache {
+
+    /** Marker for a cached null value */
+    private static final byte[] NULL_VALUE = new byte[0];
+
+    private final String mName;
+    private final CacheValueSerializer<Object> mSerializer;
+    private final SlabAllocator mAllocator;
+    private final HashMap<Object, Entry> mEntries = new HashMap<Object, Entry>();
+    /** Entries of every size class ordered from least recently used */
+    private final LinkedHashMap<Object, Entry>[] mLruLists;
+    private final SingleFlight mLoads = new SingleFlight(new SingleFlight.Lookup() {
+        @Override
+        public ValueWrapper lookup(Object key) {
+            return peek(key);
+        }
+    });
+    private volatile StatsCounter mStatsCounter;
+    private long mValueBytes;
+    private volatile long mTimeToLive;
+    private volatile long mTimeToIdle;
+
+    /**
+     * Instantiates a new off-heap cache with
+     * {@link SlabAllocator#DEFAULT_SLAB_SIZE} sized slabs.
+     *
+     * @param name the cache name
+     * @param maxBytes the max number of bytes used for values
+     * @param serializer the serializer of values
+     */
+    public OffHeapCache(String name, long maxBytes, CacheValueSerializer<?> serializer) {
+        this(name, serializer, new SlabAllocator(maxBytes));
+    }
+
+    /**
+     * Instantiates a new off-heap cache.
+     *
+     * @param name the cache name
+     * @param serializer the serializer of values
+     * @param allocator the allocator of value storage
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public OffHeapCache(String name, CacheValueSerializer<?> serializer, SlabAllocator allocator) {
+        Assert.notNull(serializer, "Serializer must not be null");
+        Assert.notNull(allocator, "Allocator must not be null");
+        mName = name;
+        mSerializer = (CacheValueSerializer<Object>) serializer;
+        mAllocator = allocator;
+        mLruLists = new LinkedHashMap[allocator.getSizeClassCount()];
+        for (int i = 0; i < mLruLists.length; i++) {
+            mLruLists[i] = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+        }
+        setStatsCounter(new ConcurrentStatsCounter());
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the {@link SlabAllocator} holding cached values.
+     */
+    @Override
+    public Object getNativeCache() {
+        return mAllocator;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = read(key, System.currentTimeMillis());
+        }
+        if (bytes == null) {
+            mStatsCounter.recordMisses(1);
+            return null;
+        }
+        mStatsCounter.recordHits(1);
+        return new SimpleValueWrapper(deserialize(bytes));
+    }
+
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, byte[]> found = new HashMap<Object, byte[]>();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (Object key : keys) {
+                byte[] bytes = read(key, now);
+                if (bytes != null) {
+                    found.put(key, bytes);
+                }
+            }
+        }
+        mStatsCounter.recordHits(found.size());
+        mStatsCounter.recordMisses(keys.size() - found.size());
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        for (Map.Entry<Object, byte[]> entry : found.entrySet()) {
+            values.put(entry.getKey(), deserialize(entry.getValue()));
+        }
+        return values;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> loader) {
+        return mLoads.get(this, key, loader);
+    }
+
+    @Override
+    public <T> Future<T> getAsync(Object key, Callable<T> loader, Executor executor) {
+        return mLoads.getAsync(this, key, loader, executor);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        doPut(key, value, mTimeToLive);
+    }
+
+    @Override
+    public void put(Object key, Object value, long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "Time-to-live must be positive");
+        doPut(key, value, timeToLive);
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        Map<Object, byte[]> serialized = new HashMap<Object, byte[]>();
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            serialized.put(entry.getKey(), serialize(entry.getValue()));
+        }
+        mStatsCounter.recordPuts(serialized.size());
+        long now = System.currentTimeMillis();
+        long expiresAt = mTimeToLive > 0 ? now + mTimeToLive : 0;
+        synchronized (this) {
+            for (Map.Entry<Object, byte[]> entry : serialized.entrySet()) {
+                store(entry.getKey(), entry.getValue(), expiresAt, now);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void evict(Object key) {
+        Entry entry = mEntries.get(key);
+        if (entry != null) {
+            mStatsCounter.recordRemoval(RemovalCause.EXPLICIT, Math.max(entry.mLength, 0));
+            remove(entry);
+        }
+    }
+
+    @Override
+    public synchronized void evictAll(Collection<?> keys) {
+        for (Object key : keys) {
+            evict(key);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Entry entry : new ArrayList<Entry>(mEntries.values())) {
+            remove(entry);
+        }
+    }
+
+    @Override
+    public synchronized int purgeExpired(int maxEntries) {
+        long now = System.currentTimeMillis();
+        List<Entry> expired = new ArrayList<Entry>();
+        for (Entry entry : mEntries.values()) {
+            if (expired.size() >= maxEntries) {
+                break;
+            }
+            if (entry.isExpired(now, mTimeToIdle)) {
+                expired.add(entry);
+            }
+        }
+        for (Entry entry : expired) {
+            mStatsCounter.recordRemoval(RemovalCause.EXPIRED, Math.max(entry.mLength, 0));
+            remove(entry);
+        }
+        return expired.size();
+    }
+
+    /**
+     * Sets the default time-to-live of entries in milliseconds. Zero
+     * or negative value means that entries never expire.
+     *
+     * @param timeToLive the time-to-live
+     */
+    public void setTimeToLive(long timeToLive) {
+        mTimeToLive = timeToLive;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an entry which hasn't
+     * been read expires. Zero or negative value disables idle timeout.
+     *
+     * @param timeToIdle the idle timeout
+     */
+    public void setTimeToIdle(long timeToIdle) {
+        mTimeToIdle = timeToIdle;
+    }
+
+    /**
+     * Gets the number of entries in this cache.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Gets the number of bytes of serialized values.
+     *
+     * @return the value bytes
+     */
+    public synchronized long getValueBytes() {
+        return mValueBytes;
+    }
+
+    /**
+     * Gets the number of bytes allocated outside of the heap.
+     *
+     * @return the allocated bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return mAllocator.getAllocatedBytes();
+    }
+
+    @Override
+    public void setStatsCounter(StatsCounter statsCounter) {
+        Assert.notNull(statsCounter, "StatsCounter must not be null");
+        mStatsCounter = statsCounter;
+        mLoads.setStatsCounter(statsCounter);
+    }
+
+    /**
+     * Gets a snapshot of statistics collected by this cache. Eviction
+     * weight is the number of evicted value bytes and byte size the
+     * number of bytes of serialized values.
+     *
+     * @return the cache statistics
+     */
+    @Override
+    public CacheStats getStats() {
+        return mStatsCounter.snapshot().withByteSize(getValueBytes());
+    }
+
+    private void doPut(Object key, Object value, long timeToLive) {
+        // serialize outside of the lock
+        byte[] bytes = serialize(value);
+        mStatsCounter.recordPuts(1);
+        long now = System.currentTimeMillis();
+        long expiresAt = timeToLive > 0 ? now + timeToLive : 0;
+        synchronized (this) {
+            store(key, bytes, expiresAt, now);
+        }
+    }
+
+    /**
+     * Looks a key up without recording a hit or a miss.
+     */
+    private ValueWrapper peek(Object key) {
+        byte[] bytes;
+        synchronized (this) {
+            bytes = read(key, System.currentTimeMillis());
+        }
+        return bytes == null ? null : new SimpleValueWrapper(deserialize(bytes));
+    }
+
+    /**
+     * Reads a copy of value bytes. Caller must hold the monitor.
+     *
+     * @return the value bytes, {@link #NULL_VALUE} for a null value
+     *         or null if not found
+     */
+    private byte[] read(Object key, long now) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(now, mTimeToIdle)) {
+            mStatsCounter.recordRemoval(RemovalCause.EXPIRED, Math.max(entry.mLength, 0));
+            remove(entry);
+            return null;
+        }
+        entry.mAccessedAt = now;
+        if (entry.mLength < 0) {
+            return NULL_VALUE;
+        }
+        mLruLists[entry.mSizeClass].get(key);
+        // chunk may be reused once lock is released
+        return mAllocator.read(entry.mHandle, entry.mLength);
+    }
+
+    /**
+     * Stores value bytes replacing a previous entry. Caller must hold
+     * the monitor. Values which can't be allocated are not stored.
+     */
+    private void store(Object key, byte[] bytes, long expiresAt, long now) {
+        Entry previous = mEntries.get(key);
+        if (previous != null) {
+            remove(previous);
+        }
+        Entry entry = new Entry(key, expiresAt, now);
+        if (bytes != NULL_VALUE) {
+            int sizeClass = mAllocator.getSizeClass(bytes.length);
+            if (sizeClass < 0) {
+                // larger than a slab
+                return;
+            }
+            long handle = allocate(sizeClass);
+            if (handle < 0) {
+                return;
+            }
+            mAllocator.write(handle, bytes);
+            entry.mSizeClass = sizeClass;
+            entry.mHandle = handle;
+            entry.mLength = bytes.length;
+            mValueBytes += bytes.length;
+            mLruLists[sizeClass].put(key, entry);
+        }
+        mEntries.put(key, entry);
+    }
+
+    private byte[] serialize(Object value) {
+        if (value == null) {
+            return NULL_VALUE;
+        }
+        long start = System.nanoTime();
+        byte[] bytes = mSerializer.serialize(value);
+        mStatsCounter.recordSerialize(System.nanoTime() - start);
+        return bytes;
+    }
+
+    private Object deserialize(byte[] bytes) {
+        if (bytes == NULL_VALUE) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Object value = mSerializer.deserialize(bytes);
+        mStatsCounter.recordDeserialize(System.nanoTime() - start);
+        return value;
+    }
+
+    /**
+     * Allocates a chunk evicting entries until allocation succeeds.
+     *
+     * @return the chunk handle, -1 if there's nothing left to evict
+     */
+    private long allocate(int sizeClass) {
+        long handle;
+        while ((handle = mAllocator.allocate(sizeClass)) < 0) {
+            LinkedHashMap<Object, Entry> lru = mLruLists[sizeClass];
+            if (lru.isEmpty()) {
+                int largest = mAllocator.getLargestSizeClass();
+                lru = largest >= 0 ? mLruLists[largest] : lru;
+            }
+            if (lru.isEmpty()) {
+                return -1;
+            }
+            Entry victim = lru.values().iterator().next();
+            mStatsCounter.recordRemoval(RemovalCause.SIZE, victim.mLength);
+            remove(victim);
+        }
+        return handle;
+    }
+
+    private void remove(Entry entry) {
+        mEntries.remove(entry.mKey);
+        if (entry.mLength >= 0) {
+            mLruLists[entry.mSizeClass].remove(entry.mKey);
+            mAllocator.free(entry.mHandle);
+            mValueBytes -= entry.mLength;
+        }
+    }
+
+    /**
+     * Heap record of a cached value. Null values have a
+     * negative length and no chunk.
+     */
+    private static class Entry {
+        final Object mKey;
+        final long mExpiresAt;
+        long mAccessedAt;
+        int mSizeClass;
+        long mHandle;
+        int mLength = -1;
+
+        Entry(Object key, long expiresAt, long now) {
+            mKey = key;
+            mExpiresAt = expiresAt;
+            mAccessedAt = now;
+        }
+
+        boolean isExpired(long now, long timeToIdle) {
+            return (mExpiresAt > 0 && now >= mExpiresAt) || (timeToIdle > 0 && now - mAccessedAt >= timeToIdle);
+        }
+    }
+
+}
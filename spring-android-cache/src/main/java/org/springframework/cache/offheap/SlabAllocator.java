@@ -0,0 +1,329 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * Allocator of fixed size chunks from direct {@link ByteBuffer} slabs
+ * living outside of the Java heap. Chunk sizes are divided into size
+ * classes growing by a constant factor and every slab is cut into chunks
+ * of a single size class when it's first needed. Freed chunks go to
+ * a free list of their size class and are reused before new slabs are
+ * allocated.
+ * <p>
+ * Once all slabs are allocated a slab can move to another size class
+ * only when all of its chunks are free. Allocation returns a handle
+ * encoding a slab and an offset of a chunk which is used to read,
+ * write and free the chunk.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Janne Valkealahti
+ */
+public class SlabAllocator {
+
+    /** Default size of a slab, 1MB */
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+    /** Default size of the smallest chunk */
+    public static final int DEFAULT_MIN_CHUNK_SIZE = 64;
+
+    /** Default growth factor of chunk sizes */
+    public static final float DEFAULT_GROWTH_FACTOR = 1.25f;
+
+    private final int mSlabSize;
+    private final int mMaxSlabs;
+    private final int[] mChunkSizes;
+    private final List<Slab> mSlabs = new ArrayList<Slab>();
+    private final FreeList[] mFreeLists;
+    private long mUsedBytes;
+
+    /**
+     * Instantiates a new slab allocator with default
+     * slab and chunk sizes.
+     *
+     * @param maxBytes the max number of bytes in all slabs
+     */
+    public SlabAllocator(long maxBytes) {
+        this(maxBytes, DEFAULT_SLAB_SIZE, DEFAULT_MIN_CHUNK_SIZE, DEFAULT_GROWTH_FACTOR);
+    }
+
+    /**
+     * Instantiates a new slab allocator.
+     *
+     * @param maxBytes the max number of bytes in all slabs
+     * @param slabSize the size of a slab, also the size of the largest chunk
+     * @param minChunkSize the size of the smallest chunk
+     * @param growthFactor the factor between sizes of adjacent size classes
+     */
+    public SlabAllocator(long maxBytes, int slabSize, int minChunkSize, float growthFactor) {
+        Assert.isTrue(slabSize > 0, "Slab size must be positive");
+        Assert.isTrue(minChunkSize > 0 && minChunkSize <= slabSize, "Min chunk size must be within slab size");
+        Assert.isTrue(growthFactor > 1, "Growth factor must be greater than one");
+        Assert.isTrue(maxBytes >= slabSize, "Max bytes must hold at least one slab");
+        mSlabSize = slabSize;
+        mMaxSlabs = (int) Math.min(Integer.MAX_VALUE, maxBytes / slabSize);
+        List<Integer> sizes = new ArrayList<Integer>();
+        int size = minChunkSize;
+        while (size < slabSize) {
+            sizes.add(size);
+            // keep chunks 8 byte aligned
+            size = Math.max(size + 8, ((int) (size * growthFactor) + 7) & ~7);
+        }
+        sizes.add(slabSize);
+        mChunkSizes = new int[sizes.size()];
+        mFreeLists = new FreeList[sizes.size()];
+        for (int i = 0; i < mChunkSizes.length; i++) {
+            mChunkSizes[i] = sizes.get(i);
+            mFreeLists[i] = new FreeList();
+        }
+    }
+
+    /**
+     * Gets the size class of chunks able to hold a given number of bytes.
+     *
+     * @param size the number of bytes
+     * @return the size class, -1 if size doesn't fit into a slab
+     */
+    public int getSizeClass(int size) {
+        for (int i = 0; i < mChunkSizes.length; i++) {
+            if (size <= mChunkSizes[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the number of size classes.
+     *
+     * @return the number of size classes
+     */
+    public int getSizeClassCount() {
+        return mChunkSizes.length;
+    }
+
+    /**
+     * Gets the size of chunks in a size class.
+     *
+     * @param sizeClass the size class
+     * @return the chunk size
+     */
+    public int getChunkSize(int sizeClass) {
+        return mChunkSizes[sizeClass];
+    }
+
+    /**
+     * Allocates a chunk of a given size class. Allocation fails
+     * if there are no free chunks of the size class and all slabs
+     * are in use.
+     *
+     * @param sizeClass the size class
+     * @return the handle of an allocated chunk, -1 if allocation failed
+     */
+    public long allocate(int sizeClass) {
+        FreeList freeList = mFreeLists[sizeClass];
+        if (freeList.isEmpty() && !assignSlab(sizeClass)) {
+            return -1;
+        }
+        long handle = freeList.pop();
+        mSlabs.get(slabOf(handle)).mUsedChunks++;
+        mUsedBytes += mChunkSizes[sizeClass];
+        return handle;
+    }
+
+    /**
+     * Frees a chunk.
+     *
+     * @param handle the handle of a chunk
+     */
+    public void free(long handle) {
+        Slab slab = mSlabs.get(slabOf(handle));
+        slab.mUsedChunks--;
+        mUsedBytes -= mChunkSizes[slab.mSizeClass];
+        mFreeLists[slab.mSizeClass].push(handle);
+    }
+
+    /**
+     * Writes bytes to a chunk.
+     *
+     * @param handle the handle of a chunk
+     * @param bytes the bytes to write, must fit into a chunk
+     */
+    public void write(long handle, byte[] bytes) {
+        ByteBuffer buffer = mSlabs.get(slabOf(handle)).mBuffer.duplicate();
+        buffer.position(offsetOf(handle));
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads bytes from a chunk.
+     *
+     * @param handle the handle of a chunk
+     * @param length the number of bytes to read
+     * @return the bytes read
+     */
+    public byte[] read(long handle, int length) {
+        ByteBuffer buffer = mSlabs.get(slabOf(handle)).mBuffer.duplicate();
+        buffer.position(offsetOf(handle));
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Gets the size class owning most slabs, which is the
+     * best candidate to give up a slab for other size classes.
+     *
+     * @return the size class, -1 if no slabs are allocated
+     */
+    public int getLargestSizeClass() {
+        int[] counts = new int[mChunkSizes.length];
+        int largest = -1;
+        for (Slab slab : mSlabs) {
+            if (slab.mSizeClass >= 0) {
+                counts[slab.mSizeClass]++;
+                if (largest < 0 || counts[slab.mSizeClass] > counts[largest]) {
+                    largest = slab.mSizeClass;
+                }
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Gets the number of bytes in allocated slabs.
+     *
+     * @return the allocated bytes
+     */
+    public long getAllocatedBytes() {
+        return (long) mSlabs.size() * mSlabSize;
+    }
+
+    /**
+     * Gets the number of bytes in chunks in use.
+     *
+     * @return the used bytes
+     */
+    public long getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    /**
+     * Gets the max number of bytes in all slabs.
+     *
+     * @return the max bytes
+     */
+    public long getMaxBytes() {
+        return (long) mMaxSlabs * mSlabSize;
+    }
+
+    /**
+     * Assigns a slab to a size class and fills its free list, either
+     * a new slab or an empty slab of other size class.
+     */
+    private boolean assignSlab(int sizeClass) {
+        Slab slab = null;
+        if (mSlabs.size() < mMaxSlabs) {
+            slab = new Slab(mSlabs.size(), ByteBuffer.allocateDirect(mSlabSize));
+            mSlabs.add(slab);
+        } else {
+            for (Slab candidate : mSlabs) {
+                if (candidate.mUsedChunks == 0 && candidate.mSizeClass != sizeClass) {
+                    slab = candidate;
+                    mFreeLists[slab.mSizeClass].removeSlab(slab.mIndex);
+                    break;
+                }
+            }
+        }
+        if (slab == null) {
+            return false;
+        }
+        slab.mSizeClass = sizeClass;
+        int chunkSize = mChunkSizes[sizeClass];
+        // push in reverse so that chunks are handed out in order
+        for (int offset = (mSlabSize / chunkSize - 1) * chunkSize; offset >= 0; offset -= chunkSize) {
+            mFreeLists[sizeClass].push(handleOf(slab.mIndex, offset));
+        }
+        return true;
+    }
+
+    private static long handleOf(int slab, int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int slabOf(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    private static int offsetOf(long handle) {
+        return (int) handle;
+    }
+
+    private static class Slab {
+        final int mIndex;
+        final ByteBuffer mBuffer;
+        int mSizeClass = -1;
+        int mUsedChunks;
+
+        Slab(int index, ByteBuffer buffer) {
+            mIndex = index;
+            mBuffer = buffer;
+        }
+    }
+
+    /**
+     * Stack of chunk handles backed by a growing array.
+     */
+    private static class FreeList {
+        long[] mHandles = new long[16];
+        int mSize;
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        void push(long handle) {
+            if (mSize == mHandles.length) {
+                long[] handles = new long[mSize * 2];
+                System.arraycopy(mHandles, 0, handles, 0, mSize);
+                mHandles = handles;
+            }
+            mHandles[mSize++] = handle;
+        }
+
+        long pop() {
+            return mHandles[--mSize];
+        }
+
+        void removeSlab(int slab) {
+            int size = 0;
+            for (int i = 0; i < mSize; i++) {
+                if (slabOf(mHandles[i]) != slab) {
+                    mHandles[size++] = mHandles[i];
+                }
+            }
+            mSize = size;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.cache.BulkCache;
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+
+/**
+ * Utility methods for bulk operations on any {@link Cache}. Caches
+ * implementing {@link BulkCache} are called with a whole batch while
+ * other caches fall back to a loop of single key operations, so custom
+ * caches don't need to implement bulk operations themselves.
+ *
+ * @author Janne Valkealahti
+ */
+public abstract class BulkCacheUtils {
+
+    /**
+     * Gets values of given keys from a cache.
+     *
+     * @param cache the cache
+     * @param keys the keys
+     * @return the found values by key
+     * @see BulkCache#getAll(Collection)
+     */
+    public static Map<Object, Object> getAll(Cache cache, Collection<?> keys) {
+        if (cache instanceof BulkCache) {
+            return ((BulkCache) cache).getAll(keys);
+        }
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        for (Object key : keys) {
+            ValueWrapper wrapper = cache.get(key);
+            if (wrapper != null) {
+                values.put(key, wrapper.get());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Puts values to a cache.
+     *
+     * @param cache the cache
+     * @param entries the values by key
+     * @see BulkCache#putAll(Map)
+     */
+    public static void putAll(Cache cache, Map<?, ?> entries) {
+        if (cache instanceof BulkCache) {
+            ((BulkCache) cache).putAll(entries);
+            return;
+        }
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            cache.put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Evicts given keys from a cache.
+     *
+     * @param cache the cache
+     * @param keys the keys
+     * @see BulkCache#evictAll(Collection)
+     */
+    public static void evictAll(Cache cache, Collection<?> keys) {
+        if (cache instanceof BulkCache) {
+            ((BulkCache) cache).evictAll(keys);
+            return;
+        }
+        for (Object key : keys) {
+            cache.evict(key);
+        }
+    }
+
+}
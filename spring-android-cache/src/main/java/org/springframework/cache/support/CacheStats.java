@@ -0,0 +1,276 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+/**
+ * Immutable snapshot of statistics collected by a cache.
+ *
+ * @author Janne Valkealahti
+ * @see StatsCounter
+ */
+public class CacheStats {
+
+    private final long mHitCount;
+    private final long mMissCount;
+    private final long mPutCount;
+    private final long mLoadSuccessCount;
+    private final long mLoadFailureCount;
+    private final long mTotalLoadTime;
+    private final long mEvictionCount;
+    private final long mEvictionWeight;
+    private final long mExpirationCount;
+    private final long mExplicitRemovalCount;
+    private final long mSerializeTime;
+    private final long mDeserializeTime;
+    private final long mByteSize;
+
+    /**
+     * Instantiates a new cache stats.
+     *
+     * @param hitCount the number of cache hits
+     * @param missCount the number of cache misses
+     * @param evictionCount the number of evicted entries
+     * @param evictionWeight the sum of weights of evicted entries
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount, long evictionWeight) {
+        this(hitCount, missCount, evictionCount, evictionWeight, 0);
+    }
+
+    /**
+     * Instantiates a new cache stats.
+     *
+     * @param hitCount the number of cache hits
+     * @param missCount the number of cache misses
+     * @param evictionCount the number of evicted entries
+     * @param evictionWeight the sum of weights of evicted entries
+     * @param expirationCount the number of expired entries
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount, long evictionWeight, long expirationCount) {
+        this(hitCount, missCount, 0, 0, 0, 0, evictionCount, evictionWeight, expirationCount, 0, 0, 0, 0);
+    }
+
+    /**
+     * Instantiates a new cache stats.
+     *
+     * @param hitCount the number of cache hits
+     * @param missCount the number of cache misses
+     * @param putCount the number of written values
+     * @param loadSuccessCount the number of successful loads
+     * @param loadFailureCount the number of failed loads
+     * @param totalLoadTime the time spent loading in nanoseconds
+     * @param evictionCount the number of evicted entries
+     * @param evictionWeight the sum of weights of evicted entries
+     * @param expirationCount the number of expired entries
+     * @param explicitRemovalCount the number of entries removed by a user
+     * @param serializeTime the time spent serializing in nanoseconds
+     * @param deserializeTime the time spent deserializing in nanoseconds
+     * @param byteSize the current size of a cache in bytes
+     */
+    public CacheStats(long hitCount, long missCount, long putCount, long loadSuccessCount, long loadFailureCount,
+            long totalLoadTime, long evictionCount, long evictionWeight, long expirationCount,
+            long explicitRemovalCount, long serializeTime, long deserializeTime, long byteSize) {
+        mHitCount = hitCount;
+        mMissCount = missCount;
+        mPutCount = putCount;
+        mLoadSuccessCount = loadSuccessCount;
+        mLoadFailureCount = loadFailureCount;
+        mTotalLoadTime = totalLoadTime;
+        mEvictionCount = evictionCount;
+        mEvictionWeight = evictionWeight;
+        mExpirationCount = expirationCount;
+        mExplicitRemovalCount = explicitRemovalCount;
+        mSerializeTime = serializeTime;
+        mDeserializeTime = deserializeTime;
+        mByteSize = byteSize;
+    }
+
+    /**
+     * Gets the number of lookups which returned a cached value.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Gets the number of lookups which didn't find a cached value.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Gets the number of lookups.
+     *
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return mHitCount + mMissCount;
+    }
+
+    /**
+     * Gets the ratio of lookups which returned a cached value.
+     * Returns 1.0 if there hasn't been any lookups.
+     *
+     * @return the hit ratio
+     */
+    public double getHitRatio() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) mHitCount / requestCount;
+    }
+
+    /**
+     * Gets the number of values written to a cache.
+     *
+     * @return the put count
+     */
+    public long getPutCount() {
+        return mPutCount;
+    }
+
+    /**
+     * Gets the number of successfully loaded values.
+     *
+     * @return the load success count
+     */
+    public long getLoadSuccessCount() {
+        return mLoadSuccessCount;
+    }
+
+    /**
+     * Gets the number of loads which threw an exception.
+     *
+     * @return the load failure count
+     */
+    public long getLoadFailureCount() {
+        return mLoadFailureCount;
+    }
+
+    /**
+     * Gets the time spent loading values in nanoseconds.
+     *
+     * @return the total load time
+     */
+    public long getTotalLoadTime() {
+        return mTotalLoadTime;
+    }
+
+    /**
+     * Gets the average time spent loading a value in nanoseconds.
+     * Returns 0.0 if there hasn't been any loads.
+     *
+     * @return the average load penalty
+     */
+    public double getAverageLoadPenalty() {
+        long loadCount = mLoadSuccessCount + mLoadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) mTotalLoadTime / loadCount;
+    }
+
+    /**
+     * Gets the number of entries evicted to keep a cache within its bounds.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Gets the sum of weights of evicted entries. For caches
+     * bounded by a size in bytes this is the evicted bytes.
+     *
+     * @return the eviction weight
+     */
+    public long getEvictionWeight() {
+        return mEvictionWeight;
+    }
+
+    /**
+     * Gets the number of entries removed because they expired. Expired
+     * entries are not counted as evictions.
+     *
+     * @return the expiration count
+     */
+    public long getExpirationCount() {
+        return mExpirationCount;
+    }
+
+    /**
+     * Gets the number of entries removed by a user.
+     *
+     * @return the explicit removal count
+     */
+    public long getExplicitRemovalCount() {
+        return mExplicitRemovalCount;
+    }
+
+    /**
+     * Gets the time spent serializing values in nanoseconds.
+     * Streaming serializers are measured with their I/O.
+     *
+     * @return the serialize time
+     */
+    public long getSerializeTime() {
+        return mSerializeTime;
+    }
+
+    /**
+     * Gets the time spent deserializing values in nanoseconds.
+     * Streaming serializers are measured with their I/O.
+     *
+     * @return the deserialize time
+     */
+    public long getDeserializeTime() {
+        return mDeserializeTime;
+    }
+
+    /**
+     * Gets the size of a cache in bytes when the stats were taken,
+     * 0 if a cache doesn't know its size in bytes.
+     *
+     * @return the byte size
+     */
+    public long getByteSize() {
+        return mByteSize;
+    }
+
+    /**
+     * Returns a copy of these stats with a given byte size.
+     *
+     * @param byteSize the size of a cache in bytes
+     * @return the cache stats
+     */
+    public CacheStats withByteSize(long byteSize) {
+        return new CacheStats(mHitCount, mMissCount, mPutCount, mLoadSuccessCount, mLoadFailureCount,
+                mTotalLoadTime, mEvictionCount, mEvictionWeight, mExpirationCount, mExplicitRemovalCount,
+                mSerializeTime, mDeserializeTime, byteSize);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats [hitCount=" + mHitCount + ", missCount=" + mMissCount + ", putCount=" + mPutCount
+                + ", loadSuccessCount=" + mLoadSuccessCount + ", loadFailureCount=" + mLoadFailureCount
+                + ", totalLoadTime=" + mTotalLoadTime + ", evictionCount=" + mEvictionCount + ", evictionWeight="
+                + mEvictionWeight + ", expirationCount=" + mExpirationCount + ", explicitRemovalCount="
+                + mExplicitRemovalCount + ", serializeTime=" + mSerializeTime + ", deserializeTime="
+                + mDeserializeTime + ", byteSize=" + mByteSize + "]";
+    }
+
+}
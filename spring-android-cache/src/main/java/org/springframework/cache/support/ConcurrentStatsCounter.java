@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link StatsCounter} which is safe to update from many threads
+ * without making them contend on same counters. Counters are striped
+ * into cells picked by a thread id and summed when a snapshot is
+ * taken, which makes recording cheap while a snapshot may not reflect
+ * updates happening at the same time.
+ * <p>
+ * Cells of a stripe are laid out next to each other and stripes are
+ * kept at least a cache line apart so that threads updating different
+ * stripes don't invalidate each others caches.
+ *
+ * @author Janne Valkealahti
+ */
+public class ConcurrentStatsCounter implements StatsCounter {
+
+    private static final int HITS = 0;
+    private static final int MISSES = 1;
+    private static final int PUTS = 2;
+    private static final int LOAD_SUCCESSES = 3;
+    private static final int LOAD_FAILURES = 4;
+    private static final int LOAD_TIME = 5;
+    private static final int EVICTIONS = 6;
+    private static final int EVICTION_WEIGHT = 7;
+    private static final int EXPIRATIONS = 8;
+    private static final int EXPLICIT_REMOVALS = 9;
+    private static final int SERIALIZE_TIME = 10;
+    private static final int DESERIALIZE_TIME = 11;
+
+    /** Cells per stripe, 16 longs span two cache lines of 64 bytes */
+    private static final int STRIDE = 16;
+
+    /** Upper bound for stripes */
+    private static final int MAX_STRIPES = 16;
+
+    private final AtomicLongArray mCells;
+    private final int mMask;
+
+    /**
+     * Instantiates a new concurrent stats counter with
+     * a stripe for every available processor.
+     */
+    public ConcurrentStatsCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Instantiates a new concurrent stats counter.
+     *
+     * @param concurrency the expected number of concurrently updating threads
+     */
+    public ConcurrentStatsCounter(int concurrency) {
+        int stripes = 1;
+        while (stripes < concurrency && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        mMask = stripes - 1;
+        mCells = new AtomicLongArray(stripes * STRIDE);
+    }
+
+    @Override
+    public void recordHits(int count) {
+        add(HITS, count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        add(MISSES, count);
+    }
+
+    @Override
+    public void recordPuts(int count) {
+        add(PUTS, count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        int base = stripe();
+        mCells.incrementAndGet(base + LOAD_SUCCESSES);
+        mCells.addAndGet(base + LOAD_TIME, loadTime);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        int base = stripe();
+        mCells.incrementAndGet(base + LOAD_FAILURES);
+        mCells.addAndGet(base + LOAD_TIME, loadTime);
+    }
+
+    @Override
+    public void recordRemoval(RemovalCause cause, long weight) {
+        if (cause == RemovalCause.SIZE) {
+            int base = stripe();
+            mCells.incrementAndGet(base + EVICTIONS);
+            mCells.addAndGet(base + EVICTION_WEIGHT, weight);
+        } else if (cause == RemovalCause.EXPIRED) {
+            add(EXPIRATIONS, 1);
+        } else {
+            add(EXPLICIT_REMOVALS, 1);
+        }
+    }
+
+    @Override
+    public void recordSerialize(long time) {
+        add(SERIALIZE_TIME, time);
+    }
+
+    @Override
+    public void recordDeserialize(long time) {
+        add(DESERIALIZE_TIME, time);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return new CacheStats(sum(HITS), sum(MISSES), sum(PUTS), sum(LOAD_SUCCESSES), sum(LOAD_FAILURES),
+                sum(LOAD_TIME), sum(EVICTIONS), sum(EVICTION_WEIGHT), sum(EXPIRATIONS), sum(EXPLICIT_REMOVALS),
+                sum(SERIALIZE_TIME), sum(DESERIALIZE_TIME), 0);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private void add(int counter, long delta) {
+        mCells.addAndGet(stripe() + counter, delta);
+    }
+
+    private int stripe() {
+        return ((int) Thread.currentThread().getId() & mMask) * STRIDE;
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int i = counter; i < mCells.length(); i += STRIDE) {
+            sum += mCells.get(i);
+        }
+        return sum;
+    }
+
+}
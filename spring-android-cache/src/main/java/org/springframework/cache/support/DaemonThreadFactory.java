@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.util.Assert;
+
+/**
+ * Thread factory for background maintenance of caches, like sweeping
+ * expired entries, reporting statistics or prefetching. Threads are
+ * daemons so they never keep a process alive and run with a minimum
+ * priority so they don't compete with a user interface thread.
+ *
+ * @author Janne Valkealahti
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+    private final String mName;
+
+    /**
+     * Instantiates a new daemon thread factory.
+     *
+     * @param name the name of created threads
+     */
+    public DaemonThreadFactory(String name) {
+        Assert.hasText(name, "Thread name must not be empty");
+        mName = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, mName);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+/**
+ * Holder of a cached value and its expiry information used by
+ * memory caches to store entries which may expire. Holder is only
+ * used when an entry has a time-to-live or a cache has an idle
+ * timeout, other values are stored as is.
+ *
+ * @author Janne Valkealahti
+ */
+public class ExpiringValue {
+
+    private final Object mValue;
+    private final long mExpiresAt;
+    private final long mTimeToIdle;
+    private volatile long mAccessedAt;
+
+    /**
+     * Instantiates a new expiring value.
+     *
+     * @param value the cached value
+     * @param expiresAt the time in milliseconds when value expires, zero if never
+     * @param timeToIdle the idle timeout in milliseconds, zero if not used
+     * @param now the current time in milliseconds
+     */
+    public ExpiringValue(Object value, long expiresAt, long timeToIdle, long now) {
+        mValue = value;
+        mExpiresAt = expiresAt;
+        mTimeToIdle = timeToIdle;
+        mAccessedAt = now;
+    }
+
+    /**
+     * Wraps a value into a holder if it needs to expire,
+     * otherwise value is returned as is.
+     *
+     * @param value the cached value
+     * @param timeToLive the time-to-live in milliseconds, zero or negative if not used
+     * @param timeToIdle the idle timeout in milliseconds, zero or negative if not used
+     * @param now the current time in milliseconds
+     * @return the value to store
+     */
+    public static Object wrap(Object value, long timeToLive, long timeToIdle, long now) {
+        if (timeToLive <= 0 && timeToIdle <= 0) {
+            return value;
+        }
+        return new ExpiringValue(value, timeToLive > 0 ? now + timeToLive : 0, Math.max(timeToIdle, 0), now);
+    }
+
+    /**
+     * Gets the cached value.
+     *
+     * @return the cached value
+     */
+    public Object getValue() {
+        return mValue;
+    }
+
+    /**
+     * Gets the time when value expires.
+     *
+     * @return the expiry time in milliseconds, zero if value
+     *         expires only when idle
+     */
+    public long getExpiresAt() {
+        return mExpiresAt;
+    }
+
+    /**
+     * Checks if value has expired.
+     *
+     * @param now the current time in milliseconds
+     * @return True if value has expired, false otherwise
+     */
+    public boolean isExpired(long now) {
+        if (mExpiresAt > 0 && now >= mExpiresAt) {
+            return true;
+        }
+        return mTimeToIdle > 0 && now - mAccessedAt >= mTimeToIdle;
+    }
+
+    /**
+     * Records an access to a value which restarts
+     * the idle timeout.
+     *
+     * @param now the current time in milliseconds
+     */
+    public void touch(long now) {
+        if (mTimeToIdle > 0) {
+            mAccessedAt = now;
+        }
+    }
+
+}
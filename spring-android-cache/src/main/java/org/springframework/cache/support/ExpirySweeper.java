@@ -0,0 +1,147 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.ExpirableCache;
+import org.springframework.util.Assert;
+
+/**
+ * Background task which periodically removes expired entries from
+ * registered caches. Expired entries are removed lazily on lookup
+ * anyway, sweeper reclaims space taken by entries which are not
+ * looked up again.
+ * <p>
+ * Every sweep removes at most a batch of entries from every cache
+ * so that a sweep never holds a cache for long. Remaining expired
+ * entries are removed on following sweeps.
+ *
+ * @author Janne Valkealahti
+ */
+public class ExpirySweeper {
+
+    /** Default interval between sweeps in milliseconds */
+    public static final long DEFAULT_INTERVAL = 60000;
+
+    /** Default max number of entries removed from a cache per sweep */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final List<ExpirableCache> mCaches = new CopyOnWriteArrayList<ExpirableCache>();
+    private final long mInterval;
+    private final int mBatchSize;
+    private ScheduledExecutorService mExecutor;
+
+    /**
+     * Instantiates a new expiry sweeper using {@link #DEFAULT_INTERVAL}
+     * and {@link #DEFAULT_BATCH_SIZE}.
+     */
+    public ExpirySweeper() {
+        this(DEFAULT_INTERVAL, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Instantiates a new expiry sweeper.
+     *
+     * @param interval the interval between sweeps in milliseconds
+     * @param batchSize the max number of entries removed from a cache per sweep
+     */
+    public ExpirySweeper(long interval, int batchSize) {
+        Assert.isTrue(interval > 0, "Interval must be positive");
+        Assert.isTrue(batchSize > 0, "Batch size must be positive");
+        mInterval = interval;
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Adds a cache to be swept.
+     *
+     * @param cache the cache
+     */
+    public void addCache(ExpirableCache cache) {
+        Assert.notNull(cache, "Cache must not be null");
+        mCaches.add(cache);
+    }
+
+    /**
+     * Removes a cache from being swept.
+     *
+     * @param cache the cache
+     */
+    public void removeCache(ExpirableCache cache) {
+        mCaches.remove(cache);
+    }
+
+    /**
+     * Starts sweeping in a background thread. Does
+     * nothing if sweeper is already started.
+     */
+    public synchronized void start() {
+        if (mExecutor != null) {
+            return;
+        }
+        mExecutor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("cache-expiry-sweeper"));
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, mInterval, mInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sweeping.
+     */
+    public synchronized void stop() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Checks if sweeper is started.
+     *
+     * @return True if sweeper is started, false otherwise
+     */
+    public synchronized boolean isRunning() {
+        return mExecutor != null;
+    }
+
+    /**
+     * Sweeps all registered caches once in a calling thread.
+     *
+     * @return the number of removed entries
+     */
+    public int sweep() {
+        int removed = 0;
+        for (ExpirableCache cache : mCaches) {
+            try {
+                removed += cache.purgeExpired(mBatchSize);
+            } catch (RuntimeException e) {
+                // a failing cache must not stop
+                // sweeping other caches
+            }
+        }
+        return removed;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+
+/**
+ * Utility methods computing for how long a http response stays fresh
+ * based on its {@code Cache-Control}, {@code Expires}, {@code Date} and
+ * {@code Age} headers. Result is usable as a time-to-live of a cached
+ * entry, see {@link org.springframework.cache.ExpirableCache}.
+ * <p>
+ * Rules follow a private cache of RFC 2616, so {@code s-maxage} is
+ * ignored and {@code max-age} takes precedence over {@code Expires}.
+ *
+ * @author Janne Valkealahti
+ */
+public abstract class HttpFreshness {
+
+    /** Returned if headers don't tell anything about freshness */
+    public static final long UNKNOWN = -1;
+
+    /** Returned if response must not be reused without revalidation */
+    public static final long STALE = 0;
+
+    private static final String CACHE_CONTROL = "Cache-Control";
+    private static final String EXPIRES = "Expires";
+    private static final String DATE = "Date";
+    private static final String AGE = "Age";
+
+    private static final String[] DATE_FORMATS = new String[] {
+        "EEE, dd MMM yyyy HH:mm:ss zzz",
+        "EEE, dd-MMM-yy HH:mm:ss zzz",
+        "EEE MMM dd HH:mm:ss yyyy"
+    };
+
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+    /**
+     * Computes the freshness lifetime of a response.
+     *
+     * @param cacheControl the value of a Cache-Control header, may be null
+     * @param expires the value of an Expires header in milliseconds, negative if not present
+     * @param date the value of a Date header in milliseconds, negative if not present
+     * @param age the value of an Age header in milliseconds, zero if not present
+     * @param now the current time in milliseconds
+     * @return the time in milliseconds response stays fresh, {@link #STALE}
+     *         if it's not fresh or {@link #UNKNOWN} if headers didn't tell
+     */
+    public static long getTimeToLive(String cacheControl, long expires, long date, long age, long now) {
+        if (cacheControl != null) {
+            long maxAge = -1;
+            for (String directive : cacheControl.split(",")) {
+                String token = directive.trim().toLowerCase(Locale.US);
+                if (token.equals("no-store") || token.equals("no-cache") || token.startsWith("no-cache=")) {
+                    return STALE;
+                } else if (token.startsWith("max-age=")) {
+                    maxAge = parseSeconds(token.substring(8));
+                }
+            }
+            if (maxAge >= 0) {
+                return Math.max(maxAge - Math.max(age, 0), STALE);
+            }
+        }
+        if (expires >= 0) {
+            long base = date >= 0 ? date : now;
+            return Math.max(expires - base - Math.max(age, 0), STALE);
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Computes the freshness lifetime of a response from a map of headers.
+     * Header names are matched ignoring a case and values may be strings,
+     * numbers or dates.
+     *
+     * @param headers the response headers
+     * @param now the current time in milliseconds
+     * @return the time in milliseconds response stays fresh, {@link #STALE}
+     *         if it's not fresh or {@link #UNKNOWN} if headers didn't tell
+     * @see #getTimeToLive(String, long, long, long, long)
+     */
+    public static long getTimeToLive(Map<String, ?> headers, long now) {
+        Object cacheControl = getHeader(headers, CACHE_CONTROL);
+        Object expires = getHeader(headers, EXPIRES);
+        long age = -1;
+        Object ageValue = getHeader(headers, AGE);
+        if (ageValue instanceof Number) {
+            age = ((Number) ageValue).longValue() * 1000;
+        } else if (ageValue != null) {
+            age = parseSeconds(ageValue.toString());
+        }
+        long expiresTime = -1;
+        if (expires != null) {
+            expiresTime = toTime(expires);
+            if (expiresTime < 0) {
+                // invalid dates like "0" mean already expired
+                expiresTime = 0;
+            }
+        }
+        return getTimeToLive(cacheControl != null ? cacheControl.toString() : null, expiresTime,
+                toTime(getHeader(headers, DATE)), Math.max(age, 0), now);
+    }
+
+    /**
+     * Parses a http date.
+     *
+     * @param value the date string
+     * @return the date in milliseconds, negative if value can't be parsed
+     */
+    public static long parseDate(String value) {
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat(format, Locale.US);
+            dateFormat.setTimeZone(GMT);
+            try {
+                return dateFormat.parse(value).getTime();
+            } catch (ParseException e) {
+                // try next format
+            }
+        }
+        return -1;
+    }
+
+    private static Object getHeader(Map<String, ?> headers, String name) {
+        Object value = headers.get(name);
+        if (value != null) {
+            return value;
+        }
+        for (Entry<String, ?> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static long toTime(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value != null) {
+            return parseDate(value.toString());
+        }
+        return -1;
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+}
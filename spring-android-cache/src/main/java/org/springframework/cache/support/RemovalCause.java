@@ -0,0 +1,36 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+/**
+ * The reason why an entry was removed from a cache.
+ *
+ * @author Janne Valkealahti
+ * @see StatsCounter#recordRemoval(RemovalCause, long)
+ */
+public enum RemovalCause {
+
+    /** Entry was removed by a user, clearing a whole cache is not recorded */
+    EXPLICIT,
+
+    /** Entry was evicted to keep a cache within its size limit */
+    SIZE,
+
+    /** Entry was removed because its time-to-live or idle time passed */
+    EXPIRED
+
+}
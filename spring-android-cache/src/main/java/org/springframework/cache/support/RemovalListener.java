@@ -0,0 +1,39 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+/**
+ * Listener notified when an entry is removed from a cache. A listener
+ * is called after a cache has released its locks, in a thread which
+ * caused a removal, so it should return quickly.
+ *
+ * @author Janne Valkealahti
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public interface RemovalListener<K, V> {
+
+    /**
+     * Called when an entry has been removed.
+     *
+     * @param key the key of a removed entry
+     * @param value the value of a removed entry
+     * @param cause the reason of a removal
+     */
+    void onRemoval(K key, V value, RemovalCause cause);
+
+}
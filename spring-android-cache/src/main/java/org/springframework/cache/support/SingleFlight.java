@@ -0,0 +1,269 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.LoadingCache.ValueRetrievalException;
+
+/**
+ * Helper implementing single-flight loading for caches. Only one load
+ * per key is in flight at a time and concurrent callers missing the
+ * same key wait for it instead of running their own loader.
+ * <p>
+ * Instances are meant to be held by a cache implementing
+ * {@link org.springframework.cache.LoadingCache} which delegates
+ * its loading methods to this class.
+ * <p>
+ * A cache is looked up once per call so a miss is recorded once. A caller
+ * starting a load looks a key up again with a {@link Lookup} which doesn't
+ * record statistics, so a load completing between its miss and starting
+ * a new load isn't repeated. A loader which synchronously gets a key it's
+ * loading itself gets an {@link IllegalStateException} instead of waiting
+ * for itself forever.
+ *
+ * @author Janne Valkealahti
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<Object, LoadTask<?>> mLoads = new ConcurrentHashMap<Object, LoadTask<?>>();
+    private final Lookup mLookup;
+    private volatile StatsCounter mStatsCounter;
+
+    /**
+     * Instantiates a new single flight which doesn't look
+     * a cache up again before starting a load.
+     */
+    public SingleFlight() {
+        this(null);
+    }
+
+    /**
+     * Instantiates a new single flight.
+     *
+     * @param lookup the lookup not recording statistics, null to
+     *        not look a cache up again before starting a load
+     */
+    public SingleFlight(Lookup lookup) {
+        mLookup = lookup;
+    }
+
+    /**
+     * Gets a value from a cache or loads it in a calling thread. If a
+     * load for a key is already in flight, waits for its result.
+     *
+     * @param cache the cache to get from and put to
+     * @param key the key
+     * @param loader the loader computing a value on a cache miss
+     * @return the cached or loaded value
+     * @throws IllegalStateException if called by a loader of a same key
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Cache cache, Object key, Callable<T> loader) {
+        ValueWrapper wrapper = cache.get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        LoadTask<T> task = newTask(cache, key, loader);
+        LoadTask<T> load = (LoadTask<T>) mLoads.putIfAbsent(key, task);
+        if (load != null && load.mRunner == Thread.currentThread()) {
+            throw new IllegalStateException("Recursive load of key " + key);
+        }
+        if (load == null) {
+            load = task;
+            try {
+                if (!completeFromCache(key, task)) {
+                    task.run();
+                }
+            } finally {
+                mLoads.remove(key, task);
+            }
+        }
+        try {
+            return load.get();
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, loader, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, loader, e);
+        }
+    }
+
+    /**
+     * Gets a value from a cache or loads it asynchronously.
+     *
+     * @param cache the cache to get from and put to
+     * @param key the key
+     * @param loader the loader computing a value on a cache miss
+     * @param executor the executor running the loader
+     * @return the future of the cached or loaded value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> getAsync(Cache cache, final Object key, Callable<T> loader, Executor executor) {
+        final ValueWrapper wrapper = cache.get(key);
+        if (wrapper != null) {
+            FutureTask<T> done = new FutureTask<T>(new Callable<T>() {
+                public T call() {
+                    return (T) wrapper.get();
+                }
+            });
+            done.run();
+            return done;
+        }
+        final LoadTask<T> task = newTask(cache, key, loader);
+        LoadTask<T> load = (LoadTask<T>) mLoads.putIfAbsent(key, task);
+        if (load != null) {
+            return load;
+        }
+        if (completeFromCache(key, task)) {
+            mLoads.remove(key, task);
+            return task;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        mLoads.remove(key, task);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            mLoads.remove(key, task);
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Gets the number of loads currently in flight.
+     *
+     * @return the number of loads
+     */
+    public int getInFlightCount() {
+        return mLoads.size();
+    }
+
+    /**
+     * Sets the counter recording load times, usually the
+     * stats counter of a cache owning this helper.
+     *
+     * @param statsCounter the stats counter, null to not record loads
+     */
+    public void setStatsCounter(StatsCounter statsCounter) {
+        mStatsCounter = statsCounter;
+    }
+
+    /**
+     * Completes a registered load with a value a previous load put to
+     * a cache after a caller missed it. Failing lookup is left to
+     * a loader as waiters of a registered load must get a result.
+     *
+     * @return True if load was completed, false otherwise
+     */
+    @SuppressWarnings("unchecked")
+    private <T> boolean completeFromCache(Object key, LoadTask<T> task) {
+        if (mLookup == null) {
+            return false;
+        }
+        ValueWrapper wrapper;
+        try {
+            wrapper = mLookup.lookup(key);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (wrapper == null) {
+            return false;
+        }
+        task.complete((T) wrapper.get());
+        return true;
+    }
+
+    private <T> LoadTask<T> newTask(final Cache cache, final Object key, final Callable<T> loader) {
+        return new LoadTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                StatsCounter statsCounter = mStatsCounter;
+                long start = System.nanoTime();
+                T value;
+                try {
+                    value = loader.call();
+                } catch (Exception e) {
+                    if (statsCounter != null) {
+                        statsCounter.recordLoadFailure(System.nanoTime() - start);
+                    }
+                    throw e;
+                }
+                if (statsCounter != null) {
+                    statsCounter.recordLoadSuccess(System.nanoTime() - start);
+                }
+                cache.put(key, value);
+                return value;
+            }
+        });
+    }
+
+    /**
+     * Lookup of a cache which doesn't record statistics.
+     */
+    public interface Lookup {
+
+        /**
+         * Looks a key up without recording a hit or a miss.
+         *
+         * @param key the key
+         * @return the value wrapper, null if key isn't cached
+         */
+        ValueWrapper lookup(Object key);
+
+    }
+
+    /**
+     * Load which knows a thread running it.
+     */
+    private static class LoadTask<T> extends FutureTask<T> {
+
+        volatile Thread mRunner;
+
+        LoadTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        void complete(T value) {
+            set(value);
+        }
+
+        @Override
+        public void run() {
+            mRunner = Thread.currentThread();
+            try {
+                super.run();
+            } finally {
+                mRunner = null;
+            }
+        }
+
+    }
+
+}
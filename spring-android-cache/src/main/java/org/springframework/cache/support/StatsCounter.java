@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+/**
+ * Recorder for events happening in a cache. Caches call these methods
+ * from their hot paths so implementations should be cheap and must
+ * be thread safe. Implementing this interface is also a way to listen
+ * to cache events and forward them to an external metrics system.
+ * <p>
+ * All times are given in nanoseconds.
+ *
+ * @author Janne Valkealahti
+ * @see ConcurrentStatsCounter
+ */
+public interface StatsCounter {
+
+    /**
+     * Records lookups which returned a cached value.
+     *
+     * @param count the number of hits
+     */
+    void recordHits(int count);
+
+    /**
+     * Records lookups which didn't find a cached value.
+     *
+     * @param count the number of misses
+     */
+    void recordMisses(int count);
+
+    /**
+     * Records values written to a cache.
+     *
+     * @param count the number of puts
+     */
+    void recordPuts(int count);
+
+    /**
+     * Records a successful load of a missing value.
+     *
+     * @param loadTime the time spent loading
+     */
+    void recordLoadSuccess(long loadTime);
+
+    /**
+     * Records a load which threw an exception.
+     *
+     * @param loadTime the time spent before load failed
+     */
+    void recordLoadFailure(long loadTime);
+
+    /**
+     * Records a removal of an entry.
+     *
+     * @param cause the cause of a removal
+     * @param weight the weight of a removed entry, 1 if cache is not weighted
+     */
+    void recordRemoval(RemovalCause cause, long weight);
+
+    /**
+     * Records a serialization of a value.
+     *
+     * @param time the time spent serializing
+     */
+    void recordSerialize(long time);
+
+    /**
+     * Records a deserialization of a value.
+     *
+     * @param time the time spent deserializing
+     */
+    void recordDeserialize(long time);
+
+    /**
+     * Gets a snapshot of recorded statistics.
+     *
+     * @return the cache statistics
+     */
+    CacheStats snapshot();
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.tiered;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.support.DaemonThreadFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Warms the first level of a {@link TieredCache} by promoting values of
+ * given keys from its second level in a background. Keys are read in
+ * batches using bulk operations of the second level and keys already in
+ * the first level or waiting to be written behind are skipped. Prefetches
+ * don't count as lookups in the stats of a tiered cache.
+ * <p>
+ * Default executor runs a single low priority thread with a bounded
+ * queue of prefetch requests. When the queue is full the oldest request
+ * is dropped and its future cancelled, assuming that the latest requests,
+ * for example keys of items just scrolled into a view, matter the most.
+ *
+ * @author Janne Valkealahti
+ */
+public class Prefetcher {
+
+    /** Default number of keys read from a second level at once */
+    public static final int DEFAULT_BATCH_SIZE = 32;
+
+    /** Default number of queued prefetch requests */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private final TieredCache mCache;
+    private final Executor mExecutor;
+    private volatile int mBatchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Instantiates a new prefetcher using a default bounded executor.
+     *
+     * @param cache the tiered cache to warm
+     */
+    public Prefetcher(TieredCache cache) {
+        this(cache, createDefaultExecutor(cache.getName(), DEFAULT_QUEUE_CAPACITY));
+    }
+
+    /**
+     * Instantiates a new prefetcher.
+     *
+     * @param cache the tiered cache to warm
+     * @param executor the executor running prefetches
+     */
+    public Prefetcher(TieredCache cache, Executor executor) {
+        Assert.notNull(cache, "Cache must not be null");
+        Assert.notNull(executor, "Executor must not be null");
+        mCache = cache;
+        mExecutor = executor;
+    }
+
+    /**
+     * Sets the number of keys read from a second level at once.
+     *
+     * @param batchSize the batch size
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "Batch size must be positive");
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Gets the number of keys read from a second level at once.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    /**
+     * Prefetches keys into the first level. Keys are copied so caller
+     * may reuse a collection. Cancelling a returned future with an
+     * interrupt stops prefetching before the next batch.
+     *
+     * @param keys the keys to prefetch
+     * @return the future telling how many values were promoted
+     */
+    public Future<Integer> prefetch(Collection<?> keys) {
+        final List<Object> copy = new ArrayList<Object>(keys);
+        final int batchSize = mBatchSize;
+        FutureTask<Integer> task = new FutureTask<Integer>(new Callable<Integer>() {
+            public Integer call() {
+                int promoted = 0;
+                for (int i = 0; i < copy.size() && !Thread.currentThread().isInterrupted(); i += batchSize) {
+                    promoted += mCache.warm(copy.subList(i, Math.min(i + batchSize, copy.size())));
+                }
+                return promoted;
+            }
+        });
+        mExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * Creates a default executor running prefetches in a single
+     * thread with a bounded queue dropping oldest requests.
+     *
+     * @param name the cache name
+     * @param capacity the max number of queued requests
+     * @return the executor
+     */
+    protected static Executor createDefaultExecutor(String name, int capacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity), new DaemonThreadFactory(name + "-prefetch"),
+                new DiscardOldestRequestPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Drops the oldest queued request and cancels it so
+     * that nobody waits for its result forever.
+     */
+    private static class DiscardOldestRequestPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                cancel(r);
+                return;
+            }
+            cancel(executor.getQueue().poll());
+            executor.execute(r);
+        }
+
+        private static void cancel(Runnable r) {
+            if (r instanceof Future) {
+                ((Future<?>) r).cancel(false);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,611 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.tiered;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.BulkCache;
+import org.springframework.cache.Cache;
+import org.springframework.cache.ExpirableCache;
+import org.springframework.cache.InstrumentedCache;
+import org.springframework.cache.LoadingCache;
+import org.springframework.cache.support.BulkCacheUtils;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.ConcurrentStatsCounter;
+import org.springframework.cache.support.ExpiringValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.cache.support.SingleFlight;
+import org.springframework.cache.support.StatsCounter;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.util.Assert;
+
+/**
+ * Cache implementation composing a fast first level cache, usually
+ * a memory cache, and a slower second level cache, usually a disk cache.
+ * Lookups check the first level first and hits from the second level
+ * are promoted to the first level.
+ * <p>
+ * Writes go to the first level immediately and are written behind to
+ * the second level by a background writer, so {@link #put(Object, Object)}
+ * never blocks on second level I/O. Pending writes are coalesced per key
+ * and written in batches. Until a write reaches the second level it is
+ * still visible to lookups even if first level has already evicted it.
+ * Evictions are ordered with pending writes so that an evicted value is
+ * never resurrected by a late write. Batches of pending puts and
+ * evictions are passed to the second level as bulk operations.
+ * <p>
+ * Number of pending operations is bounded by {@link #setMaxPendingWrites(int)}.
+ * A write which finds more operations pending writes a batch to the second
+ * level in a calling thread instead of dropping any, as a dropped eviction
+ * could resurrect a value. This slows down writers while the second level
+ * falls behind and is counted in {@link #getCallerWriteCount()}.
+ * <p>
+ * Hits and misses are counted separately for both levels. Stats of
+ * a whole cache count a lookup as a hit if either level had a value
+ * while evictions and expirations are recorded by the levels.
+ * <p>
+ * Entries put with a time-to-live are passed to both levels with
+ * their remaining lifetime if levels are {@link ExpirableCache}s.
+ * Values promoted from the second level use the default time-to-live
+ * of the first level which therefore should not be longer than the
+ * one of the second level.
+ * <p>
+ * First level can be warmed ahead of lookups with a {@link Prefetcher}.
+ *
+ * @author Janne Valkealahti
+ */
+public class TieredCache implements LoadingCache, ExpirableCache, InstrumentedCache, BulkCache {
+
+    /** Default max number of pending second level operations */
+    public static final int DEFAULT_MAX_PENDING_WRITES = 1000;
+
+    /** Marker for a pending eviction */
+    private static final Object EVICT = new Object();
+    /** Marker for a pending null value */
+    private static final Object NULL_HOLDER = new Object();
+
+    private final String mName;
+    private final Cache mFirst;
+    private final Cache mSecond;
+    private final Executor mWriteExecutor;
+    /** Pending second level operations by key */
+    private final ConcurrentHashMap<Object, Object> mPending = new ConcurrentHashMap<Object, Object>();
+    private final AtomicBoolean mWriterScheduled = new AtomicBoolean();
+    /** Lock serializing batches written to second level */
+    private final Object mWriteLock = new Object();
+    private final AtomicLong mFirstHitCount = new AtomicLong();
+    private final AtomicLong mFirstMissCount = new AtomicLong();
+    private final AtomicLong mSecondHitCount = new AtomicLong();
+    private final AtomicLong mSecondMissCount = new AtomicLong();
+    private final AtomicLong mWriteFailureCount = new AtomicLong();
+    private final AtomicLong mCallerWriteCount = new AtomicLong();
+    private volatile int mMaxPendingWrites = DEFAULT_MAX_PENDING_WRITES;
+    private final SingleFlight mLoads = new SingleFlight(new SingleFlight.Lookup() {
+        @Override
+        public ValueWrapper lookup(Object key) {
+            return peek(key);
+        }
+    });
+    private volatile StatsCounter mStatsCounter;
+
+    /**
+     * Instantiates a new tiered cache. Second level writes are
+     * done by a {@link SimpleAsyncTaskExecutor}.
+     *
+     * @param name the cache name
+     * @param first the first level cache
+     * @param second the second level cache
+     */
+    public TieredCache(String name, Cache first, Cache second) {
+        this(name, first, second, createDefaultExecutor(name));
+    }
+
+    /**
+     * Instantiates a new tiered cache.
+     *
+     * @param name the cache name
+     * @param first the first level cache
+     * @param second the second level cache
+     * @param writeExecutor the executor writing to second level
+     */
+    public TieredCache(String name, Cache first, Cache second, Executor writeExecutor) {
+        Assert.notNull(first, "First level cache must not be null");
+        Assert.notNull(second, "Second level cache must not be null");
+        Assert.notNull(writeExecutor, "Write executor must not be null");
+        mName = name;
+        mFirst = first;
+        mSecond = second;
+        mWriteExecutor = writeExecutor;
+        setStatsCounter(new ConcurrentStatsCounter());
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the second level cache as it is the
+     * authoritative store of this cache.
+     */
+    @Override
+    public Object getNativeCache() {
+        return mSecond;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper wrapper = mFirst.get(key);
+        if (wrapper != null) {
+            mFirstHitCount.incrementAndGet();
+            mStatsCounter.recordHits(1);
+            return wrapper;
+        }
+        Object pending = mPending.get(key);
+        if (pending == EVICT) {
+            mFirstMissCount.incrementAndGet();
+            mSecondMissCount.incrementAndGet();
+            mStatsCounter.recordMisses(1);
+            return null;
+        } else if (pending instanceof ExpiringValue) {
+            ExpiringValue expiring = (ExpiringValue) pending;
+            if (expiring.isExpired(System.currentTimeMillis())) {
+                mFirstMissCount.incrementAndGet();
+                mSecondMissCount.incrementAndGet();
+                mStatsCounter.recordMisses(1);
+                return null;
+            }
+            mFirstHitCount.incrementAndGet();
+            mStatsCounter.recordHits(1);
+            return new SimpleValueWrapper(expiring.getValue() == NULL_HOLDER ? null : expiring.getValue());
+        } else if (pending != null) {
+            // not yet written behind, still a memory hit
+            mFirstHitCount.incrementAndGet();
+            mStatsCounter.recordHits(1);
+            return new SimpleValueWrapper(pending == NULL_HOLDER ? null : pending);
+        }
+        mFirstMissCount.incrementAndGet();
+        wrapper = mSecond.get(key);
+        if (wrapper == null) {
+            mSecondMissCount.incrementAndGet();
+            mStatsCounter.recordMisses(1);
+            return null;
+        }
+        mSecondHitCount.incrementAndGet();
+        mStatsCounter.recordHits(1);
+        mFirst.put(key, wrapper.get());
+        return wrapper;
+    }
+
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> values = BulkCacheUtils.getAll(mFirst, keys);
+        int firstHits = values.size();
+        int pendingMisses = 0;
+        List<Object> remaining = new ArrayList<Object>();
+        long now = System.currentTimeMillis();
+        for (Object key : keys) {
+            if (values.containsKey(key)) {
+                continue;
+            }
+            Object pending = mPending.get(key);
+            if (pending instanceof ExpiringValue && !((ExpiringValue) pending).isExpired(now)) {
+                pending = ((ExpiringValue) pending).getValue();
+            } else if (pending instanceof ExpiringValue) {
+                pending = EVICT;
+            }
+            if (pending == EVICT) {
+                pendingMisses++;
+            } else if (pending != null) {
+                // not yet written behind, still a memory hit
+                values.put(key, pending == NULL_HOLDER ? null : pending);
+                firstHits++;
+            } else {
+                remaining.add(key);
+            }
+        }
+        Map<Object, Object> promoted = remaining.isEmpty() ? new HashMap<Object, Object>()
+                : BulkCacheUtils.getAll(mSecond, remaining);
+        if (!promoted.isEmpty()) {
+            BulkCacheUtils.putAll(mFirst, promoted);
+            values.putAll(promoted);
+        }
+        mFirstHitCount.addAndGet(firstHits);
+        mFirstMissCount.addAndGet(pendingMisses + remaining.size());
+        mSecondHitCount.addAndGet(promoted.size());
+        mSecondMissCount.addAndGet(pendingMisses + remaining.size() - promoted.size());
+        mStatsCounter.recordHits(values.size());
+        mStatsCounter.recordMisses(keys.size() - values.size());
+        return values;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> loader) {
+        return mLoads.get(this, key, loader);
+    }
+
+    @Override
+    public <T> Future<T> getAsync(Object key, Callable<T> loader, Executor executor) {
+        return mLoads.getAsync(this, key, loader, executor);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        mFirst.put(key, value);
+        mPending.put(key, value == null ? NULL_HOLDER : value);
+        mStatsCounter.recordPuts(1);
+        afterWrite();
+    }
+
+    @Override
+    public void put(Object key, Object value, long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "Time-to-live must be positive");
+        if (mFirst instanceof ExpirableCache) {
+            ((ExpirableCache) mFirst).put(key, value, timeToLive);
+        } else {
+            mFirst.put(key, value);
+        }
+        long now = System.currentTimeMillis();
+        mPending.put(key, new ExpiringValue(value == null ? NULL_HOLDER : value, now + timeToLive, 0, now));
+        mStatsCounter.recordPuts(1);
+        afterWrite();
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        BulkCacheUtils.putAll(mFirst, entries);
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            mPending.put(entry.getKey(), entry.getValue() == null ? NULL_HOLDER : entry.getValue());
+        }
+        mStatsCounter.recordPuts(entries.size());
+        afterWrite();
+    }
+
+    /**
+     * Purges expired entries from both levels which
+     * are {@link ExpirableCache}s.
+     */
+    @Override
+    public int purgeExpired(int maxEntries) {
+        int removed = 0;
+        if (mFirst instanceof ExpirableCache) {
+            removed += ((ExpirableCache) mFirst).purgeExpired(maxEntries);
+        }
+        if (mSecond instanceof ExpirableCache && removed < maxEntries) {
+            removed += ((ExpirableCache) mSecond).purgeExpired(maxEntries - removed);
+        }
+        return removed;
+    }
+
+    @Override
+    public void evict(Object key) {
+        mFirst.evict(key);
+        mPending.put(key, EVICT);
+        afterWrite();
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        BulkCacheUtils.evictAll(mFirst, keys);
+        for (Object key : keys) {
+            mPending.put(key, EVICT);
+        }
+        afterWrite();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mWriteLock) {
+            mPending.clear();
+            mSecond.clear();
+        }
+        mFirst.clear();
+    }
+
+    /**
+     * Writes all pending operations to second level
+     * cache in a calling thread.
+     */
+    public void flush() {
+        while (!mPending.isEmpty()) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Gets the number of operations waiting to be
+     * written to second level cache.
+     *
+     * @return the number of pending writes
+     */
+    public int getPendingWriteCount() {
+        return mPending.size();
+    }
+
+    /**
+     * Sets the max number of operations waiting to be written to second
+     * level cache before writers write a batch in a calling thread.
+     *
+     * @param maxPendingWrites the max number of pending writes
+     */
+    public void setMaxPendingWrites(int maxPendingWrites) {
+        Assert.isTrue(maxPendingWrites > 0, "Max pending writes must be positive");
+        mMaxPendingWrites = maxPendingWrites;
+    }
+
+    /**
+     * Gets the max number of operations waiting to be
+     * written to second level cache.
+     *
+     * @return the max number of pending writes
+     */
+    public int getMaxPendingWrites() {
+        return mMaxPendingWrites;
+    }
+
+    /**
+     * Gets the number of batches written in a calling thread
+     * because too many operations were pending.
+     *
+     * @return the caller write count
+     */
+    public long getCallerWriteCount() {
+        return mCallerWriteCount.get();
+    }
+
+    /**
+     * Gets the number of second level writes which failed and were dropped.
+     *
+     * @return the write failure count
+     */
+    public long getWriteFailureCount() {
+        return mWriteFailureCount.get();
+    }
+
+    @Override
+    public void setStatsCounter(StatsCounter statsCounter) {
+        Assert.notNull(statsCounter, "StatsCounter must not be null");
+        mStatsCounter = statsCounter;
+        mLoads.setStatsCounter(statsCounter);
+    }
+
+    /**
+     * Gets statistics of this cache as a whole. Byte size is
+     * taken from the second level if it records statistics.
+     *
+     * @return the cache statistics
+     */
+    @Override
+    public CacheStats getStats() {
+        CacheStats stats = mStatsCounter.snapshot();
+        if (mSecond instanceof InstrumentedCache) {
+            stats = stats.withByteSize(((InstrumentedCache) mSecond).getStats().getByteSize());
+        }
+        return stats;
+    }
+
+    /**
+     * Gets statistics of the first level cache. Values
+     * still waiting to be written behind count as hits.
+     *
+     * @return the first level statistics
+     */
+    public CacheStats getFirstLevelStats() {
+        return new CacheStats(mFirstHitCount.get(), mFirstMissCount.get(), 0, 0);
+    }
+
+    /**
+     * Gets statistics of the second level cache. Only lookups
+     * missed by the first level reach the second level.
+     *
+     * @return the second level statistics
+     */
+    public CacheStats getSecondLevelStats() {
+        return new CacheStats(mSecondHitCount.get(), mSecondMissCount.get(), 0, 0);
+    }
+
+    /**
+     * Promotes second level values of keys missing from the first level
+     * without counting lookups. Keys having a pending write are skipped
+     * as their latest value is still visible through the pending write.
+     * Holding the write lock keeps a batch from being written behind while
+     * values are read, and a value promoted while a new write for its key
+     * was queued is evicted again from the first level.
+     *
+     * @param keys the keys to warm
+     * @return the number of promoted values
+     * @see Prefetcher
+     */
+    int warm(Collection<?> keys) {
+        Map<Object, Object> present = BulkCacheUtils.getAll(mFirst, keys);
+        synchronized (mWriteLock) {
+            List<Object> missing = new ArrayList<Object>();
+            for (Object key : keys) {
+                if (!present.containsKey(key) && !mPending.containsKey(key)) {
+                    missing.add(key);
+                }
+            }
+            if (missing.isEmpty()) {
+                return 0;
+            }
+            Map<Object, Object> found = BulkCacheUtils.getAll(mSecond, missing);
+            BulkCacheUtils.putAll(mFirst, found);
+            for (Object key : found.keySet()) {
+                if (mPending.containsKey(key)) {
+                    mFirst.evict(key);
+                }
+            }
+            return found.size();
+        }
+    }
+
+    /**
+     * Gets the first level cache.
+     *
+     * @return the first level cache
+     */
+    public Cache getFirstLevel() {
+        return mFirst;
+    }
+
+    /**
+     * Gets the second level cache.
+     *
+     * @return the second level cache
+     */
+    public Cache getSecondLevel() {
+        return mSecond;
+    }
+
+    /**
+     * Looks a key up in first level cache and pending writes without
+     * recording statistics of this cache. Loads put their values to both
+     * so a completed load is found without going to second level.
+     */
+    private ValueWrapper peek(Object key) {
+        ValueWrapper wrapper = mFirst.get(key);
+        if (wrapper != null) {
+            return wrapper;
+        }
+        Object pending = mPending.get(key);
+        if (pending == null || pending == EVICT) {
+            return null;
+        } else if (pending instanceof ExpiringValue) {
+            ExpiringValue expiring = (ExpiringValue) pending;
+            if (expiring.isExpired(System.currentTimeMillis())) {
+                return null;
+            }
+            pending = expiring.getValue();
+        }
+        return new SimpleValueWrapper(pending == NULL_HOLDER ? null : pending);
+    }
+
+    /**
+     * Writes a batch in a calling thread if too many operations
+     * are pending and otherwise leaves them to a background writer.
+     */
+    private void afterWrite() {
+        if (mPending.size() > mMaxPendingWrites) {
+            mCallerWriteCount.incrementAndGet();
+            writeBatch();
+        }
+        scheduleWriter();
+    }
+
+    private void scheduleWriter() {
+        if (mWriterScheduled.compareAndSet(false, true)) {
+            mWriteExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    do {
+                        flush();
+                        mWriterScheduled.set(false);
+                        // writes which arrived after last batch but
+                        // before flag was cleared would be missed
+                    } while (!mPending.isEmpty() && mWriterScheduled.compareAndSet(false, true));
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes a snapshot of pending operations. An operation is
+     * removed from pending ones only if it wasn't replaced
+     * while it was being written.
+     */
+    private void writeBatch() {
+        synchronized (mWriteLock) {
+            List<Entry<Object, Object>> batch = new ArrayList<Entry<Object, Object>>(mPending.entrySet());
+            Map<Object, Object> puts = new HashMap<Object, Object>();
+            List<Object> evicts = new ArrayList<Object>();
+            for (Entry<Object, Object> entry : batch) {
+                Object key = entry.getKey();
+                Object value = entry.getValue();
+                if (value == EVICT) {
+                    evicts.add(key);
+                } else if (value instanceof ExpiringValue) {
+                    try {
+                        writeExpiring(key, (ExpiringValue) value);
+                    } catch (RuntimeException e) {
+                        mWriteFailureCount.incrementAndGet();
+                    }
+                } else {
+                    puts.put(key, value == NULL_HOLDER ? null : value);
+                }
+            }
+            // a batch holds at most one operation per key
+            // so puts and evicts can't be reordered
+            try {
+                if (!evicts.isEmpty()) {
+                    BulkCacheUtils.evictAll(mSecond, evicts);
+                }
+            } catch (RuntimeException e) {
+                mWriteFailureCount.addAndGet(evicts.size());
+            }
+            try {
+                if (!puts.isEmpty()) {
+                    BulkCacheUtils.putAll(mSecond, puts);
+                }
+            } catch (RuntimeException e) {
+                // first level still has the values, there's
+                // nothing more we can do than drop the writes
+                mWriteFailureCount.addAndGet(puts.size());
+            }
+            for (Entry<Object, Object> entry : batch) {
+                mPending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void writeExpiring(Object key, ExpiringValue expiring) {
+        Object value = expiring.getValue() == NULL_HOLDER ? null : expiring.getValue();
+        long timeToLive = expiring.getExpiresAt() - System.currentTimeMillis();
+        if (timeToLive <= 0) {
+            // expired before it was written, older
+            // value must not stay in second level
+            mSecond.evict(key);
+        } else if (mSecond instanceof ExpirableCache) {
+            ((ExpirableCache) mSecond).put(key, value, timeToLive);
+        } else {
+            mSecond.put(key, value);
+        }
+    }
+
+    /**
+     * Creates a default executor used for second level writes.
+     *
+     * @param name the cache name
+     * @return the executor
+     */
+    protected static Executor createDefaultExecutor(String name) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(name + "-writer-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+}
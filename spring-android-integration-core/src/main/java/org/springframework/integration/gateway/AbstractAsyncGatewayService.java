@@ -26,6 +26,7 @@ import org.springframework.integration.channel.ExecutorChannel;
 import org.springframework.integration.core.MessageHandler;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.message.ErrorMessage;
+import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.util.ErrorHandlingTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.Assert;
@@ -37,6 +38,11 @@ import android.util.Log;
 /**
  * Adding functionality to handle messages asynchronously via
  * separate executors on inbound and outbound channels.
+ * <p>
+ * Request id of an intent is carried to a message as a
+ * {@link GatewayHeaders#REQUEST_ID} header. Messages of cancelled
+ * requests waiting for an outbound executor are dropped before
+ * they reach a message handler.
  * 
  * @author Janne Valkealahti
  */
@@ -72,7 +78,7 @@ public abstract class AbstractAsyncGatewayService extends AbstractRequestGateway
         
         DispatchErrorHandler outErrorHandler = new DispatchErrorHandler();
         ErrorHandlingTaskExecutor outErrorTaskExecutor = new ErrorHandlingTaskExecutor(mOutExecutor, outErrorHandler);
-        mOutChannel = new ExecutorChannel(outErrorTaskExecutor);
+        mOutChannel = initOutboundChannel(outErrorTaskExecutor);
         onOutboundChannelPostProcess(mOutChannel);
         
         // register message handlers for outbound channel
@@ -80,7 +86,7 @@ public abstract class AbstractAsyncGatewayService extends AbstractRequestGateway
         Assert.noNullElements(messageHandlers, "There can't be null message handlers.");
         for(AbstractReplyProducingMessageHandler handler : messageHandlers) {
             handler.setOutputChannel(mInChannel);
-            mOutChannel.subscribe(handler);
+            mOutChannel.subscribe(new CancellableHandler(handler));
         }
     }
     
@@ -140,10 +146,30 @@ public abstract class AbstractAsyncGatewayService extends AbstractRequestGateway
     protected void processIntent(Intent i) {
         Message<?> message = createMessage(i);
         if(message != null) {
+            if(i.hasExtra(GatewayHeaders.REQUEST_ID)
+                    && !message.getHeaders().containsKey(GatewayHeaders.REQUEST_ID)) {
+                message = MessageBuilder.fromMessage(message)
+                    .setHeader(GatewayHeaders.REQUEST_ID, i.getIntExtra(GatewayHeaders.REQUEST_ID, 0))
+                    .build();
+            }
             mOutChannel.send(message);
+        } else if(i.hasExtra(GatewayHeaders.REQUEST_ID)) {
+            // nothing to process, request is done
+            requestDone(i.getIntExtra(GatewayHeaders.REQUEST_ID, 0));
         }
     }
     
+    /**
+     * Initialise outbound channel messages converted from intents are
+     * sent to. Default implementation is an {@link ExecutorChannel}
+     * which dispatches messages in the order they were sent.
+     * @param executor the executor handling errors of dispatched messages
+     * @return the channel
+     */
+    protected AbstractSubscribableChannel initOutboundChannel(Executor executor) {
+        return new ExecutorChannel(executor);
+    }
+    
     /**
      * Initialise executor for inbound channel. Default implementation
      * is a {@link ThreadPoolTaskExecutor} with default settings.
@@ -192,6 +218,32 @@ public abstract class AbstractAsyncGatewayService extends AbstractRequestGateway
         }        
     }
     
+    /**
+     * Message handler which drops messages of cancelled requests
+     * and otherwise delegates to a real handler.
+     */
+    private class CancellableHandler implements MessageHandler {
+        private final MessageHandler mHandler;
+        public CancellableHandler(MessageHandler handler) {
+            mHandler = handler;
+        }
+        @Override
+        public void handleMessage(Message<?> message) throws MessagingException {
+            Integer requestId = message.getHeaders().get(GatewayHeaders.REQUEST_ID, Integer.class);
+            if(requestId == null) {
+                mHandler.handleMessage(message);
+                return;
+            }
+            try {
+                if(!isCancelled(requestId)) {
+                    mHandler.handleMessage(message);
+                }
+            } finally {
+                requestDone(requestId);
+            }
+        }
+    }
+    
     /**
      * Simple handler for dispatching errors.
      */
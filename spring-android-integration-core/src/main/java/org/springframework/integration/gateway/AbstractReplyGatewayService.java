@@ -63,11 +63,18 @@ public abstract class AbstractReplyGatewayService extends AbstractRequestGateway
      * listener.
      */
     protected void processIntent(Intent i) {
-        Message<?> message = createMessage(i);
-        if(message != null) {
-            mMessageHandler.handleMessage(message);
-            Message<?> response = mChannel.receive(mPollTimeout);
-            dispatchResult(response);                    
+        try {
+            Message<?> message = createMessage(i);
+            if(message != null) {
+                mMessageHandler.handleMessage(message);
+                Message<?> response = mChannel.receive(mPollTimeout);
+                dispatchResult(response);                    
+            }
+        } finally {
+            // request is done also if no response arrived in time
+            if(i.hasExtra(GatewayHeaders.REQUEST_ID)) {
+                requestDone(i.getIntExtra(GatewayHeaders.REQUEST_ID, 0));
+            }
         }
     }
     
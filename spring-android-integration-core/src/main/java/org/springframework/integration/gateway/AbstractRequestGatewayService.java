@@ -16,8 +16,12 @@
 
 package org.springframework.integration.gateway;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
+import org.springframework.integration.Message;
+
 import android.content.Intent;
 import android.util.Log;
 
@@ -25,6 +29,13 @@ import android.util.Log;
  * Extension to add a request queue functionality on top of
  * {@link AbstractGatewayService}. It makes things a bit faster when adding
  * requests via binded service.
+ * <p>
+ * Requests carrying a {@link GatewayHeaders#REQUEST_ID} extra are tracked
+ * from {@link #addRequest(Intent)} until a result carrying the same id is
+ * dispatched or {@link #requestDone(int)} is called, and can be cancelled
+ * while in flight. Cancelling an unknown or completed request does nothing.
+ * Cancelled requests still in a queue are dropped and sub classes may
+ * check {@link #isCancelled(int)} before doing expensive work for a request.
  * 
  * @author Janne Valkealahti
  */
@@ -32,6 +43,8 @@ public abstract class AbstractRequestGatewayService extends AbstractGatewayServi
 
     private final static String TAG = "AbstractRequestGatewayService";
     private ConcurrentLinkedQueue<Intent> mRequestQueue;
+    /** Cancelled flags of requests in flight, guarded by itself */
+    private final Map<Integer, Boolean> mInFlight = new HashMap<Integer, Boolean>();
 
     public AbstractRequestGatewayService(String name) {
         super(name);
@@ -48,9 +61,77 @@ public abstract class AbstractRequestGatewayService extends AbstractGatewayServi
      * @param intent the Intent to add
      */
     public void addRequest(Intent intent) {
+        if(intent.hasExtra(GatewayHeaders.REQUEST_ID)) {
+            synchronized (mInFlight) {
+                mInFlight.put(intent.getIntExtra(GatewayHeaders.REQUEST_ID, 0), Boolean.FALSE);
+            }
+        }
         mRequestQueue.add(intent);
     }
 
+    /**
+     * Cancels a request in flight. Request is dropped if it hasn't
+     * been processed yet.
+     * @param requestId the id of a request
+     * @return true if request was in flight, false otherwise
+     */
+    public boolean cancelRequest(int requestId) {
+        synchronized (mInFlight) {
+            if(!mInFlight.containsKey(requestId)) {
+                return false;
+            }
+            mInFlight.put(requestId, Boolean.TRUE);
+            return true;
+        }
+    }
+
+    /**
+     * Checks if a request is cancelled.
+     * @param requestId the id of a request
+     * @return true if request is cancelled
+     */
+    protected boolean isCancelled(int requestId) {
+        synchronized (mInFlight) {
+            return Boolean.TRUE.equals(mInFlight.get(requestId));
+        }
+    }
+
+    /**
+     * Checks if a request is in flight.
+     * @param requestId the id of a request
+     * @return true if request is in flight
+     */
+    protected boolean isInFlight(int requestId) {
+        synchronized (mInFlight) {
+            return mInFlight.containsKey(requestId);
+        }
+    }
+
+    /**
+     * Forgets a request after it has been dropped or completed.
+     * @param requestId the id of a request
+     */
+    protected void requestDone(int requestId) {
+        synchronized (mInFlight) {
+            mInFlight.remove(requestId);
+        }
+    }
+
+    /**
+     * Completes a request whose result is dispatched,
+     * including results served without a handler.
+     */
+    @Override
+    protected void dispatchResult(Message<?> data) {
+        if(data != null) {
+            Integer requestId = data.getHeaders().get(GatewayHeaders.REQUEST_ID, Integer.class);
+            if(requestId != null) {
+                requestDone(requestId);
+            }
+        }
+        super.dispatchResult(data);
+    }
+
     /**
      * Processes the current request queue. Flushed intents from a queue are
      * simply passed to {@link #processIntent(Intent)} method.
@@ -58,10 +139,21 @@ public abstract class AbstractRequestGatewayService extends AbstractGatewayServi
     protected void processRequestQueue() {
         Intent i;
         while ((i = mRequestQueue.poll()) != null) {
+            Integer requestId = null;
+            if(i.hasExtra(GatewayHeaders.REQUEST_ID)) {
+                requestId = i.getIntExtra(GatewayHeaders.REQUEST_ID, 0);
+                if(isCancelled(requestId)) {
+                    requestDone(requestId);
+                    continue;
+                }
+            }
             try {
                 processIntent(i);
             } catch (Exception e) {
                 Log.e(TAG, "Error processing intent from queue.", e);
+                if(requestId != null) {
+                    requestDone(requestId);
+                }
             }
         }
     }
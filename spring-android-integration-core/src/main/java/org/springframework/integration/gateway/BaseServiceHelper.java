@@ -17,6 +17,7 @@
 package org.springframework.integration.gateway;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -100,6 +101,7 @@ public class BaseServiceHelper {
             Log.d(TAG, "ImageServiceHelper.handleIntent: queue intent");            
         }
         int requestId = getNextRequestId();
+        intent.putExtra(GatewayHeaders.REQUEST_ID, requestId);
         mRequestQueue.add(new IntentHolder(intent, requestId));
         if(mServiceBound) {
             processRequestQueue();
@@ -112,6 +114,25 @@ public class BaseServiceHelper {
         return requestId;
     }
     
+    /**
+     * Cancels a request. Request still waiting for a service
+     * to be bound is simply removed, otherwise a service is
+     * asked to drop it before it's processed.
+     * @param requestId the id returned from {@link #handleIntent(Intent)}
+     */
+    public void cancelRequest(int requestId) {
+        Iterator<IntentHolder> iterator = mRequestQueue.iterator();
+        while(iterator.hasNext()) {
+            if(iterator.next().mId.equals(requestId)) {
+                iterator.remove();
+                return;
+            }
+        }
+        if(mServiceBound && mService != null) {
+            mService.cancelRequest(requestId);
+        }
+    }
+    
     private void bindService() {
         if(LogConstants.DEBUG) {
             Log.d(TAG, "Binding Service");            
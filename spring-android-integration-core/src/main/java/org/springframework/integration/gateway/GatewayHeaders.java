@@ -0,0 +1,31 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.gateway;
+
+/**
+ * Message headers and intent extras used by gateway services.
+ * 
+ * @author Janne Valkealahti
+ */
+public class GatewayHeaders {
+
+    private static final String PREFIX = "gateway_";
+
+    /** Id of a request allocated by {@link BaseServiceHelper}, an Integer */
+    public static final String REQUEST_ID = PREFIX + "request_id";
+
+}
@@ -510,6 +510,9 @@ public class HttpRequestExecutingMessageHandler extends AbstractReplyProducingMe
         if (StringUtils.hasText(expectedResponseTypeName)){
             expectedResponseType = ClassUtils.forName(expectedResponseTypeName, ClassUtils.getDefaultClassLoader());
         }
+	    if (expectedResponseType == null) {
+	        expectedResponseType = this.expectedResponseType;
+	    }
 	    return expectedResponseType != null ? expectedResponseType : String.class;
 	}
 }
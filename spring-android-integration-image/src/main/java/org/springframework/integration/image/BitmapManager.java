@@ -31,11 +31,13 @@ public interface BitmapManager {
 
     /**
      * Requests {@link Bitmap} from a manager based on options
-     * defined in {@link ImageOptions}.
+     * defined in {@link ImageOptions}. If bitmap is not immediately
+     * available, it's delivered to observers later unless returned
+     * request is cancelled.
      * @param options Image options
-     * @return Wrapped bitmap. 
+     * @return Wrapped bitmap which can be used to cancel a request.
      */
-    BitmapWrapper requestBitmap(ImageOptions options);
+    BitmapRequest requestBitmap(ImageOptions options);
     
     /**
      * Register {@link BitmapObserver} for this manager.
@@ -57,4 +59,15 @@ public interface BitmapManager {
     interface BitmapWrapper {
         Bitmap get();
     }
+
+    /**
+     * Wrapped bitmap of a request which may still be in progress.
+     * Cancelling a request means observers are not notified of its
+     * bitmap, and if no other request waits for a same image, loading
+     * it is stopped if it hasn't started yet.
+     */
+    interface BitmapRequest extends BitmapWrapper {
+        void cancel();
+        boolean isCancelled();
+    }
 }
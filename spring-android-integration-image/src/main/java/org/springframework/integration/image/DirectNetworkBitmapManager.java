@@ -16,15 +16,10 @@
 
 package org.springframework.integration.image;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-
 import org.springframework.integration.Message;
 import org.springframework.integration.image.core.AbstractBitmapManager;
 import org.springframework.integration.image.core.NetworkImageService;
 import org.springframework.integration.image.support.ImageOptions;
-import org.springframework.integration.image.support.SimpleBitmapWrapper;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -49,22 +44,14 @@ public class DirectNetworkBitmapManager extends AbstractBitmapManager {
     }
     
     @Override
-    public BitmapWrapper requestBitmap(ImageOptions options) {
-        requestNetworkImage(options);
-        return new SimpleBitmapWrapper(null);
+    public BitmapRequest requestBitmap(ImageOptions options) {
+        return requestImage(options);
     }
     
     @Override
     protected void onInternalReceiveResult(Message<?> message) {
         Bitmap bitmap = (Bitmap)message.getPayload();
-        
-        Map<String, String> map = new HashMap<String, String>();
-        for(Entry<String, Object> entry : message.getHeaders().entrySet()) {
-            if(entry.getValue() instanceof String) {
-                map.put(entry.getKey(), (String)entry.getValue());
-            }
-        }        
-        notifyObserver(bitmap, map);
+        notifyObservers(bitmap, message);
     }
 
 }
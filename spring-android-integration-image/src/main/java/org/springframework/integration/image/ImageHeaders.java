@@ -28,5 +28,25 @@ public class ImageHeaders {
     public static final String TAGS = PREFIX + "tags";
 
     public static final String NOCACHE = PREFIX + "nocache";
+
+    public static final String CACHE_NAME = PREFIX + "cache_name";
+
+    public static final String CACHE_HIT = PREFIX + "cache_hit";
+
+    public static final String TARGET_WIDTH = PREFIX + "target_width";
+
+    public static final String TARGET_HEIGHT = PREFIX + "target_height";
+
+    public static final String SCALE_MODE = PREFIX + "scale_mode";
+
+    public static final String PRIORITY = PREFIX + "priority";
+
+    public static final String REPRIORITIZE = PREFIX + "reprioritize";
+
+    public static final String SOURCE = PREFIX + "source";
+
+    public static final String RESOURCE_ID = PREFIX + "resource_id";
+
+    public static final String PATH = PREFIX + "path";
     
 }
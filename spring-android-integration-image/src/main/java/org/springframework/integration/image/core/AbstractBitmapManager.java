@@ -16,11 +16,16 @@
 
 package org.springframework.integration.image.core;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.springframework.integration.Message;
+import org.springframework.integration.MessagingException;
 import org.springframework.integration.gateway.BaseServiceHelper;
+import org.springframework.integration.gateway.GatewayHeaders;
 import org.springframework.integration.gateway.MessageReceiver;
 import org.springframework.integration.http.HttpHeaders;
 import org.springframework.integration.image.BitmapManager;
@@ -28,6 +33,9 @@ import org.springframework.integration.image.BitmapObservable;
 import org.springframework.integration.image.BitmapObserver;
 import org.springframework.integration.image.ImageHeaders;
 import org.springframework.integration.image.support.ImageOptions;
+import org.springframework.integration.image.support.ImageOptions.ImageSource;
+import org.springframework.integration.image.support.ImageOptions.Priority;
+import org.springframework.integration.image.support.ImageOptions.ScaleMode;
 
 import android.content.Context;
 import android.content.Intent;
@@ -45,6 +53,17 @@ import android.graphics.Bitmap;
  * keep all threads and thread pools active if service implementation
  * choose to use any of that stuff. Effectively this may cause a lot of leaked
  * threads and resources which may eventually result a dalvik crash.
+ * <p>
+ * Requests for a same image with same decode options are coalesced
+ * while one is in flight, so two views showing a same url cause a
+ * single download and each request still notifies observers with its
+ * own tags. A request can be cancelled, for example when a view is
+ * scrolled off-screen, and when no request waits for an image anymore
+ * a service is told to drop it before its http exchange starts.
+ * <p>
+ * Requests are downloaded in an order of their {@link Priority}, newest
+ * first. A pending request can be {@link #reprioritize(BitmapRequest, Priority)
+ * reprioritized}, for example when its view becomes visible again.
  * 
  * @author Janne Valkealahti
  */
@@ -55,6 +74,10 @@ public abstract class AbstractBitmapManager implements BitmapManager {
     private final BitmapObservable mObservable = new BitmapObservable();
     private Class<?> mServiceClazz;
     private boolean mAutoDestroy;
+    /** In flight requests by key, also used as a lock */
+    private final Map<String, InFlight> mInFlight = new HashMap<String, InFlight>();
+    /** In flight requests by request id, guarded by mInFlight */
+    private final Map<Integer, InFlight> mInFlightById = new HashMap<Integer, InFlight>();
 
     public AbstractBitmapManager(Context context, Class<?> serviceClazz) {
         mContext = context;
@@ -112,10 +135,95 @@ public abstract class AbstractBitmapManager implements BitmapManager {
         mAutoDestroy = autoDestroy;
     }
     
-    protected void requestNetworkImage(ImageOptions options) {
+    /**
+     * Requests an image from a network. Same as
+     * {@link #requestImage(ImageOptions)}.
+     * @param options the image options
+     * @return the request
+     */
+    protected BitmapRequest requestNetworkImage(ImageOptions options) {
+        return requestImage(options);
+    }
+
+    /**
+     * Requests an image from any source supported by a service
+     * or joins a request for a same image which is already in flight.
+     * @param options the image options
+     * @return the request
+     */
+    protected BitmapRequest requestImage(ImageOptions options) {
+        String key = getRequestKey(options);
+        synchronized (mInFlight) {
+            InFlight inFlight = mInFlight.get(key);
+            if(inFlight == null) {
+                inFlight = new InFlight(key, options.getTags());
+                inFlight.mPriority = options.getPriority();
+                inFlight.mRequestId = mServiceHelper.handleIntent(createIntent(options));
+                mInFlight.put(key, inFlight);
+                mInFlightById.put(inFlight.mRequestId, inFlight);
+            } else if(options.getPriority().compareTo(inFlight.mPriority) > 0) {
+                // joining request needs the image sooner
+                sendPriority(inFlight, options.getPriority());
+            }
+            PendingRequest request = new PendingRequest(inFlight, options.getTags());
+            inFlight.mRequests.add(request);
+            return request;
+        }
+    }
+
+    /**
+     * Gets a key identifying requests for a same decoded image.
+     * @param options the image options
+     * @return the request key
+     */
+    protected String getRequestKey(ImageOptions options) {
+        return createRequestKey(options.getUrl(), options.getTargetWidth(),
+                options.getTargetHeight(), options.getScaleMode());
+    }
+
+    /**
+     * Gets a request key from a result message. Key matches
+     * the one given by {@link #getRequestKey(ImageOptions)} for
+     * options the request was sent with.
+     * @param message the result message
+     * @return the request key, null if message has no request url
+     */
+    @SuppressWarnings("unchecked")
+    protected String getRequestKey(Message<?> message) {
+        Map<String,String> map = (Map<String, String>) message.getHeaders().get(HttpHeaders.URI_VARIABLES);
+        if(map == null || map.get(HttpHeaders.REQUEST_URL) == null) {
+            return null;
+        }
+        Integer width = message.getHeaders().get(ImageHeaders.TARGET_WIDTH, Integer.class);
+        Integer height = message.getHeaders().get(ImageHeaders.TARGET_HEIGHT, Integer.class);
+        ScaleMode mode = message.getHeaders().get(ImageHeaders.SCALE_MODE, ScaleMode.class);
+        return createRequestKey(map.get(HttpHeaders.REQUEST_URL),
+                width != null ? width : 0,
+                height != null ? height : 0,
+                mode != null ? mode : ScaleMode.FILL);
+    }
+
+    private static String createRequestKey(String url, int width, int height, ScaleMode mode) {
+        if(width <= 0 && height <= 0) {
+            return url;
+        }
+        return url + "#" + width + "x" + height + ":" + mode;
+    }
+
+    private Intent createIntent(ImageOptions options) {
         Intent i = new Intent(mContext, mServiceClazz);
         i.putExtra(HttpHeaders.REQUEST_URL, options.getUrl());
         
+        ImageSource source = options.getImageSource();
+        if(source != null) {
+            i.putExtra(ImageHeaders.SOURCE, source.name());
+            if(source == ImageSource.RESOURCE) {
+                i.putExtra(ImageHeaders.RESOURCE_ID, options.getResourceId());
+            } else if(options.getPath() != null) {
+                i.putExtra(ImageHeaders.PATH, options.getPath());
+            }
+        }
+        
         Map<String, String> tags = options.getTags();
         if(tags != null) {
             String[] array = new String[tags.size()*2];
@@ -127,22 +235,196 @@ public abstract class AbstractBitmapManager implements BitmapManager {
             i.putExtra(ImageHeaders.TAGS, array);
         }
         
-        mServiceHelper.handleIntent(i);        
+        if(options.hasTargetSize()) {
+            i.putExtra(ImageHeaders.TARGET_WIDTH, options.getTargetWidth());
+            i.putExtra(ImageHeaders.TARGET_HEIGHT, options.getTargetHeight());
+            i.putExtra(ImageHeaders.SCALE_MODE, options.getScaleMode().name());
+        }
+        
+        i.putExtra(ImageHeaders.PRIORITY, options.getPriority().name());
+        
+        return i;
+    }
+
+    /**
+     * Changes a priority of a request which is still waiting for
+     * its image. Priority applies to all requests coalesced with it.
+     * Requests which are completed or cancelled are not affected.
+     * @param request the request returned from {@link #requestBitmap(ImageOptions)}
+     * @param priority the new priority
+     */
+    public void reprioritize(BitmapRequest request, Priority priority) {
+        if(!(request instanceof PendingRequest) || priority == null) {
+            return;
+        }
+        synchronized (mInFlight) {
+            InFlight inFlight = ((PendingRequest)request).mInFlight;
+            if(mInFlightById.get(inFlight.mRequestId) == inFlight && inFlight.mPriority != priority) {
+                sendPriority(inFlight, priority);
+            }
+        }
+    }
+
+    private void sendPriority(InFlight inFlight, Priority priority) {
+        inFlight.mPriority = priority;
+        Intent i = new Intent(mContext, mServiceClazz);
+        i.putExtra(ImageHeaders.REPRIORITIZE, inFlight.mRequestId);
+        i.putExtra(ImageHeaders.PRIORITY, priority.name());
+        mServiceHelper.handleIntent(i);
+    }
+
+    private void cancel(PendingRequest request) {
+        Integer cancelId = null;
+        synchronized (mInFlight) {
+            if(request.mCancelled) {
+                return;
+            }
+            request.mCancelled = true;
+            InFlight inFlight = request.mInFlight;
+            inFlight.mRequests.remove(request);
+            if(inFlight.mRequests.isEmpty() && mInFlight.get(inFlight.mKey) == inFlight) {
+                mInFlight.remove(inFlight.mKey);
+                mInFlightById.remove(inFlight.mRequestId);
+                cancelId = inFlight.mRequestId;
+            }
+        }
+        if(cancelId != null) {
+            mServiceHelper.cancelRequest(cancelId);
+        }
+    }
+
+    /**
+     * Removes an in flight request a message is a result of.
+     * @return the in flight request, null if not found
+     */
+    private InFlight complete(Message<?> message) {
+        Integer requestId = message.getHeaders().get(GatewayHeaders.REQUEST_ID, Integer.class);
+        if(requestId == null) {
+            return null;
+        }
+        synchronized (mInFlight) {
+            InFlight inFlight = mInFlightById.remove(requestId);
+            if(inFlight != null) {
+                mInFlight.remove(inFlight.mKey);
+            }
+            return inFlight;
+        }
     }
     
     protected void notifyObserver(Bitmap bitmap, Map<String, String> tags) {
         mObservable.notifyBitmap(bitmap, tags);
     }
+
+    /**
+     * Notifies observers of a bitmap once for every request which
+     * waited for it. Tags of a request which was sent to a service
+     * are replaced with tags of a coalesced request. Nothing is
+     * notified if all requests were cancelled.
+     * @param bitmap the bitmap
+     * @param message the result message
+     */
+    protected void notifyObservers(Bitmap bitmap, Message<?> message) {
+        Map<String, String> headers = new HashMap<String, String>();
+        for(Entry<String, Object> entry : message.getHeaders().entrySet()) {
+            if(entry.getValue() instanceof String) {
+                headers.put(entry.getKey(), (String)entry.getValue());
+            }
+        }
+        if(!message.getHeaders().containsKey(GatewayHeaders.REQUEST_ID)) {
+            notifyObserver(bitmap, headers);
+            return;
+        }
+        InFlight inFlight = complete(message);
+        if(inFlight == null) {
+            return;
+        }
+        List<PendingRequest> requests;
+        synchronized (mInFlight) {
+            requests = new ArrayList<PendingRequest>(inFlight.mRequests);
+        }
+        for(PendingRequest request : requests) {
+            Map<String, String> tags = new HashMap<String, String>(headers);
+            if(inFlight.mTags != null) {
+                tags.keySet().removeAll(inFlight.mTags.keySet());
+            }
+            if(request.mTags != null) {
+                tags.putAll(request.mTags);
+            }
+            request.mBitmap = bitmap;
+            notifyObserver(bitmap, tags);
+        }
+    }
     
     protected void onInternalReceiveResult(Message<?> message) {
         // space for rent
     }
+
+    /**
+     * Called when a service failed to process a request. Default
+     * implementation forgets the request so that the image can be
+     * requested again.
+     * @param message the error message
+     */
+    protected void onInternalReceiveError(Message<?> message) {
+        Object payload = message.getPayload();
+        if(payload instanceof MessagingException) {
+            Message<?> failed = ((MessagingException)payload).getFailedMessage();
+            if(failed != null) {
+                complete(failed);
+            }
+        }
+    }
     
     private MessageReceiver mMessageReceiver = new MessageReceiver() {
         @Override
         protected void onReceiveResult(Message<?> message) {
-            onInternalReceiveResult(message);
+            if(message.getPayload() instanceof Throwable) {
+                onInternalReceiveError(message);
+            } else {
+                onInternalReceiveResult(message);
+            }
         }
     };
 
+    /**
+     * Requests waiting for a same image.
+     */
+    private static class InFlight {
+        final String mKey;
+        final Map<String, String> mTags;
+        final List<PendingRequest> mRequests = new ArrayList<PendingRequest>(2);
+        int mRequestId;
+        Priority mPriority;
+        InFlight(String key, Map<String, String> tags) {
+            mKey = key;
+            mTags = tags;
+        }
+    }
+
+    /**
+     * Request returned to a caller while its image is loaded.
+     */
+    private class PendingRequest implements BitmapRequest {
+        final InFlight mInFlight;
+        final Map<String, String> mTags;
+        volatile Bitmap mBitmap;
+        volatile boolean mCancelled;
+        PendingRequest(InFlight inFlight, Map<String, String> tags) {
+            mInFlight = inFlight;
+            mTags = tags;
+        }
+        @Override
+        public Bitmap get() {
+            return mBitmap;
+        }
+        @Override
+        public void cancel() {
+            AbstractBitmapManager.this.cancel(this);
+        }
+        @Override
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
 }
@@ -17,30 +17,59 @@
 package org.springframework.integration.image.core;
 
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.springframework.cache.Cache;
 import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.ExpirableCache;
+import org.springframework.cache.support.HttpFreshness;
 import org.springframework.integration.Message;
+import org.springframework.integration.MessageHeaders;
 import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessageHandlingException;
 import org.springframework.integration.channel.AbstractSubscribableChannel;
 import org.springframework.integration.channel.interceptor.ChannelInterceptorAdapter;
 import org.springframework.integration.gateway.AbstractAsyncGatewayService;
+import org.springframework.integration.gateway.GatewayHeaders;
 import org.springframework.integration.http.HttpHeaders;
 import org.springframework.integration.image.ImageHeaders;
+import org.springframework.integration.image.support.BitmapDecoder;
+import org.springframework.integration.image.support.BitmapPool;
+import org.springframework.integration.image.support.ImageOptions.Priority;
+import org.springframework.integration.image.support.ImageRequestScheduler;
+import org.springframework.integration.image.support.ImageOptions.ScaleMode;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import android.content.Intent;
 import android.graphics.Bitmap;
 
 /**
  * Base image service implementations where image request may come from
  * a local cache or from a channel handlers registered in sub classes.
  * Default implementation of this class is not using a local caching.
+ * <p>
+ * Handlers may reply with encoded image bytes instead of a bitmap.
+ * Bytes are then cached as they are and decoded only when a result is
+ * delivered, which avoids re-encoding a bitmap for a cache. Responses
+ * which can't be decoded are never cached.
+ * <p>
+ * Requests are downloaded in an order of their priority, newest first,
+ * by an {@link ImageRequestScheduler} which also limits concurrent
+ * downloads per host. Pending requests can be reprioritized with an
+ * intent carrying an {@link ImageHeaders#REPRIORITIZE} request id and
+ * a new {@link ImageHeaders#PRIORITY}.
  * 
  * @author Janne Valkealahti
  */
 public abstract class AbstractImageService extends AbstractAsyncGatewayService  {
 
     private Cache mCache;
+    private BitmapPool mBitmapPool;
+    private ImageRequestScheduler mScheduler;
+    
+    /** Default number of threads downloading images */
+    public static final int DEFAULT_DOWNLOAD_THREADS = 4;
     
     public AbstractImageService(String name) {
         super(name);
@@ -48,6 +77,10 @@ public abstract class AbstractImageService extends AbstractAsyncGatewayService
     
     @Override
     public void onCreate() {
+        // pool and scheduler are needed when channels
+        // and message handlers are created
+        mBitmapPool = initBitmapPool();
+        mScheduler = initRequestScheduler();
         super.onCreate();
         mCache = initCache();
     }
@@ -63,6 +96,84 @@ public abstract class AbstractImageService extends AbstractAsyncGatewayService
     protected Cache initCache() {
         return null;
     }
+
+    /**
+     * Initialise a pool of bitmaps reused when images are decoded.
+     * Default implementation returns null which disables reuse. A pool
+     * should be the same instance a bitmap manager releases bitmaps
+     * into, for example an application wide pool.
+     * @return Bitmap pool to be used.
+     */
+    protected BitmapPool initBitmapPool() {
+        return null;
+    }
+
+    /**
+     * Initialise a scheduler ordering requests waiting for a download.
+     * Default implementation is an {@link ImageRequestScheduler} with
+     * default settings. Returning null dispatches requests in the order
+     * they were received.
+     * @return Scheduler to be used.
+     */
+    protected ImageRequestScheduler initRequestScheduler() {
+        return new ImageRequestScheduler();
+    }
+
+    @Override
+    protected AbstractSubscribableChannel initOutboundChannel(Executor executor) {
+        if(mScheduler == null) {
+            return super.initOutboundChannel(executor);
+        }
+        return new SchedulingChannel(executor, mScheduler);
+    }
+
+    /**
+     * Initialise executor for outbound channel. Default implementation
+     * is a {@link ThreadPoolTaskExecutor} with {@link #DEFAULT_DOWNLOAD_THREADS}
+     * threads, which lets a scheduler's per host limits matter.
+     */
+    @Override
+    protected Executor initOutboundExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(DEFAULT_DOWNLOAD_THREADS);
+        executor.initialize();
+        return executor;
+    }
+
+    @Override
+    protected void processIntent(Intent i) {
+        if(i.hasExtra(ImageHeaders.REPRIORITIZE)) {
+            if(mScheduler != null && i.hasExtra(ImageHeaders.PRIORITY)) {
+                mScheduler.reprioritize(i.getIntExtra(ImageHeaders.REPRIORITIZE, 0),
+                        Priority.valueOf(i.getStringExtra(ImageHeaders.PRIORITY)));
+            }
+            // reprioritizing is a request of its own
+            if(i.hasExtra(GatewayHeaders.REQUEST_ID)) {
+                requestDone(i.getIntExtra(GatewayHeaders.REQUEST_ID, 0));
+            }
+            return;
+        }
+        super.processIntent(i);
+    }
+
+    @Override
+    public boolean cancelRequest(int requestId) {
+        if(!super.cancelRequest(requestId)) {
+            return false;
+        }
+        if(mScheduler != null && mScheduler.remove(requestId)) {
+            requestDone(requestId);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the bitmap pool used to decode images.
+     * @return Bitmap pool, null if bitmaps are not reused.
+     */
+    protected BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
     
     // TODO: should check if interceptors should be added or not, but for
     //       now problem is that post process methods are called before
@@ -81,19 +192,59 @@ public abstract class AbstractImageService extends AbstractAsyncGatewayService
     }
 
     /**
-     * Channel interceptor which adds inbound incoming bitmap to a cache. 
+     * Decodes image bytes, downsampled if message headers carry
+     * a target size. Cache always keeps the original bytes so the
+     * same image can be decoded again for a different size.
+     * 
+     * @param bytes the encoded image
+     * @param headers the message headers
+     * @return the bitmap, null if image can't be decoded
+     */
+    protected Bitmap decode(byte[] bytes, MessageHeaders headers) {
+        Integer width = headers.get(ImageHeaders.TARGET_WIDTH, Integer.class);
+        Integer height = headers.get(ImageHeaders.TARGET_HEIGHT, Integer.class);
+        ScaleMode scaleMode = headers.get(ImageHeaders.SCALE_MODE, ScaleMode.class);
+        return BitmapDecoder.decode(bytes, width != null ? width : 0, height != null ? height : 0, scaleMode,
+                mBitmapPool);
+    }
+
+    /**
+     * Channel interceptor which adds inbound incoming image to a cache
+     * and decodes encoded image bytes to a bitmap. If response headers
+     * tell how long an image stays fresh, it's used as a time-to-live of
+     * an {@link ExpirableCache} and responses which must not be reused
+     * are not cached at all. Images which came from a cache are not
+     * put back.
      */
     private class CacheAddInterceptor extends ChannelInterceptorAdapter {
         @SuppressWarnings("unchecked")
         @Override
         public Message<?> preSend(Message<?> message, MessageChannel channel) {
-            if(mCache != null && !message.getHeaders().containsKey(ImageHeaders.NOCACHE)) {
+            Object payload = message.getPayload();
+            Bitmap bitmap = null;
+            if(payload instanceof byte[]) {
+                byte[] bytes = (byte[])payload;
+                bitmap = decode(bytes, message.getHeaders());
+                if(bitmap == null) {
+                    throw new MessageHandlingException(message, "Unable to decode image");
+                }
+            }
+            if(mCache != null && !message.getHeaders().containsKey(ImageHeaders.NOCACHE)
+                    && !message.getHeaders().containsKey(ImageHeaders.CACHE_HIT)) {
                 Map<String,String> map = (Map<String, String>) message.getHeaders().get(HttpHeaders.URI_VARIABLES);
                 String key = null;
                 if(map != null) {
                     key = map.get(HttpHeaders.REQUEST_URL);
                 }            
-                mCache.put(key, (Bitmap)message.getPayload());                            
+                long timeToLive = HttpFreshness.getTimeToLive(message.getHeaders(), System.currentTimeMillis());
+                if(timeToLive > 0 && mCache instanceof ExpirableCache) {
+                    ((ExpirableCache)mCache).put(key, payload, timeToLive);
+                } else if(timeToLive != HttpFreshness.STALE) {
+                    mCache.put(key, payload);
+                }
+            }
+            if(bitmap != null) {
+                message = MessageBuilder.withPayload(bitmap).copyHeaders(message.getHeaders()).build();
             }
             return super.preSend(message, channel);                
         }
@@ -118,10 +269,12 @@ public abstract class AbstractImageService extends AbstractAsyncGatewayService
                 }
                 
                 ValueWrapper valueWrapper = mCache.get(key);
-                if(valueWrapper != null) {
+                if(valueWrapper != null && valueWrapper.get() != null) {
+                    // cached bytes are decoded by inbound interceptor
                     Message<?> msg = MessageBuilder
-                            .withPayload((Bitmap)valueWrapper.get())
+                            .withPayload(valueWrapper.get())
                             .copyHeaders(message.getHeaders())
+                            .setHeader(ImageHeaders.CACHE_HIT, Boolean.TRUE)
                             .build();
                         sendToInbound(msg);
                     return null;
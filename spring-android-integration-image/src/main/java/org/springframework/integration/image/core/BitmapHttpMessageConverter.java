@@ -26,15 +26,77 @@ import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.integration.image.support.BitmapDecoder;
+import org.springframework.integration.image.support.BitmapPool;
+import org.springframework.integration.image.support.ImageOptions.ScaleMode;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 
+/**
+ * {@link HttpMessageConverter} reading a response body into a {@link Bitmap}.
+ * If a target size is set, body is decoded downsampled using
+ * {@link BitmapDecoder} without reading it twice. If a {@link BitmapPool}
+ * is set, pooled bitmaps are reused.
+ * 
+ * @author Janne Valkealahti
+ */
 public class BitmapHttpMessageConverter implements HttpMessageConverter<Bitmap>{
 
+    private int mTargetWidth;
+    private int mTargetHeight;
+    private ScaleMode mScaleMode = ScaleMode.FILL;
+    private BitmapPool mBitmapPool;
+
+    /**
+     * Constructs converter decoding images at full resolution.
+     */
+    public BitmapHttpMessageConverter() {
+    }
+
+    /**
+     * Constructs converter decoding images downsampled to a target size.
+     * 
+     * @param targetWidth the target width, zero if not constrained
+     * @param targetHeight the target height, zero if not constrained
+     * @param scaleMode the scale mode
+     */
+    public BitmapHttpMessageConverter(int targetWidth, int targetHeight, ScaleMode scaleMode) {
+        setTargetSize(targetWidth, targetHeight);
+        setScaleMode(scaleMode);
+    }
+
+    /**
+     * Sets a target size images are downsampled to.
+     * 
+     * @param targetWidth the target width, zero if not constrained
+     * @param targetHeight the target height, zero if not constrained
+     */
+    public void setTargetSize(int targetWidth, int targetHeight) {
+        mTargetWidth = Math.max(0, targetWidth);
+        mTargetHeight = Math.max(0, targetHeight);
+    }
+
+    /**
+     * Sets how images are scaled to a target size.
+     * 
+     * @param scaleMode the scale mode
+     */
+    public void setScaleMode(ScaleMode scaleMode) {
+        mScaleMode = scaleMode != null ? scaleMode : ScaleMode.FILL;
+    }
+
+    /**
+     * Sets a pool of bitmaps reused when images are decoded.
+     * 
+     * @param bitmapPool the bitmap pool, null if bitmaps are not reused
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
     @Override
     public boolean canRead(Class<?> clazz, MediaType type) {
-        return true;
+        return Bitmap.class.isAssignableFrom(clazz);
     }
 
     @Override
@@ -50,7 +112,7 @@ public class BitmapHttpMessageConverter implements HttpMessageConverter<Bitmap>{
     @Override
     public Bitmap read(Class<? extends Bitmap> bitmap, HttpInputMessage message) throws IOException,
             HttpMessageNotReadableException {
-        return BitmapFactory.decodeStream(message.getBody());
+        return BitmapDecoder.decode(message.getBody(), mTargetWidth, mTargetHeight, mScaleMode, mBitmapPool);
     }
 
     @Override
@@ -59,6 +121,4 @@ public class BitmapHttpMessageConverter implements HttpMessageConverter<Bitmap>{
         throw new UnsupportedOperationException("Not implemented");
     }
 
-    
-
 }
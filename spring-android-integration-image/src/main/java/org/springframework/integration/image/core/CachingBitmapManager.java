@@ -16,17 +16,15 @@
 
 package org.springframework.integration.image.core;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.WeakHashMap;
 
 import org.springframework.cache.Cache;
 import org.springframework.cache.Cache.ValueWrapper;
 import org.springframework.integration.Message;
-import org.springframework.integration.http.HttpHeaders;
+import org.springframework.integration.image.support.BitmapPool;
 import org.springframework.integration.image.support.ImageOptions;
 import org.springframework.integration.image.support.SimpleBitmapWrapper;
-import org.springframework.integration.image.support.ImageOptions.ImageSource;
 import org.springframework.util.Assert;
 
 import android.content.Context;
@@ -40,12 +38,24 @@ import android.graphics.Bitmap;
  * happen in a image processing service which eventually will return bitmap
  * through a series of callbacks. Processed bitmap will be cached with the
  * policy defined in underlying caches.
+ * <p>
+ * If a {@link BitmapPool} is given, bitmaps a caller no longer displays
+ * can be released into a pool with {@link #releaseBitmap(ImageOptions, Bitmap)}
+ * to be reused by decoders. A same bitmap is handed out to every coalesced
+ * request and on every cache hit, so manager counts hand-outs and pools
+ * a bitmap only once all of them are released. Bitmaps evicted from
+ * a cache are never pooled as a caller may still display them.
  * 
  * @author Janne Valkealahti
  */
 public abstract class CachingBitmapManager extends AbstractBitmapManager {
 
     private Cache mCache;
+    private BitmapPool mBitmapPool;
+    /** Hand-outs not yet released by bitmap. Keys are weak so bitmaps
+     *  never released don't leak and as bitmaps don't override equals
+     *  they're matched by identity. */
+    private final Map<Bitmap, Integer> mHandOuts = new WeakHashMap<Bitmap, Integer>();
 
     public CachingBitmapManager(Context context) {
         this(context, NetworkImageService.class);
@@ -55,42 +65,114 @@ public abstract class CachingBitmapManager extends AbstractBitmapManager {
         super(context, serviceClazz);
         mCache = initCache();
         Assert.notNull(mCache, "Cache can't be null");
+        mBitmapPool = initBitmapPool();
     }
 
     protected abstract Cache initCache();
 
+    /**
+     * Initialise a pool released bitmaps are recycled into. Default
+     * implementation returns null which disables recycling.
+     * @return Bitmap pool to be used.
+     */
+    protected BitmapPool initBitmapPool() {
+        return null;
+    }
+
+    /**
+     * Gets the bitmap pool released bitmaps are recycled into.
+     * @return Bitmap pool, null if bitmaps are not recycled.
+     */
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * Releases a bitmap which a caller doesn't display anymore. Every
+     * bitmap handed out from a cache or to an observer is released once
+     * and it's put into a bitmap pool when its last hand-out is released.
+     * If a cache still holds the same bitmap for given options it's
+     * evicted first so that it's not handed out while its pixels are
+     * reused. Releasing a bitmap more times than it was handed out
+     * has no effect.
+     * @param options the image options a bitmap was requested with
+     * @param bitmap the bitmap
+     * @return true if bitmap was pooled, false otherwise
+     */
+    public boolean releaseBitmap(ImageOptions options, Bitmap bitmap) {
+        if(mBitmapPool == null || bitmap == null) {
+            return false;
+        }
+        synchronized (mHandOuts) {
+            Integer count = mHandOuts.get(bitmap);
+            if(count == null) {
+                return false;
+            }
+            if(count > 1) {
+                mHandOuts.put(bitmap, count - 1);
+                return false;
+            }
+            mHandOuts.remove(bitmap);
+            // evicted while holding the lock so that a cache
+            // hit can't hand it out again
+            String key = getRequestKey(options);
+            ValueWrapper valueWrapper = mCache.get(key);
+            if(valueWrapper != null && valueWrapper.get() == bitmap) {
+                mCache.evict(key);
+            }
+        }
+        return mBitmapPool.put(bitmap);
+    }
+
     @Override
-    public BitmapWrapper requestBitmap(ImageOptions options) {
+    public BitmapRequest requestBitmap(ImageOptions options) {
         
-        ValueWrapper valueWrapper = mCache.get(options.getUrl());
+        ValueWrapper valueWrapper;
+        if(mBitmapPool == null) {
+            valueWrapper = mCache.get(getRequestKey(options));
+        } else {
+            synchronized (mHandOuts) {
+                valueWrapper = mCache.get(getRequestKey(options));
+                if(valueWrapper != null) {
+                    handOut((Bitmap)valueWrapper.get());
+                }
+            }
+        }
         if(valueWrapper != null) {
             return new SimpleBitmapWrapper((Bitmap)valueWrapper.get());
         }
         
-        if(options.getImageSource() == ImageSource.HTTP) {
-            requestNetworkImage(options);
+        if(options.getImageSource() != null) {
+            return requestImage(options);
         }
         return new SimpleBitmapWrapper(null);
     }
     
     @Override
     protected void onInternalReceiveResult(Message<?> message) {
-        Map<String,String> map = (Map<String, String>) message.getHeaders().get(HttpHeaders.URI_VARIABLES);
-        String key = null;
-        if(map != null) {
-            key = map.get(HttpHeaders.REQUEST_URL);
-        }
         Bitmap bitmap = (Bitmap)message.getPayload();
-        mCache.put(key, bitmap);
-        
-        Map<String, String> map2 = new HashMap<String, String>();
-        for(Entry<String, Object> entry : message.getHeaders().entrySet()) {
-            if(entry.getValue() instanceof String) {
-                map2.put(entry.getKey(), (String)entry.getValue());
+        mCache.put(getRequestKey(message), bitmap);
+        notifyObservers(bitmap, message);
+    }
+
+    @Override
+    protected void notifyObserver(Bitmap bitmap, Map<String, String> tags) {
+        if(mBitmapPool != null) {
+            synchronized (mHandOuts) {
+                handOut(bitmap);
             }
-        }        
-        notifyObserver(bitmap, map2);
-        
+        }
+        super.notifyObserver(bitmap, tags);
+    }
+
+    /**
+     * Counts a hand-out of a bitmap. Caller must hold a lock.
+     */
+    private void handOut(Bitmap bitmap) {
+        if(bitmap != null) {
+            Integer count = mHandOuts.get(bitmap);
+            mHandOuts.put(bitmap, count != null ? count + 1 : 1);
+        }
     }
 
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.core;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageChannel;
+import org.springframework.integration.MessageHandlingException;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.integration.image.ImageHeaders;
+import org.springframework.integration.image.support.ImageOptions.ImageSource;
+import org.springframework.util.Assert;
+
+/**
+ * Message handler routing image requests to a handler registered for
+ * an {@link ImageSource} in {@link ImageHeaders#SOURCE} header. Messages
+ * without a source are routed as {@link ImageSource#HTTP}.
+ * <p>
+ * Replies are produced by delegate handlers which share an output
+ * channel of this handler.
+ * 
+ * @author Janne Valkealahti
+ */
+public class ImageSourceRoutingHandler extends AbstractReplyProducingMessageHandler {
+
+    private final Map<ImageSource, AbstractReplyProducingMessageHandler> mHandlers =
+            new EnumMap<ImageSource, AbstractReplyProducingMessageHandler>(ImageSource.class);
+    private MessageChannel mOutputChannel;
+
+    public ImageSourceRoutingHandler() {
+        setRequiresReply(false);
+    }
+
+    /**
+     * Registers a handler for an image source.
+     * 
+     * @param source the image source
+     * @param handler the handler
+     */
+    public void addHandler(ImageSource source, AbstractReplyProducingMessageHandler handler) {
+        Assert.notNull(source, "Source must not be null");
+        Assert.notNull(handler, "Handler must not be null");
+        if (mOutputChannel != null) {
+            handler.setOutputChannel(mOutputChannel);
+        }
+        mHandlers.put(source, handler);
+    }
+
+    @Override
+    public void setOutputChannel(MessageChannel outputChannel) {
+        super.setOutputChannel(outputChannel);
+        mOutputChannel = outputChannel;
+        for (AbstractReplyProducingMessageHandler handler : mHandlers.values()) {
+            handler.setOutputChannel(outputChannel);
+        }
+    }
+
+    @Override
+    protected Object handleRequestMessage(Message<?> requestMessage) {
+        ImageSource source = requestMessage.getHeaders().get(ImageHeaders.SOURCE, ImageSource.class);
+        AbstractReplyProducingMessageHandler handler = mHandlers.get(source != null ? source : ImageSource.HTTP);
+        if (handler == null) {
+            throw new MessageHandlingException(requestMessage, "No handler for image source " + source);
+        }
+        handler.handleMessage(requestMessage);
+        // delegate sent a reply
+        return null;
+    }
+
+}
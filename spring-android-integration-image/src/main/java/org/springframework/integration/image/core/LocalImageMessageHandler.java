@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.core.io.AssetResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.integration.Message;
+import org.springframework.integration.MessageHandlingException;
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.integration.image.ImageHeaders;
+import org.springframework.integration.image.support.ImageOptions.ImageSource;
+import org.springframework.util.Assert;
+import org.springframework.util.FileCopyUtils;
+
+import android.content.Context;
+
+/**
+ * Message handler reading local images, resources, assets and files,
+ * into encoded bytes. Replying with bytes instead of a bitmap lets local
+ * images be decoded, downsampled and delivered the same way as images
+ * downloaded over the network.
+ * <p>
+ * Image source is read from {@link ImageHeaders#SOURCE} header, resource
+ * id from {@link ImageHeaders#RESOURCE_ID} and asset or file path from
+ * {@link ImageHeaders#PATH}.
+ * 
+ * @author Janne Valkealahti
+ */
+public class LocalImageMessageHandler extends AbstractReplyProducingMessageHandler {
+
+    private final Context mContext;
+
+    /**
+     * Instantiates a new local image message handler.
+     * 
+     * @param context the context resources and assets are read from
+     */
+    public LocalImageMessageHandler(Context context) {
+        Assert.notNull(context, "Context must not be null");
+        mContext = context;
+    }
+
+    @Override
+    protected Object handleRequestMessage(Message<?> requestMessage) {
+        ImageSource source = requestMessage.getHeaders().get(ImageHeaders.SOURCE, ImageSource.class);
+        try {
+            return FileCopyUtils.copyToByteArray(open(requestMessage, source));
+        } catch (IOException e) {
+            throw new MessageHandlingException(requestMessage, "Unable to read " + source + " image", e);
+        }
+    }
+
+    private InputStream open(Message<?> message, ImageSource source) throws IOException {
+        if (source == ImageSource.RESOURCE) {
+            Integer id = message.getHeaders().get(ImageHeaders.RESOURCE_ID, Integer.class);
+            Assert.notNull(id, "Resource id must not be null");
+            return mContext.getResources().openRawResource(id);
+        }
+        String path = message.getHeaders().get(ImageHeaders.PATH, String.class);
+        Assert.notNull(path, "Path must not be null");
+        if (source == ImageSource.ASSET) {
+            return new AssetResource(mContext.getAssets(), path).getInputStream();
+        } else if (source == ImageSource.FILE) {
+            return new FileSystemResource(path).getInputStream();
+        }
+        throw new MessageHandlingException(message, "Not a local image source " + source);
+    }
+
+}
@@ -22,24 +22,31 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.springframework.cache.Cache;
-import org.springframework.cache.disk.NoLimitDiskCache;
+import org.springframework.cache.disk.SizeLimitDiskCache;
 import org.springframework.cache.disk.core.FileTemplate;
-import org.springframework.cache.disk.serializer.BitmapCacheValueSerializer;
+import org.springframework.cache.disk.serializer.ByteArrayCacheValueSerializer;
 import org.springframework.cache.disk.serializer.SimpleHashCacheKeySerializer;
+import org.springframework.cache.eviction.LruEvictionPolicy;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.http.HttpMethod;
 import org.springframework.integration.Message;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.http.HttpHeaders;
 import org.springframework.integration.http.outbound.HttpRequestExecutingMessageHandler;
 import org.springframework.integration.image.ImageHeaders;
+import org.springframework.integration.image.support.ImageOptions.ImageSource;
+import org.springframework.integration.image.support.ImageOptions.Priority;
+import org.springframework.integration.image.support.ImageOptions.ScaleMode;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.web.client.RestTemplate;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
 
 public class NetworkImageService extends AbstractImageService {
 
+    /** Default max size of a disk cache in bytes */
+    public static final long DEFAULT_DISK_CACHE_SIZE = 32 * 1024 * 1024;
+
     public NetworkImageService() {
         super("NetworkImageService");
     }
@@ -50,14 +57,34 @@ public class NetworkImageService extends AbstractImageService {
     
     @Override
     protected Cache initCache() {
-        FileTemplate<String, Bitmap> template = new FileTemplate<String, Bitmap>();
-        template.setCacheValueSerializer(new BitmapCacheValueSerializer());
+        // original encoded bytes are cached, decoding
+        // happens when an image is delivered
+        FileTemplate<String, byte[]> template = new FileTemplate<String, byte[]>();
+        template.setCacheValueSerializer(new ByteArrayCacheValueSerializer());
         template.setCacheKeySerializer(new SimpleHashCacheKeySerializer());
+        // catch torn and corrupted files before they reach the decoder
+        template.setEntryHeaders(true);
         File dir = new File(getBaseContext().getCacheDir(), "NetworkImageServiceDiskCache");
-        NoLimitDiskCache<String, Bitmap> cache = new NoLimitDiskCache<String, Bitmap>("NetworkImageServiceDiskCache", dir, template);
+        // expirable so that freshness of http responses is honoured,
+        // opened in a background to not replay a journal in onCreate
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("NetworkImageServiceDiskCache-");
+        executor.setDaemon(true);
+        SizeLimitDiskCache<String, byte[]> cache = new SizeLimitDiskCache<String, byte[]>(
+                "NetworkImageServiceDiskCache", dir, template, getDiskCacheSize(),
+                new LruEvictionPolicy<String>(), executor, executor);
         return cache;
     }
 
+    /**
+     * Gets the max size of a disk cache for original image bytes.
+     * Default is {@link #DEFAULT_DISK_CACHE_SIZE}.
+     * 
+     * @return the max size in bytes
+     */
+    protected long getDiskCacheSize() {
+        return DEFAULT_DISK_CACHE_SIZE;
+    }
+
     @Override
     protected Message<?> createMessage(Intent intent) {
         Map<String, String> urivars = new LinkedHashMap<String, String>();
@@ -82,6 +109,35 @@ public class NetworkImageService extends AbstractImageService {
             builder.setHeader(ImageHeaders.NOCACHE, "true");
         }
         
+        if(intent.hasExtra(ImageHeaders.SOURCE)) {
+            ImageSource source = ImageSource.valueOf(intent.getStringExtra(ImageHeaders.SOURCE));
+            builder.setHeader(ImageHeaders.SOURCE, source);
+            if(source != ImageSource.HTTP) {
+                // local images are already on a device, no
+                // point to copy them into a disk cache
+                builder.setHeader(ImageHeaders.NOCACHE, "true");
+            }
+            if(intent.hasExtra(ImageHeaders.RESOURCE_ID)) {
+                builder.setHeader(ImageHeaders.RESOURCE_ID, intent.getIntExtra(ImageHeaders.RESOURCE_ID, 0));
+            }
+            if(intent.hasExtra(ImageHeaders.PATH)) {
+                builder.setHeader(ImageHeaders.PATH, intent.getStringExtra(ImageHeaders.PATH));
+            }
+        }
+        
+        if(intent.hasExtra(ImageHeaders.TARGET_WIDTH) || intent.hasExtra(ImageHeaders.TARGET_HEIGHT)) {
+            builder.setHeader(ImageHeaders.TARGET_WIDTH, intent.getIntExtra(ImageHeaders.TARGET_WIDTH, 0));
+            builder.setHeader(ImageHeaders.TARGET_HEIGHT, intent.getIntExtra(ImageHeaders.TARGET_HEIGHT, 0));
+            if(intent.hasExtra(ImageHeaders.SCALE_MODE)) {
+                builder.setHeader(ImageHeaders.SCALE_MODE,
+                        ScaleMode.valueOf(intent.getStringExtra(ImageHeaders.SCALE_MODE)));
+            }
+        }
+        
+        if(intent.hasExtra(ImageHeaders.PRIORITY)) {
+            builder.setHeader(ImageHeaders.PRIORITY, Priority.valueOf(intent.getStringExtra(ImageHeaders.PRIORITY)));
+        }
+        
         Message<?> message = builder.build();
         
         return message;
@@ -90,11 +146,23 @@ public class NetworkImageService extends AbstractImageService {
     @Override
     protected AbstractReplyProducingMessageHandler[] getMessageHandlers() {
         RestTemplate restTemplate = new RestTemplate(true);
-        restTemplate.getMessageConverters().add(0, new BitmapHttpMessageConverter());
+        BitmapHttpMessageConverter converter = new BitmapHttpMessageConverter();
+        converter.setBitmapPool(getBitmapPool());
+        restTemplate.getMessageConverters().add(0, converter);
         String uri = "{" + HttpHeaders.REQUEST_URL + "}";
         HttpRequestExecutingMessageHandler messageHandler = new HttpRequestExecutingMessageHandler(uri, restTemplate);
         messageHandler.setHttpMethod(HttpMethod.GET);
-        return new AbstractReplyProducingMessageHandler[]{messageHandler};
+        messageHandler.setExpectedResponseType(byte[].class);
+        
+        // local images are read on the same pool and decoded
+        // the same way as downloaded ones
+        LocalImageMessageHandler localHandler = new LocalImageMessageHandler(this);
+        ImageSourceRoutingHandler router = new ImageSourceRoutingHandler();
+        router.addHandler(ImageSource.HTTP, messageHandler);
+        router.addHandler(ImageSource.RESOURCE, localHandler);
+        router.addHandler(ImageSource.ASSET, localHandler);
+        router.addHandler(ImageSource.FILE, localHandler);
+        return new AbstractReplyProducingMessageHandler[]{router};
     }
 
 }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.core;
+
+import java.util.concurrent.Executor;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.channel.ExecutorChannel;
+import org.springframework.integration.dispatcher.MessageDispatcher;
+import org.springframework.integration.dispatcher.UnicastingDispatcher;
+import org.springframework.integration.image.support.ImageRequestScheduler;
+import org.springframework.util.Assert;
+
+/**
+ * Channel dispatching messages in an order decided by an
+ * {@link ImageRequestScheduler} instead of the order they were sent.
+ * <p>
+ * Like with an {@link ExecutorChannel}, every sent message submits a
+ * task to an executor, but a task dispatches whichever message the
+ * scheduler picks when it starts to run. A task keeps dispatching
+ * while the scheduler has eligible messages so that a message which
+ * waited for a busy host is picked up when a download from that host
+ * completes.
+ * 
+ * @author Janne Valkealahti
+ */
+public class SchedulingChannel extends AbstractSubscribableChannel {
+
+    private final UnicastingDispatcher mDispatcher = new UnicastingDispatcher();
+    private final Executor mExecutor;
+    private final ImageRequestScheduler mScheduler;
+    private final Runnable mDrainTask = new DrainTask();
+
+    /**
+     * Instantiates a new scheduling channel.
+     * 
+     * @param executor the executor running dispatching tasks
+     * @param scheduler the scheduler ordering messages
+     */
+    public SchedulingChannel(Executor executor, ImageRequestScheduler scheduler) {
+        Assert.notNull(executor, "Executor must not be null");
+        Assert.notNull(scheduler, "Scheduler must not be null");
+        mExecutor = executor;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Gets the scheduler ordering messages of this channel.
+     * 
+     * @return the scheduler
+     */
+    public ImageRequestScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    @Override
+    protected MessageDispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    @Override
+    protected boolean doSend(Message<?> message, long timeout) {
+        mScheduler.schedule(message);
+        mExecutor.execute(mDrainTask);
+        return true;
+    }
+
+    private void dispatch(Message<?> message) {
+        super.doSend(message, -1);
+    }
+
+    /**
+     * Task dispatching scheduled messages.
+     */
+    private class DrainTask implements Runnable {
+        @Override
+        public void run() {
+            Message<?> message;
+            while ((message = mScheduler.poll()) != null) {
+                boolean dispatched = false;
+                try {
+                    dispatch(message);
+                    dispatched = true;
+                } finally {
+                    mScheduler.done(message);
+                    if (!dispatched) {
+                        // error is handled by an executor, let
+                        // another task continue with pending messages
+                        mExecutor.execute(this);
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import org.springframework.integration.image.support.ImageOptions.ScaleMode;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+/**
+ * Decodes images downsampled close to a size they are displayed in.
+ * Image bounds are decoded first without allocating pixels and a power
+ * of two {@link BitmapFactory.Options#inSampleSize} is chosen so that a
+ * decoded bitmap is never smaller than a target size in a given
+ * {@link ScaleMode}. Decoding a 4000x3000 photo for a 96x96 view with a
+ * sample size of 16 allocates 250x188 pixels instead of twelve million.
+ * <p>
+ * Streams are read once. Only bytes consumed by a bounds pass, which
+ * reads an image header, are recorded and replayed ahead of the rest of
+ * a stream for a second pass, so a network body is never fetched twice
+ * nor held in memory and stream doesn't need to support mark and reset.
+ * <p>
+ * If a {@link BitmapPool} is given, decoded bitmaps are mutable and a
+ * pooled bitmap matching decoded dimensions is reused through
+ * {@link BitmapFactory.Options#inBitmap}. Before Android 4.4 only JPEG
+ * and PNG images are decoded into a pooled bitmap. If a platform still
+ * refuses to reuse it, encoded bytes are decoded again into a new bitmap
+ * while a stream, which can't be read twice, fails with an {@link IOException}.
+ * 
+ * @author Janne Valkealahti
+ */
+public abstract class BitmapDecoder {
+
+    /**
+     * Computes a power of two sample size for an image.
+     * 
+     * @param width the image width
+     * @param height the image height
+     * @param targetWidth the target width, zero or negative if not constrained
+     * @param targetHeight the target height, zero or negative if not constrained
+     * @param scaleMode the scale mode, defaults to {@link ScaleMode#FILL} if null
+     * @return the sample size, 1 if image is not downsampled
+     */
+    public static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight,
+            ScaleMode scaleMode) {
+        if (width <= 0 || height <= 0 || (targetWidth <= 0 && targetHeight <= 0)) {
+            return 1;
+        }
+        // ratios image can be shrunk by in each dimension
+        float widthRatio = targetWidth > 0 ? (float) width / targetWidth : Float.MAX_VALUE;
+        float heightRatio = targetHeight > 0 ? (float) height / targetHeight : Float.MAX_VALUE;
+        float ratio;
+        if (targetWidth <= 0) {
+            ratio = heightRatio;
+        } else if (targetHeight <= 0) {
+            ratio = widthRatio;
+        } else if (scaleMode == ScaleMode.FIT) {
+            ratio = Math.max(widthRatio, heightRatio);
+        } else {
+            ratio = Math.min(widthRatio, heightRatio);
+        }
+        int sampleSize = 1;
+        while (sampleSize * 2 <= ratio) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Decodes an image from encoded bytes.
+     * 
+     * @param bytes the encoded image
+     * @param targetWidth the target width, zero or negative if not constrained
+     * @param targetHeight the target height, zero or negative if not constrained
+     * @param scaleMode the scale mode
+     * @return the bitmap, null if image can't be decoded
+     */
+    public static Bitmap decode(byte[] bytes, int targetWidth, int targetHeight, ScaleMode scaleMode) {
+        return decode(bytes, targetWidth, targetHeight, scaleMode, null);
+    }
+
+    /**
+     * Decodes an image from encoded bytes reusing a bitmap from a pool.
+     * 
+     * @param bytes the encoded image
+     * @param targetWidth the target width, zero or negative if not constrained
+     * @param targetHeight the target height, zero or negative if not constrained
+     * @param scaleMode the scale mode
+     * @param pool the bitmap pool, null if bitmaps are not reused
+     * @return the bitmap, null if image can't be decoded
+     */
+    public static Bitmap decode(byte[] bytes, int targetWidth, int targetHeight, ScaleMode scaleMode,
+            BitmapPool pool) {
+        boolean reuse = pool != null && BitmapPool.isSupported();
+        if (targetWidth <= 0 && targetHeight <= 0 && !reuse) {
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight,
+                scaleMode);
+        options.inJustDecodeBounds = false;
+        if (reuse) {
+            prepareReuse(options, pool);
+        }
+        try {
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            releaseReuse(options, pool);
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+    }
+
+    /**
+     * Decodes an image from a stream. Stream is not closed.
+     * 
+     * @param in the stream of an encoded image
+     * @param targetWidth the target width, zero or negative if not constrained
+     * @param targetHeight the target height, zero or negative if not constrained
+     * @param scaleMode the scale mode
+     * @return the bitmap, null if image can't be decoded
+     * @throws IOException in case of I/O errors
+     */
+    public static Bitmap decode(InputStream in, int targetWidth, int targetHeight, ScaleMode scaleMode)
+            throws IOException {
+        return decode(in, targetWidth, targetHeight, scaleMode, null);
+    }
+
+    /**
+     * Decodes an image from a stream reusing a bitmap from a pool.
+     * Stream is not closed. Only an image header is kept in memory,
+     * so an image can't be decoded again if a platform refuses a
+     * pooled bitmap.
+     * 
+     * @param in the stream of an encoded image
+     * @param targetWidth the target width, zero or negative if not constrained
+     * @param targetHeight the target height, zero or negative if not constrained
+     * @param scaleMode the scale mode
+     * @param pool the bitmap pool, null if bitmaps are not reused
+     * @return the bitmap, null if image can't be decoded
+     * @throws IOException in case of I/O errors or if a pooled bitmap is refused
+     */
+    public static Bitmap decode(InputStream in, int targetWidth, int targetHeight, ScaleMode scaleMode,
+            BitmapPool pool) throws IOException {
+        boolean reuse = pool != null && BitmapPool.isSupported();
+        if (targetWidth <= 0 && targetHeight <= 0 && !reuse) {
+            return BitmapFactory.decodeStream(in);
+        }
+        RecordingInputStream recording = new RecordingInputStream(in);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(recording, null, options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight,
+                scaleMode);
+        options.inJustDecodeBounds = false;
+        if (reuse) {
+            prepareReuse(options, pool);
+        }
+        // recording stops here, rest of an image is decoded from a live stream
+        InputStream replay = new SequenceInputStream(new ByteArrayInputStream(recording.getRecorded()), in);
+        try {
+            return BitmapFactory.decodeStream(replay, null, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            releaseReuse(options, pool);
+            IOException ioe = new IOException("Pooled bitmap was refused and stream can't be decoded again");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    /**
+     * Sets options to decode into a mutable bitmap, reusing a pooled bitmap
+     * if one matches. Before Android 4.4 a reused bitmap must have exact
+     * dimensions of an image and a sample size must be one. Later versions
+     * reuse any large enough bitmap so pool is asked for a sampled size.
+     * Older versions also only decode JPEG and PNG images into a reused bitmap.
+     */
+    private static void prepareReuse(BitmapFactory.Options options, BitmapPool pool) {
+        options.inMutable = true;
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < 19 && (sampleSize > 1
+                || !("image/jpeg".equals(options.outMimeType) || "image/png".equals(options.outMimeType)))) {
+            return;
+        }
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        options.inBitmap = pool.get(width, height, options.inPreferredConfig);
+    }
+
+    /**
+     * Gives a refused bitmap back to a pool.
+     */
+    private static void releaseReuse(BitmapFactory.Options options, BitmapPool pool) {
+        Bitmap refused = options.inBitmap;
+        options.inBitmap = null;
+        pool.put(refused);
+    }
+
+    /**
+     * Stream recording bytes read through it. It's only read by a bounds
+     * pass which consumes a header of an image, so recorded bytes stay
+     * small. A second pass reads an underlying stream directly.
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private final ByteArrayOutputStream mRecorded = new ByteArrayOutputStream();
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mRecorded.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mRecorded.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // skipped bytes must be recorded too
+            byte[] buffer = new byte[(int) Math.min(count, 4096)];
+            long skipped = 0;
+            while (skipped < count) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // underlying stream is still needed for a second pass
+        }
+
+        byte[] getRecorded() {
+            return mRecorded.toByteArray();
+        }
+
+    }
+
+}
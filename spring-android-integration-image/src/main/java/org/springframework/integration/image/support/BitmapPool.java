@@ -0,0 +1,258 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.support;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.ConcurrentStatsCounter;
+import org.springframework.cache.support.RemovalCause;
+import org.springframework.cache.support.StatsCounter;
+import org.springframework.util.Assert;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * Pool of bitmaps which are no longer displayed and whose pixel memory
+ * can be reused by decoders through {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ * Reusing bitmaps instead of allocating new ones keeps a heap from
+ * churning while a grid of images is scrolled.
+ * <p>
+ * Bitmaps are kept in buckets by width, height and config because
+ * before Android 4.4 a reused bitmap must have exactly the dimensions
+ * of a decoded image. Pool is bounded by a total byte size of its
+ * bitmaps and evicts from a least recently used bucket. Evicted bitmaps
+ * are only dropped from a pool and left for a garbage collector because
+ * a pool can't know whether a caller still holds them.
+ * <p>
+ * Bitmaps are pooled only when a caller explicitly releases them, for
+ * example through {@link org.springframework.integration.image.core.CachingBitmapManager#releaseBitmap}.
+ * A bitmap evicted from a memory cache may still be displayed and must
+ * not be pooled as its pixels will be overwritten. A bitmap already in
+ * a pool is refused so that two decoders never get a same bitmap.
+ * 
+ * @author Janne Valkealahti
+ */
+public class BitmapPool {
+
+    private final long mMaxBytes;
+    /** Buckets in access order, guarded by this */
+    private final LinkedHashMap<Key, ArrayDeque<Bitmap>> mBuckets =
+            new LinkedHashMap<Key, ArrayDeque<Bitmap>>(16, 0.75f, true);
+    /** Pooled bitmaps by identity, guarded by this */
+    private final Set<Bitmap> mPooled = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    /** Total bytes of pooled bitmaps, guarded by this */
+    private long mBytes;
+    private final StatsCounter mStatsCounter = new ConcurrentStatsCounter();
+
+    /**
+     * Instantiates a new bitmap pool.
+     * 
+     * @param maxBytes the max total byte size of pooled bitmaps
+     */
+    public BitmapPool(long maxBytes) {
+        Assert.isTrue(maxBytes >= 0, "Max bytes must not be negative");
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Checks if bitmaps can be reused on this platform.
+     * {@link android.graphics.BitmapFactory.Options#inBitmap}
+     * is available since Android 3.0.
+     * 
+     * @return true if bitmaps can be reused
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * Takes a bitmap from a pool. Returned bitmap is removed from
+     * a pool and its pixels are undefined.
+     * 
+     * @param width the width of a bitmap
+     * @param height the height of a bitmap
+     * @param config the config of a bitmap, null defaults to {@link Bitmap.Config#ARGB_8888}
+     * @return the bitmap, null if pool doesn't have a matching bitmap
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            Key key = new Key(width, height, config != null ? config : Bitmap.Config.ARGB_8888);
+            ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+            if (bucket != null) {
+                bitmap = bucket.pollLast();
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(key);
+                }
+                if (bitmap != null) {
+                    mPooled.remove(bitmap);
+                    mBytes -= getByteSize(bitmap);
+                }
+            }
+        }
+        if (bitmap != null) {
+            mStatsCounter.recordHits(1);
+        } else {
+            mStatsCounter.recordMisses(1);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Puts a bitmap into a pool. Bitmap is accepted only if it's
+     * mutable, not recycled, fits into a pool and isn't already pooled.
+     * 
+     * @param bitmap the bitmap
+     * @return true if bitmap was pooled, false otherwise
+     */
+    public boolean put(Bitmap bitmap) {
+        if (bitmap == null || !isSupported() || !bitmap.isMutable() || bitmap.isRecycled()
+                || bitmap.getConfig() == null) {
+            return false;
+        }
+        int size = getByteSize(bitmap);
+        if (size > mMaxBytes) {
+            return false;
+        }
+        synchronized (this) {
+            if (!mPooled.add(bitmap)) {
+                return false;
+            }
+            Key key = new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayDeque<Bitmap>();
+                mBuckets.put(key, bucket);
+            }
+            bucket.addLast(bitmap);
+            mBytes += size;
+            trimToSize(mMaxBytes);
+        }
+        mStatsCounter.recordPuts(1);
+        return true;
+    }
+
+    /**
+     * Removes all pooled bitmaps.
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Gets the total byte size of pooled bitmaps.
+     * 
+     * @return the byte size
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Gets the max total byte size of pooled bitmaps.
+     * 
+     * @return the max byte size
+     */
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Gets pool statistics. Hits and misses count {@link #get(int, int, Bitmap.Config)}
+     * calls, so {@link CacheStats#getHitRatio()} tells how often a decode
+     * could reuse a bitmap.
+     * 
+     * @return the pool statistics
+     */
+    public CacheStats getStats() {
+        return mStatsCounter.snapshot().withByteSize(getBytes());
+    }
+
+    /**
+     * Gets a byte size of a bitmap.
+     * 
+     * @param bitmap the bitmap
+     * @return the byte size
+     */
+    public static int getByteSize(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    /**
+     * Evicts bitmaps from least recently used buckets without recycling
+     * them. Caller must hold a lock.
+     */
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<Key, ArrayDeque<Bitmap>>> iterator = mBuckets.entrySet().iterator();
+        while (mBytes > maxBytes && iterator.hasNext()) {
+            ArrayDeque<Bitmap> bucket = iterator.next().getValue();
+            while (mBytes > maxBytes && !bucket.isEmpty()) {
+                Bitmap bitmap = bucket.pollFirst();
+                mPooled.remove(bitmap);
+                int size = getByteSize(bitmap);
+                mBytes -= size;
+                mStatsCounter.recordRemoval(RemovalCause.SIZE, size);
+            }
+            if (bucket.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Bucket key of a bitmap.
+     */
+    private static class Key {
+
+        private final int mWidth;
+        private final int mHeight;
+        private final Bitmap.Config mConfig;
+
+        Key(int width, int height, Bitmap.Config config) {
+            mWidth = width;
+            mHeight = height;
+            mConfig = config;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * mWidth + mHeight) + mConfig.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return mWidth == other.mWidth && mHeight == other.mHeight && mConfig == other.mConfig;
+        }
+
+    }
+
+}
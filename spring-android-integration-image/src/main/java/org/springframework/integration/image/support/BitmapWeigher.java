@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.support;
+
+import org.springframework.cache.lru.ConcurrentLruCache;
+import org.springframework.cache.lru.Weigher;
+
+import android.graphics.Bitmap;
+
+/**
+ * {@link Weigher} weighing a {@link Bitmap} by the number of bytes
+ * its pixels use, allowing a {@link ConcurrentLruCache} to be bounded
+ * by memory rather than by a count of bitmaps.
+ * 
+ * @author Janne Valkealahti
+ */
+public class BitmapWeigher implements Weigher<Object, Bitmap> {
+
+    @Override
+    public int weigh(Object key, Bitmap value) {
+        return value.getRowBytes() * value.getHeight();
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.support;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.InstrumentedCache;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.DaemonThreadFactory;
+import org.springframework.integration.MessageChannel;
+import org.springframework.integration.image.ImageHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.util.Assert;
+
+/**
+ * Background task which periodically sends statistics of registered
+ * caches to a {@link MessageChannel}. Every report sends a message per
+ * cache having a {@link CacheStats} payload and the name of a cache
+ * in {@link ImageHeaders#CACHE_NAME} header, which allows tuning cache
+ * limits from a real application rather than by guessing.
+ * 
+ * @author Janne Valkealahti
+ */
+public class CacheStatsReporter {
+
+    /** Default interval between reports in milliseconds */
+    public static final long DEFAULT_INTERVAL = 60000;
+
+    private final List<InstrumentedCache> mCaches = new CopyOnWriteArrayList<InstrumentedCache>();
+    private final MessageChannel mChannel;
+    private final long mInterval;
+    private ScheduledExecutorService mExecutor;
+
+    /**
+     * Instantiates a new cache stats reporter using {@link #DEFAULT_INTERVAL}.
+     * 
+     * @param channel the channel to send stats to
+     */
+    public CacheStatsReporter(MessageChannel channel) {
+        this(channel, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Instantiates a new cache stats reporter.
+     * 
+     * @param channel the channel to send stats to
+     * @param interval the interval between reports in milliseconds
+     */
+    public CacheStatsReporter(MessageChannel channel, long interval) {
+        Assert.notNull(channel, "Channel must not be null");
+        Assert.isTrue(interval > 0, "Interval must be positive");
+        mChannel = channel;
+        mInterval = interval;
+    }
+
+    /**
+     * Adds a cache to be reported.
+     * 
+     * @param cache the cache
+     */
+    public void addCache(InstrumentedCache cache) {
+        Assert.notNull(cache, "Cache must not be null");
+        mCaches.add(cache);
+    }
+
+    /**
+     * Adds all caches of a cache manager which record statistics.
+     * 
+     * @param cacheManager the cache manager
+     */
+    public void addCaches(CacheManager cacheManager) {
+        Assert.notNull(cacheManager, "Cache manager must not be null");
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof InstrumentedCache) {
+                mCaches.add((InstrumentedCache) cache);
+            }
+        }
+    }
+
+    /**
+     * Removes a cache from being reported.
+     * 
+     * @param cache the cache
+     */
+    public void removeCache(InstrumentedCache cache) {
+        mCaches.remove(cache);
+    }
+
+    /**
+     * Starts reporting in a background thread. Does
+     * nothing if reporter is already started.
+     */
+    public synchronized void start() {
+        if (mExecutor != null) {
+            return;
+        }
+        mExecutor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("cache-stats-reporter"));
+        mExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, mInterval, mInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops reporting.
+     */
+    public synchronized void stop() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Checks if reporter is started.
+     * 
+     * @return True if reporter is started, false otherwise
+     */
+    public synchronized boolean isRunning() {
+        return mExecutor != null;
+    }
+
+    /**
+     * Sends stats of all registered caches once in a calling thread.
+     * 
+     * @return the number of sent messages
+     */
+    public int report() {
+        int sent = 0;
+        for (InstrumentedCache cache : mCaches) {
+            try {
+                CacheStats stats = cache.getStats();
+                if (mChannel.send(MessageBuilder.withPayload(stats)
+                        .setHeader(ImageHeaders.CACHE_NAME, cache.getName())
+                        .build())) {
+                    sent++;
+                }
+            } catch (RuntimeException e) {
+                // a failing cache or channel must not
+                // stop reporting other caches
+            }
+        }
+        return sent;
+    }
+
+}
@@ -23,6 +23,14 @@ import java.util.Map;
  * Options class representing what is a source of
  * target image, how images should be encoded and how
  * image should be processed into a bitmap.
+ * <p>
+ * A target size lets an image be decoded downsampled close to a size
+ * it's displayed in instead of at its full resolution.
+ * <p>
+ * Local images are identified by a url too, <code>resource:&lt;id&gt;</code>
+ * for resources, <code>asset:&lt;path&gt;</code> for assets and
+ * <code>file:&lt;path&gt;</code> for files, which is used as a key of
+ * a request and of a memory cache.
  * 
  * @author Janne Valkealahti
  */
@@ -32,10 +40,20 @@ public class ImageOptions {
     private int mResourceId;
     /** Target url for image */
     private String mUrl;
+    /** Asset or file path */
+    private String mPath;
     /** Image source */
     private ImageSource mImageSource;
     
     private Map<String, String> mTags;
+    /** Target width in pixels, zero if not constrained */
+    private int mTargetWidth;
+    /** Target height in pixels, zero if not constrained */
+    private int mTargetHeight;
+    /** How an image is scaled to a target size */
+    private ScaleMode mScaleMode = ScaleMode.FILL;
+    /** Priority of loading an image */
+    private Priority mPriority = Priority.NORMAL;
     
     public ImageOptions() {
     }
@@ -43,8 +61,13 @@ public class ImageOptions {
     public ImageOptions(Builder builder) {
         mImageSource = builder.mImageSource;
         mUrl = builder.mUrl;
+        mPath = builder.mPath;
         mTags = builder.mTags;
         mResourceId = builder.mResourceId;
+        mTargetWidth = builder.mTargetWidth;
+        mTargetHeight = builder.mTargetHeight;
+        mScaleMode = builder.mScaleMode;
+        mPriority = builder.mPriority;
     }
     
     public ImageSource getImageSource() {
@@ -58,10 +81,39 @@ public class ImageOptions {
     public int getResourceId() {
         return mResourceId;
     }
+
+    public String getPath() {
+        return mPath;
+    }
     
     public Map<String, String> getTags() {
         return mTags;
     }
+
+    public int getTargetWidth() {
+        return mTargetWidth;
+    }
+
+    public int getTargetHeight() {
+        return mTargetHeight;
+    }
+
+    public ScaleMode getScaleMode() {
+        return mScaleMode;
+    }
+
+    public Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Tells if image should be decoded downsampled.
+     * 
+     * @return true if either target dimension is set
+     */
+    public boolean hasTargetSize() {
+        return mTargetWidth > 0 || mTargetHeight > 0;
+    }
     
     public static class Source {
         public ImageSource imageSource;
@@ -70,7 +122,31 @@ public class ImageOptions {
     public enum ImageSource {
         HTTP,
         RESOURCE,
-        ASSET
+        ASSET,
+        FILE
+    }
+
+    /**
+     * How an image is scaled to a target size, which decides
+     * how much it can be downsampled when decoded.
+     */
+    public enum ScaleMode {
+        /** Image covers a target area and may be cropped */
+        FILL,
+        /** Whole image fits inside a target area */
+        FIT
+    }
+
+    /**
+     * Priority of loading an image. Images with a higher priority are
+     * loaded first and within a priority newest requests go first.
+     */
+    public enum Priority {
+        /** Prefetched or off-screen images */
+        LOW,
+        NORMAL,
+        /** Images currently visible to a user */
+        HIGH
     }
 
     /**
@@ -79,8 +155,13 @@ public class ImageOptions {
     public static class Builder {
         private int mResourceId;
         private String mUrl;
+        private String mPath;
         private ImageSource mImageSource;
         private Map<String, String> mTags;
+        private int mTargetWidth;
+        private int mTargetHeight;
+        private ScaleMode mScaleMode = ScaleMode.FILL;
+        private Priority mPriority = Priority.NORMAL;
         
         public Builder withUrl(String url) {
             mUrl = url;
@@ -90,15 +171,63 @@ public class ImageOptions {
 
         public Builder withResource(int id) {
             mResourceId = id;
+            mUrl = "resource:" + id;
             mImageSource = ImageSource.RESOURCE;
             return this;
         }
 
         public Builder withAsset(String path) {
+            mPath = path;
+            mUrl = "asset:" + path;
             mImageSource = ImageSource.ASSET;
             return this;
         }
+
+        public Builder withFile(String path) {
+            mPath = path;
+            mUrl = "file:" + path;
+            mImageSource = ImageSource.FILE;
+            return this;
+        }
         
+        /**
+         * Sets a size image is displayed in. Either dimension
+         * may be zero to leave it unconstrained.
+         * 
+         * @param width the target width in pixels
+         * @param height the target height in pixels
+         * @return this builder
+         */
+        public Builder withTargetSize(int width, int height) {
+            mTargetWidth = Math.max(0, width);
+            mTargetHeight = Math.max(0, height);
+            return this;
+        }
+
+        /**
+         * Sets how an image is scaled to a target size.
+         * Defaults to {@link ScaleMode#FILL}.
+         * 
+         * @param scaleMode the scale mode
+         * @return this builder
+         */
+        public Builder withScaleMode(ScaleMode scaleMode) {
+            mScaleMode = scaleMode != null ? scaleMode : ScaleMode.FILL;
+            return this;
+        }
+
+        /**
+         * Sets a priority of loading an image.
+         * Defaults to {@link Priority#NORMAL}.
+         * 
+         * @param priority the priority
+         * @return this builder
+         */
+        public Builder withPriority(Priority priority) {
+            mPriority = priority != null ? priority : Priority.NORMAL;
+            return this;
+        }
+
         public Builder addTag(String key, String value) {
             if(mTags == null) {
                 mTags = new HashMap<String, String>();
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.support;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.gateway.GatewayHeaders;
+import org.springframework.integration.http.HttpHeaders;
+import org.springframework.integration.image.ImageHeaders;
+import org.springframework.integration.image.support.ImageOptions.Priority;
+import org.springframework.util.Assert;
+
+/**
+ * Scheduler ordering image request messages waiting for a download.
+ * Messages with a higher {@link ImageHeaders#PRIORITY} are served first
+ * and within a priority newest messages go first, so images of items
+ * which just scrolled into view are not stuck behind dozens of images
+ * which already scrolled away. A number of concurrent downloads from
+ * a single host is capped, a message for a busy host is passed over
+ * until one of its downloads is {@link #done(Message) done}.
+ * <p>
+ * Pending messages having a {@link GatewayHeaders#REQUEST_ID} can be
+ * reprioritized or removed.
+ * 
+ * @author Janne Valkealahti
+ */
+public class ImageRequestScheduler {
+
+    /** Default max number of concurrent downloads per host */
+    public static final int DEFAULT_MAX_PER_HOST = 4;
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final int mMaxPerHost;
+    /** Pending entries per priority ordinal, oldest first, guarded by this */
+    private final ArrayDeque<Entry>[] mPending;
+    /** Number of active downloads per host, guarded by this */
+    private final Map<String, Integer> mActive = new HashMap<String, Integer>();
+    private int mPendingCount;
+
+    /**
+     * Instantiates a new image request scheduler
+     * using {@link #DEFAULT_MAX_PER_HOST}.
+     */
+    public ImageRequestScheduler() {
+        this(DEFAULT_MAX_PER_HOST);
+    }
+
+    /**
+     * Instantiates a new image request scheduler.
+     * 
+     * @param maxPerHost the max number of concurrent downloads per host
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ImageRequestScheduler(int maxPerHost) {
+        Assert.isTrue(maxPerHost > 0, "Max downloads per host must be positive");
+        mMaxPerHost = maxPerHost;
+        mPending = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < mPending.length; i++) {
+            mPending[i] = new ArrayDeque<Entry>();
+        }
+    }
+
+    /**
+     * Adds a message waiting for a download.
+     * 
+     * @param message the message
+     */
+    public synchronized void schedule(Message<?> message) {
+        Priority priority = message.getHeaders().get(ImageHeaders.PRIORITY, Priority.class);
+        add(new Entry(message, getHost(message)), priority != null ? priority : Priority.NORMAL);
+    }
+
+    /**
+     * Takes a message to be downloaded next. A host of a returned
+     * message is counted as active until {@link #done(Message)}
+     * is called.
+     * 
+     * @return the message, null if there are no messages or
+     *         hosts of all messages are busy
+     */
+    public synchronized Message<?> poll() {
+        for (int i = mPending.length - 1; i >= 0; i--) {
+            Iterator<Entry> iterator = mPending[i].descendingIterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                int active = getActive(entry.mHost);
+                if (active < mMaxPerHost) {
+                    iterator.remove();
+                    mPendingCount--;
+                    mActive.put(entry.mHost, active + 1);
+                    return entry.mMessage;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tells that a download of a message returned from {@link #poll()}
+     * is done, freeing a slot of its host.
+     * 
+     * @param message the message
+     */
+    public synchronized void done(Message<?> message) {
+        String host = getHost(message);
+        int active = getActive(host);
+        if (active <= 1) {
+            mActive.remove(host);
+        } else {
+            mActive.put(host, active - 1);
+        }
+    }
+
+    /**
+     * Changes a priority of a pending message. Reprioritized message
+     * becomes the newest message of its new priority.
+     * 
+     * @param requestId the request id of a message
+     * @param priority the new priority
+     * @return true if message was pending, false otherwise
+     */
+    public synchronized boolean reprioritize(int requestId, Priority priority) {
+        Assert.notNull(priority, "Priority must not be null");
+        Entry entry = removeEntry(requestId);
+        if (entry == null) {
+            return false;
+        }
+        add(entry, priority);
+        return true;
+    }
+
+    /**
+     * Removes a pending message.
+     * 
+     * @param requestId the request id of a message
+     * @return true if message was pending, false otherwise
+     */
+    public synchronized boolean remove(int requestId) {
+        return removeEntry(requestId) != null;
+    }
+
+    /**
+     * Gets the number of pending messages.
+     * 
+     * @return the number of pending messages
+     */
+    public synchronized int getPendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * Gets the number of active downloads from a host.
+     * 
+     * @param host the host
+     * @return the number of active downloads
+     */
+    public synchronized int getActiveCount(String host) {
+        return getActive(host != null ? host : "");
+    }
+
+    private void add(Entry entry, Priority priority) {
+        mPending[priority.ordinal()].addLast(entry);
+        mPendingCount++;
+    }
+
+    private Entry removeEntry(int requestId) {
+        for (ArrayDeque<Entry> pending : mPending) {
+            Iterator<Entry> iterator = pending.iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                Integer id = entry.mMessage.getHeaders().get(GatewayHeaders.REQUEST_ID, Integer.class);
+                if (id != null && id.intValue() == requestId) {
+                    iterator.remove();
+                    mPendingCount--;
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    private int getActive(String host) {
+        Integer active = mActive.get(host);
+        return active != null ? active : 0;
+    }
+
+    /**
+     * Gets a host a message is downloaded from.
+     * 
+     * @param message the message
+     * @return the host, empty string if not known
+     */
+    protected String getHost(Message<?> message) {
+        Object variables = message.getHeaders().get(HttpHeaders.URI_VARIABLES);
+        if (variables instanceof Map) {
+            Object url = ((Map<?, ?>) variables).get(HttpHeaders.REQUEST_URL);
+            if (url != null) {
+                try {
+                    String host = new URI(url.toString()).getHost();
+                    if (host != null) {
+                        return host;
+                    }
+                } catch (Exception e) {
+                    // not a valid uri, all such messages share a slot
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Pending message.
+     */
+    private static class Entry {
+        final Message<?> mMessage;
+        final String mHost;
+        Entry(Message<?> message, String host) {
+            mMessage = message;
+            mHost = host;
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.image.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.cache.disk.serializer.BitmapCacheValueSerializer;
+import org.springframework.util.Assert;
+
+import android.graphics.Bitmap;
+
+/**
+ * {@link BitmapCacheValueSerializer} decoding bitmaps into
+ * bitmaps reused from a {@link BitmapPool}.
+ * 
+ * @author Janne Valkealahti
+ */
+public class PooledBitmapCacheValueSerializer extends BitmapCacheValueSerializer {
+
+    private final BitmapPool mBitmapPool;
+
+    /**
+     * Instantiates a new pooled bitmap cache value serializer.
+     * 
+     * @param bitmapPool the bitmap pool
+     */
+    public PooledBitmapCacheValueSerializer(BitmapPool bitmapPool) {
+        Assert.notNull(bitmapPool, "Bitmap pool must not be null");
+        mBitmapPool = bitmapPool;
+    }
+
+    @Override
+    protected Bitmap decode(byte[] bytes) {
+        return BitmapDecoder.decode(bytes, 0, 0, null, mBitmapPool);
+    }
+
+    @Override
+    protected Bitmap decode(InputStream in) throws IOException {
+        return BitmapDecoder.decode(in, 0, 0, null, mBitmapPool);
+    }
+
+}
@@ -16,16 +16,17 @@
 
 package org.springframework.integration.image.support;
 
-import org.springframework.integration.image.BitmapManager.BitmapWrapper;
+import org.springframework.integration.image.BitmapManager.BitmapRequest;
 
 import android.graphics.Bitmap;
 
 /**
- * Simple bitmap wrapper implementation.
+ * Simple bitmap wrapper implementation. Used for
+ * completed requests, so cancelling does nothing.
  * 
  * @author Janne Valkealahti
  */
-public class SimpleBitmapWrapper implements BitmapWrapper {
+public class SimpleBitmapWrapper implements BitmapRequest {
 
     private final Bitmap mBitmap;
     
@@ -38,4 +39,13 @@ public class SimpleBitmapWrapper implements BitmapWrapper {
         return mBitmap;
     }
 
+    @Override
+    public void cancel() {
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
 }
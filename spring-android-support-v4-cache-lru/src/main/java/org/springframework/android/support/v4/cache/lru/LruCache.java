@@ -17,9 +17,28 @@
 package org.springframework.android.support.v4.cache.lru;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
+import org.springframework.cache.BulkCache;
 import org.springframework.cache.Cache;
+import org.springframework.cache.ExpirableCache;
+import org.springframework.cache.InstrumentedCache;
+import org.springframework.cache.LoadingCache;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.ConcurrentStatsCounter;
+import org.springframework.cache.support.ExpiringValue;
+import org.springframework.cache.support.RemovalCause;
 import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.cache.support.SingleFlight;
+import org.springframework.cache.support.StatsCounter;
+import org.springframework.util.Assert;
 
 /**
  * Cache implementation which implements SpringFramework {@link Cache}
@@ -29,16 +48,41 @@ import org.springframework.cache.support.SimpleValueWrapper;
  * There are similar implementation in {@link org.springramework.cache.lru.LruCache}
  * which wraps {@link android.util.LruCache} introduced in
  * api level 12.
+ * <p>
+ * Entries may expire after a time-to-live or an idle timeout. Expiry
+ * information is kept in an {@link ExpiringValue} of a side map keyed
+ * by a cache key, so a wrapped cache only ever sees values given by
+ * a user and its {@code sizeOf} and {@code entryRemoved} overrides
+ * keep working. Expiry information of entries the wrapped cache evicted
+ * on its own is dropped on a next lookup or by {@link #purgeExpired(int)}.
+ * <p>
+ * Hits, misses, puts, removals and expirations are recorded to
+ * {@link #getStats()}. Entries evicted by the wrapped cache to keep
+ * it within its size are counted by the wrapped cache itself.
+ * <p>
+ * Bulk operations hold the monitor of the wrapped cache for
+ * a whole batch instead of acquiring it for every key.
  * 
  * @author Janne Valkealahti
  */
 @SuppressWarnings("rawtypes")
-public class LruCache implements Cache {
+public class LruCache implements LoadingCache, ExpirableCache, InstrumentedCache, BulkCache {
 
     private static final Object NULL_HOLDER = new NullHolder();
     private final String mName;
     private final android.support.v4.util.LruCache mLruCache;
     private final boolean mAllowNullValues;
+    private final SingleFlight mLoads = new SingleFlight(new SingleFlight.Lookup() {
+        @Override
+        public ValueWrapper lookup(Object key) {
+            return peek(key);
+        }
+    });
+    /** Expiry of entries which may expire, holders wrap values of a wrapped cache */
+    private final ConcurrentMap<Object, ExpiringValue> mExpiry = new ConcurrentHashMap<Object, ExpiringValue>();
+    private volatile long mTimeToLive;
+    private volatile long mTimeToIdle;
+    private volatile StatsCounter mStatsCounter;
 
     /**
      * Create a new LruCache with the specified name and
@@ -62,6 +106,7 @@ public class LruCache implements Cache {
         mName = name;
         mAllowNullValues = allowNullValues;
         mLruCache = cache;
+        setStatsCounter(new ConcurrentStatsCounter());
     }
 
     @Override
@@ -78,28 +123,147 @@ public class LruCache implements Cache {
         return mLruCache;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Sets the default time-to-live of entries in milliseconds. Zero
+     * or negative value means that entries never expire.
+     * @param timeToLive the time-to-live
+     */
+    public void setTimeToLive(long timeToLive) {
+        mTimeToLive = timeToLive;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an entry which hasn't
+     * been read expires. Zero or negative value disables idle timeout.
+     * @param timeToIdle the idle timeout
+     */
+    public void setTimeToIdle(long timeToIdle) {
+        mTimeToIdle = timeToIdle;
+    }
+
+    @Override
+    public void setStatsCounter(StatsCounter statsCounter) {
+        Assert.notNull(statsCounter, "StatsCounter must not be null");
+        mStatsCounter = statsCounter;
+        mLoads.setStatsCounter(statsCounter);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return mStatsCounter.snapshot();
+    }
+
     @Override
     public ValueWrapper get(Object key) {
-        Object value = mLruCache.get(key);
-        return (value != null ? new SimpleValueWrapper(fromStoreValue(value)) : null);
+        Object value = lookup(key, System.currentTimeMillis());
+        if (value == null) {
+            mStatsCounter.recordMisses(1);
+            return null;
+        }
+        mStatsCounter.recordHits(1);
+        return new SimpleValueWrapper(fromStoreValue(value));
+    }
+
+    @Override
+    public Map<Object, Object> getAll(Collection<?> keys) {
+        Map<Object, Object> values = new HashMap<Object, Object>();
+        long now = System.currentTimeMillis();
+        synchronized (mLruCache) {
+            for (Object key : keys) {
+                Object value = lookup(key, now);
+                if (value != null) {
+                    values.put(key, fromStoreValue(value));
+                }
+            }
+        }
+        mStatsCounter.recordHits(values.size());
+        mStatsCounter.recordMisses(keys.size() - values.size());
+        return values;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> loader) {
+        return mLoads.get(this, key, loader);
+    }
+
+    @Override
+    public <T> Future<T> getAsync(Object key, Callable<T> loader, Executor executor) {
+        return mLoads.getAsync(this, key, loader, executor);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void put(Object key, Object value) {
-        mLruCache.put(key, value);
+        store(key, value, mTimeToLive, System.currentTimeMillis());
+        mStatsCounter.recordPuts(1);
+    }
+
+    @Override
+    public void put(Object key, Object value, long timeToLive) {
+        Assert.isTrue(timeToLive > 0, "Time-to-live must be positive");
+        store(key, value, timeToLive, System.currentTimeMillis());
+        mStatsCounter.recordPuts(1);
+    }
+
+    @Override
+    public void putAll(Map<?, ?> entries) {
+        long now = System.currentTimeMillis();
+        synchronized (mLruCache) {
+            for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                store(entry.getKey(), entry.getValue(), mTimeToLive, now);
+            }
+        }
+        mStatsCounter.recordPuts(entries.size());
+    }
+
+    @Override
+    public int purgeExpired(int maxEntries) {
+        int removed = 0;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Object, ExpiringValue> entry : mExpiry.entrySet()) {
+            if (removed >= maxEntries) {
+                break;
+            }
+            ExpiringValue expiring = entry.getValue();
+            if (!expiring.isExpired(now)) {
+                continue;
+            }
+            mExpiry.remove(entry.getKey(), expiring);
+            if (remove(entry.getKey(), expiring.getValue())) {
+                mStatsCounter.recordRemoval(RemovalCause.EXPIRED, 1);
+                removed++;
+            }
+        }
+        return removed;
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public void evict(Object key) {
-        mLruCache.remove(key);
+        Object removed;
+        synchronized (mLruCache) {
+            mExpiry.remove(key);
+            removed = mLruCache.remove(key);
+        }
+        if (removed != null) {
+            mStatsCounter.recordRemoval(RemovalCause.EXPLICIT, 1);
+        }
+    }
+
+    @Override
+    public void evictAll(Collection<?> keys) {
+        synchronized (mLruCache) {
+            for (Object key : keys) {
+                evict(key);
+            }
+        }
     }
 
     @Override
     public void clear() {
-        mLruCache.evictAll();
+        synchronized (mLruCache) {
+            mLruCache.evictAll();
+            mExpiry.clear();
+        }
     }
 
     /**
@@ -128,6 +292,77 @@ public class LruCache implements Cache {
         return userValue;
     }
     
+    /**
+     * Stores a value into a wrapped cache and its expiry into a side map.
+     * Both are updated under the monitor of the wrapped cache so that
+     * a lookup never sees a value with an expiry of another value.
+     */
+    @SuppressWarnings("unchecked")
+    private void store(Object key, Object value, long timeToLive, long now) {
+        Object storeValue = toStoreValue(value);
+        Object wrapped = ExpiringValue.wrap(storeValue, timeToLive, mTimeToIdle, now);
+        synchronized (mLruCache) {
+            mLruCache.put(key, storeValue);
+            if (wrapped instanceof ExpiringValue) {
+                mExpiry.put(key, (ExpiringValue) wrapped);
+            } else {
+                mExpiry.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Looks up a store value, removing it if it has expired.
+     */
+    /**
+     * Looks a key up without recording a hit or a miss.
+     */
+    private ValueWrapper peek(Object key) {
+        Object value = lookup(key, System.currentTimeMillis());
+        return value == null ? null : new SimpleValueWrapper(fromStoreValue(value));
+    }
+
+    private Object lookup(Object key, long now) {
+        Object value;
+        ExpiringValue expiring;
+        synchronized (mLruCache) {
+            value = mLruCache.get(key);
+            expiring = mExpiry.get(key);
+        }
+        if (expiring == null) {
+            return value;
+        }
+        if (value == null || expiring.getValue() != value) {
+            // entry was evicted by the wrapped cache on its own
+            mExpiry.remove(key, expiring);
+            return value;
+        }
+        if (expiring.isExpired(now)) {
+            mExpiry.remove(key, expiring);
+            if (remove(key, value)) {
+                mStatsCounter.recordRemoval(RemovalCause.EXPIRED, 1);
+            }
+            return null;
+        }
+        expiring.touch(now);
+        return value;
+    }
+
+    /**
+     * Removes an entry only if it's still mapped to a given value.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean remove(Object key, Object value) {
+        // native cache guards its state with its own monitor
+        synchronized (mLruCache) {
+            if (mLruCache.get(key) != value) {
+                return false;
+            }
+            mLruCache.remove(key);
+            return true;
+        }
+    }
+
     @SuppressWarnings("serial")
     private static class NullHolder implements Serializable {
     }
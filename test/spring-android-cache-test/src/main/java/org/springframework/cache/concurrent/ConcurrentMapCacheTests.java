@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.concurrent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.BulkCacheUtils;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.ExpirySweeper;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for ConcurrentMapCache.
+ *
+ * @author Janne Valkealahti
+ */
+public class ConcurrentMapCacheTests extends AndroidTestCase {
+
+    ConcurrentMapCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = new ConcurrentMapCache("testCache");
+    }
+
+    public void testNoExpiryByDefault() {
+        mCache.put("key", "value");
+        assertEquals("value", mCache.getNativeCache().get("key"));
+        assertEquals("value", mCache.get("key").get());
+    }
+
+    public void testStats() {
+        mCache.put("key", "value");
+        mCache.get("key");
+        mCache.get("nonexist");
+        mCache.get("loaded", new Callable<String>() {
+            public String call() {
+                return "value";
+            }
+        });
+        mCache.evict("key");
+        mCache.evict("nonexist");
+        CacheStats stats = mCache.getStats();
+        assertEquals(1, stats.getHitCount());
+        // a load records its miss once
+        assertEquals(2, stats.getMissCount());
+        assertEquals(2, stats.getPutCount());
+        assertEquals(1, stats.getLoadSuccessCount());
+        assertEquals(1, stats.getExplicitRemovalCount());
+    }
+
+    public void testBulkOperations() {
+        Map<String, String> entries = new HashMap<String, String>();
+        entries.put("key1", "value1");
+        entries.put("key2", null);
+        mCache.putAll(entries);
+        Map<Object, Object> values = mCache.getAll(Arrays.asList("key1", "key2", "nonexist"));
+        assertEquals(2, values.size());
+        assertEquals("value1", values.get("key1"));
+        assertTrue(values.containsKey("key2"));
+        assertNull(values.get("key2"));
+        assertEquals(2, mCache.getStats().getHitCount());
+        assertEquals(1, mCache.getStats().getMissCount());
+        mCache.evictAll(Arrays.asList("key1", "nonexist"));
+        assertNull(mCache.get("key1"));
+        assertNotNull(mCache.get("key2"));
+    }
+
+    public void testBulkFallbackForPlainCache() {
+        Cache plain = new Cache() {
+            private final Map<Object, Object> store = new HashMap<Object, Object>();
+            public String getName() {
+                return "plain";
+            }
+            public Object getNativeCache() {
+                return store;
+            }
+            public ValueWrapper get(Object key) {
+                return store.containsKey(key) ? new SimpleValueWrapper(store.get(key)) : null;
+            }
+            public void put(Object key, Object value) {
+                store.put(key, value);
+            }
+            public void evict(Object key) {
+                store.remove(key);
+            }
+            public void clear() {
+                store.clear();
+            }
+        };
+        Map<String, String> entries = new HashMap<String, String>();
+        entries.put("key1", "value1");
+        entries.put("key2", "value2");
+        BulkCacheUtils.putAll(plain, entries);
+        assertEquals(2, BulkCacheUtils.getAll(plain, Arrays.asList("key1", "key2", "key3")).size());
+        BulkCacheUtils.evictAll(plain, Arrays.asList("key1"));
+        assertEquals(1, BulkCacheUtils.getAll(plain, Arrays.asList("key1", "key2")).size());
+    }
+
+    public void testTimeToLive() throws InterruptedException {
+        mCache.setTimeToLive(50);
+        mCache.put("key1", "value");
+        mCache.put("key2", "value", 10000);
+        mCache.put("key3", null);
+        assertEquals("value", mCache.get("key1").get());
+        assertNotNull(mCache.get("key3"));
+        assertNull(mCache.get("key3").get());
+        Thread.sleep(100);
+        assertNull(mCache.get("key1"));
+        assertNull(mCache.get("key3"));
+        assertFalse(mCache.getNativeCache().containsKey("key1"));
+        assertEquals("value", mCache.get("key2").get());
+    }
+
+    public void testTimeToIdle() throws InterruptedException {
+        mCache.setTimeToIdle(200);
+        mCache.put("key1", "value");
+        mCache.put("key2", "value");
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(100);
+            assertNotNull(mCache.get("key1"));
+        }
+        assertNull(mCache.get("key2"));
+    }
+
+    public void testPurgeExpiredInBatches() throws InterruptedException {
+        for (int i = 0; i < 10; i++) {
+            mCache.put("key" + i, "value", 20);
+        }
+        mCache.put("keep", "value");
+        Thread.sleep(50);
+        assertEquals(4, mCache.purgeExpired(4));
+        assertEquals(7, mCache.getNativeCache().size());
+
+        ExpirySweeper sweeper = new ExpirySweeper(1000, 4);
+        sweeper.addCache(mCache);
+        assertEquals(4, sweeper.sweep());
+        assertEquals(2, sweeper.sweep());
+        assertEquals(0, sweeper.sweep());
+        assertEquals(1, mCache.getNativeCache().size());
+        assertNotNull(mCache.get("keep"));
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.disk.serializer.SimpleCacheKeySerializer;
+import org.springframework.cache.disk.serializer.StringCacheValueSerializer;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for DiskCacheManager.
+ *
+ * @author Janne Valkealahti
+ */
+public class DiskCacheManagerTests extends AndroidTestCase {
+
+    final static String KEY = "file";
+    final static String VALUE = "content001";
+    File mDir;
+    FileTemplate<String, String> mTemplate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = getCacheDir();
+        mDir.mkdir();
+        assertNotNull(mDir);
+        TestUtils.removeAllFiles(mDir);
+        mTemplate = new FileTemplate<String, String>();
+        mTemplate.setCacheValueSerializer(new StringCacheValueSerializer());
+        mTemplate.setCacheKeySerializer(new SimpleCacheKeySerializer());
+    }
+
+    public void testCachesCreatedLazily() {
+        DiskCacheManager manager = new DiskCacheManager(mDir, mTemplate, 1000);
+        assertTrue(manager.getCacheNames().isEmpty());
+        Cache cache = manager.getCache("cache1");
+        assertNotNull(cache);
+        assertSame(cache, manager.getCache("cache1"));
+        assertEquals(1, manager.getCacheNames().size());
+        cache.put(KEY, VALUE);
+        assertEquals(VALUE, cache.get(KEY).get());
+        assertTrue(new File(mDir, "cache1").isDirectory());
+    }
+
+    public void testStaticCacheNames() {
+        DiskCacheManager manager = new DiskCacheManager(mDir, mTemplate, 1000);
+        manager.setCacheNames("cache1", "cache2");
+        assertNotNull(manager.getCache("cache1"));
+        assertNotNull(manager.getCache("cache2"));
+        assertNull(manager.getCache("cache3"));
+    }
+
+    public void testQuotaSharedBetweenCaches() {
+        DiskCacheManager manager = new DiskCacheManager(mDir, mTemplate, 100);
+        Cache cache1 = manager.getCache("cache1");
+        Cache cache2 = manager.getCache("cache2");
+        // 10 bytes each
+        for(int i = 0; i<8; i++) {
+            cache1.put(KEY+i, VALUE);
+        }
+        for(int i = 0; i<4; i++) {
+            cache2.put(KEY+i, VALUE);
+        }
+        assertEquals(100, manager.getQuota().getUsedBytes());
+        // entries evicted from larger cache
+        assertNull(cache1.get(KEY+0));
+        assertNull(cache1.get(KEY+1));
+        assertNotNull(cache1.get(KEY+2));
+        for(int i = 0; i<4; i++) {
+            assertNotNull(cache2.get(KEY+i));
+        }
+        // files of evicted entries are deleted
+        File dir1 = new File(mDir, "cache1");
+        assertFalse(new File(dir1, KEY+0).exists());
+        assertFalse(new File(dir1, KEY+1).exists());
+        assertTrue(new File(dir1, KEY+2).exists());
+
+        manager.setQuota(50);
+        assertTrue(manager.getQuota().getUsedBytes() <= 50);
+    }
+
+    public void testQuotaRestoredOnReopen() {
+        DiskCacheManager manager = new DiskCacheManager(mDir, mTemplate, 100);
+        for(int i = 0; i<5; i++) {
+            manager.getCache("cache1").put(KEY+i, VALUE);
+        }
+        manager = new DiskCacheManager(mDir, mTemplate, 30);
+        manager.getCache("cache1");
+        assertEquals(30, manager.getQuota().getUsedBytes());
+    }
+
+    private File getCacheDir() {
+        return new File(getContext().getCacheDir(), "test");
+    }
+
+}
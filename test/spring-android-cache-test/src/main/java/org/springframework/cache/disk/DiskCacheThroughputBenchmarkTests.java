@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.disk.core.StripedLock;
+import org.springframework.cache.disk.serializer.SimpleCacheKeySerializer;
+import org.springframework.cache.disk.serializer.StringCacheValueSerializer;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Multi-threaded throughput benchmark for disk caches. Every run does a
+ * warmup round followed by a measured round of a get/put mix and logs
+ * operations per second for each thread count. Runs with a single lock
+ * stripe are logged as a baseline where all file operations are serialized.
+ * <p>
+ * Benchmark only asserts correctness of cached values because absolute
+ * numbers depend heavily on a device and its storage.
+ *
+ * @author Janne Valkealahti
+ */
+public class DiskCacheThroughputBenchmarkTests extends AndroidTestCase {
+
+    private final static String TAG = DiskCacheThroughputBenchmarkTests.class.getSimpleName();
+    final static String KEY = "file";
+    final static String VALUE = "content";
+    final static int KEYS = 64;
+    final static int OPERATIONS = 400;
+    final static int[] THREADS = new int[] { 1, 2, 4, 8 };
+    File mDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = getCacheDir();
+        mDir.mkdir();
+        assertNotNull(mDir);
+        TestUtils.removeAllFiles(mDir);
+    }
+
+    public void testNoLimitReadMostly() throws Exception {
+        benchmark("NoLimitDiskCache 90/10", 90, false);
+    }
+
+    public void testNoLimitMixed() throws Exception {
+        benchmark("NoLimitDiskCache 50/50", 50, false);
+    }
+
+    public void testSizeLimitReadMostly() throws Exception {
+        benchmark("SizeLimitDiskCache 90/10", 90, true);
+    }
+
+    private void benchmark(String name, int readPercent, boolean sizeLimit) throws Exception {
+        for (int threads : THREADS) {
+            double striped = measure(readPercent, sizeLimit, threads, new StripedLock());
+            double single = measure(readPercent, sizeLimit, threads, new StripedLock(1));
+            Log.i(TAG, name + " threads=" + threads + " striped=" + Math.round(striped) + " ops/s"
+                    + " single=" + Math.round(single) + " ops/s");
+        }
+    }
+
+    private double measure(int readPercent, boolean sizeLimit, int threads, StripedLock locks) throws Exception {
+        TestUtils.removeAllFiles(mDir);
+        FileTemplate<String, String> template = new FileTemplate<String, String>();
+        template.setCacheValueSerializer(new StringCacheValueSerializer());
+        template.setCacheKeySerializer(new SimpleCacheKeySerializer());
+        template.setStripedLock(locks);
+        Cache cache;
+        if (sizeLimit) {
+            cache = new SizeLimitDiskCache<String, String>("benchmarkCache", mDir, template, Long.MAX_VALUE);
+        } else {
+            cache = new NoLimitDiskCache<String, String>("benchmarkCache", mDir, template);
+        }
+        for (int i = 0; i < KEYS; i++) {
+            cache.put(KEY + i, VALUE + i);
+        }
+        // warmup
+        run(cache, readPercent, threads);
+        return run(cache, readPercent, threads);
+    }
+
+    private double run(final Cache cache, final int readPercent, int threads) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger operations = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(t);
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < OPERATIONS; i++) {
+                            int k = random.nextInt(KEYS);
+                            if (random.nextInt(100) < readPercent) {
+                                ValueWrapper wrapper = cache.get(KEY + k);
+                                if (wrapper == null || !(VALUE + k).equals(wrapper.get())) {
+                                    throw new IllegalStateException("Unexpected value for " + KEY + k);
+                                }
+                            } else {
+                                cache.put(KEY + k, VALUE + k);
+                            }
+                            operations.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - started;
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(threads * OPERATIONS, operations.get());
+        return operations.get() * 1e9 / elapsed;
+    }
+
+    private File getCacheDir() {
+        return new File(getContext().getCacheDir(), "test");
+    }
+
+}
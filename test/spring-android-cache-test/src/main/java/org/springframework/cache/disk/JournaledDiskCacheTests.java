@@ -0,0 +1,380 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.springframework.cache.disk.core.DiskJournal;
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.disk.serializer.SimpleCacheKeySerializer;
+import org.springframework.cache.disk.serializer.StringCacheValueSerializer;
+import org.springframework.cache.support.CacheStats;
+import org.springframework.util.FileCopyUtils;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for JournaledDiskCache.
+ *
+ * @author Janne Valkealahti
+ */
+public class JournaledDiskCacheTests extends AndroidTestCase {
+
+    final static String KEY = "file";
+    final static String VALUE = "content";
+    File mDir;
+    JournaledDiskCache<String, String> mCache;
+    FileTemplate<String, String> mTemplate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = getCacheDir();
+        mDir.mkdir();
+        assertNotNull(mDir);
+        TestUtils.removeAllFiles(mDir);
+        mTemplate = new FileTemplate<String, String>();
+        mTemplate.setCacheValueSerializer(new StringCacheValueSerializer());
+        mTemplate.setCacheKeySerializer(new SimpleCacheKeySerializer());
+    }
+
+    public void testWriteAndRead() {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        mCache.put(KEY, VALUE);
+        assertEquals(VALUE, (String)mCache.get(KEY).get());
+        assertNull(mCache.get(KEY + "nonexist"));
+        assertTrue(new File(mDir, DiskJournal.JOURNAL_FILE).isFile());
+    }
+
+    public void testLimit() {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        for(int i = 0; i<10; i++) {
+            mCache.put(KEY+i, VALUE+i);
+        }
+        assertEquals(5, mCache.size());
+        // journal file is counted in
+        assertEquals(6, mTemplate.countFilesInDirectory(mDir));
+        for(int i = 5; i<10; i++) {
+            assertEquals(VALUE+i, (String)mCache.get(KEY+i).get());
+        }
+    }
+
+    public void testStats() {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        for(int i = 0; i<10; i++) {
+            mCache.put(KEY+i, VALUE);
+        }
+        mCache.get(KEY+9);
+        mCache.get(KEY+0);
+        mCache.evict(KEY+9);
+        CacheStats stats = mCache.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(10, stats.getPutCount());
+        assertEquals(5, stats.getEvictionCount());
+        assertEquals(1, stats.getExplicitRemovalCount());
+        assertEquals(4 * VALUE.length(), stats.getByteSize());
+        assertTrue(stats.getSerializeTime() > 0);
+    }
+
+    public void testReplayKeepsAccessOrder() {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        for(int i = 0; i<5; i++) {
+            mCache.put(KEY+i, VALUE+i);
+        }
+        // touch 0 and 1 so that 2,3 and 4 are eldest
+        mCache.get(KEY+0);
+        mCache.get(KEY+1);
+        mCache.flush();
+
+        // reopen and insert 3 new values
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        assertEquals(5, mCache.size());
+        for(int i = 5; i<8; i++) {
+            mCache.put(KEY+i, VALUE+i);
+        }
+        assertNotNull(mCache.get(KEY+0));
+        assertNotNull(mCache.get(KEY+1));
+        assertNull(mCache.get(KEY+2));
+        assertNull(mCache.get(KEY+3));
+        assertNull(mCache.get(KEY+4));
+        assertNotNull(mCache.get(KEY+7));
+    }
+
+    public void testReplayNamesWithSeparators() {
+        String[] keys = new String[] { "a b", "line\nbreak", "100%", "%20" };
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        for(String key : keys) {
+            mCache.put(key, VALUE);
+        }
+        mCache.evict("%20");
+
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        assertEquals(3, mCache.size());
+        for(int i = 0; i<3; i++) {
+            assertEquals(VALUE, (String)mCache.get(keys[i]).get());
+        }
+        assertNull(mCache.get("%20"));
+        assertNull(mCache.get("a%20b"));
+    }
+
+    public void testEvictAndClear() {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        mCache.put(KEY+0, VALUE);
+        mCache.put(KEY+1, VALUE);
+        mCache.evict(KEY+0);
+        assertNull(mCache.get(KEY+0));
+        assertFalse(new File(mDir, KEY+0).exists());
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        assertEquals(1, mCache.size());
+        mCache.clear();
+        assertEquals(0, mCache.size());
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        assertEquals(0, mCache.size());
+    }
+
+    public void testOpenAsync() throws Exception {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        mCache.put(KEY, VALUE);
+        mCache.flush();
+        File tmp = new File(mDir, FileTemplate.TEMP_FILE_PREFIX + KEY + "123" + FileTemplate.TEMP_FILE_SUFFIX);
+        FileCopyUtils.copy(VALUE.getBytes(), tmp);
+        assertTrue(tmp.setLastModified(System.currentTimeMillis() - FileTemplate.STALE_TEMP_FILE_AGE - 1000));
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5, new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        assertFalse(mCache.isReady());
+        assertFalse(mCache.getReadyFuture().isDone());
+        // directory is swept by the open executor
+        assertTrue(tmp.exists());
+        // read falls through to a file before index is ready
+        assertEquals(VALUE, (String)mCache.get(KEY).get());
+        assertNull(mCache.get(KEY + "nonexist"));
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+        assertTrue(mCache.isReady());
+        mCache.getReadyFuture().get();
+        assertFalse(tmp.exists());
+        assertEquals(1, mCache.size());
+        assertEquals(VALUE, (String)mCache.get(KEY).get());
+    }
+
+    public void testOpenAsyncWaitsForExpiries() throws Exception {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        mCache.put(KEY, VALUE, 1);
+        mCache.flush();
+        Thread.sleep(10);
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5, new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        final List<Object> results = new ArrayList<Object>();
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                results.add(mCache.get(KEY));
+            }
+        };
+        reader.start();
+        // expired entry is not served from a file before index is ready
+        reader.join(200);
+        assertTrue(reader.isAlive());
+        tasks.get(0).run();
+        reader.join();
+        assertEquals(1, results.size());
+        assertNull(results.get(0));
+    }
+
+    public void testBuildIndexWithoutJournal() throws IOException {
+        for(int i = 0; i<10; i++) {
+            createDummyFile("dummy"+i);
+        }
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        assertEquals(5, mCache.size());
+        assertEquals(6, mTemplate.countFilesInDirectory(mDir));
+    }
+
+    public void testCompaction() {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        mCache.setCompactionThreshold(10);
+        File journal = new File(mDir, DiskJournal.JOURNAL_FILE);
+        for(int i = 0; i<100; i++) {
+            mCache.put(KEY+(i%5), VALUE+i);
+        }
+        // header and 5 put records with less than
+        // threshold of redundant records on top
+        assertTrue(journal.length() < 16 * 20);
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 5);
+        assertEquals(5, mCache.size());
+        for(int i = 95; i<100; i++) {
+            assertEquals(VALUE+i, (String)mCache.get(KEY+(i%5)).get());
+        }
+    }
+
+    public void testConcurrentWritesWithCompaction() throws InterruptedException {
+        final List<Thread> compactions = new ArrayList<Thread>();
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1000, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command);
+                synchronized (compactions) {
+                    compactions.add(thread);
+                }
+                thread.start();
+            }
+        });
+        mCache.setCompactionThreshold(20);
+        Thread[] writers = new Thread[4];
+        for(int t = 0; t<writers.length; t++) {
+            final String prefix = KEY + t + "-";
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for(int i = 0; i<50; i++) {
+                        mCache.put(prefix+i, VALUE+i);
+                        mCache.put(prefix+i, VALUE+i);
+                        if (i % 2 == 0) {
+                            mCache.evict(prefix+i);
+                        }
+                    }
+                }
+            };
+            writers[t].start();
+        }
+        for(Thread writer : writers) {
+            writer.join();
+        }
+        synchronized (compactions) {
+            assertFalse(compactions.isEmpty());
+            for(Thread compaction : compactions) {
+                compaction.join();
+            }
+        }
+        mCache.flush();
+
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1000);
+        assertEquals(100, mCache.size());
+        for(int t = 0; t<writers.length; t++) {
+            for(int i = 0; i<50; i++) {
+                if (i % 2 == 0) {
+                    assertNull(mCache.get(KEY + t + "-" + i));
+                } else {
+                    assertEquals(VALUE+i, (String)mCache.get(KEY + t + "-" + i).get());
+                }
+            }
+        }
+    }
+
+    public void testTimeToLiveSurvivesRestart() throws InterruptedException {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 10);
+        mCache.put(KEY+0, VALUE, 100);
+        mCache.put(KEY+1, VALUE);
+        mCache.put(KEY+2, VALUE, 100);
+        // replacing an entry without ttl clears its expiry
+        mCache.put(KEY+2, VALUE);
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 10);
+        assertEquals(VALUE, (String)mCache.get(KEY+0).get());
+        Thread.sleep(150);
+        assertNull(mCache.get(KEY+0));
+        assertFalse(new File(mDir, KEY+0).exists());
+        assertNotNull(mCache.get(KEY+1));
+        assertNotNull(mCache.get(KEY+2));
+        assertEquals(2, mCache.size());
+        assertEquals(1, mCache.getStats().getExpirationCount());
+    }
+
+    public void testPurgeExpired() throws InterruptedException {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 10);
+        mCache.setTimeToLive(50);
+        for(int i = 0; i<5; i++) {
+            mCache.put(KEY+i, VALUE);
+        }
+        mCache.put(KEY+5, VALUE, 10000);
+        Thread.sleep(100);
+        assertEquals(3, mCache.purgeExpired(3));
+        assertEquals(2, mCache.purgeExpired(3));
+        assertEquals(0, mCache.purgeExpired(3));
+        assertEquals(1, mCache.size());
+        // journal and its expiry marker
+        assertTrue(new File(mDir, DiskJournal.JOURNAL_FILE_EXPIRY).isFile());
+        assertEquals(1, mTemplate.countFilesInDirectory(mDir) - 2);
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 10);
+        assertEquals(1, mCache.size());
+    }
+
+    public void testTimeToIdle() throws InterruptedException {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 10);
+        mCache.setTimeToIdle(200);
+        mCache.put(KEY+0, VALUE);
+        mCache.put(KEY+1, VALUE);
+        for(int i = 0; i<4; i++) {
+            Thread.sleep(100);
+            assertNotNull(mCache.get(KEY+0));
+        }
+        assertNull(mCache.get(KEY+1));
+    }
+
+    public void testClearDeletesFilesInBackground() {
+        mCache = new JournaledDiskCache<String, String>("testDiskCache", mDir, mTemplate, 10, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        for(int i = 0; i<5; i++) {
+            mCache.put(KEY+i, VALUE);
+        }
+        mCache.clear();
+        assertEquals(0, mCache.size());
+        assertEquals(0, mCache.getBytes());
+        // only journal is left
+        assertEquals(1, mTemplate.countFilesInDirectory(mDir));
+        mCache.put(KEY+0, VALUE);
+        assertEquals(VALUE, (String)mCache.get(KEY+0).get());
+    }
+
+    private void createDummyFile(String name) throws IOException {
+        FileCopyUtils.copy(name.getBytes(), new File(mDir, name));
+    }
+
+    private File getCacheDir() {
+        return new File(getContext().getCacheDir(), "test");
+    }
+
+}
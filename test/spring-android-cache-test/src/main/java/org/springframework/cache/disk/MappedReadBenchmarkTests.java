@@ -0,0 +1,156 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.disk.serializer.ByteBufferCacheValueSerializer;
+import org.springframework.cache.disk.serializer.SimpleCacheKeySerializer;
+import org.springframework.cache.disk.serializer.StreamingCacheValueSerializer;
+import org.springframework.cache.disk.serializer.StringCacheValueSerializer;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Benchmark comparing cache hit latency of stream and mapped reads
+ * across entry sizes. Values are decoded by checksumming every byte
+ * so that the numbers reflect cost of getting bytes to a decoder.
+ *
+ * @author Janne Valkealahti
+ */
+public class MappedReadBenchmarkTests extends AndroidTestCase {
+
+    private final static String TAG = MappedReadBenchmarkTests.class.getSimpleName();
+    final static String KEY = "file";
+    final static int[] SIZES = new int[] { 1024, 16 * 1024, 256 * 1024, 1024 * 1024 };
+    final static int ROUNDS = 50;
+    File mDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = getCacheDir();
+        mDir.mkdir();
+        assertNotNull(mDir);
+        TestUtils.removeAllFiles(mDir);
+    }
+
+    public void testMappedReadMatchesStreamRead() {
+        FileTemplate<String, String> template = new FileTemplate<String, String>();
+        template.setCacheValueSerializer(new StringCacheValueSerializer());
+        template.setCacheKeySerializer(new SimpleCacheKeySerializer());
+        Cache cache = new NoLimitDiskCache<String, String>("testDiskCache", mDir, template);
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            buf.append("content€").append(i);
+        }
+        String value = buf.toString();
+        cache.put(KEY, value);
+        assertEquals(value, cache.get(KEY).get());
+        template.setMappedReadThreshold(0);
+        assertEquals(value, cache.get(KEY).get());
+    }
+
+    public void testHitLatency() {
+        FileTemplate<String, Object> template = new FileTemplate<String, Object>();
+        template.setCacheValueSerializer(new ChecksumSerializer());
+        template.setCacheKeySerializer(new SimpleCacheKeySerializer());
+        Cache cache = new NoLimitDiskCache<String, Object>("benchmarkCache", mDir, template);
+        for (int size : SIZES) {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = (byte) i;
+            }
+            cache.put(KEY + size, bytes);
+            Long expected = checksum(ByteBuffer.wrap(bytes));
+
+            template.setMappedReadThreshold(-1);
+            long stream = measure(cache, KEY + size, expected);
+            template.setMappedReadThreshold(0);
+            long mapped = measure(cache, KEY + size, expected);
+            Log.i(TAG, "size=" + size + " stream=" + stream + " us/hit mapped=" + mapped + " us/hit");
+        }
+    }
+
+    private long measure(Cache cache, String key, Long expected) {
+        // warmup
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(expected, cache.get(key).get());
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(expected, cache.get(key).get());
+        }
+        return (System.nanoTime() - started) / ROUNDS / 1000;
+    }
+
+    private static Long checksum(ByteBuffer buffer) {
+        long sum = 0;
+        while (buffer.hasRemaining()) {
+            sum += buffer.get();
+        }
+        return sum;
+    }
+
+    private File getCacheDir() {
+        return new File(getContext().getCacheDir(), "test");
+    }
+
+    /**
+     * Serializer writing raw bytes and reading them back as a checksum.
+     */
+    private static class ChecksumSerializer implements StreamingCacheValueSerializer<Object>,
+            ByteBufferCacheValueSerializer<Object> {
+
+        public byte[] serialize(Object object) {
+            return (byte[]) object;
+        }
+
+        public Object deserialize(byte[] bytes) {
+            return checksum(ByteBuffer.wrap(bytes));
+        }
+
+        public void serialize(Object object, OutputStream out) throws IOException {
+            out.write((byte[]) object);
+        }
+
+        public Object deserialize(InputStream in) throws IOException {
+            byte[] chunk = new byte[8192];
+            long sum = 0;
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    sum += chunk[i];
+                }
+            }
+            return sum;
+        }
+
+        public Object deserialize(ByteBuffer buffer) {
+            return checksum(buffer);
+        }
+
+    }
+
+}
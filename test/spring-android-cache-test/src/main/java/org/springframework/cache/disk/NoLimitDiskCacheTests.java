@@ -17,11 +17,18 @@
 package org.springframework.cache.disk;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.concurrent.Callable;
 
 import org.springframework.cache.Cache;
+import org.springframework.cache.LoadingCache;
+import org.springframework.cache.disk.core.EntryHeader;
 import org.springframework.cache.disk.core.FileTemplate;
 import org.springframework.cache.disk.serializer.SimpleCacheKeySerializer;
 import org.springframework.cache.disk.serializer.StringCacheValueSerializer;
+import org.springframework.util.FileCopyUtils;
 
 import android.test.AndroidTestCase;
 
@@ -61,6 +68,82 @@ public class NoLimitDiskCacheTests extends AndroidTestCase {
         }
     }
 
+    public void testStaleTempFilesSwept() throws IOException {
+        File tmp = new File(mDir, FileTemplate.TEMP_FILE_PREFIX + KEY + "123" + FileTemplate.TEMP_FILE_SUFFIX);
+        FileCopyUtils.copy(VALUE.getBytes(), tmp);
+        assertTrue(tmp.setLastModified(System.currentTimeMillis() - FileTemplate.STALE_TEMP_FILE_AGE - 1000));
+        // temporary file of a write which may still be in progress
+        File fresh = new File(mDir, FileTemplate.TEMP_FILE_PREFIX + KEY + "456" + FileTemplate.TEMP_FILE_SUFFIX);
+        FileCopyUtils.copy(VALUE.getBytes(), fresh);
+        mCache = new NoLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        assertFalse(tmp.exists());
+        assertTrue(fresh.exists());
+        assertTrue(fresh.delete());
+        mCache.put(KEY, VALUE);
+        // no temporary files left behind from atomic write
+        assertEquals(1, mTemplate.countFilesInDirectory(mDir));
+        assertEquals(VALUE, (String)mCache.get(KEY).get());
+    }
+
+    public void testTempFileNamesReserved() {
+        mCache = new NoLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        // looks like a temporary file but isn't one created by a write
+        String key = FileTemplate.TEMP_FILE_PREFIX + KEY + FileTemplate.TEMP_FILE_SUFFIX;
+        mCache.put(key, VALUE);
+        assertTrue(new File(mDir, key).setLastModified(System.currentTimeMillis() - FileTemplate.STALE_TEMP_FILE_AGE - 1000));
+        mCache = new NoLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        assertEquals(VALUE, (String)mCache.get(key).get());
+        try {
+            mCache.put(FileTemplate.TEMP_FILE_PREFIX + KEY + "123" + FileTemplate.TEMP_FILE_SUFFIX, VALUE);
+            fail("Writing a reserved temporary file name should fail");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testEntryHeaders() throws IOException {
+        mTemplate.setEntryHeaders(true);
+        NoLimitDiskCache<String, String> cache = new NoLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        cache.put(KEY, VALUE);
+        assertEquals(VALUE, (String)cache.get(KEY).get());
+        mTemplate.writeFile(KEY+1, VALUE, Collections.singletonMap(EntryHeader.ETAG, "\"1\""), mDir, null);
+        EntryHeader header = cache.getEntryHeader(KEY+1);
+        assertEquals("\"1\"", header.getMetadata(EntryHeader.ETAG));
+        assertEquals(VALUE.length(), header.getValueLength());
+
+        // flip a byte of a value
+        RandomAccessFile raf = new RandomAccessFile(new File(mDir, KEY), "rw");
+        raf.seek(raf.length() - 1);
+        raf.write('x');
+        raf.close();
+        assertNull(cache.get(KEY));
+        assertFalse(new File(mDir, KEY).exists());
+
+        // truncate a file
+        raf = new RandomAccessFile(new File(mDir, KEY+1), "rw");
+        raf.setLength(raf.length() - 1);
+        raf.close();
+        assertNull(cache.get(KEY+1));
+        assertFalse(new File(mDir, KEY+1).exists());
+        assertEquals(2, mTemplate.getCorruptCount());
+
+        // files without a header
+        FileCopyUtils.copy(VALUE.getBytes(), new File(mDir, KEY+2));
+        assertNull(cache.get(KEY+2));
+        assertNull(cache.getEntryHeader(KEY+2));
+    }
+
+    public void testLoadOnMiss() {
+        LoadingCache cache = new NoLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        Callable<String> loader = new Callable<String>() {
+            public String call() {
+                return VALUE;
+            }
+        };
+        assertEquals(VALUE, cache.get(KEY, loader));
+        assertTrue(new File(mDir, KEY).exists());
+        assertEquals(VALUE, (String)cache.get(KEY).get());
+    }
+
     private File getCacheDir() {
         return new File(getContext().getCacheDir(), "test");
     }
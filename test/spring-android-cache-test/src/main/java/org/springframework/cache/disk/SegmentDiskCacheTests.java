@@ -0,0 +1,199 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.disk.core.SegmentStore;
+import org.springframework.cache.disk.serializer.SimpleCacheKeySerializer;
+import org.springframework.cache.disk.serializer.StringCacheValueSerializer;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for SegmentDiskCache.
+ *
+ * @author Janne Valkealahti
+ */
+public class SegmentDiskCacheTests extends AndroidTestCase {
+
+    final static String KEY = "file";
+    final static String VALUE = "content";
+    final static Executor INLINE = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    File mDir;
+    SegmentDiskCache<String, String> mCache;
+    FileTemplate<String, String> mTemplate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = getCacheDir();
+        mDir.mkdir();
+        assertNotNull(mDir);
+        TestUtils.removeAllFiles(mDir);
+        mTemplate = new FileTemplate<String, String>();
+        mTemplate.setCacheValueSerializer(new StringCacheValueSerializer());
+        mTemplate.setCacheKeySerializer(new SimpleCacheKeySerializer());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mCache != null) {
+            mCache.close();
+        }
+        super.tearDown();
+    }
+
+    public void testWriteAndReadFewFiles() {
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        for(int i = 0; i<1000; i++) {
+            mCache.put(KEY+i, VALUE+i);
+        }
+        assertEquals(1, mTemplate.countFilesInDirectory(mDir));
+        assertEquals(1000, mCache.size());
+        for(int i = 0; i<1000; i++) {
+            assertEquals(VALUE+i, (String)mCache.get(KEY+i).get());
+        }
+        assertNull(mCache.get(KEY+"nonexist"));
+    }
+
+    public void testReopenRestoresIndex() {
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1024, Long.MAX_VALUE, INLINE);
+        for(int i = 0; i<100; i++) {
+            mCache.put(KEY+i, VALUE+i);
+        }
+        mCache.put(KEY+1, VALUE+"new");
+        mCache.evict(KEY+2);
+        mCache.close();
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1024, Long.MAX_VALUE, INLINE);
+        assertEquals(99, mCache.size());
+        assertEquals(VALUE+"new", (String)mCache.get(KEY+1).get());
+        assertNull(mCache.get(KEY+2));
+        assertEquals(VALUE+3, (String)mCache.get(KEY+3).get());
+    }
+
+    public void testCompactionReclaimsDeadSpace() {
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1024, Long.MAX_VALUE, INLINE);
+        SegmentStore store = (SegmentStore) mCache.getNativeCache();
+        for(int j = 0; j<20; j++) {
+            for(int i = 0; i<10; i++) {
+                mCache.put(KEY+i, VALUE+j);
+            }
+        }
+        assertTrue(store.getTotalBytes() < 4 * store.getLiveBytes());
+        mCache.evict(KEY+0);
+        mCache.close();
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1024, Long.MAX_VALUE, INLINE);
+        assertEquals(9, mCache.size());
+        assertNull(mCache.get(KEY+0));
+        for(int i = 1; i<10; i++) {
+            assertEquals(VALUE+19, (String)mCache.get(KEY+i).get());
+        }
+    }
+
+    public void testTornTailIsTruncated() throws IOException {
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        mCache.put(KEY+1, VALUE+1);
+        mCache.put(KEY+2, VALUE+2);
+        mCache.close();
+        File segment = mDir.listFiles()[0];
+        long length = segment.length();
+        FileOutputStream out = new FileOutputStream(segment, true);
+        out.write(new byte[] { 0, 0, 0, 4, 0, 0 });
+        out.close();
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        assertEquals(length, segment.length());
+        assertEquals(VALUE+2, (String)mCache.get(KEY+2).get());
+        mCache.put(KEY+3, VALUE+3);
+        assertEquals(VALUE+3, (String)mCache.get(KEY+3).get());
+    }
+
+    public void testSizeLimitDropsOldestSegments() {
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1024, 4096, INLINE);
+        for(int i = 0; i<500; i++) {
+            mCache.put(KEY+i, VALUE+i);
+        }
+        SegmentStore store = (SegmentStore) mCache.getNativeCache();
+        assertTrue(store.getTotalBytes() <= 4096);
+        assertNull(mCache.get(KEY+0));
+        assertEquals(VALUE+499, (String)mCache.get(KEY+499).get());
+        assertEquals(500 - mCache.size(), mCache.getStats().getEvictionCount());
+    }
+
+    public void testSizeLimitCarriesReadEntries() {
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1024, 4096, INLINE);
+        for(int i = 0; i<500; i++) {
+            mCache.put(KEY+i, VALUE+i);
+            assertEquals(VALUE+0, (String)mCache.get(KEY+0).get());
+        }
+        SegmentStore store = (SegmentStore) mCache.getNativeCache();
+        assertTrue(store.getTotalBytes() <= 4096);
+        assertNull(mCache.get(KEY+1));
+        assertEquals(500 - mCache.size(), mCache.getStats().getEvictionCount());
+        mCache.close();
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate, 1024, 4096, INLINE);
+        assertEquals(VALUE+0, (String)mCache.get(KEY+0).get());
+    }
+
+    public void testBulkOperations() {
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        Map<String, String> entries = new HashMap<String, String>();
+        List<String> keys = new ArrayList<String>();
+        for(int i = 0; i<100; i++) {
+            entries.put(KEY+i, VALUE+i);
+            keys.add(KEY+i);
+        }
+        mCache.putAll(entries);
+        assertEquals(100, mCache.size());
+        keys.add(KEY+"nonexist");
+        Map<Object, Object> values = mCache.getAll(keys);
+        assertEquals(100, values.size());
+        assertEquals(VALUE+42, values.get(KEY+42));
+        assertFalse(values.containsKey(KEY+"nonexist"));
+        mCache.evictAll(keys.subList(0, 50));
+        assertEquals(50, mCache.size());
+        assertEquals(50, mCache.getAll(keys).size());
+        assertNull(mCache.get(KEY+0));
+    }
+
+    public void testClear() {
+        mCache = new SegmentDiskCache<String, String>("testDiskCache", mDir, mTemplate);
+        mCache.put(KEY, VALUE);
+        mCache.clear();
+        assertEquals(0, mCache.size());
+        assertNull(mCache.get(KEY));
+        mCache.put(KEY, VALUE);
+        assertEquals(VALUE, (String)mCache.get(KEY).get());
+    }
+
+    private File getCacheDir() {
+        return new File(getContext().getCacheDir(), "test");
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk;
+
+import java.io.File;
+
+import org.springframework.cache.disk.core.FileTemplate;
+import org.springframework.cache.disk.serializer.SimpleCacheKeySerializer;
+import org.springframework.cache.disk.serializer.StringCacheValueSerializer;
+import org.springframework.cache.eviction.LfuEvictionPolicy;
+import org.springframework.cache.eviction.TinyLfuEvictionPolicy;
+import org.springframework.cache.support.CacheStats;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for SizeLimitDiskCache.
+ *
+ * @author Janne Valkealahti
+ */
+public class SizeLimitDiskCacheTests extends AndroidTestCase {
+
+    final static String KEY = "file";
+    File mDir;
+    SizeLimitDiskCache<String, String> mCache;
+    FileTemplate<String, String> mTemplate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = getCacheDir();
+        mDir.mkdir();
+        assertNotNull(mDir);
+        TestUtils.removeAllFiles(mDir);
+        mTemplate = new FileTemplate<String, String>();
+        mTemplate.setCacheValueSerializer(new StringCacheValueSerializer());
+        mTemplate.setCacheKeySerializer(new SimpleCacheKeySerializer());
+    }
+
+    public void testSizeLimit() {
+        mCache = new SizeLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate, 100);
+        // 10 bytes each
+        for(int i = 0; i<20; i++) {
+            mCache.put(KEY+i, value(10, i));
+        }
+        assertEquals(100, mCache.getWeight());
+        assertEquals(10, mCache.size());
+
+        // one big entry pushes out many small ones
+        mCache.put(KEY+"big", value(60, 0));
+        assertTrue(mCache.getWeight() <= 100);
+        assertEquals(5, mCache.size());
+        assertNotNull(mCache.get(KEY+"big"));
+
+        CacheStats stats = mCache.getStats();
+        assertEquals(16, stats.getEvictionCount());
+        assertEquals(160, stats.getEvictionWeight());
+    }
+
+    public void testSizeRestoredFromJournal() {
+        mCache = new SizeLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate, 100);
+        for(int i = 0; i<5; i++) {
+            mCache.put(KEY+i, value(10, i));
+        }
+        mCache = new SizeLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate, 100);
+        assertEquals(50, mCache.getWeight());
+    }
+
+    public void testHitRatio() {
+        mCache = new SizeLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate, 100);
+        mCache.put(KEY, value(10, 0));
+        mCache.get(KEY);
+        mCache.get(KEY);
+        mCache.get(KEY);
+        mCache.get(KEY+"nonexist");
+        CacheStats stats = mCache.getStats();
+        assertEquals(3, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(0.75, stats.getHitRatio(), 0.001);
+    }
+
+    public void testLfuKeepsFrequentEntries() {
+        mCache = new SizeLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate, 50,
+                new LfuEvictionPolicy<String>());
+        for(int i = 0; i<5; i++) {
+            mCache.put(KEY+i, value(10, i));
+        }
+        for(int i = 0; i<3; i++) {
+            mCache.get(KEY+0);
+        }
+        for(int i = 5; i<10; i++) {
+            mCache.put(KEY+i, value(10, i));
+        }
+        assertNotNull(mCache.get(KEY+0));
+        assertNull(mCache.get(KEY+1));
+    }
+
+    public void testTinyLfuResistsScan() {
+        mCache = new SizeLimitDiskCache<String, String>("testDiskCache", mDir, mTemplate, 100,
+                new TinyLfuEvictionPolicy<String>(16));
+        for(int i = 0; i<10; i++) {
+            mCache.put(KEY+i, value(10, i));
+        }
+        // make existing entries hot
+        for(int j = 0; j<5; j++) {
+            for(int i = 0; i<10; i++) {
+                mCache.get(KEY+i);
+            }
+        }
+        // one-off scan through a lot of new keys
+        for(int i = 100; i<200; i++) {
+            mCache.put(KEY+i, value(10, i));
+        }
+        int hot = 0;
+        for(int i = 0; i<10; i++) {
+            if(mCache.get(KEY+i) != null) {
+                hot++;
+            }
+        }
+        assertTrue("Expected most hot entries to survive a scan, got " + hot, hot >= 8);
+        assertTrue(mCache.getWeight() <= 100);
+    }
+
+    private static String value(int length, int seed) {
+        StringBuilder buf = new StringBuilder();
+        for(int i = 0; i<length; i++) {
+            buf.append((char)('a' + (seed + i) % 26));
+        }
+        return buf.toString();
+    }
+
+    private File getCacheDir() {
+        return new File(getContext().getCacheDir(), "test");
+    }
+
+}
@@ -47,6 +47,9 @@ public class TestUtils {
 
     public static void removeAllFiles(File dir) {
         for(File f : dir.listFiles()) {
+            if(f.isDirectory()) {
+                removeAllFiles(f);
+            }
             f.delete();
         }
     }
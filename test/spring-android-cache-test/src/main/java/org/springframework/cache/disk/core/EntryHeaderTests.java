@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.core;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for EntryHeader and Crc32c.
+ *
+ * @author Janne Valkealahti
+ */
+public class EntryHeaderTests extends AndroidTestCase {
+
+    public void testCrc32cCheckValue() throws Exception {
+        assertEquals(0xe3069283L, Crc32c.compute("123456789".getBytes("US-ASCII")));
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        Crc32c crc = new Crc32c();
+        for (byte b : bytes) {
+            crc.update(b);
+        }
+        assertEquals(Crc32c.compute(bytes), crc.getValue());
+        crc.reset();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        crc.update(buffer);
+        assertEquals(Crc32c.compute(bytes), crc.getValue());
+    }
+
+    public void testRoundTrip() throws Exception {
+        Map<String, String> metadata = new HashMap<String, String>();
+        metadata.put(EntryHeader.ETAG, "\"abc\u00e4\"");
+        metadata.put(EntryHeader.CONTENT_TYPE, "image/png");
+        byte[] value = "value".getBytes("UTF-8");
+        EntryHeader header = EntryHeader.create(value, metadata);
+        byte[] bytes = header.toBytes();
+        assertEquals(header.getHeaderLength(), bytes.length);
+
+        EntryHeader read = EntryHeader.read(new ByteArrayInputStream(bytes));
+        assertNotNull(read);
+        assertEquals(EntryHeader.VERSION, read.getVersion());
+        assertEquals(header.getCreated(), read.getCreated());
+        assertEquals(header.getChecksum(), read.getChecksum());
+        assertEquals(bytes.length + value.length, read.getEntryLength());
+        assertEquals("\"abc\u00e4\"", read.getMetadata(EntryHeader.ETAG));
+        assertEquals("image/png", read.getMetadata(EntryHeader.CONTENT_TYPE));
+        assertTrue(read.matches(value));
+        value[0] ^= 1;
+        assertFalse(read.matches(value));
+    }
+
+    public void testInvalidHeader() throws Exception {
+        assertNull(EntryHeader.read(new ByteArrayInputStream("not a header".getBytes("US-ASCII"))));
+        byte[] bytes = EntryHeader.create(new byte[10], null).toBytes();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertNull(EntryHeader.read(new ByteArrayInputStream(truncated)));
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for StripedLock.
+ *
+ * @author Janne Valkealahti
+ */
+public class StripedLockTests extends AndroidTestCase {
+
+    public void testStripesRoundedToPowerOfTwo() {
+        assertEquals(1, new StripedLock(1).getStripes());
+        assertEquals(16, new StripedLock(10).getStripes());
+        assertEquals(StripedLock.DEFAULT_STRIPES, new StripedLock().getStripes());
+    }
+
+    public void testSameNameSameLock() {
+        StripedLock locks = new StripedLock();
+        assertSame(locks.getLock("file1"), locks.getLock(new String("file1")));
+    }
+
+    public void testSameNameIsSerialized() throws InterruptedException {
+        final StripedLock locks = new StripedLock();
+        locks.writeLock("file1").lock();
+        try {
+            assertFalse(tryLockInOtherThread(locks.writeLock("file1")));
+            assertFalse(tryLockInOtherThread(locks.readLock("file1")));
+        } finally {
+            locks.writeLock("file1").unlock();
+        }
+        assertTrue(tryLockInOtherThread(locks.writeLock("file1")));
+    }
+
+    public void testDifferentNamesInParallel() throws InterruptedException {
+        StripedLock locks = new StripedLock();
+        String other = null;
+        for (int i = 0; i < 100 && other == null; i++) {
+            if (locks.getLock("file" + i) != locks.getLock("file")) {
+                other = "file" + i;
+            }
+        }
+        assertNotNull(other);
+        locks.writeLock("file").lock();
+        try {
+            assertTrue(tryLockInOtherThread(locks.writeLock(other)));
+        } finally {
+            locks.writeLock("file").unlock();
+        }
+    }
+
+    public void testReadersShareLock() throws InterruptedException {
+        StripedLock locks = new StripedLock();
+        locks.readLock("file1").lock();
+        try {
+            assertTrue(tryLockInOtherThread(locks.readLock("file1")));
+        } finally {
+            locks.readLock("file1").unlock();
+        }
+    }
+
+    private static boolean tryLockInOtherThread(final Lock lock) throws InterruptedException {
+        final AtomicBoolean acquired = new AtomicBoolean();
+        final CountDownLatch latch = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    if (lock.tryLock(50, TimeUnit.MILLISECONDS)) {
+                        acquired.set(true);
+                        lock.unlock();
+                    }
+                } catch (InterruptedException e) {
+                }
+                latch.countDown();
+            }
+        }.start();
+        latch.await();
+        return acquired.get();
+    }
+
+}
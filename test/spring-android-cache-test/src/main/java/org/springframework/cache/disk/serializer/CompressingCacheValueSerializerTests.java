@@ -0,0 +1,124 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for CompressingCacheValueSerializer.
+ *
+ * @author Janne Valkealahti
+ */
+public class CompressingCacheValueSerializerTests extends AndroidTestCase {
+
+    public void testCompressibleValue() {
+        CompressingCacheValueSerializer<String> serializer =
+                new CompressingCacheValueSerializer<String>(new StringCacheValueSerializer());
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buf.append("{\"id\":").append(i).append(",\"name\":\"item\"}");
+        }
+        String value = buf.toString();
+        byte[] bytes = serializer.serialize(value);
+        assertEquals(DeflateCompressionCodec.ID, bytes[0]);
+        assertTrue(bytes.length * 5 < value.length());
+        assertEquals(value, serializer.deserialize(bytes));
+    }
+
+    public void testSmallAndIncompressibleValuesStored() {
+        CompressingCacheValueSerializer<String> serializer =
+                new CompressingCacheValueSerializer<String>(new StringCacheValueSerializer());
+        byte[] bytes = serializer.serialize("short");
+        assertEquals(CompressingCacheValueSerializer.STORED, bytes[0]);
+        assertEquals("short", serializer.deserialize(bytes));
+
+        StringBuilder buf = new StringBuilder();
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            buf.append((char) (0x20 + random.nextInt(0x5f)));
+        }
+        // printable ascii still compresses a little, so require a tight ratio
+        serializer.setMaxSampleRatio(0.5f);
+        bytes = serializer.serialize(buf.toString());
+        assertEquals(CompressingCacheValueSerializer.STORED, bytes[0]);
+        assertEquals(buf.length() + 1, bytes.length);
+        assertEquals(buf.toString(), serializer.deserialize(bytes));
+    }
+
+    public void testReadsEntriesOfOtherCodec() {
+        CompressingCacheValueSerializer<String> fast = new CompressingCacheValueSerializer<String>(
+                new StringCacheValueSerializer(), new DeflateCompressionCodec(Deflater.BEST_SPEED));
+        CompressingCacheValueSerializer<String> reader =
+                new CompressingCacheValueSerializer<String>(new StringCacheValueSerializer());
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buf.append("line ").append(i).append('\n');
+        }
+        assertEquals(buf.toString(), reader.deserialize(fast.serialize(buf.toString())));
+
+        byte[] bytes = fast.serialize(buf.toString());
+        bytes[0] = 42;
+        try {
+            reader.deserialize(bytes);
+            fail("Unknown codec should fail");
+        } catch (SerializationException e) {
+        }
+    }
+
+    public void testMinSizeCoversHeader() {
+        CompressingCacheValueSerializer<String> serializer =
+                new CompressingCacheValueSerializer<String>(new StringCacheValueSerializer());
+        serializer.setMinSize(5);
+        try {
+            serializer.setMinSize(4);
+            fail("Minimum size shorter than a header should fail");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testCorruptedLengthRejected() {
+        CompressingCacheValueSerializer<String> serializer =
+                new CompressingCacheValueSerializer<String>(new StringCacheValueSerializer());
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            buf.append("line ").append(i).append('\n');
+        }
+        byte[] bytes = serializer.serialize(buf.toString());
+        assertEquals(DeflateCompressionCodec.ID, bytes[0]);
+
+        // length larger than allowed is not allocated
+        serializer.setMaxLength(buf.length() - 1);
+        try {
+            serializer.deserialize(bytes);
+            fail("Too large length should fail");
+        } catch (SerializationException e) {
+        }
+        serializer.setMaxLength(CompressingCacheValueSerializer.DEFAULT_MAX_LENGTH);
+        assertEquals(buf.toString(), serializer.deserialize(bytes));
+
+        bytes[1] = (byte) 0x7f;
+        try {
+            serializer.deserialize(bytes);
+            fail("Corrupted length should fail");
+        } catch (SerializationException e) {
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Benchmark comparing throughput of key serializers against the
+ * original implementation which looked up a new digest and built
+ * a hex string from substrings for every key.
+ *
+ * @author Janne Valkealahti
+ */
+public class KeySerializerBenchmarkTests extends AndroidTestCase {
+
+    private final static String TAG = KeySerializerBenchmarkTests.class.getSimpleName();
+    final static int ROUNDS = 50000;
+    final static String[] KEYS = new String[256];
+
+    static {
+        for (int i = 0; i < KEYS.length; i++) {
+            KEYS[i] = "http://images.example.com/thumbnails/2012/" + i + "/image.jpg?size=medium";
+        }
+    }
+
+    public void testThroughput() {
+        CacheKeySerializer<String> legacy = new LegacySerializer();
+        CacheKeySerializer<String> sha1 = new SimpleHashCacheKeySerializer();
+        CacheKeySerializer<String> murmur3 = new Murmur3CacheKeySerializer();
+        for (String key : KEYS) {
+            assertEquals(legacy.serialize(key), sha1.serialize(key));
+        }
+        // first round warms up
+        for (int i = 0; i < 2; i++) {
+            long legacyOps = measure(legacy);
+            long sha1Ops = measure(sha1);
+            long murmur3Ops = measure(murmur3);
+            Log.i(TAG, "legacy=" + legacyOps + " ops/s sha1=" + sha1Ops + " ops/s murmur3=" + murmur3Ops + " ops/s");
+        }
+    }
+
+    private static long measure(CacheKeySerializer<String> serializer) {
+        int length = 0;
+        long started = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            length += serializer.serialize(KEYS[i & (KEYS.length - 1)]).length();
+        }
+        long elapsed = Math.max(System.nanoTime() - started, 1);
+        assertTrue(length > 0);
+        return ROUNDS * 1000000000L / elapsed;
+    }
+
+    /**
+     * Copy of the original SimpleHashCacheKeySerializer.
+     */
+    private static class LegacySerializer implements CacheKeySerializer<String> {
+
+        @Override
+        public String serialize(String object) throws SerializationException {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                byte[] digestBytes = digest.digest(object.getBytes("UTF-8"));
+                StringBuilder buf = new StringBuilder();
+                for (int i = 0; i < digestBytes.length; i++) {
+                    buf.append(Integer.toString((digestBytes[i] & 0xff) + 0x100, 16).substring(1));
+                }
+                return buf.toString();
+            } catch (UnsupportedEncodingException e) {
+                throw new SerializationException("Unable to serialize key", e);
+            } catch (NoSuchAlgorithmException e) {
+                throw new SerializationException("Could not find digest instance", e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for Murmur3CacheKeySerializer.
+ *
+ * @author Janne Valkealahti
+ */
+public class Murmur3CacheKeySerializerTests extends AndroidTestCase {
+
+    public void testKnownHashes() {
+        Murmur3CacheKeySerializer serializer = new Murmur3CacheKeySerializer();
+        // reference values of murmur3 x64 128 over utf-16le bytes
+        assertEquals("9fb8aa583a6a8526e48ff83bce430a66", serializer.serialize("http://example.com/image.png"));
+        assertEquals("407e326dad7960faa2075d5b76f17479", serializer.serialize("0123456789abcdefXYZ"));
+    }
+
+    public void testShortKeysAreNotHashed() {
+        Murmur3CacheKeySerializer serializer = new Murmur3CacheKeySerializer();
+        assertEquals("", serializer.serialize(""));
+        assertEquals("0061", serializer.serialize("a"));
+        assertEquals("00660066006f20ac", serializer.serialize("ffo€"));
+        assertEquals(28, serializer.serialize("1234567").length());
+        assertEquals(32, serializer.serialize("12345678").length());
+    }
+
+    public void testNoCollisionsForSimilarKeys() {
+        Murmur3CacheKeySerializer serializer = new Murmur3CacheKeySerializer();
+        Set<String> names = new HashSet<String>();
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(names.add(serializer.serialize("http://example.com/images/" + i + ".png")));
+        }
+    }
+
+    public void testSeedChangesHash() {
+        String key = "http://example.com/image.png";
+        assertFalse(new Murmur3CacheKeySerializer(1).serialize(key).equals(new Murmur3CacheKeySerializer().serialize(key)));
+    }
+
+}
@@ -24,6 +24,14 @@ import android.test.AndroidTestCase;
  */
 public class SimpleHashCacheKeySerializerTests extends AndroidTestCase {
 
+    public void testKnownDigest() {
+        SimpleHashCacheKeySerializer serializer = new SimpleHashCacheKeySerializer();
+        assertEquals("0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33", serializer.serialize("foo"));
+        // digest is reset between keys
+        assertEquals("0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33", serializer.serialize("foo"));
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", serializer.serialize(""));
+    }
+
     public void testSimpleConcurrentAccess() throws InterruptedException {
         
         // this is a very naive test to make sure that our serializer
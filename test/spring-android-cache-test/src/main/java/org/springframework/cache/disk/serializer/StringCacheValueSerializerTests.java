@@ -0,0 +1,51 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.disk.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for StringCacheValueSerializer.
+ *
+ * @author Janne Valkealahti
+ */
+public class StringCacheValueSerializerTests extends AndroidTestCase {
+
+    public void testStreamMatchesBytes() throws IOException {
+        StringCacheValueSerializer serializer = new StringCacheValueSerializer();
+        // multibyte chars crossing internal buffer boundaries
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            buf.append("aä€");
+        }
+        String value = buf.toString();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(value, out);
+        byte[] bytes = out.toByteArray();
+        assertTrue(Arrays.equals(serializer.serialize(value), bytes));
+
+        assertEquals(value, serializer.deserialize(new ByteArrayInputStream(bytes)));
+        assertEquals("", serializer.deserialize(new ByteArrayInputStream(new byte[0])));
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.lru;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.cache.support.CacheStats;
+import org.springframework.cache.support.RemovalCause;
+import org.springframework.cache.support.RemovalListener;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for ConcurrentLruCache.
+ *
+ * @author Janne Valkealahti
+ */
+public class ConcurrentLruCacheTests extends AndroidTestCase {
+
+    ConcurrentLruCache mCache;
+
+    public void testPutAndGet() {
+        mCache = new ConcurrentLruCache("testCache", 10);
+        mCache.put("key", "value");
+        mCache.put("nullkey", null);
+        assertEquals("value", mCache.get("key").get());
+        assertNotNull(mCache.get("nullkey"));
+        assertNull(mCache.get("nullkey").get());
+        assertNull(mCache.get("nonexist"));
+        mCache.evict("key");
+        assertNull(mCache.get("key"));
+        assertEquals(1, mCache.size());
+        mCache.clear();
+        assertEquals(0, mCache.size());
+        assertEquals(0, mCache.getWeight());
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() {
+        mCache = new ConcurrentLruCache("testCache", 5);
+        for (int i = 0; i < 5; i++) {
+            mCache.put("key" + i, "value" + i);
+        }
+        // plenty of reads to go through buffer drains
+        for (int j = 0; j < 50; j++) {
+            assertNotNull(mCache.get("key0"));
+        }
+        mCache.put("key5", "value5");
+        assertNotNull(mCache.get("key0"));
+        assertNull(mCache.get("key1"));
+        assertEquals(5, mCache.size());
+        CacheStats stats = mCache.getStats();
+        assertEquals(1, stats.getEvictionCount());
+    }
+
+    public void testWeigher() {
+        mCache = new ConcurrentLruCache("testCache", 100, new Weigher<String, String>() {
+            @Override
+            public int weigh(String key, String value) {
+                return value.length();
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            mCache.put("key" + i, "0123456789");
+        }
+        assertEquals(100, mCache.getWeight());
+        mCache.put("big", "01234567890123456789012345678901234567890123456789");
+        assertEquals(100, mCache.getWeight());
+        assertEquals(6, mCache.size());
+        assertNull(mCache.get("key4"));
+        assertNotNull(mCache.get("key5"));
+        assertEquals(50, mCache.getStats().getEvictionWeight());
+        // replacing adjusts weight
+        mCache.put("big", "0");
+        assertEquals(51, mCache.getWeight());
+    }
+
+    public void testConcurrentAccessKeepsWeight() throws InterruptedException {
+        mCache = new ConcurrentLruCache("testCache", 64);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                        for (int i = 0; i < 20000; i++) {
+                            Integer key = random.nextInt(256);
+                            int op = random.nextInt(10);
+                            if (op < 7) {
+                                mCache.get(key);
+                            } else if (op < 9) {
+                                mCache.put(key, key);
+                            } else {
+                                mCache.evict(key);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        mCache.cleanUp();
+        assertTrue(mCache.getWeight() <= 64);
+        assertEquals(mCache.size(), mCache.getWeight());
+        CacheStats stats = mCache.getStats();
+        assertTrue(stats.getRequestCount() > 0);
+    }
+
+    public void testTimeToLive() throws InterruptedException {
+        mCache = new ConcurrentLruCache("testCache", 10);
+        mCache.put("key1", "value", 20);
+        mCache.put("key2", "value");
+        Thread.sleep(50);
+        assertEquals(1, mCache.purgeExpired(10));
+        assertNull(mCache.get("key1"));
+        assertNotNull(mCache.get("key2"));
+        assertEquals(1, mCache.getWeight());
+    }
+
+    public void testRemovalListener() {
+        mCache = new ConcurrentLruCache("testCache", 2);
+        final List<String> removed = new ArrayList<String>();
+        mCache.setRemovalListener(new RemovalListener<Object, Object>() {
+            @Override
+            public void onRemoval(Object key, Object value, RemovalCause cause) {
+                removed.add(key + "=" + value + ":" + cause);
+            }
+        });
+        mCache.put("key1", "value1");
+        mCache.put("key2", "value2");
+        mCache.put("key3", "value3");
+        assertEquals(Arrays.asList("key1=value1:SIZE"), removed);
+        mCache.evict("key2");
+        assertEquals("key2=value2:EXPLICIT", removed.get(1));
+        mCache.put("key4", null);
+        mCache.evictAll(Arrays.asList("key4", "nonexist"));
+        assertEquals("key4=null:EXPLICIT", removed.get(2));
+        // clearing is not notified
+        mCache.clear();
+        assertEquals(3, removed.size());
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.offheap;
+
+import org.springframework.cache.disk.serializer.StringCacheValueSerializer;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for OffHeapCache.
+ *
+ * @author Janne Valkealahti
+ */
+public class OffHeapCacheTests extends AndroidTestCase {
+
+    OffHeapCache mCache;
+
+    public void testAllocator() {
+        SlabAllocator allocator = new SlabAllocator(4096, 1024, 64, 2.0f);
+        assertEquals(5, allocator.getSizeClassCount());
+        assertEquals(0, allocator.getSizeClass(64));
+        assertEquals(1, allocator.getSizeClass(65));
+        assertEquals(4, allocator.getSizeClass(1024));
+        assertEquals(-1, allocator.getSizeClass(1025));
+
+        long handle = allocator.allocate(0);
+        allocator.write(handle, "hello".getBytes());
+        assertEquals("hello", new String(allocator.read(handle, 5)));
+        assertEquals(1024, allocator.getAllocatedBytes());
+        assertEquals(64, allocator.getUsedBytes());
+
+        // remaining three slabs go to largest chunks
+        for (int i = 0; i < 3; i++) {
+            assertTrue(allocator.allocate(4) >= 0);
+        }
+        assertEquals(-1, allocator.allocate(4));
+        // freeing the only chunk of a slab lets it move to another class
+        allocator.free(handle);
+        assertTrue(allocator.allocate(4) >= 0);
+        assertEquals(-1, allocator.allocate(0));
+    }
+
+    public void testPutAndGet() {
+        mCache = new OffHeapCache("testCache", 1024 * 1024, new StringCacheValueSerializer());
+        mCache.put("key", "value");
+        mCache.put("nullkey", null);
+        assertEquals("value", mCache.get("key").get());
+        assertNull(mCache.get("nullkey").get());
+        assertNull(mCache.get("nonexist"));
+        assertEquals(5, mCache.getValueBytes());
+        mCache.put("key", "value2");
+        assertEquals("value2", mCache.get("key").get());
+        assertEquals(6, mCache.getValueBytes());
+        mCache.evict("key");
+        assertNull(mCache.get("key"));
+        mCache.clear();
+        assertEquals(0, mCache.size());
+        assertEquals(0, mCache.getValueBytes());
+    }
+
+    public void testEvictsByByteBudget() {
+        SlabAllocator allocator = new SlabAllocator(4096, 1024, 64, 2.0f);
+        mCache = new OffHeapCache("testCache", new StringCacheValueSerializer(), allocator);
+        // 64 byte chunks, 64 of them fit into the budget
+        for (int i = 0; i < 100; i++) {
+            mCache.put("key" + i, value(60, i));
+        }
+        assertEquals(64, mCache.size());
+        assertEquals(4096, mCache.getAllocatedBytes());
+        assertNull(mCache.get("key0"));
+        assertEquals(value(60, 99), mCache.get("key99").get());
+        assertEquals(36, mCache.getStats().getEvictionCount());
+
+        // large value needs a whole slab from small entries
+        mCache.put("big", value(1000, 0));
+        assertEquals(value(1000, 0), mCache.get("big").get());
+        assertEquals(4096, mCache.getAllocatedBytes());
+        // oldest entries are evicted until a slab is emptied, recycled
+        // chunks of key36 to key63 are spread over all four slabs
+        assertEquals(37, mCache.size());
+        assertEquals(64, mCache.getStats().getEvictionCount());
+        for (int i = 36; i < 64; i++) {
+            assertNull(mCache.get("key" + i));
+        }
+        for (int i = 64; i < 100; i++) {
+            assertEquals(value(60, i), mCache.get("key" + i).get());
+        }
+
+        // too large to cache at all
+        mCache.put("huge", value(2000, 0));
+        assertNull(mCache.get("huge"));
+    }
+
+    private static String value(int length, int seed) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            buf.append((char) ('a' + (seed + i) % 26));
+        }
+        return buf.toString();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.util.concurrent.CountDownLatch;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for ConcurrentStatsCounter.
+ *
+ * @author Janne Valkealahti
+ */
+public class ConcurrentStatsCounterTests extends AndroidTestCase {
+
+    public void testRecordedEvents() {
+        ConcurrentStatsCounter counter = new ConcurrentStatsCounter();
+        counter.recordHits(3);
+        counter.recordMisses(1);
+        counter.recordPuts(2);
+        counter.recordLoadSuccess(100);
+        counter.recordLoadFailure(50);
+        counter.recordRemoval(RemovalCause.SIZE, 10);
+        counter.recordRemoval(RemovalCause.SIZE, 20);
+        counter.recordRemoval(RemovalCause.EXPIRED, 5);
+        counter.recordRemoval(RemovalCause.EXPLICIT, 5);
+        counter.recordSerialize(7);
+        counter.recordDeserialize(9);
+        CacheStats stats = counter.snapshot();
+        assertEquals(3, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(0.75, stats.getHitRatio(), 0.0001);
+        assertEquals(2, stats.getPutCount());
+        assertEquals(1, stats.getLoadSuccessCount());
+        assertEquals(1, stats.getLoadFailureCount());
+        assertEquals(150, stats.getTotalLoadTime());
+        assertEquals(75.0, stats.getAverageLoadPenalty(), 0.0001);
+        assertEquals(2, stats.getEvictionCount());
+        assertEquals(30, stats.getEvictionWeight());
+        assertEquals(1, stats.getExpirationCount());
+        assertEquals(1, stats.getExplicitRemovalCount());
+        assertEquals(7, stats.getSerializeTime());
+        assertEquals(9, stats.getDeserializeTime());
+        assertEquals(0, stats.getByteSize());
+        assertEquals(1024, stats.withByteSize(1024).getByteSize());
+        assertEquals(3, stats.withByteSize(1024).getHitCount());
+    }
+
+    public void testConcurrentUpdatesAreNotLost() throws InterruptedException {
+        final ConcurrentStatsCounter counter = new ConcurrentStatsCounter(4);
+        final int threads = 8;
+        final int iterations = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < iterations; j++) {
+                            counter.recordHits(1);
+                            counter.recordRemoval(RemovalCause.SIZE, 2);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        CacheStats stats = counter.snapshot();
+        assertEquals(threads * iterations, stats.getHitCount());
+        assertEquals(threads * iterations, stats.getEvictionCount());
+        assertEquals(threads * iterations * 2, stats.getEvictionWeight());
+    }
+
+}
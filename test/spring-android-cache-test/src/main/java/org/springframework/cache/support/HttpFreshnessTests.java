@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for HttpFreshness.
+ *
+ * @author Janne Valkealahti
+ */
+public class HttpFreshnessTests extends AndroidTestCase {
+
+    static final long NOW = 1356998400000L;
+
+    public void testMaxAge() {
+        assertEquals(60000, HttpFreshness.getTimeToLive("public, max-age=60", -1, -1, 0, NOW));
+        assertEquals(50000, HttpFreshness.getTimeToLive("max-age=60", -1, -1, 10000, NOW));
+        // max-age wins over expires
+        assertEquals(60000, HttpFreshness.getTimeToLive("max-age=60", NOW + 1000, NOW, 0, NOW));
+        // shared cache directive is not for us
+        assertEquals(HttpFreshness.UNKNOWN, HttpFreshness.getTimeToLive("s-maxage=60", -1, -1, 0, NOW));
+    }
+
+    public void testNotCacheable() {
+        assertEquals(HttpFreshness.STALE, HttpFreshness.getTimeToLive("no-store", -1, -1, 0, NOW));
+        assertEquals(HttpFreshness.STALE, HttpFreshness.getTimeToLive("No-Cache, max-age=60", -1, -1, 0, NOW));
+        assertEquals(HttpFreshness.STALE, HttpFreshness.getTimeToLive("max-age=0", -1, -1, 0, NOW));
+        assertEquals(HttpFreshness.STALE, HttpFreshness.getTimeToLive(null, NOW - 1000, NOW, 0, NOW));
+    }
+
+    public void testExpires() {
+        // relative to date header, not a local clock
+        assertEquals(3600000, HttpFreshness.getTimeToLive(null, NOW + 3600000, NOW, 0, NOW + 5000));
+        assertEquals(3600000, HttpFreshness.getTimeToLive(null, NOW + 3600000, -1, 0, NOW));
+        assertEquals(HttpFreshness.UNKNOWN, HttpFreshness.getTimeToLive(null, -1, -1, 0, NOW));
+    }
+
+    public void testHeaderMap() {
+        Map<String, Object> headers = new HashMap<String, Object>();
+        assertEquals(HttpFreshness.UNKNOWN, HttpFreshness.getTimeToLive(headers, NOW));
+        headers.put("expires", "Tue, 01 Jan 2013 01:00:00 GMT");
+        headers.put("Date", NOW);
+        assertEquals(3600000, HttpFreshness.getTimeToLive(headers, NOW));
+        headers.put("Age", "600");
+        assertEquals(3000000, HttpFreshness.getTimeToLive(headers, NOW));
+        headers.put("Expires", "0");
+        headers.remove("expires");
+        assertEquals(HttpFreshness.STALE, HttpFreshness.getTimeToLive(headers, NOW));
+        headers.put("Cache-Control", "max-age=1200");
+        assertEquals(600000, HttpFreshness.getTimeToLive(headers, NOW));
+    }
+
+    public void testParseDate() {
+        assertEquals(NOW, HttpFreshness.parseDate("Tue, 01 Jan 2013 00:00:00 GMT"));
+        assertEquals(NOW, HttpFreshness.parseDate("Tuesday, 01-Jan-13 00:00:00 GMT"));
+        assertEquals(NOW, HttpFreshness.parseDate("Tue Jan 1 00:00:00 2013"));
+        assertEquals(-1, HttpFreshness.parseDate("yesterday"));
+    }
+
+}
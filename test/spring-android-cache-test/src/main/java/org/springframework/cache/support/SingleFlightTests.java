@@ -0,0 +1,216 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.InstrumentedCache;
+import org.springframework.cache.LoadingCache;
+import org.springframework.cache.LoadingCache.ValueRetrievalException;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for SingleFlight loading through LoadingCache.
+ *
+ * @author Janne Valkealahti
+ */
+public class SingleFlightTests extends AndroidTestCase {
+
+    final static String KEY = "key";
+    final static String VALUE = "value";
+    LoadingCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = new ConcurrentMapCache("testCache");
+    }
+
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<String> loader = new Callable<String>() {
+            public String call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                return VALUE;
+            }
+        };
+        final List<String> results = new ArrayList<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 30; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    String value = mCache.get(KEY, loader);
+                    synchronized (results) {
+                        results.add(value);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        // let threads pile up behind the first load
+        Thread.sleep(200);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(30, results.size());
+        for (String result : results) {
+            assertEquals(VALUE, result);
+        }
+        assertEquals(VALUE, mCache.get(KEY).get());
+    }
+
+    public void testLoaderFailure() {
+        try {
+            mCache.get(KEY, new Callable<String>() {
+                public String call() throws Exception {
+                    throw new IllegalStateException("fail");
+                }
+            });
+            fail("Expected ValueRetrievalException");
+        } catch (ValueRetrievalException e) {
+            assertEquals(KEY, e.getKey());
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertNull(mCache.get(KEY));
+        // failure is not cached
+        assertEquals(VALUE, mCache.get(KEY, new Callable<String>() {
+            public String call() {
+                return VALUE;
+            }
+        }));
+    }
+
+    public void testLoadCompletedAfterMissIsNotRepeated() throws Exception {
+        // cache misses while lookup sees a value a concurrent
+        // load put after that miss
+        ConcurrentMapCache cache = new ConcurrentMapCache("testCache");
+        SingleFlight loads = new SingleFlight(new SingleFlight.Lookup() {
+            public ValueWrapper lookup(Object key) {
+                return new SimpleValueWrapper(VALUE);
+            }
+        });
+        Callable<String> loader = new Callable<String>() {
+            public String call() {
+                fail("Value put by a completed load should not be loaded again");
+                return null;
+            }
+        };
+        assertEquals(VALUE, loads.get(cache, KEY, loader));
+        Future<String> future = loads.getAsync(cache, KEY, loader, new Executor() {
+            public void execute(Runnable command) {
+                fail("Value put by a completed load should not be loaded again");
+            }
+        });
+        assertEquals(VALUE, future.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, loads.getInFlightCount());
+        assertNull(cache.get(KEY));
+    }
+
+    public void testMissIsRecordedOnce() {
+        assertEquals(VALUE, mCache.get(KEY, new Callable<String>() {
+            public String call() {
+                return VALUE;
+            }
+        }));
+        CacheStats stats = ((InstrumentedCache) mCache).getStats();
+        assertEquals(1, stats.getMissCount());
+        assertEquals(0, stats.getHitCount());
+        assertEquals(1, stats.getLoadSuccessCount());
+    }
+
+    public void testRecursiveLoadFails() {
+        final List<Exception> failures = new ArrayList<Exception>();
+        String value = mCache.get(KEY, new Callable<String>() {
+            public String call() {
+                try {
+                    mCache.get(KEY, new Callable<String>() {
+                        public String call() {
+                            return "inner";
+                        }
+                    });
+                } catch (IllegalStateException e) {
+                    failures.add(e);
+                }
+                return VALUE;
+            }
+        });
+        assertEquals(VALUE, value);
+        assertEquals(1, failures.size());
+        assertEquals(VALUE, mCache.get(KEY).get());
+    }
+
+    public void testAsyncHitIsDone() throws Exception {
+        mCache.put(KEY, VALUE);
+        Future<String> future = mCache.getAsync(KEY, new Callable<String>() {
+            public String call() {
+                throw new IllegalStateException("Loader should not be called");
+            }
+        }, new QueueExecutor());
+        assertTrue(future.isDone());
+        assertEquals(VALUE, future.get());
+    }
+
+    public void testAsyncMissesShareOneLoad() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<String> loader = new Callable<String>() {
+            public String call() {
+                calls.incrementAndGet();
+                return VALUE;
+            }
+        };
+        QueueExecutor executor = new QueueExecutor();
+        Future<String> future1 = mCache.getAsync(KEY, loader, executor);
+        Future<String> future2 = mCache.getAsync(KEY, loader, executor);
+        assertSame(future1, future2);
+        assertEquals(1, executor.mTasks.size());
+        executor.runAll();
+        assertEquals(VALUE, future1.get(1, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(VALUE, mCache.get(KEY).get());
+    }
+
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> mTasks = new ArrayList<Runnable>();
+
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+
+}
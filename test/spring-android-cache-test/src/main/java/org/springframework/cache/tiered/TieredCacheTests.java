@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2012 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.cache.tiered;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import android.test.AndroidTestCase;
+
+/**
+ * Tests for TieredCache.
+ *
+ * @author Janne Valkealahti
+ */
+public class TieredCacheTests extends AndroidTestCase {
+
+    final static String KEY = "key";
+    final static String VALUE = "value";
+    Cache mFirst;
+    Cache mSecond;
+    QueueExecutor mExecutor;
+    TieredCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFirst = new ConcurrentMapCache("first");
+        mSecond = new ConcurrentMapCache("second");
+        mExecutor = new QueueExecutor();
+        mCache = new TieredCache("tiered", mFirst, mSecond, mExecutor);
+    }
+
+    public void testWriteBehind() {
+        mCache.put(KEY, VALUE);
+        assertEquals(VALUE, mFirst.get(KEY).get());
+        assertNull(mSecond.get(KEY));
+        assertEquals(1, mCache.getPendingWriteCount());
+
+        // value is visible even if first level lost it
+        mFirst.evict(KEY);
+        assertEquals(VALUE, mCache.get(KEY).get());
+
+        mExecutor.runAll();
+        assertEquals(VALUE, mSecond.get(KEY).get());
+        assertEquals(0, mCache.getPendingWriteCount());
+    }
+
+    public void testWritesCoalesced() {
+        for (int i = 0; i < 10; i++) {
+            mCache.put(KEY, VALUE + i);
+        }
+        assertEquals(1, mExecutor.mTasks.size());
+        assertEquals(1, mCache.getPendingWriteCount());
+        mExecutor.runAll();
+        assertEquals(VALUE + 9, mSecond.get(KEY).get());
+    }
+
+    public void testPendingWritesBounded() {
+        mCache.setMaxPendingWrites(5);
+        for (int i = 0; i < 5; i++) {
+            mCache.put(KEY + i, VALUE + i);
+        }
+        assertEquals(5, mCache.getPendingWriteCount());
+        assertEquals(0, mCache.getCallerWriteCount());
+        assertNull(mSecond.get(KEY + 0));
+        mCache.put(KEY + 5, VALUE + 5);
+        assertEquals(0, mCache.getPendingWriteCount());
+        assertEquals(1, mCache.getCallerWriteCount());
+        for (int i = 0; i < 6; i++) {
+            assertEquals(VALUE + i, mSecond.get(KEY + i).get());
+        }
+        try {
+            mCache.setMaxPendingWrites(0);
+            fail("Max pending writes of zero should be rejected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testPromotion() {
+        mSecond.put(KEY, VALUE);
+        assertEquals(VALUE, mCache.get(KEY).get());
+        assertEquals(VALUE, mFirst.get(KEY).get());
+        assertEquals(VALUE, mCache.get(KEY).get());
+        assertNull(mCache.get(KEY + "nonexist"));
+
+        assertEquals(1, mCache.getFirstLevelStats().getHitCount());
+        assertEquals(2, mCache.getFirstLevelStats().getMissCount());
+        assertEquals(1, mCache.getSecondLevelStats().getHitCount());
+        assertEquals(1, mCache.getSecondLevelStats().getMissCount());
+    }
+
+    public void testEvictNotResurrectedByPendingWrite() {
+        mCache.put(KEY, VALUE);
+        mCache.evict(KEY);
+        assertNull(mCache.get(KEY));
+        mExecutor.runAll();
+        assertNull(mSecond.get(KEY));
+        assertNull(mCache.get(KEY));
+    }
+
+    public void testClearDropsPendingWrites() {
+        mCache.put(KEY, VALUE);
+        mCache.clear();
+        mExecutor.runAll();
+        assertNull(mSecond.get(KEY));
+        assertNull(mCache.get(KEY));
+    }
+
+    public void testFailedWriteIsDropped() {
+        mCache = new TieredCache("tiered", mFirst, new ConcurrentMapCache("second", false), mExecutor);
+        mCache.put(KEY, null);
+        mExecutor.runAll();
+        assertEquals(1, mCache.getWriteFailureCount());
+        assertEquals(0, mCache.getPendingWriteCount());
+    }
+
+    public void testPrefetch() throws Exception {
+        mSecond.put(KEY + 1, VALUE + 1);
+        mSecond.put(KEY + 2, VALUE + 2);
+        mSecond.put(KEY + 3, VALUE + 3);
+        mFirst.put(KEY + 2, VALUE);
+        // pending value is newer than second level
+        mCache.put(KEY + 3, VALUE);
+        mFirst.evict(KEY + 3);
+
+        QueueExecutor executor = new QueueExecutor();
+        Prefetcher prefetcher = new Prefetcher(mCache, executor);
+        prefetcher.setBatchSize(2);
+        Future<Integer> future = prefetcher.prefetch(Arrays.asList(KEY + 1, KEY + 2, KEY + 3, KEY + 4));
+        assertFalse(future.isDone());
+        executor.runAll();
+        assertEquals(1, future.get().intValue());
+        assertEquals(VALUE + 1, mFirst.get(KEY + 1).get());
+        assertEquals(VALUE, mFirst.get(KEY + 2).get());
+        assertNull(mFirst.get(KEY + 3));
+        assertEquals(VALUE, mCache.get(KEY + 3).get());
+        assertEquals(0, mCache.getSecondLevelStats().getHitCount());
+    }
+
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> mTasks = new ArrayList<Runnable>();
+
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+
+}
@@ -67,4 +67,31 @@ public class SingleAsyncGatewayServiceTests extends ServiceTestCase<TestSingleHa
         assertEquals(0l, latch.getCount());
     }
     
+    public void testCancelAfterCompletion() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Intent intent = new Intent(getContext(), TestSingleHandlerAsyncGatewayService.class);
+        intent.putExtra(GatewayHeaders.REQUEST_ID, 42);
+        
+        IBinder binder = bindService(intent);
+        GatewayServiceBinder<TestSingleHandlerAsyncGatewayService> serviceBinder = 
+                (GatewayServiceBinder<TestSingleHandlerAsyncGatewayService>) binder;
+        TestSingleHandlerAsyncGatewayService gatewayService = serviceBinder.getService();
+        gatewayService.setReceiver(new MessageReceiver() {
+            @Override
+            protected void onReceiveResult(Message<?> resultData) {
+                latch.countDown();
+            }
+        });
+        
+        startService(intent);
+        latch.await(10, TimeUnit.SECONDS);
+        assertEquals(0l, latch.getCount());
+        
+        // completed request is forgotten and late cancel is not recorded
+        assertFalse(gatewayService.isInFlight(42));
+        assertFalse(gatewayService.cancelRequest(42));
+        assertFalse(gatewayService.isCancelled(42));
+        assertFalse(gatewayService.isInFlight(42));
+    }
+    
 }
@@ -1,14 +1,26 @@
 package org.springframework.integration.image;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.springframework.cache.Cache;
 import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.lru.ConcurrentLruCache;
+import org.springframework.integration.http.HttpHeaders;
+import org.springframework.integration.image.BitmapManager.BitmapRequest;
 import org.springframework.integration.image.BitmapManager.BitmapWrapper;
 import org.springframework.integration.image.core.CachingBitmapManager;
+import org.springframework.integration.image.support.BitmapPool;
 import org.springframework.integration.image.support.ImageOptions;
+import org.springframework.integration.support.MessageBuilder;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -51,6 +63,195 @@ public class CachingBitmapManagerTests extends AndroidTestCase {
         assertNotNull(wrapper.get());
         
     }
+
+    public void testCoalescingAndCancel() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        
+        TestBitmapManager manager = new TestBitmapManager(getContext());
+        manager.registerBitmapObserver(new BitmapObserver() {
+            @Override
+            public void onBitmap(Bitmap bitmap, Map<String, String> tags) {
+                received.add(tags.get("view"));
+                latch.countDown();
+            }
+        });
+        
+        String url = "http://www.springsource.org/sites/all/themes/s2org11/images/logo_springsource_community.png";
+        BitmapRequest first = manager.requestBitmap(new ImageOptions.Builder()
+            .withUrl(url).addTag("view", "first").build());
+        BitmapRequest second = manager.requestBitmap(new ImageOptions.Builder()
+            .withUrl(url).addTag("view", "second").build());
+        BitmapRequest third = manager.requestBitmap(new ImageOptions.Builder()
+            .withUrl(url).addTag("view", "third").build());
+        third.cancel();
+        assertTrue(third.isCancelled());
+        
+        // one download notifies both requests which weren't cancelled
+        latch.await(10, TimeUnit.SECONDS);
+        assertEquals(0l, latch.getCount());
+        Thread.sleep(500);
+        assertEquals(2, received.size());
+        assertTrue(received.contains("first"));
+        assertTrue(received.contains("second"));
+        assertNotNull(first.get());
+        assertNotNull(second.get());
+        assertNull(third.get());
+    }
+
+    public void testFileSource() throws InterruptedException, IOException {
+        File file = new File(getContext().getCacheDir(), "testFileSource.png");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            Bitmap.createBitmap(64, 32, Bitmap.Config.ARGB_8888).compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+        
+        final CountDownLatch latch = new CountDownLatch(1);
+        TestBitmapManager manager = new TestBitmapManager(getContext());
+        manager.registerBitmapObserver(new BitmapObserver() {
+            @Override
+            public void onBitmap(Bitmap bitmap, Map<String, String> tags) {
+                latch.countDown();
+            }
+        });
+        
+        ImageOptions options = new ImageOptions.Builder()
+            .withFile(file.getAbsolutePath())
+            .withTargetSize(16, 16)
+            .build();
+        assertEquals("file:" + file.getAbsolutePath(), options.getUrl());
+        
+        // local images are loaded asynchronously like remote ones
+        BitmapWrapper wrapper = manager.requestBitmap(options);
+        assertNull(wrapper.get());
+        latch.await(10, TimeUnit.SECONDS);
+        assertEquals(0l, latch.getCount());
+        
+        // downsampled and memory cached
+        wrapper = manager.requestBitmap(options);
+        assertNotNull(wrapper.get());
+        assertEquals(32, wrapper.get().getWidth());
+        file.delete();
+    }
+    
+    public void testSameUrlWithTwoSizes() throws InterruptedException, IOException {
+        File file = new File(getContext().getCacheDir(), "testSameUrlWithTwoSizes.png");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            Bitmap.createBitmap(256, 128, Bitmap.Config.ARGB_8888).compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+        
+        final CountDownLatch latch = new CountDownLatch(2);
+        TestBitmapManager manager = new TestBitmapManager(getContext());
+        manager.registerBitmapObserver(new BitmapObserver() {
+            @Override
+            public void onBitmap(Bitmap bitmap, Map<String, String> tags) {
+                latch.countDown();
+            }
+        });
+        
+        ImageOptions small = new ImageOptions.Builder()
+            .withFile(file.getAbsolutePath())
+            .withTargetSize(16, 16)
+            .build();
+        ImageOptions large = new ImageOptions.Builder()
+            .withFile(file.getAbsolutePath())
+            .withTargetSize(128, 128)
+            .build();
+        assertEquals(small.getUrl(), large.getUrl());
+        
+        assertNull(manager.requestBitmap(small).get());
+        assertNull(manager.requestBitmap(large).get());
+        latch.await(10, TimeUnit.SECONDS);
+        assertEquals(0l, latch.getCount());
+        
+        // each size is cached separately
+        Bitmap smallBitmap = manager.requestBitmap(small).get();
+        Bitmap largeBitmap = manager.requestBitmap(large).get();
+        assertNotNull(smallBitmap);
+        assertNotNull(largeBitmap);
+        assertEquals(32, smallBitmap.getWidth());
+        assertEquals(256, largeBitmap.getWidth());
+        file.delete();
+    }
+    
+    public void testEvictedBitmapIsNotPooled() {
+        if (!BitmapPool.isSupported()) {
+            return;
+        }
+        PoolingBitmapManager manager = new PoolingBitmapManager(getContext());
+        ImageOptions firstOptions = new ImageOptions.Builder().withUrl("http://localhost/first.png").build();
+        ImageOptions secondOptions = new ImageOptions.Builder().withUrl("http://localhost/second.png").build();
+        Bitmap first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        // cache holds one bitmap, second evicts first which is still referenced here
+        manager.receive(firstOptions.getUrl(), first);
+        manager.receive(secondOptions.getUrl(), second);
+        assertNull(manager.requestBitmap(firstOptions).get());
+        assertFalse(first.isRecycled());
+        assertEquals(0, manager.getBitmapPool().getBytes());
+        assertNull(manager.getBitmapPool().get(10, 10, null));
+
+        // explicitly released bitmap is dropped from a cache and pooled
+        assertTrue(manager.releaseBitmap(secondOptions, second));
+        assertNull(manager.requestBitmap(secondOptions).get());
+        assertFalse(second.isRecycled());
+        assertSame(second, manager.getBitmapPool().get(10, 10, null));
+    }
+    
+    public void testSharedBitmapPooledOnLastRelease() {
+        if (!BitmapPool.isSupported()) {
+            return;
+        }
+        PoolingBitmapManager manager = new PoolingBitmapManager(getContext());
+        ImageOptions options = new ImageOptions.Builder().withUrl("http://localhost/shared.png").build();
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        // one hand-out to an observer and one from a cache hit
+        manager.receive(options.getUrl(), bitmap);
+        assertSame(bitmap, manager.requestBitmap(options).get());
+
+        // still displayed by the other holder
+        assertFalse(manager.releaseBitmap(options, bitmap));
+        assertEquals(0, manager.getBitmapPool().getBytes());
+        assertSame(bitmap, manager.requestBitmap(options).get());
+        assertFalse(manager.releaseBitmap(options, bitmap));
+
+        // last holder releases it
+        assertTrue(manager.releaseBitmap(options, bitmap));
+        assertNull(manager.requestBitmap(options).get());
+        assertEquals(BitmapPool.getByteSize(bitmap), manager.getBitmapPool().getBytes());
+
+        // extra releases never pool it twice
+        assertFalse(manager.releaseBitmap(options, bitmap));
+        assertSame(bitmap, manager.getBitmapPool().get(10, 10, null));
+        assertNull(manager.getBitmapPool().get(10, 10, null));
+    }
+    
+    private class PoolingBitmapManager extends CachingBitmapManager {
+        public PoolingBitmapManager(Context context) {
+            super(context);
+        }
+        @Override
+        protected Cache initCache() {
+            return new ConcurrentLruCache("test", 1);
+        }
+        @Override
+        protected BitmapPool initBitmapPool() {
+            return new BitmapPool(1024 * 1024);
+        }
+        void receive(String url, Bitmap bitmap) {
+            Map<String, String> urivars = new HashMap<String, String>();
+            urivars.put(HttpHeaders.REQUEST_URL, url);
+            onInternalReceiveResult(MessageBuilder.withPayload(bitmap)
+                    .setHeader(HttpHeaders.URI_VARIABLES, urivars).build());
+        }
+    }
     
     private class TestBitmapManager extends CachingBitmapManager {
         public TestBitmapManager(Context context) {
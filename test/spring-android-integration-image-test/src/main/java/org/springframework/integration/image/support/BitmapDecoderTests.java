@@ -0,0 +1,47 @@
+package org.springframework.integration.image.support;
+
+import org.springframework.integration.image.support.ImageOptions.ScaleMode;
+
+import android.test.AndroidTestCase;
+
+/**
+ * 
+ * @author Janne Valkealahti
+ */
+public class BitmapDecoderTests extends AndroidTestCase {
+
+    public void testInSampleSize() {
+        // no target or unknown bounds never downsample
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(4000, 3000, 0, 0, ScaleMode.FILL));
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(-1, -1, 96, 96, ScaleMode.FILL));
+        assertEquals(1, BitmapDecoder.calculateInSampleSize(80, 60, 96, 96, ScaleMode.FILL));
+
+        // fill keeps shorter side at least target size
+        assertEquals(16, BitmapDecoder.calculateInSampleSize(4000, 3000, 96, 96, ScaleMode.FILL));
+        // fit only needs longer side to reach target size
+        assertEquals(32, BitmapDecoder.calculateInSampleSize(4000, 3000, 96, 96, ScaleMode.FIT));
+
+        // one dimension constrained
+        assertEquals(8, BitmapDecoder.calculateInSampleSize(4000, 3000, 400, 0, ScaleMode.FILL));
+        assertEquals(4, BitmapDecoder.calculateInSampleSize(4000, 3000, 0, 600, ScaleMode.FIT));
+    }
+
+    public void testOptionsTargetSize() {
+        ImageOptions options = new ImageOptions.Builder()
+            .withUrl("http://localhost/image.jpg")
+            .build();
+        assertFalse(options.hasTargetSize());
+        assertEquals(ScaleMode.FILL, options.getScaleMode());
+
+        options = new ImageOptions.Builder()
+            .withUrl("http://localhost/image.jpg")
+            .withTargetSize(96, -1)
+            .withScaleMode(ScaleMode.FIT)
+            .build();
+        assertTrue(options.hasTargetSize());
+        assertEquals(96, options.getTargetWidth());
+        assertEquals(0, options.getTargetHeight());
+        assertEquals(ScaleMode.FIT, options.getScaleMode());
+    }
+
+}
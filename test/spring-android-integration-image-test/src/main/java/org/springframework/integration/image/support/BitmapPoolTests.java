@@ -0,0 +1,54 @@
+package org.springframework.integration.image.support;
+
+import org.springframework.cache.support.CacheStats;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+/**
+ * 
+ * @author Janne Valkealahti
+ */
+public class BitmapPoolTests extends AndroidTestCase {
+
+    public void testReuseAndEviction() {
+        if (!BitmapPool.isSupported()) {
+            return;
+        }
+        Bitmap first = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888);
+        int size = BitmapPool.getByteSize(first);
+        BitmapPool pool = new BitmapPool(size * 2);
+
+        assertTrue(pool.put(first));
+        assertNull(pool.get(10, 10, Bitmap.Config.RGB_565));
+        assertSame(first, pool.get(10, 10, null));
+        assertNull(pool.get(10, 10, null));
+
+        // immutable bitmaps can't be reused
+        assertFalse(pool.put(Bitmap.createBitmap(new int[100], 10, 10, Bitmap.Config.ARGB_8888)));
+
+        assertTrue(pool.put(first));
+        assertEquals(size, pool.getBytes());
+        // a pooled bitmap is never pooled twice
+        assertFalse(pool.put(first));
+        assertEquals(size, pool.getBytes());
+
+        // adding a bigger bitmap evicts least recently used one
+        // which is left for a garbage collector
+        assertTrue(pool.put(second));
+        assertFalse(first.isRecycled());
+        assertEquals(size * 2, pool.getBytes());
+        assertNull(pool.get(10, 10, null));
+
+        CacheStats stats = pool.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(3, stats.getMissCount());
+        assertEquals(1, stats.getEvictionCount());
+
+        pool.clear();
+        assertEquals(0, pool.getBytes());
+        assertFalse(second.isRecycled());
+    }
+
+}
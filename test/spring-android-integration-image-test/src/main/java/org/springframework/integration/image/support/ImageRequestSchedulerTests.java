@@ -0,0 +1,85 @@
+package org.springframework.integration.image.support;
+
+import java.util.Collections;
+
+import org.springframework.integration.Message;
+import org.springframework.integration.gateway.GatewayHeaders;
+import org.springframework.integration.http.HttpHeaders;
+import org.springframework.integration.image.ImageHeaders;
+import org.springframework.integration.image.support.ImageOptions.Priority;
+import org.springframework.integration.support.MessageBuilder;
+
+import android.test.AndroidTestCase;
+
+/**
+ * 
+ * @author Janne Valkealahti
+ */
+public class ImageRequestSchedulerTests extends AndroidTestCase {
+
+    public void testPriorityAndLifo() {
+        ImageRequestScheduler scheduler = new ImageRequestScheduler(10);
+        scheduler.schedule(message(1, "http://a.example.com/1.png", Priority.LOW));
+        scheduler.schedule(message(2, "http://a.example.com/2.png", null));
+        scheduler.schedule(message(3, "http://b.example.com/3.png", null));
+        scheduler.schedule(message(4, "http://b.example.com/4.png", Priority.HIGH));
+        assertEquals(4, scheduler.getPendingCount());
+
+        assertEquals(4, requestId(scheduler.poll()));
+        // newest first within a priority
+        assertEquals(3, requestId(scheduler.poll()));
+        assertEquals(2, requestId(scheduler.poll()));
+        assertEquals(1, requestId(scheduler.poll()));
+        assertNull(scheduler.poll());
+        assertEquals(2, scheduler.getActiveCount("a.example.com"));
+    }
+
+    public void testHostLimit() {
+        ImageRequestScheduler scheduler = new ImageRequestScheduler(1);
+        Message<?> first = message(1, "http://a.example.com/1.png", null);
+        scheduler.schedule(first);
+        scheduler.schedule(message(2, "http://a.example.com/2.png", null));
+        scheduler.schedule(message(3, "http://b.example.com/3.png", Priority.LOW));
+
+        assertEquals(2, requestId(scheduler.poll()));
+        // host a is busy so lower priority host b goes next
+        assertEquals(3, requestId(scheduler.poll()));
+        assertNull(scheduler.poll());
+        assertEquals(1, scheduler.getPendingCount());
+
+        scheduler.done(first);
+        assertEquals(1, requestId(scheduler.poll()));
+    }
+
+    public void testReprioritizeAndRemove() {
+        ImageRequestScheduler scheduler = new ImageRequestScheduler();
+        scheduler.schedule(message(1, "http://a.example.com/1.png", Priority.LOW));
+        scheduler.schedule(message(2, "http://a.example.com/2.png", null));
+        scheduler.schedule(message(3, "http://a.example.com/3.png", null));
+
+        assertTrue(scheduler.reprioritize(1, Priority.HIGH));
+        assertFalse(scheduler.reprioritize(4, Priority.HIGH));
+        assertTrue(scheduler.remove(3));
+        assertFalse(scheduler.remove(3));
+
+        assertEquals(1, requestId(scheduler.poll()));
+        assertEquals(2, requestId(scheduler.poll()));
+        assertNull(scheduler.poll());
+    }
+
+    private static Message<?> message(int requestId, String url, Priority priority) {
+        MessageBuilder<String> builder = MessageBuilder.withPayload("")
+            .setHeader(HttpHeaders.URI_VARIABLES, Collections.singletonMap(HttpHeaders.REQUEST_URL, url))
+            .setHeader(GatewayHeaders.REQUEST_ID, requestId);
+        if (priority != null) {
+            builder.setHeader(ImageHeaders.PRIORITY, priority);
+        }
+        return builder.build();
+    }
+
+    private static int requestId(Message<?> message) {
+        assertNotNull(message);
+        return message.getHeaders().get(GatewayHeaders.REQUEST_ID, Integer.class);
+    }
+
+}